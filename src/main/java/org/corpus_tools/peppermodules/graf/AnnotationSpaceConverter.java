@@ -0,0 +1,507 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import static java.util.Arrays.asList;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.corpus_tools.salt.SaltFactory;
+import org.corpus_tools.salt.common.SDocument;
+import org.corpus_tools.salt.common.SSpan;
+import org.corpus_tools.salt.common.SToken;
+import org.corpus_tools.salt.core.SLayer;
+import org.corpus_tools.salt.core.SNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xces.graf.api.GrafException;
+import org.xces.graf.api.IAnchor;
+import org.xces.graf.api.IAnnotation;
+import org.xces.graf.api.IAnnotationSpace;
+import org.xces.graf.api.IFeature;
+import org.xces.graf.api.IGraph;
+import org.xces.graf.api.INode;
+import org.xces.graf.api.IRegion;
+
+/**
+ * Converts the IRegions and INodes of an IGraph into the STokens, SSpans and
+ * SAnnotations of an SDocument, like
+ * {@link SaltWriter#addAllIRegionsToSDocument(IGraph, SDocument)},
+ * {@link SaltWriter#addSSpansToSDocument(IGraph, SDocument, HashMap)} and
+ * {@link SaltWriter#addAnnotationsToSDocument(IGraph, HashMap, SDocument)}
+ * do one after the other.
+ * 
+ * The regions and nodes are partitioned by their IAnnotationSpace (f.seg,
+ * f.ne, f.penn ...). For each partition, a plan is computed (the offsets of
+ * the regions, the regions covered by each node and the annotations of each
+ * node), in parallel if a ForkJoinPool is given. Computing the plans only
+ * reads the IGraph. Afterwards, the plans are applied to the SDocumentGraph
+ * by the calling thread, in the order of the regions and nodes in the IGraph,
+ * so the result is the same as the one of the SaltWriter methods, with one
+ * difference: the regions covered by a node are taken from a
+ * {@link RegionCoverage}, i.e. a region reached on several paths counts only
+ * once and the regions are ordered by the text. A node reaching a single
+ * region on several paths is mapped to its token instead of getting an SSpan,
+ * and the tokens of an SSpan are ordered by the text, each contained once.
+ * 
+ * Regions and nodes are identified by their ordinals in an
+ * {@link IndexedGraph}, the plans and the STokens of the regions are kept in
+ * arrays indexed by them.
+ * 
+ * Instead of the whole IGraph, a converter can convert one {@link TextWindow}
+ * after the other (see {@link #convert(TextWindow, ForkJoinPool)}). Plans,
+ * coverage and the STokens of regions are then only kept for the current
+ * window.
+ * 
+ * Unlike the SaltWriter methods, a converter keeps its SLayers and the number
+ * of floating nodes to itself, so documents can be converted at the same time.
+ * A converter is meant to be used for one document only.
+ */
+public class AnnotationSpaceConverter {
+	private static final Logger logger = LoggerFactory.getLogger(AnnotationSpaceConverter.class);
+
+	/** the name of the SLayer containing the STokens of unannotated IRegions */
+	public static final String NOT_ANNOTATED = "not-annotated";
+
+	private final IGraph iGraph;
+	private IndexedGraph indexedGraph;
+	private final SDocument sDocument;
+	private final SymbolTable symbolTable;
+	private final SpanCache spanCache;
+	private final HashMap<String, SLayer> annoSpaceSLayerMap = new HashMap<String, SLayer>();
+	private int floatingNodeCount = 0;
+	private HashMap<String, List<String>> regionIdToTokenIdsMap = null;
+	private HashMap<String, List<String>> iNodeIdToSNodeIdsMap = null;
+	private HashMap<String, SNode> sNodeIdToSNodeMap = null;
+	/** the plans and STokens of the current window, if converted by windows */
+	private Plans windowPlans = null;
+	private SToken[][] windowRegionTokens = null;
+
+	/**
+	 * @param symbolTable
+	 *            - shares annotation names, namespaces and values, may be null
+	 */
+	public AnnotationSpaceConverter(IGraph iGraph, SDocument sDocument, SymbolTable symbolTable) {
+		this(iGraph, sDocument, symbolTable, false);
+	}
+
+	/**
+	 * @param mergeSpans
+	 *            - if true, INodes covering exactly the same STokens share one
+	 *            SSpan (see {@link SpanCache})
+	 */
+	public AnnotationSpaceConverter(IGraph iGraph, SDocument sDocument, SymbolTable symbolTable, boolean mergeSpans) {
+		this.iGraph = iGraph;
+		this.sDocument = sDocument;
+		this.symbolTable = symbolTable;
+		this.spanCache = mergeSpans ? new SpanCache() : null;
+	}
+
+	/**
+	 * like {@link #AnnotationSpaceConverter(IGraph, SDocument, SymbolTable, boolean)},
+	 * for an IGraph whose {@link IndexedGraph} was already built
+	 */
+	public AnnotationSpaceConverter(IndexedGraph indexedGraph, SDocument sDocument, SymbolTable symbolTable, boolean mergeSpans) {
+		this(indexedGraph.getGraph(), sDocument, symbolTable, mergeSpans);
+		this.indexedGraph = indexedGraph;
+	}
+
+	/**
+	 * converts the regions, nodes and annotations of the IGraph and adds them
+	 * to the SDocument (which must already contain the primary text).
+	 * 
+	 * @param pool
+	 *            - the plans of the annotation spaces are computed on this
+	 *            pool, if it isn't null
+	 */
+	public void convert(ForkJoinPool pool) throws GrafException {
+		if (indexedGraph == null) {
+			indexedGraph = new IndexedGraph(iGraph);
+		}
+		// every partition fills the entries of its own regions and nodes
+		Plans plans = newPlans();
+		plan(partition(null, null), plans, pool);
+		addLayers();
+		resetMaps();
+		// tokens and spans are created in the order of the IGraph's lists
+		int[] regions = new int[indexedGraph.getRegionCount()];
+		int i = 0;
+		for (IRegion iRegion : iGraph.getRegions()) {
+			regions[i++] = indexedGraph.getRegionOrdinal(iRegion);
+		}
+		int[] nodes = new int[indexedGraph.getNodeCount()];
+		i = 0;
+		for (INode iNode : iGraph.getNodes()) {
+			nodes[i++] = indexedGraph.getNodeOrdinal(iNode);
+		}
+		SToken[][] regionTokens = new SToken[indexedGraph.getRegionCount()][];
+		addTokens(regions, plans.regionOffsets, regionTokens);
+		addSpans(nodes, plans.nodePlans, regionTokens);
+		addAnnotations(plans.nodePlans);
+	}
+
+	/**
+	 * converts the regions, nodes and annotations of one window of the IGraph
+	 * (see {@link #convert(ForkJoinPool)}). The windows of the IGraph have to
+	 * be converted in order (the SLayers are added with the first one).
+	 * Afterwards, the maps of the converter only contain the elements of this
+	 * window, and the plans of the window are dropped.
+	 */
+	public void convert(TextWindow window, ForkJoinPool pool) throws GrafException {
+		if (indexedGraph == null) {
+			indexedGraph = new IndexedGraph(iGraph);
+		}
+		if (windowPlans == null) {
+			windowPlans = newPlans();
+			windowRegionTokens = new SToken[indexedGraph.getRegionCount()][];
+			addLayers();
+		}
+		plan(partition(window.getRegions(), window.getNodes()), windowPlans, pool);
+		resetMaps();
+		addTokens(window.getRegions(), windowPlans.regionOffsets, windowRegionTokens);
+		addSpans(window.getNodes(), windowPlans.nodePlans, windowRegionTokens);
+		addAnnotations(windowPlans.nodePlans);
+
+		for (int region : window.getRegions()) {
+			windowRegionTokens[region] = null;
+		}
+		for (int node : window.getNodes()) {
+			windowPlans.nodePlans[node] = null;
+			windowPlans.regionCoverage.forget(node);
+		}
+	}
+
+	private Plans newPlans() {
+		return new Plans(new RegionCoverage(indexedGraph), new int[2 * indexedGraph.getRegionCount()], new NodePlan[indexedGraph.getNodeCount()]);
+	}
+
+	private void resetMaps() {
+		regionIdToTokenIdsMap = new HashMap<String, List<String>>();
+		iNodeIdToSNodeIdsMap = new HashMap<String, List<String>>();
+		sNodeIdToSNodeMap = new HashMap<String, SNode>();
+	}
+
+	/**
+	 * returns a map from IRegion IDs to the IDs of the STokens created for
+	 * them (or null, if the IGraph wasn't converted yet).
+	 */
+	public HashMap<String, List<String>> getRegionIdToTokenIdsMap() {
+		return regionIdToTokenIdsMap;
+	}
+
+	/**
+	 * returns a map from INode IDs to the IDs of the STokens/SSpans they
+	 * annotate (or null, if the IGraph wasn't converted yet).
+	 */
+	public HashMap<String, List<String>> getINodeIdToSNodeIdsMap() {
+		return iNodeIdToSNodeIdsMap;
+	}
+
+	/**
+	 * returns a map from STokens/SSpan IDs to STokens/SSpans (or null, if the
+	 * IGraph wasn't converted yet).
+	 */
+	public HashMap<String, SNode> getSNodeIdToSNodeMap() {
+		return sNodeIdToSNodeMap;
+	}
+
+	/**
+	 * splits the regions and nodes of the IGraph by annotation space. A region
+	 * belongs to the annotation space of its first node.
+	 * 
+	 * @param regions
+	 *            - the ordinals of the regions to split, null for all
+	 * @param nodes
+	 *            - the ordinals of the nodes to split, null for all
+	 */
+	private List<Partition> partition(int[] regions, int[] nodes) {
+		Map<String, Partition> partitions = new LinkedHashMap<String, Partition>();
+		for (IAnnotationSpace annoSpace : iGraph.getAnnotationSpaces()) {
+			partitions.put(annoSpace.getName(), new Partition());
+		}
+		partitions.put(NOT_ANNOTATED, new Partition());
+
+		int regionCount = (regions != null) ? regions.length : indexedGraph.getRegionCount();
+		for (int i = 0; i < regionCount; i++) {
+			int region = (regions != null) ? regions[i] : i;
+			List<INode> annoNodes = indexedGraph.getRegion(region).getNodes();
+			String annoSpaceName = annoNodes.isEmpty() ? NOT_ANNOTATED : getAnnoSpaceName(annoNodes.get(0));
+			getPartition(partitions, annoSpaceName).regions.add(region);
+		}
+		int nodeCount = (nodes != null) ? nodes.length : indexedGraph.getNodeCount();
+		for (int i = 0; i < nodeCount; i++) {
+			int node = (nodes != null) ? nodes[i] : i;
+			int annoSpace = indexedGraph.getAnnotationSpace(node);
+			String annoSpaceName = (annoSpace < 0) ? NOT_ANNOTATED : indexedGraph.getAnnotationSpaceName(annoSpace);
+			getPartition(partitions, annoSpaceName).nodes.add(node);
+		}
+		return new ArrayList<Partition>(partitions.values());
+	}
+
+	private static Partition getPartition(Map<String, Partition> partitions, String annoSpaceName) {
+		Partition partition = partitions.get(annoSpaceName);
+		if (partition == null) {
+			partition = new Partition();
+			partitions.put(annoSpaceName, partition);
+		}
+		return partition;
+	}
+
+	private static String getAnnoSpaceName(INode iNode) {
+		IAnnotation iAnnotation = iNode.getAnnotation();
+		if (iAnnotation == null || iAnnotation.getAnnotationSpace() == null) {
+			return NOT_ANNOTATED;
+		}
+		return iAnnotation.getAnnotationSpace().getName();
+	}
+
+	/** computes the plans of all partitions, in parallel if a pool is given */
+	private void plan(List<Partition> partitions, final Plans plans, ForkJoinPool pool) throws GrafException {
+		if (pool == null) {
+			for (Partition partition : partitions) {
+				partition.plan(indexedGraph, plans, symbolTable);
+			}
+			return;
+		}
+
+		List<Callable<Partition>> planTasks = new ArrayList<Callable<Partition>>();
+		for (final Partition partition : partitions) {
+			planTasks.add(new Callable<Partition>() {
+				@Override
+				public Partition call() throws GrafException {
+					partition.plan(indexedGraph, plans, symbolTable);
+					return partition;
+				}
+			});
+		}
+		for (Future<Partition> plannedPartition : pool.invokeAll(planTasks)) {
+			try {
+				plannedPartition.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new GrafException("Interrupted while converting the annotation spaces. ", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof GrafException) {
+					throw (GrafException) e.getCause();
+				} else if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new GrafException("Cannot convert the annotation spaces. ", e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * creates an SLayer for each IAnnotationSpace and one for unannotated
+	 * regions
+	 */
+	private void addLayers() {
+		for (IAnnotationSpace annoSpace : iGraph.getAnnotationSpaces()) {
+			addLayer(annoSpace.getName());
+		}
+		addLayer(NOT_ANNOTATED);
+	}
+
+	private void addLayer(String layerName) {
+		SLayer annoLayer = SaltFactory.createSLayer();
+		annoLayer.setName(layerName);
+		annoSpaceSLayerMap.put(layerName, annoLayer);
+		sDocument.getDocumentGraph().addLayer(annoLayer);
+	}
+
+	/**
+	 * adds an SToken for each region and each annotation space it belongs to
+	 * (see {@link SaltWriter#addIRegionToSDocument(IRegion, SDocument, HashMap)})
+	 * 
+	 * @param regions
+	 *            - the ordinals of the regions, in the order the STokens are
+	 *            created
+	 * @param regionTokens
+	 *            - receives the STokens of each region, by region ordinal
+	 */
+	private void addTokens(int[] regions, int[] regionOffsets, SToken[][] regionTokens) {
+		for (int region : regions) {
+			IRegion iRegion = indexedGraph.getRegion(region);
+			String iRegionId = iRegion.getId();
+			int onset = regionOffsets[2 * region];
+			int offset = regionOffsets[2 * region + 1];
+			List<INode> annoNodes = iRegion.getNodes();
+			SToken[] sTokens = new SToken[Math.max(annoNodes.size(), 1)];
+			if (annoNodes.isEmpty()) {
+				SLayer regionLayer = annoSpaceSLayerMap.get(NOT_ANNOTATED);
+				sTokens[0] = SaltWriter.createToken(onset, offset, sDocument, regionLayer, iRegionId);
+			} else {
+				for (int i = 0; i < sTokens.length; i++) {
+					SLayer regionLayer = annoSpaceSLayerMap.get(getAnnoSpaceName(annoNodes.get(i)));
+					sTokens[i] = SaltWriter.createToken(onset, offset, sDocument, regionLayer, iRegionId);
+				}
+			}
+			List<String> sTokenIds = new ArrayList<String>(sTokens.length);
+			for (SToken sToken : sTokens) {
+				sTokenIds.add(sToken.getId());
+				sNodeIdToSNodeMap.put(sToken.getId(), sToken);
+			}
+			regionTokens[region] = sTokens;
+			regionIdToTokenIdsMap.put(iRegionId, sTokenIds);
+		}
+	}
+
+	/**
+	 * maps each node to the STokens of the regions it covers and adds SSpans
+	 * for nodes covering several regions (see
+	 * {@link SaltWriter#addSSpansToSDocument(IGraph, SDocument, HashMap)})
+	 */
+	private void addSpans(int[] nodes, NodePlan[] nodePlans, SToken[][] regionTokens) {
+		for (int node : nodes) {
+			INode iNode = indexedGraph.getNode(node);
+			NodePlan nodePlan = nodePlans[node];
+			List<IRegion> coveredIRegions = nodePlan.coveredIRegions;
+			if (coveredIRegions.isEmpty()) {
+				if (nodePlan.floatingNodeOffsets != null) {
+					SLayer regionLayer = annoSpaceSLayerMap.get(getAnnoSpaceName(iNode));
+					String regionId = "floating-" + regionLayer.getName() + "-node-" + String.valueOf(floatingNodeCount);
+					SToken fakeToken = SaltWriter.createToken(nodePlan.floatingNodeOffsets[0], nodePlan.floatingNodeOffsets[1], sDocument, regionLayer, regionId);
+					sNodeIdToSNodeMap.put(fakeToken.getId(), fakeToken);
+					iNodeIdToSNodeIdsMap.put(iNode.getId(), asList(fakeToken.getId()));
+					floatingNodeCount++;
+				} else {
+					logger.debug("INode " + iNode.getId() + " doesn't cover any IRegions but is not a floating node either!");
+				}
+			} else if (coveredIRegions.size() == 1) {
+				SaltWriter.addRegionToINodeSNodeMap(coveredIRegions.get(0).getId(), iNode, regionIdToTokenIdsMap, iNodeIdToSNodeIdsMap);
+			} else {
+				// nodes covering the same regions cover the same tokens, so
+				// the region coverage identifies the SSpan
+				SSpan sSpan = (spanCache != null) ? spanCache.get(nodePlan.coverage) : null;
+				if (sSpan == null) {
+					List<SToken> tokens = new ArrayList<SToken>();
+					for (int region : nodePlan.coverage.toArray()) {
+						tokens.addAll(asList(regionTokens[region]));
+					}
+					sSpan = SaltWriter.createSSpan(tokens, sDocument, SaltWriter.mapTokensToSLayers(tokens));
+					if (spanCache != null) {
+						spanCache.put(nodePlan.coverage, sSpan);
+					}
+				}
+				sNodeIdToSNodeMap.put(sSpan.getId(), sSpan);
+				iNodeIdToSNodeIdsMap.put(iNode.getId(), asList(sSpan.getId()));
+			}
+		}
+		if (spanCache != null) {
+			logger.debug(sDocument.getName() + ": " + spanCache.size() + " SSpans, " + spanCache.getHitCount() + " reused for nodes covering the same tokens.");
+		}
+	}
+
+	/**
+	 * adds the planned annotations of each node to the STokens/SSpans it is
+	 * mapped to (see
+	 * {@link SaltWriter#addAnnotationsToSDocument(IGraph, HashMap, SDocument)})
+	 */
+	private void addAnnotations(NodePlan[] nodePlans) {
+		for (String iNodeId : iNodeIdToSNodeIdsMap.keySet()) {
+			String[] annotations = nodePlans[indexedGraph.getNodeOrdinal(iNodeId)].annotations;
+			for (String sNodeId : iNodeIdToSNodeIdsMap.get(iNodeId)) {
+				SNode sNode = sNodeIdToSNodeMap.get(sNodeId);
+				for (int i = 0; i < annotations.length; i += 3) {
+					SaltWriter.addAnnotationToNode(annotations[i], iNodeId, annotations[i + 1], annotations[i + 2], sNode);
+				}
+			}
+		}
+	}
+
+	/** the region offsets and node plans of all partitions, by ordinal */
+	private static class Plans {
+		final RegionCoverage regionCoverage;
+		/** start and end offset of each region */
+		final int[] regionOffsets;
+		final NodePlan[] nodePlans;
+
+		Plans(RegionCoverage regionCoverage, int[] regionOffsets, NodePlan[] nodePlans) {
+			this.regionCoverage = regionCoverage;
+			this.regionOffsets = regionOffsets;
+			this.nodePlans = nodePlans;
+		}
+	}
+
+	/** the ordinals of the regions and nodes of one annotation space */
+	private static class Partition {
+		final List<Integer> regions = new ArrayList<Integer>();
+		final List<Integer> nodes = new ArrayList<Integer>();
+
+		/** computes the plans of its regions and nodes, only reads the IGraph */
+		void plan(IndexedGraph indexedGraph, Plans plans, SymbolTable symbolTable) throws GrafException {
+			for (int region : regions) {
+				List<IAnchor> anchors = indexedGraph.getRegion(region).getAnchors();
+				plans.regionOffsets[2 * region] = Integer.parseInt(anchors.get(0).writeString());
+				plans.regionOffsets[2 * region + 1] = Integer.parseInt(anchors.get(1).writeString());
+			}
+			for (int node : nodes) {
+				NodePlan nodePlan = new NodePlan();
+				nodePlan.coverage = plans.regionCoverage.getCoverage(node);
+				nodePlan.coveredIRegions = plans.regionCoverage.getRegions(nodePlan.coverage);
+				if (nodePlan.coveredIRegions.isEmpty() && indexedGraph.isFloatingNode(node)) {
+					nodePlan.floatingNodeOffsets = GrafReader.getFloatingNodeOffsets(indexedGraph, node);
+				}
+				nodePlan.annotations = getAnnotations(indexedGraph.getNode(node), symbolTable);
+				plans.nodePlans[node] = nodePlan;
+			}
+		}
+
+		/** returns name, value and namespace of each feature of a node's annotation */
+		static String[] getAnnotations(INode iNode, SymbolTable symbolTable) {
+			IAnnotation iAnnotation = iNode.getAnnotation();
+			if (iAnnotation == null) {
+				return new String[0];
+			}
+			String annoNamespace = iAnnotation.getAnnotationSpace().getName();
+			List<String> annotations = new ArrayList<String>();
+			for (IFeature feature : iAnnotation.getFeatures().features()) {
+				annotations.add(feature.getName());
+				annotations.add(feature.getStringValue());
+				annotations.add(annoNamespace);
+			}
+			String[] annotationArray = annotations.toArray(new String[annotations.size()]);
+			if (symbolTable != null) {
+				// name, value and namespace of each feature
+				for (int i = 0; i < annotationArray.length; i++) {
+					annotationArray[i] = (i % 3 == 1) ? symbolTable.internValue(annotationArray[i]) : symbolTable.intern(annotationArray[i]);
+				}
+			}
+			return annotationArray;
+		}
+	}
+
+	/** what a single node is converted to */
+	private static class NodePlan {
+		CoverageBitmap coverage;
+		/** the covered regions in text order, each one once */
+		List<IRegion> coveredIRegions;
+		/** only set for floating nodes */
+		int[] floatingNodeOffsets;
+		/** name, value and namespace of each annotation */
+		String[] annotations;
+	}
+}
@@ -0,0 +1,333 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.corpus_tools.salt.SaltFactory;
+import org.corpus_tools.salt.common.SDocument;
+import org.xces.graf.api.GrafException;
+import org.xces.graf.api.IGraph;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * The figures {@link ImportEstimator} bases its estimates on: how many
+ * regions, nodes, edges and nodes spanning several regions a kilobyte of the
+ * standoff file of an annotation type contains, how long the conversion takes
+ * per unit of the cost computed by {@link DocumentCostEstimator}, and how much
+ * heap each element of a converted document takes.
+ * 
+ * The default profile contains rough figures for MASC-like corpora. A
+ * calibrated profile is measured by converting a sample of documents (see
+ * {@link #calibrate(GrAFImporterProperties, GrafResourceHeader, List)}) and
+ * can be stored in and loaded from a properties file, so the sample only has
+ * to be converted once per corpus and machine.
+ */
+public class CalibrationProfile {
+	/** the index of the number of regions in the densities of an annotation type */
+	public static final int REGIONS = 0;
+	/** the index of the number of nodes in the densities of an annotation type */
+	public static final int NODES = 1;
+	/** the index of the number of edges in the densities of an annotation type */
+	public static final int EDGES = 2;
+	/** the index of the number of nodes linked to several regions in the densities of an annotation type */
+	public static final int SPANNING_NODES = 3;
+	private static final String[] DENSITY_NAMES = { "regions", "nodes", "edges", "spanningNodes" };
+
+	/** the default number of nanoseconds per unit of conversion cost */
+	public static final double DEFAULT_NANOS_PER_COST = 2000.0;
+	/** the default number of bytes of heap per token, span, node and edge */
+	public static final long DEFAULT_BYTES_PER_ELEMENT = 1200;
+	/**
+	 * the bytes of heap per byte of primary text: the text is held by the
+	 * IGraph and by the STextualDS, with two bytes per char each
+	 */
+	public static final long BYTES_PER_TEXT_BYTE = 4;
+	/**
+	 * the share of the heap per element held by the state of the conversion
+	 * (plans, maps and tree builders), which is bounded by a window size; the
+	 * IGraph and the SDocument hold the rest for the whole document
+	 */
+	public static final double WINDOWED_HEAP_SHARE = 0.4;
+
+	private static final String DENSITY_PREFIX = "density.";
+	private static final String DEFAULT_ANNO_TYPE = "default";
+	private static final String NANOS_PER_COST = "nanosPerCost";
+	private static final String BYTES_PER_ELEMENT = "bytesPerElement";
+	private static final String SAMPLE_SIZE = "sampleSize";
+
+	private final Map<String, double[]> annoTypeDensities = new TreeMap<String, double[]>();
+	// regions, nodes, edges and spanning nodes per KB of a standoff file
+	private double[] defaultDensities = { 2.0, 3.0, 1.0, 0.5 };
+	private double nanosPerCost = DEFAULT_NANOS_PER_COST;
+	private long bytesPerElement = DEFAULT_BYTES_PER_ELEMENT;
+	private int sampleSize = 0;
+
+	/** returns the number of regions, nodes, edges and spanning nodes per KB of a standoff file of the given annotation type */
+	public double[] getDensities(String annoType) {
+		double[] densities = annoTypeDensities.get(annoType);
+		return (densities != null) ? densities : defaultDensities;
+	}
+
+	/** sets the number of regions, nodes, edges and spanning nodes per KB of a standoff file of the given annotation type */
+	public void setDensities(String annoType, double[] densities) {
+		annoTypeDensities.put(annoType, densities.clone());
+	}
+
+	public double getNanosPerCost() {
+		return nanosPerCost;
+	}
+
+	public void setNanosPerCost(double nanosPerCost) {
+		this.nanosPerCost = nanosPerCost;
+	}
+
+	public long getBytesPerElement() {
+		return bytesPerElement;
+	}
+
+	public void setBytesPerElement(long bytesPerElement) {
+		this.bytesPerElement = bytesPerElement;
+	}
+
+	/** returns the number of documents the profile was calibrated with (0 for the default profile) */
+	public int getSampleSize() {
+		return sampleSize;
+	}
+
+	/**
+	 * measures a profile by converting the given sample of documents one after
+	 * the other. The densities are counted in the standoff files, the time and
+	 * the heap are measured around loading and converting each document. The
+	 * heap is measured after a garbage collection while the IGraph and the
+	 * SDocumentGraph are both referenced, which approximates the peak heap of a
+	 * conversion.
+	 */
+	public static CalibrationProfile calibrate(GrAFImporterProperties props, GrafResourceHeader rscHeader, List<String> sampleDocHeaderPaths) throws GrafException, IOException, SAXException {
+		SAXParserFactory parserFactory = SAXParserFactory.newInstance();
+		parserFactory.setNamespaceAware(true);
+		DocumentCostEstimator costEstimator = new DocumentCostEstimator(props);
+		Map<String, long[]> annoTypeCounts = new HashMap<String, long[]>();
+		Map<String, Long> annoTypeSizes = new HashMap<String, Long>();
+		double totalCost = 0;
+		long totalNanos = 0;
+		long totalElementHeap = 0;
+		long totalElements = 0;
+
+		for (String docHeaderPath : sampleDocHeaderPaths) {
+			GrafDocumentHeader docHeader = new GrafDocumentHeader(docHeaderPath);
+			long[] docCounts = new long[DENSITY_NAMES.length];
+			for (String annoType : docHeader.getAnnotationTypes()) {
+				File annoFile = docHeader.getAnnotationFile(annoType);
+				if (annoFile == null || !annoFile.isFile()) {
+					continue;
+				}
+				long[] counts = countElements(parserFactory, annoFile);
+				long[] typeCounts = annoTypeCounts.get(annoType);
+				if (typeCounts == null) {
+					annoTypeCounts.put(annoType, counts.clone());
+					annoTypeSizes.put(annoType, annoFile.length());
+				} else {
+					for (int i = 0; i < counts.length; i++) {
+						typeCounts[i] += counts[i];
+					}
+					annoTypeSizes.put(annoType, annoTypeSizes.get(annoType) + annoFile.length());
+				}
+				for (int i = 0; i < counts.length; i++) {
+					docCounts[i] += counts[i];
+				}
+			}
+			File contentFile = docHeader.getContentFile();
+			long textSize = (contentFile != null) ? contentFile.length() : 0;
+
+			long heapBefore = getUsedHeap();
+			long startTime = System.nanoTime();
+			IGraph iGraph = props.isMapPrimaryText() ? GrafReader.getAnnoGraphWithMappedText(rscHeader, docHeaderPath) : GrafReader.getAnnoGraph(rscHeader, docHeaderPath);
+			SDocument sDocument = SaltFactory.createSDocument();
+			sDocument.setDocumentGraph(SaltFactory.createSDocumentGraph());
+			new DocumentPipeline(null, props.isMergeSpans(), null).convert(iGraph, sDocument);
+			totalNanos += System.nanoTime() - startTime;
+			long heap = getUsedHeap() - heapBefore;
+			// keeps both graphs reachable until the heap was measured
+			if (iGraph.getNodes() == null || sDocument.getDocumentGraph() == null) {
+				throw new IllegalStateException();
+			}
+
+			totalCost += costEstimator.getCost(docHeader);
+			totalElementHeap += Math.max(heap - BYTES_PER_TEXT_BYTE * textSize, 0);
+			// the importer creates tokens for the regions of all annotation types
+			totalElements += docCounts[REGIONS] + docCounts[NODES] + docCounts[EDGES] + docCounts[SPANNING_NODES];
+		}
+
+		CalibrationProfile profile = new CalibrationProfile();
+		profile.sampleSize = sampleDocHeaderPaths.size();
+		long[] allCounts = new long[DENSITY_NAMES.length];
+		long allSize = 0;
+		for (Map.Entry<String, long[]> typeCounts : annoTypeCounts.entrySet()) {
+			long size = annoTypeSizes.get(typeCounts.getKey());
+			profile.setDensities(typeCounts.getKey(), getDensities(typeCounts.getValue(), size));
+			for (int i = 0; i < allCounts.length; i++) {
+				allCounts[i] += typeCounts.getValue()[i];
+			}
+			allSize += size;
+		}
+		if (allSize > 0) {
+			profile.defaultDensities = getDensities(allCounts, allSize);
+		}
+		if (totalCost > 0) {
+			profile.nanosPerCost = totalNanos / totalCost;
+		}
+		if (totalElements > 0) {
+			profile.bytesPerElement = Math.max(totalElementHeap / totalElements, 1);
+		}
+		return profile;
+	}
+
+	/** loads a profile stored by {@link #store(File)} */
+	public static CalibrationProfile load(File profileFile) throws IOException {
+		Properties properties = new Properties();
+		InputStream inStream = new FileInputStream(profileFile);
+		try {
+			properties.load(inStream);
+		} finally {
+			inStream.close();
+		}
+		CalibrationProfile profile = new CalibrationProfile();
+		try {
+			profile.nanosPerCost = Double.parseDouble(properties.getProperty(NANOS_PER_COST, String.valueOf(DEFAULT_NANOS_PER_COST)));
+			profile.bytesPerElement = Long.parseLong(properties.getProperty(BYTES_PER_ELEMENT, String.valueOf(DEFAULT_BYTES_PER_ELEMENT)));
+			profile.sampleSize = Integer.parseInt(properties.getProperty(SAMPLE_SIZE, "0"));
+			Map<String, double[]> densities = new HashMap<String, double[]>();
+			for (String key : properties.stringPropertyNames()) {
+				if (!key.startsWith(DENSITY_PREFIX)) {
+					continue;
+				}
+				// density.<annotation type>.<element>, annotation types may contain dots
+				int elementStart = key.lastIndexOf('.');
+				String annoType = key.substring(DENSITY_PREFIX.length(), elementStart);
+				int element = indexOf(DENSITY_NAMES, key.substring(elementStart + 1));
+				if (element < 0) {
+					throw new IOException("Cannot read calibration profile '" + profileFile + "', unknown key '" + key + "'.");
+				}
+				if (!densities.containsKey(annoType)) {
+					densities.put(annoType, profile.defaultDensities.clone());
+				}
+				densities.get(annoType)[element] = Double.parseDouble(properties.getProperty(key));
+			}
+			for (Map.Entry<String, double[]> typeDensities : densities.entrySet()) {
+				if (DEFAULT_ANNO_TYPE.equals(typeDensities.getKey())) {
+					profile.defaultDensities = typeDensities.getValue();
+				} else {
+					profile.annoTypeDensities.put(typeDensities.getKey(), typeDensities.getValue());
+				}
+			}
+		} catch (NumberFormatException e) {
+			throw new IOException("Cannot read calibration profile '" + profileFile + "'. ", e);
+		}
+		return profile;
+	}
+
+	/** stores the profile as a properties file */
+	public void store(File profileFile) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(NANOS_PER_COST, String.valueOf(nanosPerCost));
+		properties.setProperty(BYTES_PER_ELEMENT, String.valueOf(bytesPerElement));
+		properties.setProperty(SAMPLE_SIZE, String.valueOf(sampleSize));
+		setDensityProperties(properties, DEFAULT_ANNO_TYPE, defaultDensities);
+		for (Map.Entry<String, double[]> typeDensities : annoTypeDensities.entrySet()) {
+			setDensityProperties(properties, typeDensities.getKey(), typeDensities.getValue());
+		}
+		OutputStream outStream = new FileOutputStream(profileFile);
+		try {
+			properties.store(outStream, "GrAF import calibration profile");
+		} finally {
+			outStream.close();
+		}
+	}
+
+	private static void setDensityProperties(Properties properties, String annoType, double[] densities) {
+		for (int i = 0; i < DENSITY_NAMES.length; i++) {
+			properties.setProperty(DENSITY_PREFIX + annoType + "." + DENSITY_NAMES[i], String.valueOf(densities[i]));
+		}
+	}
+
+	private static double[] getDensities(long[] counts, long size) {
+		double[] densities = new double[counts.length];
+		for (int i = 0; i < counts.length; i++) {
+			densities[i] = (size > 0) ? counts[i] * 1024.0 / size : 0;
+		}
+		return densities;
+	}
+
+	private static int indexOf(String[] names, String name) {
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static long getUsedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/** counts the regions, nodes, edges and spanning nodes of a standoff file */
+	static long[] countElements(SAXParserFactory parserFactory, File annoFile) throws IOException, SAXException {
+		final long[] counts = new long[DENSITY_NAMES.length];
+		try {
+			parserFactory.newSAXParser().parse(annoFile, new DefaultHandler() {
+				@Override
+				public void startElement(String uri, String localName, String qName, Attributes attributes) {
+					if ("region".equals(localName)) {
+						counts[REGIONS]++;
+					} else if ("node".equals(localName)) {
+						counts[NODES]++;
+					} else if ("edge".equals(localName)) {
+						counts[EDGES]++;
+					} else if ("link".equals(localName)) {
+						String targets = attributes.getValue("targets");
+						if (targets != null && targets.trim().indexOf(' ') > 0) {
+							counts[SPANNING_NODES]++;
+						}
+					}
+				}
+			});
+		} catch (ParserConfigurationException e) {
+			throw new SAXException(e);
+		}
+		return counts;
+	}
+}
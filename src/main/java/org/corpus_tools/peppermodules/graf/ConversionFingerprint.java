@@ -0,0 +1,462 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.corpus_tools.salt.common.SDocumentGraph;
+import org.corpus_tools.salt.common.SDominanceRelation;
+import org.corpus_tools.salt.common.SSpanningRelation;
+import org.corpus_tools.salt.common.STextualDS;
+import org.corpus_tools.salt.common.STextualRelation;
+import org.corpus_tools.salt.core.SAnnotation;
+import org.corpus_tools.salt.core.SNode;
+import org.xces.graf.api.GrafException;
+import org.xces.graf.api.IAnnotation;
+import org.xces.graf.api.IFeature;
+import org.xces.graf.api.IGraph;
+
+/**
+ * A canonical, structural fingerprint of a document, which can be computed
+ * for its IGraph as well as for the SDocumentGraph the importer creates from
+ * it. If the conversion kept everything it is meant to keep, both
+ * fingerprints are equal. A fingerprint consists of one hash per
+ * {@link Facet}, each one computed over a set of elements that doesn't depend
+ * on IDs or on the order in which nodes and relations were created.
+ * 
+ * The elements are described by the text they cover: the offsets of regions
+ * or tokens are called segments, the coverage of a node is the set of
+ * segments it covers (via its links or tokens, or recursively via its
+ * outgoing edges or dominance relations). Floating nodes cover the empty
+ * segment they get when they are repaired (see
+ * {@link GrafReader#getFloatingNodeOffsets(IndexedGraph, int)}). The
+ * artificial root SStructure the importer adds above all syntax trees is left
+ * out.
+ * 
+ * The conversion intentionally copies some elements, e.g. the annotations of
+ * a node to every SToken created for its region, or an annotated syntax node
+ * to an SSpan and an SStructure. Therefore each element counts once, no
+ * matter how often it occurs: a fingerprint is the number of distinct
+ * elements of each facet and the sum of their 64 bit hashes. A fingerprint
+ * only takes a few bytes, so the one of the IGraph can be kept while the
+ * IGraph itself is converted and released.
+ */
+public class ConversionFingerprint {
+	/** the parts of a fingerprint, each one compared on its own */
+	public enum Facet {
+		/** the primary text */
+		TEXT,
+		/** the offsets of all regions resp. tokens */
+		SEGMENTS,
+		/** the segments covered by each node, region and token */
+		COVERAGE,
+		/** the coverage, namespace, name and value of each annotation */
+		ANNOTATIONS,
+		/**
+		 * the coverage and annotations of the source and the coverage of the
+		 * target of each edge resp. dominance relation
+		 */
+		DOMINANCE
+	}
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final Map<Facet, long[]> facets = new EnumMap<Facet, long[]>(Facet.class);
+
+	private ConversionFingerprint() {
+	}
+
+	/**
+	 * computes the fingerprint of an IGraph, as it is before its floating
+	 * nodes are repaired.
+	 */
+	public static ConversionFingerprint of(IGraph iGraph) throws GrafException {
+		IndexedGraph indexedGraph = new IndexedGraph(iGraph);
+		int nodeCount = indexedGraph.getNodeCount();
+		ConversionFingerprint fingerprint = new ConversionFingerprint();
+		fingerprint.setText(GrafReader.getDocumentText(iGraph));
+
+		// floating nodes cover the empty segment they are repaired with
+		long[] floatingSegments = new long[nodeCount];
+		LongList segmentList = new LongList();
+		for (int region = 0; region < indexedGraph.getRegionCount(); region++) {
+			segmentList.add(toSegment(indexedGraph.getRegionStart(region), indexedGraph.getRegionEnd(region)));
+		}
+		for (int node = 0; node < nodeCount; node++) {
+			if (indexedGraph.isFloatingNode(node)) {
+				int[] offsets = GrafReader.getFloatingNodeOffsets(indexedGraph, node);
+				floatingSegments[node] = toSegment(offsets[0], offsets[1]);
+				segmentList.add(floatingSegments[node]);
+			}
+		}
+		long[] segments = segmentList.toDistinctArray();
+		segmentList = null;
+
+		CoverageBitmap[] ownCoverage = new CoverageBitmap[nodeCount];
+		int[] childOffsets = new int[nodeCount + 1];
+		IntList children = new IntList();
+		for (int node = 0; node < nodeCount; node++) {
+			ownCoverage[node] = new CoverageBitmap();
+			for (int i = 0; i < indexedGraph.getLinkedRegionCount(node); i++) {
+				int region = indexedGraph.getLinkedRegion(node, i);
+				ownCoverage[node].add(Arrays.binarySearch(segments, toSegment(indexedGraph.getRegionStart(region), indexedGraph.getRegionEnd(region))));
+			}
+			if (indexedGraph.isFloatingNode(node)) {
+				ownCoverage[node].add(Arrays.binarySearch(segments, floatingSegments[node]));
+			}
+			for (int i = 0; i < indexedGraph.getOutDegree(node); i++) {
+				children.add(indexedGraph.getOutNeighbour(node, i));
+			}
+			childOffsets[node + 1] = children.size;
+		}
+		long[] coverage = getCoverageHashes(segments, ownCoverage, childOffsets, children.values);
+
+		LongList coverageElements = new LongList();
+		LongList annotationElements = new LongList();
+		LongList dominanceElements = new LongList();
+		// every region becomes an SToken, which covers its own segment
+		for (long segment : segments) {
+			coverageElements.add(hash(mix(FNV_OFFSET_BASIS, segment)));
+		}
+		for (int node = 0; node < nodeCount; node++) {
+			if (coverage[node] != 0) {
+				coverageElements.add(coverage[node]);
+			}
+			long annotationsHash = 0;
+			IAnnotation iAnnotation = indexedGraph.getNode(node).getAnnotation();
+			if (iAnnotation != null && iAnnotation.getFeatures() != null) {
+				String namespace = (iAnnotation.getAnnotationSpace() != null) ? iAnnotation.getAnnotationSpace().getName() : null;
+				for (IFeature feature : iAnnotation.getFeatures().features()) {
+					long annotationHash = hashAnnotation(namespace, feature.getName(), feature.getStringValue());
+					annotationsHash += annotationHash;
+					annotationElements.add(mix(hash(coverage[node]), annotationHash));
+				}
+			}
+			for (int i = childOffsets[node]; i < childOffsets[node + 1]; i++) {
+				dominanceElements.add(mix(mix(hash(coverage[node]), annotationsHash), coverage[children.get(i)]));
+			}
+		}
+
+		fingerprint.setFacet(Facet.SEGMENTS, segmentsToElements(segments));
+		fingerprint.setFacet(Facet.COVERAGE, coverageElements);
+		fingerprint.setFacet(Facet.ANNOTATIONS, annotationElements);
+		fingerprint.setFacet(Facet.DOMINANCE, dominanceElements);
+		return fingerprint;
+	}
+
+	/** computes the fingerprint of an SDocumentGraph */
+	public static ConversionFingerprint of(SDocumentGraph docGraph) {
+		ConversionFingerprint fingerprint = new ConversionFingerprint();
+		List<STextualDS> textualDSs = docGraph.getTextualDSs();
+		fingerprint.setText(textualDSs.isEmpty() ? null : textualDSs.get(0).getText());
+
+		// tokens, spans and structures are numbered in this order
+		List<SNode> nodes = new ArrayList<SNode>();
+		nodes.addAll(docGraph.getTokens());
+		nodes.addAll(docGraph.getSpans());
+		nodes.addAll(docGraph.getStructures());
+		int nodeCount = nodes.size();
+		Map<SNode, Integer> nodeOrdinals = new IdentityHashMap<SNode, Integer>(nodeCount * 2);
+		for (SNode sNode : nodes) {
+			nodeOrdinals.put(sNode, nodeOrdinals.size());
+		}
+
+		long[] tokenSegments = new long[docGraph.getTokens().size()];
+		boolean[] hasText = new boolean[tokenSegments.length];
+		LongList segmentList = new LongList();
+		for (STextualRelation textRel : docGraph.getTextualRelations()) {
+			Integer token = nodeOrdinals.get(textRel.getSource());
+			if (token != null && !hasText[token]) {
+				tokenSegments[token] = toSegment(textRel.getStart(), textRel.getEnd());
+				hasText[token] = true;
+				segmentList.add(tokenSegments[token]);
+			}
+		}
+		long[] segments = segmentList.toDistinctArray();
+		segmentList = null;
+
+		CoverageBitmap[] ownCoverage = new CoverageBitmap[nodeCount];
+		for (int node = 0; node < nodeCount; node++) {
+			ownCoverage[node] = new CoverageBitmap();
+			if (node < tokenSegments.length && hasText[node]) {
+				ownCoverage[node].add(Arrays.binarySearch(segments, tokenSegments[node]));
+			}
+		}
+		for (SSpanningRelation spanRel : docGraph.getSpanningRelations()) {
+			Integer span = nodeOrdinals.get(spanRel.getSource());
+			Integer token = nodeOrdinals.get(spanRel.getTarget());
+			if (span != null && token != null && hasText[token]) {
+				ownCoverage[span].add(Arrays.binarySearch(segments, tokenSegments[token]));
+			}
+		}
+
+		// dominance relations as adjacency arrays, sorted by source
+		List<SDominanceRelation> domRels = docGraph.getDominanceRelations();
+		boolean[] dominated = new boolean[nodeCount];
+		int[] childOffsets = new int[nodeCount + 1];
+		for (SDominanceRelation domRel : domRels) {
+			Integer source = nodeOrdinals.get(domRel.getSource());
+			Integer target = nodeOrdinals.get(domRel.getTarget());
+			if (source != null && target != null) {
+				childOffsets[source + 1]++;
+				dominated[target] = true;
+			}
+		}
+		for (int node = 0; node < nodeCount; node++) {
+			childOffsets[node + 1] += childOffsets[node];
+		}
+		int[] children = new int[childOffsets[nodeCount]];
+		int[] childCounts = new int[nodeCount];
+		for (SDominanceRelation domRel : domRels) {
+			Integer source = nodeOrdinals.get(domRel.getSource());
+			Integer target = nodeOrdinals.get(domRel.getTarget());
+			if (source != null && target != null) {
+				children[childOffsets[source] + childCounts[source]++] = target;
+			}
+		}
+		childCounts = null;
+		long[] coverage = getCoverageHashes(segments, ownCoverage, childOffsets, children);
+
+		LongList coverageElements = new LongList();
+		LongList annotationElements = new LongList();
+		LongList dominanceElements = new LongList();
+		int firstStructure = nodeCount - docGraph.getStructures().size();
+		for (int node = 0; node < nodeCount; node++) {
+			// the root SStructure added by the importer is the only one
+			// without ingoing dominance relations
+			boolean artificialRoot = node >= firstStructure && !dominated[node];
+			if (coverage[node] != 0 && !artificialRoot) {
+				coverageElements.add(coverage[node]);
+			}
+			long annotationsHash = 0;
+			for (SAnnotation sAnnotation : nodes.get(node).getAnnotations()) {
+				long annotationHash = hashAnnotation(sAnnotation.getNamespace(), sAnnotation.getName(), sAnnotation.getValue_STEXT());
+				annotationsHash += annotationHash;
+				annotationElements.add(mix(hash(coverage[node]), annotationHash));
+			}
+			for (int i = childOffsets[node]; i < childOffsets[node + 1] && !artificialRoot; i++) {
+				dominanceElements.add(mix(mix(hash(coverage[node]), annotationsHash), coverage[children[i]]));
+			}
+		}
+
+		fingerprint.setFacet(Facet.SEGMENTS, segmentsToElements(segments));
+		fingerprint.setFacet(Facet.COVERAGE, coverageElements);
+		fingerprint.setFacet(Facet.ANNOTATIONS, annotationElements);
+		fingerprint.setFacet(Facet.DOMINANCE, dominanceElements);
+		return fingerprint;
+	}
+
+	/** returns the number of distinct elements of a facet */
+	public long getCount(Facet facet) {
+		return facets.get(facet)[0];
+	}
+
+	/** returns the hash of a facet */
+	public long getHash(Facet facet) {
+		return facets.get(facet)[1];
+	}
+
+	/** returns the facets in which this fingerprint differs from the other one */
+	public List<Facet> getDifferences(ConversionFingerprint other) {
+		List<Facet> differences = new ArrayList<Facet>();
+		for (Facet facet : Facet.values()) {
+			if (!Arrays.equals(facets.get(facet), other.facets.get(facet))) {
+				differences.add(facet);
+			}
+		}
+		return differences;
+	}
+
+	/**
+	 * describes the facets in which this fingerprint (e.g. of the IGraph)
+	 * differs from the other one (e.g. of the Salt graph), incl. their
+	 * numbers of elements. Returns an empty string, if they are equal.
+	 */
+	public String describeDifferences(ConversionFingerprint other) {
+		StringBuilder description = new StringBuilder();
+		for (Facet facet : getDifferences(other)) {
+			if (description.length() > 0) {
+				description.append(", ");
+			}
+			description.append(facet.name().toLowerCase()).append(": ").append(getCount(facet)).append(" vs. ").append(other.getCount(facet)).append(" elements");
+		}
+		return description.toString();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return (obj instanceof ConversionFingerprint) && getDifferences((ConversionFingerprint) obj).isEmpty();
+	}
+
+	@Override
+	public int hashCode() {
+		long hash = 0;
+		for (long[] facet : facets.values()) {
+			hash = mix(hash, facet[1]);
+		}
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder string = new StringBuilder();
+		for (Facet facet : Facet.values()) {
+			string.append((string.length() > 0) ? " " : "").append(facet.name().toLowerCase()).append('=');
+			string.append(getCount(facet)).append('/').append(Long.toHexString(getHash(facet)));
+		}
+		return string.toString();
+	}
+
+	private void setText(String text) {
+		facets.put(Facet.TEXT, new long[] { (text != null) ? text.length() : -1, hash(FNV_OFFSET_BASIS, text) });
+	}
+
+	private void setFacet(Facet facet, LongList elements) {
+		long[] distinctElements = elements.toDistinctArray();
+		long sum = 0;
+		for (long element : distinctElements) {
+			sum += hash(element);
+		}
+		facets.put(facet, new long[] { distinctElements.length, sum });
+	}
+
+	private static LongList segmentsToElements(long[] segments) {
+		LongList elements = new LongList();
+		for (long segment : segments) {
+			elements.add(segment);
+		}
+		return elements;
+	}
+
+	private static long toSegment(int start, int end) {
+		return ((long) start << 32) | (end & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * unites the own coverage of each node with the coverage of its children
+	 * (in post-order, without recursion, since trees can be deep) and returns
+	 * the hash of each node's coverage, 0 for an empty one. A node reached
+	 * again while its own coverage is computed (i.e. on a cycle) is skipped.
+	 */
+	private static long[] getCoverageHashes(long[] segments, CoverageBitmap[] coverage, int[] childOffsets, int[] children) {
+		int nodeCount = coverage.length;
+		long[] coverageHashes = new long[nodeCount];
+		// 0: not visited yet, 1: on the stack, 2: finished
+		byte[] states = new byte[nodeCount];
+		int[] nextChild = new int[nodeCount];
+		IntList stack = new IntList();
+		for (int start = 0; start < nodeCount; start++) {
+			if (states[start] != 0) {
+				continue;
+			}
+			stack.add(start);
+			states[start] = 1;
+			nextChild[start] = childOffsets[start];
+			while (stack.size > 0) {
+				int node = stack.get(stack.size - 1);
+				if (nextChild[node] < childOffsets[node + 1]) {
+					int child = children[nextChild[node]++];
+					if (states[child] == 0) {
+						states[child] = 1;
+						nextChild[child] = childOffsets[child];
+						stack.add(child);
+					}
+					continue;
+				}
+				stack.size--;
+				for (int i = childOffsets[node]; i < childOffsets[node + 1]; i++) {
+					if (states[children[i]] == 2) {
+						coverage[node].addAll(coverage[children[i]]);
+					}
+				}
+				coverageHashes[node] = coverage[node].isEmpty() ? 0 : getCoverageHash(segments, coverage[node]);
+				states[node] = 2;
+			}
+		}
+		return coverageHashes;
+	}
+
+	private static long getCoverageHash(long[] segments, CoverageBitmap coverage) {
+		long hash = FNV_OFFSET_BASIS;
+		for (int segment : coverage.toArray()) {
+			hash = mix(hash, segments[segment]);
+		}
+		return hash(hash);
+	}
+
+	private static long hashAnnotation(String namespace, String name, String value) {
+		return hash(hash(hash(FNV_OFFSET_BASIS, namespace), name), value);
+	}
+
+	/** FNV-1a over the characters of a string, followed by its length */
+	private static long hash(long hash, String value) {
+		if (value == null) {
+			return mix(hash, -1);
+		}
+		for (int i = 0; i < value.length(); i++) {
+			hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+		}
+		return mix(hash, value.length());
+	}
+
+	private static long mix(long hash, long value) {
+		return hash(hash * 31 + value);
+	}
+
+	/** the finalizer of MurmurHash3, spreads the bits of a value */
+	private static long hash(long value) {
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+		return value;
+	}
+
+	/** a growable array of longs */
+	private static class LongList {
+		long[] values = new long[16];
+		int size = 0;
+
+		void add(long value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		/** returns the values sorted, each one once */
+		long[] toDistinctArray() {
+			long[] sorted = Arrays.copyOf(values, size);
+			Arrays.sort(sorted);
+			int distinctCount = 0;
+			for (int i = 0; i < sorted.length; i++) {
+				if (i == 0 || sorted[i] != sorted[i - 1]) {
+					sorted[distinctCount++] = sorted[i];
+				}
+			}
+			return Arrays.copyOf(sorted, distinctCount);
+		}
+	}
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.corpus_tools.salt.SaltFactory;
+import org.corpus_tools.salt.common.SDocument;
+import org.xces.graf.io.dom.ResourceHeader;
+
+/**
+ * Converts the documents of a corpus and compares the
+ * {@link ConversionFingerprint}s of their IGraphs and SDocumentGraphs, the
+ * documents in parallel. Of each document, only the fingerprints are kept:
+ * the one of the IGraph is computed before the IGraph is converted (and
+ * released on the way, see {@link DocumentPipeline}), the one of the Salt
+ * graph right after the conversion, so the IGraph and the Salt graph of a
+ * document are never needed at the same time after the conversion.
+ */
+public class ConversionVerifier {
+	/** the outcome of the verification of one document */
+	public static class Result {
+		private final String docHeaderPath;
+		private ConversionFingerprint grafFingerprint = null;
+		private ConversionFingerprint saltFingerprint = null;
+		private Exception error = null;
+
+		Result(String docHeaderPath) {
+			this.docHeaderPath = docHeaderPath;
+		}
+
+		public String getDocHeaderPath() {
+			return docHeaderPath;
+		}
+
+		/** returns the fingerprint of the IGraph, null if the conversion failed */
+		public ConversionFingerprint getGrafFingerprint() {
+			return grafFingerprint;
+		}
+
+		/** returns the fingerprint of the SDocumentGraph, null if the conversion failed */
+		public ConversionFingerprint getSaltFingerprint() {
+			return saltFingerprint;
+		}
+
+		/** returns why the document couldn't be converted, null if it could */
+		public Exception getError() {
+			return error;
+		}
+
+		/** returns whether the document was converted and both fingerprints are equal */
+		public boolean isVerified() {
+			return error == null && grafFingerprint != null && grafFingerprint.equals(saltFingerprint);
+		}
+
+		@Override
+		public String toString() {
+			if (error != null) {
+				return docHeaderPath + ": conversion failed (" + error + ")";
+			} else if (isVerified()) {
+				return docHeaderPath + ": verified";
+			}
+			return docHeaderPath + ": differs in " + grafFingerprint.describeDifferences(saltFingerprint);
+		}
+	}
+
+	private final ResourceHeader rscHeader;
+	private final SymbolTable symbolTable = new SymbolTable();
+	private final boolean mergeSpans;
+	private final int windowSize;
+
+	/**
+	 * @param mergeSpans
+	 *            - see {@link SpanCache}
+	 * @param windowSize
+	 *            - see {@link DocumentPipeline#setWindowSize(int)}
+	 */
+	public ConversionVerifier(ResourceHeader rscHeader, boolean mergeSpans, int windowSize) {
+		this.rscHeader = rscHeader;
+		this.mergeSpans = mergeSpans;
+		this.windowSize = windowSize;
+	}
+
+	/** converts one document and compares its fingerprints */
+	public Result verify(String docHeaderPath) {
+		final Result result = new Result(docHeaderPath);
+		DocumentPipeline pipeline = new DocumentPipeline(symbolTable, mergeSpans, null);
+		pipeline.setWindowSize(windowSize);
+		pipeline.setVerificationListener(new DocumentPipeline.VerificationListener() {
+			@Override
+			public void verified(SDocument sDocument, ConversionFingerprint grafFingerprint, ConversionFingerprint saltFingerprint) {
+				result.grafFingerprint = grafFingerprint;
+				result.saltFingerprint = saltFingerprint;
+			}
+		});
+		SDocument sDocument = SaltFactory.createSDocument();
+		sDocument.setDocumentGraph(SaltFactory.createSDocumentGraph());
+		try {
+			pipeline.convert(GrafReader.getAnnoGraph(rscHeader, docHeaderPath), sDocument);
+		} catch (Exception e) {
+			result.error = e;
+		}
+		return result;
+	}
+
+	/**
+	 * verifies the given documents with the given number of threads.
+	 * 
+	 * @return the results, in the order of the documents
+	 */
+	public List<Result> verify(List<String> docHeaderPaths, int threadCount) throws InterruptedException {
+		List<Result> results = new ArrayList<Result>(docHeaderPaths.size());
+		if (threadCount <= 1) {
+			for (String docHeaderPath : docHeaderPaths) {
+				results.add(verify(docHeaderPath));
+			}
+			return results;
+		}
+
+		List<Callable<Result>> verifyTasks = new ArrayList<Callable<Result>>(docHeaderPaths.size());
+		for (final String docHeaderPath : docHeaderPaths) {
+			verifyTasks.add(new Callable<Result>() {
+				@Override
+				public Result call() {
+					return verify(docHeaderPath);
+				}
+			});
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+		try {
+			for (Future<Result> result : pool.invokeAll(verifyTasks)) {
+				try {
+					results.add(result.get());
+				} catch (ExecutionException e) {
+					// verify(String) catches everything but errors
+					if (e.getCause() instanceof Error) {
+						throw (Error) e.getCause();
+					}
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+		return results;
+	}
+}
@@ -0,0 +1,533 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.xces.graf.api.GrafException;
+
+/**
+ * Gives access to a GrAF corpus packed into a zip or tar archive (optionally
+ * gzip compressed), without extracting it. When an archive is opened, an index
+ * of its entries is built (for zip archives, this is the central directory),
+ * so that every entry can be read directly afterwards.
+ * 
+ * Since gzip streams can't be read at arbitrary offsets, a .tar.gz archive is
+ * decompressed once into a temporary tar file, which is deleted when the
+ * archive is closed.
+ */
+public abstract class CorpusArchive implements Closeable {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File archiveFile;
+
+	protected CorpusArchive(File archiveFile) {
+		this.archiveFile = archiveFile;
+	}
+
+	/** returns true iff the given file is an archive this class can read */
+	public static boolean isArchive(File file) {
+		String name = file.getName().toLowerCase();
+		return file.isFile() && (name.endsWith(".zip") || name.endsWith(".tar") || name.endsWith(".tar.gz") || name.endsWith(".tgz"));
+	}
+
+	/** opens the given archive and indexes its entries */
+	public static CorpusArchive open(File archiveFile) throws IOException {
+		String name = archiveFile.getName().toLowerCase();
+		if (name.endsWith(".zip")) {
+			return new ZipArchive(archiveFile);
+		} else if (name.endsWith(".tar")) {
+			return new TarArchive(archiveFile, archiveFile, false);
+		} else if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+			return new TarArchive(archiveFile, gunzipToTempFile(archiveFile), true);
+		}
+		throw new IOException("Cannot open " + archiveFile + ", only .zip, .tar, .tar.gz and .tgz archives are supported.");
+	}
+
+	/** returns the archive file */
+	public File getArchiveFile() {
+		return archiveFile;
+	}
+
+	/** returns the names of all file entries, sorted by name */
+	public abstract List<String> getEntryNames();
+
+	/** returns true iff the archive contains a file entry with the given name */
+	public abstract boolean contains(String entryName);
+
+	/** returns the (uncompressed) size of the given entry or -1 if it doesn't exist */
+	public abstract long getSize(String entryName);
+
+	/** opens the given entry for reading */
+	public abstract InputStream openEntry(String entryName) throws IOException;
+
+	/**
+	 * returns the name of the resource header entry, i.e. the entry named
+	 * 'resource-header.xml' closest to the archive root, or null if there is
+	 * none.
+	 */
+	public String findResourceHeader() {
+		String resourceHeaderEntry = null;
+		for (String entryName : getEntryNames()) {
+			if (getFileName(entryName).equals(GrafResourceHeader.RESOURCE_HEADER_FILE_NAME)
+					&& (resourceHeaderEntry == null || getDepth(entryName) < getDepth(resourceHeaderEntry))) {
+				resourceHeaderEntry = entryName;
+			}
+		}
+		return resourceHeaderEntry;
+	}
+
+	/** reads the resource header of the corpus */
+	public GrafResourceHeader readResourceHeader() throws IOException {
+		String resourceHeaderEntry = findResourceHeader();
+		if (resourceHeaderEntry == null) {
+			throw new IOException("The archive " + archiveFile + " doesn't contain a " + GrafResourceHeader.RESOURCE_HEADER_FILE_NAME + ".");
+		}
+		InputStream input = openEntry(resourceHeaderEntry);
+		try {
+			return new GrafResourceHeader(input);
+		} finally {
+			input.close();
+		}
+	}
+
+	/** reads the document header stored in the given entry */
+	public GrafDocumentHeader readDocumentHeader(String headerEntry) throws IOException {
+		InputStream input = openEntry(headerEntry);
+		try {
+			return new GrafDocumentHeader(input);
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * returns the entries a document consists of, i.e. its header, its
+	 * primary text and the standoff files of all annotation types listed in
+	 * the header. Locations are resolved relative to the header entry.
+	 */
+	public List<String> getDocumentEntries(String headerEntry) throws IOException, GrafException {
+		GrafDocumentHeader docHeader = readDocumentHeader(headerEntry);
+		Set<String> documentEntries = new LinkedHashSet<String>();
+		documentEntries.add(headerEntry);
+		if (docHeader.getContentLocation() != null) {
+			documentEntries.add(resolve(headerEntry, docHeader.getContentLocation()));
+		}
+		for (String annoType : docHeader.getAnnotationTypes()) {
+			String annoLocation = docHeader.getAnnotationLocation(annoType);
+			if (annoLocation != null) {
+				documentEntries.add(resolve(headerEntry, annoLocation));
+			}
+		}
+		return new ArrayList<String>(documentEntries);
+	}
+
+	/**
+	 * copies the entries of a single document (see
+	 * {@link #getDocumentEntries(String)}) below the given directory, keeping
+	 * their paths, since the GrAF parser reads documents from files only.
+	 * Returns the copied header file.
+	 */
+	public File extractDocument(String headerEntry, File targetDir) throws IOException, GrafException {
+		for (String entryName : getDocumentEntries(headerEntry)) {
+			if (!contains(entryName)) {
+				throw new IOException("The archive " + archiveFile + " doesn't contain the entry " + entryName + " of document " + headerEntry + ".");
+			}
+			File targetFile = new File(targetDir, entryName);
+			if (!targetFile.getCanonicalPath().startsWith(targetDir.getCanonicalPath() + File.separator)) {
+				throw new IOException("Cannot extract the entry " + entryName + " of document " + headerEntry + ", it points outside of " + targetDir + ".");
+			}
+			targetFile.getParentFile().mkdirs();
+			InputStream input = openEntry(entryName);
+			try {
+				OutputStream output = new BufferedOutputStream(new FileOutputStream(targetFile), BUFFER_SIZE);
+				try {
+					copy(input, output);
+				} finally {
+					output.close();
+				}
+			} finally {
+				input.close();
+			}
+		}
+		return new File(targetDir, headerEntry);
+	}
+
+	/**
+	 * resolves a location given in a header relative to the directory of the
+	 * header entry, e.g. 'a/b/doc.hdr' and '../doc.txt' become 'a/doc.txt'.
+	 */
+	public static String resolve(String headerEntry, String location) {
+		List<String> segments = new ArrayList<String>();
+		int slash = headerEntry.lastIndexOf('/');
+		if (slash >= 0) {
+			Collections.addAll(segments, headerEntry.substring(0, slash).split("/"));
+		}
+		for (String segment : location.replace('\\', '/').split("/")) {
+			if (segment.equals("..")) {
+				if (!segments.isEmpty()) {
+					segments.remove(segments.size() - 1);
+				}
+			} else if (!segment.isEmpty() && !segment.equals(".")) {
+				segments.add(segment);
+			}
+		}
+		StringBuilder path = new StringBuilder();
+		for (String segment : segments) {
+			if (path.length() > 0) {
+				path.append('/');
+			}
+			path.append(segment);
+		}
+		return path.toString();
+	}
+
+	/**
+	 * removes a leading './' from an entry name. Entry names containing '..'
+	 * segments or absolute paths (including drive letters) are rejected, since
+	 * extracting them would write outside of the target directory.
+	 */
+	protected static String normalizeEntryName(String entryName) throws IOException {
+		String normalizedName = entryName.replace('\\', '/');
+		while (normalizedName.startsWith("./")) {
+			normalizedName = normalizedName.substring(2);
+		}
+		if (normalizedName.startsWith("/") || (normalizedName.length() > 1 && normalizedName.charAt(1) == ':')) {
+			throw new IOException("The archive entry " + entryName + " has an absolute path.");
+		}
+		for (String segment : normalizedName.split("/")) {
+			if (segment.equals("..")) {
+				throw new IOException("The archive entry " + entryName + " points outside of the archive.");
+			}
+		}
+		return normalizedName;
+	}
+
+	private static String getFileName(String entryName) {
+		return entryName.substring(entryName.lastIndexOf('/') + 1);
+	}
+
+	private static int getDepth(String entryName) {
+		int depth = 0;
+		for (int i = 0; i < entryName.length(); i++) {
+			if (entryName.charAt(i) == '/') {
+				depth++;
+			}
+		}
+		return depth;
+	}
+
+	private static void copy(InputStream input, OutputStream output) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int read;
+		while ((read = input.read(buffer)) != -1) {
+			output.write(buffer, 0, read);
+		}
+	}
+
+	private static File gunzipToTempFile(File archiveFile) throws IOException {
+		File tarFile = File.createTempFile("graf-corpus", ".tar");
+		try {
+			InputStream input = new GZIPInputStream(new BufferedInputStream(new FileInputStream(archiveFile), BUFFER_SIZE), BUFFER_SIZE);
+			try {
+				OutputStream output = new BufferedOutputStream(new FileOutputStream(tarFile), BUFFER_SIZE);
+				try {
+					copy(input, output);
+				} finally {
+					output.close();
+				}
+			} finally {
+				input.close();
+			}
+		} catch (IOException e) {
+			tarFile.delete();
+			throw e;
+		}
+		return tarFile;
+	}
+
+	/** a zip archive, indexed by its central directory */
+	private static class ZipArchive extends CorpusArchive {
+		private final ZipFile zipFile;
+		private final Map<String, ZipEntry> entries = new HashMap<String, ZipEntry>();
+		private final List<String> entryNames = new ArrayList<String>();
+
+		ZipArchive(File archiveFile) throws IOException {
+			super(archiveFile);
+			this.zipFile = new ZipFile(archiveFile, UTF8);
+			Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+			while (zipEntries.hasMoreElements()) {
+				ZipEntry zipEntry = zipEntries.nextElement();
+				if (!zipEntry.isDirectory()) {
+					String entryName = normalizeEntryName(zipEntry.getName());
+					entries.put(entryName, zipEntry);
+					entryNames.add(entryName);
+				}
+			}
+			Collections.sort(entryNames);
+		}
+
+		@Override
+		public List<String> getEntryNames() {
+			return Collections.unmodifiableList(entryNames);
+		}
+
+		@Override
+		public boolean contains(String entryName) {
+			return entries.containsKey(entryName);
+		}
+
+		@Override
+		public long getSize(String entryName) {
+			ZipEntry zipEntry = entries.get(entryName);
+			return zipEntry == null ? -1 : zipEntry.getSize();
+		}
+
+		@Override
+		public InputStream openEntry(String entryName) throws IOException {
+			ZipEntry zipEntry = entries.get(entryName);
+			if (zipEntry == null) {
+				throw new IOException("The archive " + getArchiveFile() + " doesn't contain the entry " + entryName + ".");
+			}
+			return new BufferedInputStream(zipFile.getInputStream(zipEntry), BUFFER_SIZE);
+		}
+
+		@Override
+		public void close() throws IOException {
+			zipFile.close();
+		}
+	}
+
+	/**
+	 * a tar archive, indexed by the offsets and sizes of its entries. Entries
+	 * are read from the tar file directly.
+	 */
+	private static class TarArchive extends CorpusArchive {
+		private static final int BLOCK_SIZE = 512;
+
+		private final File tarFile;
+		private final boolean deleteOnClose;
+		private final RandomAccessFile tar;
+		/** maps entry names to their data offset and size */
+		private final Map<String, long[]> entries = new HashMap<String, long[]>();
+		private final List<String> entryNames = new ArrayList<String>();
+
+		TarArchive(File archiveFile, File tarFile, boolean deleteOnClose) throws IOException {
+			super(archiveFile);
+			this.tarFile = tarFile;
+			this.deleteOnClose = deleteOnClose;
+			this.tar = new RandomAccessFile(tarFile, "r");
+			try {
+				buildIndex();
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+			Collections.sort(entryNames);
+		}
+
+		private void buildIndex() throws IOException {
+			byte[] header = new byte[BLOCK_SIZE];
+			long position = 0;
+			String longName = null;
+			while (position + BLOCK_SIZE <= tar.length()) {
+				tar.seek(position);
+				tar.readFully(header);
+				if (isZeroBlock(header)) {
+					break;
+				}
+				long size = parseSize(header);
+				long dataPosition = position + BLOCK_SIZE;
+				char type = (char) header[156];
+				if (type == 'L') {
+					// GNU long name, it applies to the next entry
+					longName = readString(dataPosition, size);
+				} else if (type == 'x') {
+					// pax extended header, only the path is of interest
+					longName = getPaxPath(readString(dataPosition, size), longName);
+				} else if (type == 'g') {
+					// global pax header, ignored
+				} else {
+					if (type == '0' || type == '\0' || type == '7') {
+						String entryName = longName;
+						if (entryName == null) {
+							entryName = getString(header, 0, 100);
+							if (getString(header, 257, 5).equals("ustar")) {
+								String prefix = getString(header, 345, 155);
+								if (!prefix.isEmpty()) {
+									entryName = prefix + "/" + entryName;
+								}
+							}
+						}
+						entryName = normalizeEntryName(entryName);
+						if (!entries.containsKey(entryName)) {
+							entryNames.add(entryName);
+						}
+						// later entries replace earlier ones, like tar does
+						entries.put(entryName, new long[] { dataPosition, size });
+					}
+					longName = null;
+				}
+				position = dataPosition + (size + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+			}
+		}
+
+		private static boolean isZeroBlock(byte[] block) {
+			for (byte b : block) {
+				if (b != 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/** parses the size field (octal or GNU base-256) of a tar header */
+		private static long parseSize(byte[] header) throws IOException {
+			if ((header[124] & 0x80) != 0) {
+				long size = 0;
+				for (int i = 125; i < 136; i++) {
+					size = (size << 8) | (header[i] & 0xFF);
+				}
+				return size;
+			}
+			String octal = getString(header, 124, 12).trim();
+			try {
+				return octal.isEmpty() ? 0 : Long.parseLong(octal, 8);
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid entry size '" + octal + "' in tar archive.", e);
+			}
+		}
+
+		/** reads a NUL terminated string from a header field */
+		private static String getString(byte[] header, int offset, int length) {
+			int end = offset;
+			while (end < offset + length && header[end] != 0) {
+				end++;
+			}
+			return new String(header, offset, end - offset, UTF8);
+		}
+
+		private String readString(long position, long size) throws IOException {
+			byte[] bytes = new byte[(int) size];
+			tar.seek(position);
+			tar.readFully(bytes);
+			int end = bytes.length;
+			while (end > 0 && bytes[end - 1] == 0) {
+				end--;
+			}
+			return new String(bytes, 0, end, UTF8);
+		}
+
+		/** returns the path of a pax extended header (records like '30 path=a/b.xml\n') */
+		private static String getPaxPath(String paxHeader, String defaultPath) {
+			for (String record : paxHeader.split("\n")) {
+				int space = record.indexOf(' ');
+				if (space >= 0 && record.startsWith("path=", space + 1)) {
+					return record.substring(space + 1 + "path=".length());
+				}
+			}
+			return defaultPath;
+		}
+
+		@Override
+		public List<String> getEntryNames() {
+			return Collections.unmodifiableList(entryNames);
+		}
+
+		@Override
+		public boolean contains(String entryName) {
+			return entries.containsKey(entryName);
+		}
+
+		@Override
+		public long getSize(String entryName) {
+			long[] entry = entries.get(entryName);
+			return entry == null ? -1 : entry[1];
+		}
+
+		@Override
+		public InputStream openEntry(String entryName) throws IOException {
+			final long[] entry = entries.get(entryName);
+			if (entry == null) {
+				throw new IOException("The archive " + getArchiveFile() + " doesn't contain the entry " + entryName + ".");
+			}
+			// the tar file is shared by all threads, so every read seeks first
+			return new BufferedInputStream(new InputStream() {
+				private long position = entry[0];
+				private final long end = entry[0] + entry[1];
+
+				@Override
+				public int read() throws IOException {
+					byte[] single = new byte[1];
+					return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+				}
+
+				@Override
+				public int read(byte[] buffer, int offset, int length) throws IOException {
+					if (position >= end) {
+						return -1;
+					}
+					int toRead = (int) Math.min(length, end - position);
+					synchronized (tar) {
+						tar.seek(position);
+						int read = tar.read(buffer, offset, toRead);
+						if (read == -1) {
+							throw new EOFException("Unexpected end of tar archive " + getArchiveFile() + ".");
+						}
+						position += read;
+						return read;
+					}
+				}
+			}, BUFFER_SIZE);
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				tar.close();
+			} finally {
+				if (deleteOnClose) {
+					tarFile.delete();
+				}
+			}
+		}
+	}
+}
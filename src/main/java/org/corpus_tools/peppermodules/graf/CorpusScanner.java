@@ -0,0 +1,141 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Scans a corpus directory (incl. subdirectories) for files with a certain
+ * ending. Files are filtered while walking the directory tree and handed to a
+ * {@link FileHandler} as soon as they are found, i.e. the handler (e.g. one
+ * that parses document headers) runs while the scan is still going on.
+ * Subdirectories are scanned in parallel, which pays off on network file
+ * systems, where most of the time is spent waiting for directory listings.
+ */
+public class CorpusScanner {
+
+	/** is called for every file found by a scan, possibly by several threads at the same time */
+	public interface FileHandler {
+		void handle(Path file) throws Exception;
+	}
+
+	/**
+	 * scans a directory (incl. subdirectories) and calls the handler for
+	 * every file whose name ends with the given string. If the handler throws
+	 * an exception, the scan is stopped and the exception is rethrown
+	 * (wrapped into an IOException if necessary).
+	 * 
+	 * @param parallelism
+	 *            - the number of threads used to scan the directory tree
+	 */
+	public static void scan(Path rootDir, String fileNameEnding, FileHandler handler, int parallelism) throws IOException {
+		if (!Files.isDirectory(rootDir)) {
+			throw new IOException("Cannot scan " + rootDir + ", it is not a directory.");
+		}
+		AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+		try {
+			pool.invoke(new ScanTask(rootDir, fileNameEnding, handler, failure));
+		} finally {
+			pool.shutdown();
+		}
+		Exception e = failure.get();
+		if (e instanceof IOException) {
+			throw (IOException) e;
+		} else if (e != null) {
+			throw new IOException("Cannot scan " + rootDir + ". ", e);
+		}
+	}
+
+	/**
+	 * returns the absolute paths (using '/' as separator) of all files in a
+	 * directory (incl. subdirectories) whose names end with the given string,
+	 * in lexicographic order.
+	 */
+	public static List<String> listFiles(String dir, String fileNameEnding, int parallelism) throws IOException {
+		final List<String> fnamesList = Collections.synchronizedList(new ArrayList<String>());
+		scan(Paths.get(dir), fileNameEnding, new FileHandler() {
+			@Override
+			public void handle(Path file) {
+				fnamesList.add(toPathString(file));
+			}
+		}, parallelism);
+		List<String> sortedFnamesList = new ArrayList<String>(fnamesList);
+		Collections.sort(sortedFnamesList);
+		return sortedFnamesList;
+	}
+
+	/** returns the absolute path of a file, using '/' as separator */
+	public static String toPathString(Path file) {
+		return file.toAbsolutePath().toString().replace('\\', '/');
+	}
+
+	/** scans one directory and forks a task for each of its subdirectories */
+	private static class ScanTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Path dir;
+		private final String fileNameEnding;
+		private final FileHandler handler;
+		private final AtomicReference<Exception> failure;
+
+		ScanTask(Path dir, String fileNameEnding, FileHandler handler, AtomicReference<Exception> failure) {
+			this.dir = dir;
+			this.fileNameEnding = fileNameEnding;
+			this.handler = handler;
+			this.failure = failure;
+		}
+
+		@Override
+		protected void compute() {
+			List<ScanTask> subTasks = new ArrayList<ScanTask>();
+			try {
+				DirectoryStream<Path> entries = Files.newDirectoryStream(dir);
+				try {
+					for (Path entry : entries) {
+						if (failure.get() != null) {
+							return;
+						}
+						BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+						if (attributes.isDirectory()) {
+							subTasks.add(new ScanTask(entry, fileNameEnding, handler, failure));
+						} else if (entry.getFileName().toString().endsWith(fileNameEnding)) {
+							handler.handle(entry);
+						}
+					}
+				} finally {
+					entries.close();
+				}
+			} catch (Exception e) {
+				failure.compareAndSet(null, e);
+				return;
+			}
+			invokeAll(subTasks);
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.io.FileNotFoundException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.xces.graf.api.GrafException;
+
+/**
+ * Splits the documents of a corpus into a number of disjoint shards, so that
+ * a large corpus can be imported by several processes (on one or more
+ * machines), each of which imports one shard. The assignment of documents to
+ * shards is deterministic, i.e. every process computes the same shards.
+ * 
+ * There are two strategies:
+ * <ul>
+ * <li>{@link #HASH}: a document is assigned to a shard based on a hash of its
+ * ID. A document always ends up in the same shard, even if other documents
+ * are added to or removed from the corpus.</li>
+ * <li>{@link #SIZE}: documents are assigned largest first to the shard with
+ * the smallest total size (in bytes of header, primary text and standoff
+ * files), which balances the work among the shards. The assignment is
+ * reproducible as long as the corpus doesn't change.</li>
+ * </ul>
+ */
+public class CorpusSharder {
+	/** name of the strategy partitioning documents by the hash of their ID */
+	public static final String HASH = "hash";
+	/** name of the strategy balancing the shards by document size */
+	public static final String SIZE = "size";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * returns the IDs of the documents belonging to the given shard (in the
+	 * order of the given list).
+	 * 
+	 * @param docIdDocHeaderMap
+	 *            - maps document IDs to the paths of their headers, only used
+	 *            by the {@link #SIZE} strategy
+	 * @param shardIndex
+	 *            - the number of the shard, starting with 0
+	 * @param strategy
+	 *            - {@link #HASH} or {@link #SIZE}
+	 */
+	public static List<String> getShard(List<String> docIds, Map<String, String> docIdDocHeaderMap, int shardIndex, int shardCount, String strategy) throws GrafException, FileNotFoundException {
+		if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+			throw new IllegalArgumentException("Shard " + shardIndex + " doesn't exist, the shard index must be between 0 and " + (shardCount - 1) + ".");
+		}
+		Map<String, Integer> docIdShardMap;
+		if (HASH.equals(strategy)) {
+			docIdShardMap = assignByHash(docIds, shardCount);
+		} else if (SIZE.equals(strategy)) {
+			docIdShardMap = assignBySize(docIds, docIdDocHeaderMap, shardCount);
+		} else {
+			throw new IllegalArgumentException("Unknown sharding strategy '" + strategy + "', use '" + HASH + "' or '" + SIZE + "'.");
+		}
+		List<String> shard = new ArrayList<String>();
+		for (String docId : docIds) {
+			if (docIdShardMap.get(docId) == shardIndex) {
+				shard.add(docId);
+			}
+		}
+		return shard;
+	}
+
+	/**
+	 * returns a hash of a document ID that doesn't depend on the JVM (in
+	 * contrast to e.g. identity hash codes).
+	 */
+	public static long getStableHash(String docId) {
+		CRC32 crc = new CRC32();
+		crc.update(docId.getBytes(UTF8));
+		return crc.getValue();
+	}
+
+	/** maps each document ID to a shard based on its hash */
+	private static Map<String, Integer> assignByHash(List<String> docIds, int shardCount) {
+		Map<String, Integer> docIdShardMap = new HashMap<String, Integer>();
+		for (String docId : docIds) {
+			docIdShardMap.put(docId, (int) (getStableHash(docId) % shardCount));
+		}
+		return docIdShardMap;
+	}
+
+	/**
+	 * maps each document ID to a shard, so that all shards have about the same
+	 * size. Documents are assigned largest first to the currently smallest
+	 * shard. Ties are broken by document ID and shard number, so that the
+	 * result doesn't depend on the order of the given document IDs.
+	 */
+	private static Map<String, Integer> assignBySize(List<String> docIds, Map<String, String> docIdDocHeaderMap, int shardCount) throws GrafException, FileNotFoundException {
+		final Map<String, Long> docIdSizeMap = new HashMap<String, Long>();
+		for (String docId : docIds) {
+			docIdSizeMap.put(docId, new GrafDocumentHeader(docIdDocHeaderMap.get(docId)).getDocumentSize());
+		}
+		List<String> sortedDocIds = new ArrayList<String>(docIds);
+		Collections.sort(sortedDocIds, new Comparator<String>() {
+			@Override
+			public int compare(String docId1, String docId2) {
+				int sizeComparison = docIdSizeMap.get(docId2).compareTo(docIdSizeMap.get(docId1));
+				return sizeComparison != 0 ? sizeComparison : docId1.compareTo(docId2);
+			}
+		});
+
+		long[] shardSizes = new long[shardCount];
+		Map<String, Integer> docIdShardMap = new HashMap<String, Integer>();
+		for (String docId : sortedDocIds) {
+			int smallestShard = 0;
+			for (int shard = 1; shard < shardCount; shard++) {
+				if (shardSizes[shard] < shardSizes[smallestShard]) {
+					smallestShard = shard;
+				}
+			}
+			shardSizes[smallestShard] += docIdSizeMap.get(docId);
+			docIdShardMap.put(docId, smallestShard);
+		}
+		return docIdShardMap;
+	}
+}
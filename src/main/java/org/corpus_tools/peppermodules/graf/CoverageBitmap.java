@@ -0,0 +1,423 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.util.Arrays;
+
+/**
+ * A compressed set of non-negative ints, e.g. the numbers of the IRegions
+ * covered by an INode (see {@link RegionCoverage}). The layout follows the
+ * one of Roaring bitmaps: the values are grouped by their upper 16 bits, each
+ * group is stored in a container of its own. A container holds a sorted array
+ * of the lower 16 bits as long as there are at most 4096 values, a bitmap of
+ * 2^16 bits otherwise. Since the kind of a container only depends on the
+ * number of its values, equal sets always have the same layout and can be
+ * compared container by container.
+ * 
+ * A CoverageBitmap isn't thread-safe while it is changed, but can be shared
+ * between threads afterwards.
+ */
+public class CoverageBitmap {
+	/** the maximal number of values of an array container */
+	private static final int ARRAY_MAX_SIZE = 4096;
+
+	private char[] keys = new char[4];
+	private Container[] containers = new Container[4];
+	private int size = 0;
+
+	/** returns a bitmap containing the given values */
+	public static CoverageBitmap of(int... values) {
+		CoverageBitmap bitmap = new CoverageBitmap();
+		for (int value : values) {
+			bitmap.add(value);
+		}
+		return bitmap;
+	}
+
+	/** returns a new bitmap containing the values of both bitmaps */
+	public static CoverageBitmap or(CoverageBitmap bitmap1, CoverageBitmap bitmap2) {
+		CoverageBitmap union = new CoverageBitmap();
+		union.addAll(bitmap1);
+		union.addAll(bitmap2);
+		return union;
+	}
+
+	/** adds a (non-negative) value */
+	public void add(int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Cannot add negative value " + value + " to a " + CoverageBitmap.class.getSimpleName() + ".");
+		}
+		char key = (char) (value >>> 16);
+		int index = Arrays.binarySearch(keys, 0, size, key);
+		if (index >= 0) {
+			containers[index] = containers[index].add((char) value);
+		} else {
+			insertContainer(-index - 1, key, new ArrayContainer().add((char) value));
+		}
+	}
+
+	/** adds all values of another bitmap (which isn't changed) */
+	public void addAll(CoverageBitmap other) {
+		int i = 0;
+		for (int j = 0; j < other.size; j++) {
+			char key = other.keys[j];
+			while (i < size && keys[i] < key) {
+				i++;
+			}
+			if (i < size && keys[i] == key) {
+				containers[i] = containers[i].or(other.containers[j]);
+			} else {
+				insertContainer(i, key, other.containers[j].copy());
+			}
+			i++;
+		}
+	}
+
+	private void insertContainer(int index, char key, Container container) {
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			containers = Arrays.copyOf(containers, size * 2);
+		}
+		System.arraycopy(keys, index, keys, index + 1, size - index);
+		System.arraycopy(containers, index, containers, index + 1, size - index);
+		keys[index] = key;
+		containers[index] = container;
+		size++;
+	}
+
+	/** returns true, if the bitmap contains the given value */
+	public boolean contains(int value) {
+		if (value < 0) {
+			return false;
+		}
+		int index = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+		return index >= 0 && containers[index].contains((char) value);
+	}
+
+	/** returns the number of values in the bitmap */
+	public int getCardinality() {
+		int cardinality = 0;
+		for (int i = 0; i < size; i++) {
+			cardinality += containers[i].cardinality;
+		}
+		return cardinality;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/** returns the smallest value (the bitmap mustn't be empty) */
+	public int first() {
+		return (keys[0] << 16) | containers[0].first();
+	}
+
+	/** returns the largest value (the bitmap mustn't be empty) */
+	public int last() {
+		return (keys[size - 1] << 16) | containers[size - 1].last();
+	}
+
+	/**
+	 * returns true, if the values of the bitmap form an interval without gaps
+	 * (e.g. an INode covers consecutive IRegions). An empty bitmap isn't
+	 * contiguous.
+	 */
+	public boolean isContiguous() {
+		return size > 0 && getCardinality() == (long) last() - first() + 1;
+	}
+
+	/** returns the values of the bitmap in ascending order */
+	public int[] toArray() {
+		int[] values = new int[getCardinality()];
+		int position = 0;
+		for (int i = 0; i < size; i++) {
+			position = containers[i].fill(keys[i] << 16, values, position);
+		}
+		return values;
+	}
+
+	@Override
+	public int hashCode() {
+		int hashCode = size;
+		for (int i = 0; i < size; i++) {
+			hashCode = 31 * hashCode + keys[i];
+			hashCode = 31 * hashCode + containers[i].hashCode();
+		}
+		return hashCode;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof CoverageBitmap)) {
+			return false;
+		}
+		CoverageBitmap other = (CoverageBitmap) obj;
+		if (size != other.size) {
+			return false;
+		}
+		for (int i = 0; i < size; i++) {
+			if (keys[i] != other.keys[i] || !containers[i].equals(other.containers[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+
+	/** the lower 16 bits of the values sharing the same upper 16 bits */
+	private static abstract class Container {
+		int cardinality = 0;
+
+		/** adds a value, returns the container to be used from now on */
+		abstract Container add(char value);
+
+		abstract boolean contains(char value);
+
+		/**
+		 * returns a container holding the values of both containers, this
+		 * container may be changed and returned
+		 */
+		abstract Container or(Container other);
+
+		abstract char first();
+
+		abstract char last();
+
+		/** writes the values (plus the given upper bits) to the array, returns the next position */
+		abstract int fill(int upperBits, int[] values, int position);
+
+		abstract Container copy();
+	}
+
+	/** stores up to {@link CoverageBitmap#ARRAY_MAX_SIZE} values as a sorted array */
+	private static final class ArrayContainer extends Container {
+		char[] values = new char[4];
+
+		@Override
+		Container add(char value) {
+			int index = Arrays.binarySearch(values, 0, cardinality, value);
+			if (index >= 0) {
+				return this;
+			}
+			if (cardinality == ARRAY_MAX_SIZE) {
+				return toBitmapContainer().add(value);
+			}
+			index = -index - 1;
+			if (cardinality == values.length) {
+				values = Arrays.copyOf(values, Math.min(cardinality * 2, ARRAY_MAX_SIZE));
+			}
+			System.arraycopy(values, index, values, index + 1, cardinality - index);
+			values[index] = value;
+			cardinality++;
+			return this;
+		}
+
+		@Override
+		boolean contains(char value) {
+			return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+		}
+
+		@Override
+		Container or(Container other) {
+			if (other instanceof BitmapContainer) {
+				return other.copy().or(this);
+			}
+			ArrayContainer otherArray = (ArrayContainer) other;
+			char[] merged = new char[cardinality + otherArray.cardinality];
+			int i = 0, j = 0, k = 0;
+			while (i < cardinality && j < otherArray.cardinality) {
+				char value1 = values[i];
+				char value2 = otherArray.values[j];
+				if (value1 < value2) {
+					merged[k++] = value1;
+					i++;
+				} else if (value1 > value2) {
+					merged[k++] = value2;
+					j++;
+				} else {
+					merged[k++] = value1;
+					i++;
+					j++;
+				}
+			}
+			while (i < cardinality) {
+				merged[k++] = values[i++];
+			}
+			while (j < otherArray.cardinality) {
+				merged[k++] = otherArray.values[j++];
+			}
+			ArrayContainer union = new ArrayContainer();
+			union.values = merged;
+			union.cardinality = k;
+			return (k > ARRAY_MAX_SIZE) ? union.toBitmapContainer() : union;
+		}
+
+		@Override
+		char first() {
+			return values[0];
+		}
+
+		@Override
+		char last() {
+			return values[cardinality - 1];
+		}
+
+		@Override
+		int fill(int upperBits, int[] target, int position) {
+			for (int i = 0; i < cardinality; i++) {
+				target[position++] = upperBits | values[i];
+			}
+			return position;
+		}
+
+		@Override
+		Container copy() {
+			ArrayContainer copy = new ArrayContainer();
+			copy.values = Arrays.copyOf(values, Math.max(cardinality, 1));
+			copy.cardinality = cardinality;
+			return copy;
+		}
+
+		BitmapContainer toBitmapContainer() {
+			BitmapContainer bitmapContainer = new BitmapContainer();
+			for (int i = 0; i < cardinality; i++) {
+				bitmapContainer.add(values[i]);
+			}
+			return bitmapContainer;
+		}
+
+		@Override
+		public int hashCode() {
+			int hashCode = cardinality;
+			for (int i = 0; i < cardinality; i++) {
+				hashCode = 31 * hashCode + values[i];
+			}
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof ArrayContainer)) {
+				return false;
+			}
+			ArrayContainer other = (ArrayContainer) obj;
+			if (cardinality != other.cardinality) {
+				return false;
+			}
+			for (int i = 0; i < cardinality; i++) {
+				if (values[i] != other.values[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/** stores more than {@link CoverageBitmap#ARRAY_MAX_SIZE} values as 2^16 bits */
+	private static final class BitmapContainer extends Container {
+		final long[] words = new long[1 << 10];
+
+		@Override
+		Container add(char value) {
+			long mask = 1L << value;
+			int index = value >>> 6;
+			if ((words[index] & mask) == 0) {
+				words[index] |= mask;
+				cardinality++;
+			}
+			return this;
+		}
+
+		@Override
+		boolean contains(char value) {
+			return (words[value >>> 6] & (1L << value)) != 0;
+		}
+
+		@Override
+		Container or(Container other) {
+			if (other instanceof BitmapContainer) {
+				long[] otherWords = ((BitmapContainer) other).words;
+				cardinality = 0;
+				for (int i = 0; i < words.length; i++) {
+					words[i] |= otherWords[i];
+					cardinality += Long.bitCount(words[i]);
+				}
+			} else {
+				ArrayContainer otherArray = (ArrayContainer) other;
+				for (int i = 0; i < otherArray.cardinality; i++) {
+					add(otherArray.values[i]);
+				}
+			}
+			return this;
+		}
+
+		@Override
+		char first() {
+			for (int i = 0; i < words.length; i++) {
+				if (words[i] != 0) {
+					return (char) ((i << 6) + Long.numberOfTrailingZeros(words[i]));
+				}
+			}
+			throw new IllegalStateException("empty container");
+		}
+
+		@Override
+		char last() {
+			for (int i = words.length - 1; i >= 0; i--) {
+				if (words[i] != 0) {
+					return (char) ((i << 6) + 63 - Long.numberOfLeadingZeros(words[i]));
+				}
+			}
+			throw new IllegalStateException("empty container");
+		}
+
+		@Override
+		int fill(int upperBits, int[] target, int position) {
+			for (int i = 0; i < words.length; i++) {
+				long word = words[i];
+				while (word != 0) {
+					target[position++] = upperBits | ((i << 6) + Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+			return position;
+		}
+
+		@Override
+		Container copy() {
+			BitmapContainer copy = new BitmapContainer();
+			System.arraycopy(words, 0, copy.words, 0, words.length);
+			copy.cardinality = cardinality;
+			return copy;
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(words);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return (obj instanceof BitmapContainer) && Arrays.equals(words, ((BitmapContainer) obj).words);
+		}
+	}
+}
@@ -17,6 +17,7 @@
  */
 package org.corpus_tools.peppermodules.graf;
 
+import java.util.Arrays;
 import java.util.HashMap;
 
 import org.xces.graf.api.IGraph;
@@ -26,6 +27,9 @@ import org.xces.graf.api.INode;
  * This class is meant as a workaround for floating leaf nodes in MASC/GrAF. The
  * depth first search creates an ordering of the graph that is used to find the
  * preceding/succeeding leaf node of a floating node.
+ * 
+ * A search on an {@link IndexedGraph} works on node ordinals only, it
+ * doesn't fill the maps between node IDs and ordered node numbers.
  */
 public class DepthFirstSearch {
 
@@ -35,6 +39,12 @@ public class DepthFirstSearch {
 	public HashMap<String, Integer> nodeIdToOrderedNodeNumberMap;
 	public HashMap<Integer, String> OrderedNodeNumberToNodeIdMap;
 
+	private IndexedGraph indexedGraph;
+	/** the node ordinals in depth-first order */
+	private int[] orderedNodes;
+	/** the ordered node number of each node ordinal, -1 if it wasn't visited */
+	private int[] orderedNodeNumbers;
+
 	/**
 	 * creates a depth-first search based ordering of nodes in a (part of a)
 	 * graph.
@@ -47,6 +57,49 @@ public class DepthFirstSearch {
 		dfs(graph, rootNode);
 	}
 
+	/**
+	 * creates a depth-first search based ordering of the nodes in the tree a
+	 * floating node (given by its ordinal) belongs to. The nodes are visited in
+	 * the same order as by {@link #DepthFirstSearch(IGraph, INode)}, but
+	 * without recursion.
+	 */
+	public DepthFirstSearch(IndexedGraph indexedGraph, int floatingNode) {
+		this.indexedGraph = indexedGraph;
+		orderedNodes = new int[indexedGraph.getNodeCount()];
+		orderedNodeNumbers = new int[indexedGraph.getNodeCount()];
+		Arrays.fill(orderedNodeNumbers, -1);
+
+		// a stack of nodes and the index of the next outgoing edge to follow
+		int[] stackNodes = new int[16];
+		int[] stackEdges = new int[16];
+		int stackSize = 0;
+		int rootNode = GrafReader.getRootNodeFromNode(indexedGraph, floatingNode);
+		orderedNodeNumbers[rootNode] = nodeIndex;
+		orderedNodes[nodeIndex++] = rootNode;
+		stackNodes[stackSize] = rootNode;
+		stackEdges[stackSize++] = 0;
+		while (stackSize > 0) {
+			int sourceNode = stackNodes[stackSize - 1];
+			int edge = stackEdges[stackSize - 1];
+			if (edge == indexedGraph.getOutDegree(sourceNode)) {
+				stackSize--;
+				continue;
+			}
+			stackEdges[stackSize - 1]++;
+			int targetNode = indexedGraph.getOutNeighbour(sourceNode, edge);
+			if (orderedNodeNumbers[targetNode] < 0) {
+				orderedNodeNumbers[targetNode] = nodeIndex;
+				orderedNodes[nodeIndex++] = targetNode;
+				if (stackSize == stackNodes.length) {
+					stackNodes = Arrays.copyOf(stackNodes, stackSize * 2);
+					stackEdges = Arrays.copyOf(stackEdges, stackSize * 2);
+				}
+				stackNodes[stackSize] = targetNode;
+				stackEdges[stackSize++] = 0;
+			}
+		}
+	}
+
 	private void dfs(IGraph graph, INode sourceNode) {
 		String nodeId = sourceNode.getId();
 		if (nodeIdToOrderedNodeNumberMap.containsKey(nodeId)) {
@@ -118,4 +171,35 @@ public class DepthFirstSearch {
 		} else
 			return null; // node has no ordered number
 	}
+
+	/**
+	 * returns the ordinal of the leaf node that precedes a floating node (or
+	 * -1 if there is none). Only for searches on an {@link IndexedGraph}.
+	 */
+	public int getPrecedingLeafNode(int node) {
+		int nodeNumber = orderedNodeNumbers[node];
+		for (int i = nodeNumber - 1; i >= 0; i--) {
+			if (indexedGraph.isLeafNode(orderedNodes[i])) {
+				return orderedNodes[i];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * returns the ordinal of the leaf node that succeedes a floating node (or
+	 * -1 if there is none). Only for searches on an {@link IndexedGraph}.
+	 */
+	public int getSucceedingLeafNode(int node) {
+		int nodeNumber = orderedNodeNumbers[node];
+		if (nodeNumber < 0) {
+			return -1;
+		}
+		for (int i = nodeNumber + 1; i < nodeIndex; i++) {
+			if (indexedGraph.isLeafNode(orderedNodes[i])) {
+				return orderedNodes[i];
+			}
+		}
+		return -1;
+	}
 }
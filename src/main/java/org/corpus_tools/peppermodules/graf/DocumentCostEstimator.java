@@ -0,0 +1,120 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xces.graf.api.GrafException;
+
+/**
+ * Estimates how expensive the conversion of a GrAF document will be, using
+ * only its header and the sizes of its files. The estimated cost is a
+ * weighted sum of the sizes of the primary text and the standoff files, where
+ * the weight depends on the annotation type. The unit of the cost is
+ * arbitrary, it's only meant to compare documents with each other.
+ */
+public class DocumentCostEstimator {
+	/** weight per byte of the standoff file of an annotation type without a specific weight */
+	public static final double DEFAULT_WEIGHT = 1.0;
+	/**
+	 * weight per byte of the syntax layer: syntax trees need root detection and
+	 * dominance relations, which cost much more than flat annotations.
+	 */
+	public static final double SYNTAX_WEIGHT = 3.0;
+	/** weight per byte of the primary text, which is only read once */
+	public static final double TEXT_WEIGHT = 0.1;
+
+	private final Map<String, Double> annoTypeWeightMap = new HashMap<String, Double>();
+	private double defaultWeight = DEFAULT_WEIGHT;
+	private double textWeight = TEXT_WEIGHT;
+
+	/**
+	 * creates an estimator with the default weights, taking the syntax layer
+	 * from the given properties.
+	 */
+	public DocumentCostEstimator(GrAFImporterProperties props) {
+		setWeight(props.getSyntaxLayer(), SYNTAX_WEIGHT);
+	}
+
+	/** sets the weight per byte of the standoff file of an annotation type, e.g. 'f.ptb' */
+	public void setWeight(String annoType, double weight) {
+		annoTypeWeightMap.put(annoType, weight);
+	}
+
+	/** returns the weight per byte of the standoff file of an annotation type */
+	public double getWeight(String annoType) {
+		Double weight = annoTypeWeightMap.get(annoType);
+		return weight == null ? defaultWeight : weight;
+	}
+
+	/** sets the weight per byte of the standoff files of all other annotation types */
+	public void setDefaultWeight(double defaultWeight) {
+		this.defaultWeight = defaultWeight;
+	}
+
+	/** sets the weight per byte of the primary text */
+	public void setTextWeight(double textWeight) {
+		this.textWeight = textWeight;
+	}
+
+	/** returns the estimated cost of converting the document described by the given header */
+	public double getCost(GrafDocumentHeader docHeader) throws GrafException {
+		double cost = 0;
+		File contentFile = docHeader.getContentFile();
+		if (contentFile != null) {
+			cost += textWeight * contentFile.length();
+		}
+		for (String annoType : docHeader.getAnnotationTypes()) {
+			File annoFile = docHeader.getAnnotationFile(annoType);
+			if (annoFile != null) {
+				cost += getWeight(annoType) * annoFile.length();
+			}
+		}
+		return cost;
+	}
+
+	/**
+	 * returns the given document IDs ordered by their estimated cost, most
+	 * expensive first. When the documents are converted in parallel, starting
+	 * with the largest ones (longest processing time first) keeps a few huge
+	 * documents from delaying the end of the import. Documents with equal cost
+	 * are ordered by ID.
+	 */
+	public List<String> sortLargestFirst(List<String> docIds, Map<String, String> docIdDocHeaderMap) throws GrafException, FileNotFoundException {
+		final Map<String, Double> docIdCostMap = new HashMap<String, Double>();
+		for (String docId : docIds) {
+			docIdCostMap.put(docId, getCost(new GrafDocumentHeader(docIdDocHeaderMap.get(docId))));
+		}
+		List<String> sortedDocIds = new ArrayList<String>(docIds);
+		Collections.sort(sortedDocIds, new Comparator<String>() {
+			@Override
+			public int compare(String docId1, String docId2) {
+				int costComparison = Double.compare(docIdCostMap.get(docId2), docIdCostMap.get(docId1));
+				return costComparison != 0 ? costComparison : docId1.compareTo(docId2);
+			}
+		});
+		return sortedDocIds;
+	}
+}
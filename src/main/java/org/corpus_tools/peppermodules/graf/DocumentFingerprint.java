@@ -0,0 +1,108 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import org.xces.graf.api.GrafException;
+
+/**
+ * Computes fingerprints of GrAF documents, i.e. a hash over the document
+ * header, the primary text and all standoff files referenced by the header. Two
+ * runs of the importer will compute the same fingerprint for a document iff
+ * none of these files changed in between.
+ */
+public class DocumentFingerprint {
+	private static final String HASH_ALGORITHM = "SHA-1";
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** returns the fingerprint (a hex string) of the document described by the given header. */
+	public static String getFingerprint(GrafDocumentHeader docHeader) throws GrafException, IOException {
+		return getFingerprint(docHeader.getDocumentFiles());
+	}
+
+	/** returns the fingerprint (a hex string) of the document whose header is stored at the given path. */
+	public static String getFingerprint(String docHeaderPath) throws GrafException, IOException {
+		return getFingerprint(new GrafDocumentHeader(docHeaderPath));
+	}
+
+	/**
+	 * returns a hash (as hex string) over the names and contents of the given
+	 * files. A missing file is hashed as such, so that adding it later will
+	 * change the fingerprint.
+	 */
+	public static String getFingerprint(List<File> files) throws IOException {
+		MessageDigest digest = newDigest();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		for (File file : files) {
+			digest.update(file.getName().getBytes(UTF8));
+			digest.update((byte) 0);
+			if (!file.isFile()) {
+				digest.update((byte) 0);
+				continue;
+			}
+			digest.update((byte) 1);
+			InputStream input = new FileInputStream(file);
+			try {
+				int read;
+				while ((read = input.read(buffer)) != -1) {
+					digest.update(buffer, 0, read);
+				}
+			} finally {
+				input.close();
+			}
+		}
+		return toHex(digest.digest());
+	}
+
+	/** returns a hash (as hex string) over the given strings */
+	public static String getFingerprint(String[] values) {
+		MessageDigest digest = newDigest();
+		for (String value : values) {
+			digest.update(String.valueOf(value).getBytes(UTF8));
+			digest.update((byte) 0);
+		}
+		return toHex(digest.digest());
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			// every JRE has to support SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+			hex.append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+}
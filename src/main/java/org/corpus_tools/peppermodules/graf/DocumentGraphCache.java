@@ -0,0 +1,223 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.corpus_tools.salt.common.SDocumentGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An on-disk cache of converted SDocumentGraphs. Each graph is stored in its
+ * own file (see {@link DocumentGraphSerializer}), named after a key which
+ * should be derived from everything the conversion depends on, i.e. the
+ * fingerprint of the GrAF files and the importer properties.
+ * 
+ * The cache is bounded by size. Whenever a graph is added and the cache
+ * exceeds its maximal size, the least recently used files are removed. The
+ * cache directory is only scanned once, when the cache is created; from then
+ * on, the sizes of the files and their order of usage are kept in memory. The
+ * modification time of a file serves as its time of last usage, so the order
+ * survives until the next import.
+ */
+public class DocumentGraphCache {
+	protected static final Logger logger= LoggerFactory.getLogger(GrAFImporter.MODULE_NAME);
+	private static final String FILE_ENDING = ".sdg";
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File cacheDir;
+	private final long maxSize;
+	/** the sizes of the cached files by name, least recently used first */
+	private final LinkedHashMap<String, Long> fileSizes = new LinkedHashMap<String, Long>();
+	private long cacheSize = 0;
+
+	/**
+	 * creates a cache in the given directory, which will be created if it
+	 * doesn't exist.
+	 * 
+	 * @param maxSize
+	 *            - the maximal size of all cached files in bytes
+	 */
+	public DocumentGraphCache(File cacheDir, long maxSize) throws IOException {
+		if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+			throw new IOException("Cannot create cache directory " + cacheDir + ".");
+		}
+		this.cacheDir = cacheDir;
+		this.maxSize = maxSize;
+		readCacheDir();
+	}
+
+	/** indexes the files in the cache directory, least recently used first */
+	private void readCacheDir() {
+		File[] cacheFiles = cacheDir.listFiles();
+		if (cacheFiles == null) {
+			return;
+		}
+		// the modification times are read once, sorting by live values could
+		// break the contract of the comparator
+		final Map<File, Long> lastModified = new LinkedHashMap<File, Long>();
+		for (File cacheFile : cacheFiles) {
+			if (cacheFile.getName().endsWith(FILE_ENDING)) {
+				lastModified.put(cacheFile, cacheFile.lastModified());
+			}
+		}
+		File[] sortedFiles = lastModified.keySet().toArray(new File[lastModified.size()]);
+		Arrays.sort(sortedFiles, new Comparator<File>() {
+			@Override
+			public int compare(File file1, File file2) {
+				return Long.compare(lastModified.get(file1), lastModified.get(file2));
+			}
+		});
+		for (File cacheFile : sortedFiles) {
+			long fileSize = cacheFile.length();
+			fileSizes.put(cacheFile.getName(), fileSize);
+			cacheSize += fileSize;
+		}
+	}
+
+	/**
+	 * returns a cache key for the given values (e.g. a document fingerprint and
+	 * the importer properties)
+	 */
+	public static String createKey(String... values) {
+		String[] keyValues = Arrays.copyOf(values, values.length + 1);
+		keyValues[values.length] = String.valueOf(DocumentGraphSerializer.FORMAT_VERSION);
+		return DocumentFingerprint.getFingerprint(keyValues);
+	}
+
+	private File getCacheFile(String key) {
+		return new File(cacheDir, key + FILE_ENDING);
+	}
+
+	/**
+	 * fills the given (empty) SDocumentGraph with the cached graph stored
+	 * under the given key.
+	 * 
+	 * @return true iff the cache contained a graph for the given key
+	 */
+	public boolean load(String key, SDocumentGraph docGraph) {
+		return load(key, docGraph, null);
+	}
+
+	/**
+	 * like {@link #load(String, SDocumentGraph)}, but shares annotation
+	 * strings via the given {@link SymbolTable} (which may be null).
+	 */
+	public boolean load(String key, SDocumentGraph docGraph, SymbolTable symbolTable) {
+		File cacheFile = getCacheFile(key);
+		if (!cacheFile.isFile()) {
+			return false;
+		}
+		try {
+			InputStream inStream = new BufferedInputStream(new FileInputStream(cacheFile), BUFFER_SIZE);
+			try {
+				DocumentGraphSerializer.read(inStream, docGraph, symbolTable);
+			} finally {
+				inStream.close();
+			}
+		} catch (IOException e) {
+			// a damaged cache file must not break the import
+			logger.warn("Cannot read cached document graph " + cacheFile + ", the document will be converted again. ", e);
+			cacheFile.delete();
+			removed(cacheFile);
+			return false;
+		}
+		// the modification time serves as time of last usage
+		cacheFile.setLastModified(System.currentTimeMillis());
+		used(cacheFile);
+		return true;
+	}
+
+	/**
+	 * stores an SDocumentGraph under the given key. Graphs that can't be
+	 * serialized are not cached.
+	 */
+	public void store(String key, SDocumentGraph docGraph) {
+		File cacheFile = getCacheFile(key);
+		try {
+			// write to a temporary file first, so that concurrent readers never
+			// see an incomplete file
+			File tmpFile = File.createTempFile(key, ".tmp", cacheDir);
+			try {
+				OutputStream outStream = new BufferedOutputStream(new FileOutputStream(tmpFile), BUFFER_SIZE);
+				try {
+					DocumentGraphSerializer.write(docGraph, outStream);
+				} finally {
+					outStream.close();
+				}
+				if (!tmpFile.renameTo(cacheFile)) {
+					cacheFile.delete();
+					if (!tmpFile.renameTo(cacheFile)) {
+						throw new IOException("Cannot move " + tmpFile + " to " + cacheFile + ".");
+					}
+				}
+			} finally {
+				tmpFile.delete();
+			}
+		} catch (IOException e) {
+			logger.warn("Cannot add document graph '" + docGraph.getId() + "' to the cache. ", e);
+			return;
+		}
+		used(cacheFile);
+		evict();
+	}
+
+	/** makes the given file the most recently used one and updates its size */
+	private synchronized void used(File cacheFile) {
+		Long oldSize = fileSizes.remove(cacheFile.getName());
+		if (oldSize != null) {
+			cacheSize -= oldSize;
+		}
+		long fileSize = cacheFile.length();
+		fileSizes.put(cacheFile.getName(), fileSize);
+		cacheSize += fileSize;
+	}
+
+	private synchronized void removed(File cacheFile) {
+		Long oldSize = fileSizes.remove(cacheFile.getName());
+		if (oldSize != null) {
+			cacheSize -= oldSize;
+		}
+	}
+
+	/** removes the least recently used files until the cache fits into maxSize */
+	private synchronized void evict() {
+		Iterator<Map.Entry<String, Long>> fileSizeIterator = fileSizes.entrySet().iterator();
+		while (cacheSize > maxSize && fileSizeIterator.hasNext()) {
+			Map.Entry<String, Long> fileSize = fileSizeIterator.next();
+			File cacheFile = new File(cacheDir, fileSize.getKey());
+			if (cacheFile.delete() || !cacheFile.exists()) {
+				cacheSize -= fileSize.getValue();
+				fileSizeIterator.remove();
+			}
+		}
+	}
+}
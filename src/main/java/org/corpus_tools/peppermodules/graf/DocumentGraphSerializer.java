@@ -0,0 +1,314 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.corpus_tools.salt.SaltFactory;
+import org.corpus_tools.salt.common.SDocumentGraph;
+import org.corpus_tools.salt.common.SDominanceRelation;
+import org.corpus_tools.salt.common.SSpan;
+import org.corpus_tools.salt.common.SSpanningRelation;
+import org.corpus_tools.salt.common.SStructure;
+import org.corpus_tools.salt.common.SStructuredNode;
+import org.corpus_tools.salt.common.STextualDS;
+import org.corpus_tools.salt.common.STextualRelation;
+import org.corpus_tools.salt.common.SToken;
+import org.corpus_tools.salt.core.SAnnotation;
+import org.corpus_tools.salt.core.SAnnotationContainer;
+import org.corpus_tools.salt.core.SLayer;
+import org.corpus_tools.salt.core.SNode;
+import org.corpus_tools.salt.core.SRelation;
+
+/**
+ * Writes and reads SDocumentGraphs in a compact binary format. Only the kinds
+ * of elements created by the GrAFImporter are supported: STextualDSs,
+ * STokens, SSpans and SStructures (incl. their SLayers and SAnnotations), as
+ * well as STextualRelations, SSpanningRelations and SDominanceRelations. All
+ * strings are written only once and referenced by number afterwards, since
+ * annotation names and values are repeated over and over again.
+ * 
+ * Layers, nodes and relations are written in the order of the graph together
+ * with their IDs, so a graph read back has the same order and IDs as the
+ * written one and is exported exactly like it.
+ */
+public class DocumentGraphSerializer {
+	/** changes whenever the format changes, so that old files aren't read */
+	public static final int FORMAT_VERSION = 2;
+	private static final int MAGIC = 0x47724146; // "GrAF"
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final byte TEXT = 0;
+	private static final byte TOKEN = 1;
+	private static final byte SPAN = 2;
+	private static final byte STRUCTURE = 3;
+
+	private static final byte TEXTUAL_RELATION = 0;
+	private static final byte SPANNING_RELATION = 1;
+	private static final byte DOMINANCE_RELATION = 2;
+
+	/**
+	 * writes an SDocumentGraph to the given stream (the stream won't be
+	 * closed).
+	 * 
+	 * @throws IOException
+	 *             if the graph contains elements that can't be serialized
+	 */
+	public static void write(SDocumentGraph docGraph, OutputStream outStream) throws IOException {
+		List<SNode> nodes = docGraph.getNodes();
+
+		Writer writer = new Writer(outStream);
+		writer.out.writeInt(MAGIC);
+		writer.out.writeInt(FORMAT_VERSION);
+
+		Map<SLayer, Integer> layerIndex = new IdentityHashMap<SLayer, Integer>();
+		writer.out.writeInt(docGraph.getLayers().size());
+		for (SLayer layer : docGraph.getLayers()) {
+			layerIndex.put(layer, layerIndex.size());
+			writer.writeString(layer.getId());
+			writer.writeString(layer.getName());
+		}
+
+		Map<SNode, Integer> nodeIndex = new IdentityHashMap<SNode, Integer>();
+		writer.out.writeInt(nodes.size());
+		for (SNode node : nodes) {
+			nodeIndex.put(node, nodeIndex.size());
+			if (node instanceof STextualDS) {
+				writer.out.writeByte(TEXT);
+				writer.writeString(((STextualDS) node).getText());
+			} else if (node instanceof SToken) {
+				writer.out.writeByte(TOKEN);
+			} else if (node instanceof SSpan) {
+				writer.out.writeByte(SPAN);
+			} else if (node instanceof SStructure) {
+				writer.out.writeByte(STRUCTURE);
+			} else {
+				throw new IOException("Cannot serialize document graph '" + docGraph.getId() + "', node '" + node.getId() + "' is of an unsupported type.");
+			}
+			writer.writeString(node.getId());
+			writer.writeString(node.getName());
+			Set<SLayer> layers = node.getLayers();
+			writer.out.writeInt(layers.size());
+			for (SLayer layer : layers) {
+				writer.out.writeInt(layerIndex.get(layer));
+			}
+			writer.writeAnnotations(node);
+		}
+
+		writer.out.writeInt(docGraph.getRelations().size());
+		for (SRelation<?, ?> relation : docGraph.getRelations()) {
+			if (relation instanceof STextualRelation) {
+				writer.out.writeByte(TEXTUAL_RELATION);
+			} else if (relation instanceof SSpanningRelation) {
+				writer.out.writeByte(SPANNING_RELATION);
+			} else if (relation instanceof SDominanceRelation) {
+				writer.out.writeByte(DOMINANCE_RELATION);
+			} else {
+				throw new IOException("Cannot serialize document graph '" + docGraph.getId() + "', relation '" + relation.getId() + "' is of an unsupported type.");
+			}
+			writer.writeString(relation.getId());
+			writer.out.writeInt(nodeIndex.get(relation.getSource()));
+			writer.out.writeInt(nodeIndex.get(relation.getTarget()));
+			if (relation instanceof STextualRelation) {
+				writer.out.writeInt(((STextualRelation) relation).getStart());
+				writer.out.writeInt(((STextualRelation) relation).getEnd());
+			}
+			writer.writeAnnotations(relation);
+		}
+		writer.out.flush();
+	}
+
+	/**
+	 * reads a document graph written by {@link #write(SDocumentGraph, OutputStream)}
+	 * and adds its elements to the given (empty) SDocumentGraph.
+	 */
+	public static void read(InputStream inStream, SDocumentGraph docGraph) throws IOException {
+		read(inStream, docGraph, null);
+	}
+
+	/**
+	 * like {@link #read(InputStream, SDocumentGraph)}, but annotation names,
+	 * namespaces and values are replaced by their canonical instances from the
+	 * given {@link SymbolTable} (if it isn't null).
+	 */
+	public static void read(InputStream inStream, SDocumentGraph docGraph, SymbolTable symbolTable) throws IOException {
+		Reader reader = new Reader(inStream, symbolTable);
+		if (reader.in.readInt() != MAGIC || reader.in.readInt() != FORMAT_VERSION) {
+			throw new IOException("Cannot read document graph, the data was not written by this version of " + DocumentGraphSerializer.class.getSimpleName() + ".");
+		}
+
+		SLayer[] layers = new SLayer[reader.in.readInt()];
+		for (int i = 0; i < layers.length; i++) {
+			layers[i] = SaltFactory.createSLayer();
+			layers[i].setId(reader.readString());
+			layers[i].setName(reader.readString());
+			docGraph.addLayer(layers[i]);
+		}
+
+		SNode[] nodes = new SNode[reader.in.readInt()];
+		for (int i = 0; i < nodes.length; i++) {
+			byte nodeType = reader.in.readByte();
+			SNode node;
+			if (nodeType == TEXT) {
+				STextualDS sTextualDS = SaltFactory.createSTextualDS();
+				sTextualDS.setText(reader.readString());
+				node = sTextualDS;
+			} else if (nodeType == TOKEN) {
+				node = SaltFactory.createSToken();
+			} else if (nodeType == SPAN) {
+				node = SaltFactory.createSSpan();
+			} else if (nodeType == STRUCTURE) {
+				node = SaltFactory.createSStructure();
+			} else {
+				throw new IOException("Cannot read document graph, unknown node type " + nodeType + ".");
+			}
+			node.setId(reader.readString());
+			node.setName(reader.readString());
+			docGraph.addNode(node);
+			int layerCount = reader.in.readInt();
+			for (int j = 0; j < layerCount; j++) {
+				node.addLayer(layers[reader.in.readInt()]);
+			}
+			reader.readAnnotations(node);
+			nodes[i] = node;
+		}
+
+		int relationCount = reader.in.readInt();
+		for (int i = 0; i < relationCount; i++) {
+			byte relationType = reader.in.readByte();
+			String relationId = reader.readString();
+			SNode source = nodes[reader.in.readInt()];
+			SNode target = nodes[reader.in.readInt()];
+			if (relationType == TEXTUAL_RELATION) {
+				STextualRelation textRel = SaltFactory.createSTextualRelation();
+				textRel.setId(relationId);
+				textRel.setSource((SToken) source);
+				textRel.setTarget((STextualDS) target);
+				textRel.setStart(reader.in.readInt());
+				textRel.setEnd(reader.in.readInt());
+				reader.readAnnotations(textRel);
+				docGraph.addRelation(textRel);
+			} else if (relationType == SPANNING_RELATION) {
+				SSpanningRelation spanRel = SaltFactory.createSSpanningRelation();
+				spanRel.setId(relationId);
+				spanRel.setSource((SSpan) source);
+				spanRel.setTarget((SToken) target);
+				reader.readAnnotations(spanRel);
+				docGraph.addRelation(spanRel);
+			} else if (relationType == DOMINANCE_RELATION) {
+				SDominanceRelation domRel = SaltFactory.createSDominanceRelation();
+				domRel.setId(relationId);
+				domRel.setSource((SStructure) source);
+				domRel.setTarget((SStructuredNode) target);
+				reader.readAnnotations(domRel);
+				docGraph.addRelation(domRel);
+			} else {
+				throw new IOException("Cannot read document graph, unknown relation type " + relationType + ".");
+			}
+		}
+	}
+
+	/** writes strings only once, later occurrences refer to their number */
+	private static class Writer {
+		final DataOutputStream out;
+		final Map<String, Integer> stringTable = new HashMap<String, Integer>();
+
+		Writer(OutputStream outStream) {
+			this.out = new DataOutputStream(outStream);
+		}
+
+		void writeString(String value) throws IOException {
+			if (value == null) {
+				out.writeInt(-1);
+				return;
+			}
+			Integer stringIndex = stringTable.get(value);
+			if (stringIndex != null) {
+				out.writeInt(stringIndex);
+			} else {
+				stringTable.put(value, stringTable.size());
+				byte[] bytes = value.getBytes(UTF8);
+				out.writeInt(-2);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+		}
+
+		void writeAnnotations(SAnnotationContainer container) throws IOException {
+			Set<SAnnotation> annotations = container.getAnnotations();
+			out.writeInt(annotations.size());
+			for (SAnnotation annotation : annotations) {
+				writeString(annotation.getNamespace());
+				writeString(annotation.getName());
+				writeString(annotation.getValue_STEXT());
+			}
+		}
+	}
+
+	private static class Reader {
+		final DataInputStream in;
+		final List<String> stringTable = new ArrayList<String>();
+		final SymbolTable symbolTable;
+
+		Reader(InputStream inStream, SymbolTable symbolTable) {
+			this.in = new DataInputStream(inStream);
+			this.symbolTable = symbolTable;
+		}
+
+		String readString() throws IOException {
+			int stringIndex = in.readInt();
+			if (stringIndex == -1) {
+				return null;
+			} else if (stringIndex == -2) {
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				String value = new String(bytes, UTF8);
+				stringTable.add(value);
+				return value;
+			} else {
+				return stringTable.get(stringIndex);
+			}
+		}
+
+		void readAnnotations(SAnnotationContainer container) throws IOException {
+			int annotationCount = in.readInt();
+			for (int i = 0; i < annotationCount; i++) {
+				String namespace = readString();
+				String name = readString();
+				String value = readString();
+				if (symbolTable != null) {
+					namespace = symbolTable.intern(namespace);
+					name = symbolTable.intern(name);
+					value = symbolTable.internValue(value);
+				}
+				container.createAnnotation(namespace, name, value);
+			}
+		}
+	}
+}
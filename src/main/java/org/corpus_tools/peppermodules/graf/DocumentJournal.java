@@ -0,0 +1,163 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A small append-only key/value store that maps document IDs (e.g.
+ * 'MASC1-00046') to a string value. Each entry is written as one line
+ * ('docId TAB value'), so that an entry survives even if the importer is
+ * killed right after writing it. When the journal is read, later entries
+ * overwrite earlier ones with the same document ID; the entries are ordered
+ * by the last time they were written.
+ */
+public class DocumentJournal {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final char SEPARATOR = '\t';
+
+	private final File journalFile;
+	private final Map<String, String> entries = new LinkedHashMap<String, String>();
+	private FileOutputStream outStream = null;
+	private Writer writer = null;
+
+	/**
+	 * creates a journal backed by the given file and reads all entries that
+	 * already exist in it.
+	 */
+	public DocumentJournal(File journalFile) throws IOException {
+		this.journalFile = journalFile;
+		if (journalFile.exists()) {
+			read();
+		}
+	}
+
+	private void read() throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), UTF8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int separatorPos = line.indexOf(SEPARATOR);
+				// a truncated last line (e.g. after a crash) is ignored
+				if (separatorPos > 0) {
+					entries.remove(line.substring(0, separatorPos));
+					entries.put(line.substring(0, separatorPos), line.substring(separatorPos + 1));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/** returns the file this journal is stored in */
+	public File getJournalFile() {
+		return journalFile;
+	}
+
+	/** returns the value stored for a document or null if there is none */
+	public synchronized String get(String docId) {
+		return entries.get(docId);
+	}
+
+	/** returns true iff the journal contains an entry for the document */
+	public synchronized boolean contains(String docId) {
+		return entries.containsKey(docId);
+	}
+
+	/** returns the number of documents in the journal */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/** returns a copy of all entries of the journal (in the order they were last written) */
+	public synchronized Map<String, String> getEntries() {
+		return new LinkedHashMap<String, String>(entries);
+	}
+
+	/**
+	 * appends an entry to the journal and flushes it to disk. Can be called
+	 * concurrently by the threads processing different documents.
+	 */
+	public synchronized void put(String docId, String value) throws IOException {
+		write(docId, value);
+		sync();
+	}
+
+	/**
+	 * appends all given entries to the journal and flushes them to disk at
+	 * once.
+	 */
+	public synchronized void putAll(Map<String, String> newEntries) throws IOException {
+		for (Map.Entry<String, String> entry : newEntries.entrySet()) {
+			write(entry.getKey(), entry.getValue());
+		}
+		sync();
+	}
+
+	private void write(String docId, String value) throws IOException {
+		if (docId.indexOf(SEPARATOR) >= 0 || docId.indexOf('\n') >= 0 || value.indexOf('\n') >= 0) {
+			throw new IOException("Cannot write entry for document '" + docId + "' to journal " + journalFile + ", it contains a line break or tab.");
+		}
+		if (writer == null) {
+			File parentDir = journalFile.getAbsoluteFile().getParentFile();
+			if (parentDir != null && !parentDir.exists()) {
+				parentDir.mkdirs();
+			}
+			outStream = new FileOutputStream(journalFile, true);
+			writer = new OutputStreamWriter(outStream, UTF8);
+		}
+		writer.write(docId + SEPARATOR + value + "\n");
+		entries.remove(docId);
+		entries.put(docId, value);
+	}
+
+	private void sync() throws IOException {
+		if (writer != null) {
+			writer.flush();
+			outStream.getFD().sync();
+		}
+	}
+
+	/** removes all entries from the journal and deletes its file */
+	public synchronized void clear() throws IOException {
+		close();
+		entries.clear();
+		if (journalFile.exists() && !journalFile.delete()) {
+			throw new IOException("Cannot delete journal " + journalFile + ".");
+		}
+	}
+
+	/** closes the underlying file, further calls of put() will reopen it */
+	public synchronized void close() throws IOException {
+		if (writer != null) {
+			writer.close();
+			writer = null;
+			outStream = null;
+		}
+	}
+}
@@ -0,0 +1,243 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.corpus_tools.salt.common.SDocument;
+import org.corpus_tools.salt.common.SStructure;
+import org.corpus_tools.salt.core.SNode;
+import org.xces.graf.api.GrafException;
+import org.xces.graf.api.IAnnotation;
+import org.xces.graf.api.IFeature;
+import org.xces.graf.api.IGraph;
+import org.xces.graf.api.INode;
+
+/**
+ * Converts the IGraph of one document into its SDocument in stages. Every
+ * stage only passes on what the following stages need, so the intermediate
+ * results of a stage become garbage as soon as it's finished, instead of
+ * staying alive (next to the growing Salt graph) until the whole document is
+ * converted:
+ * 
+ * <ol>
+ * <li>{@link Stage#PREPARED}: floating nodes are repaired, the primary text
+ * is added to the SDocument and released by the IGraph, the IGraph is
+ * indexed. From now on, the IGraph is only reachable via its
+ * {@link IndexedGraph}.</li>
+ * <li>{@link Stage#CONVERTED}: the annotation spaces are converted (see
+ * {@link AnnotationSpaceConverter}). Only the maps from INode IDs to SNode IDs
+ * and from SNode IDs to SNodes are kept, the plans, the tokens of the regions
+ * and the span cache are dropped. The features of nodes that won't become
+ * SStructures are removed, since they've been copied to Salt.</li>
+ * <li>{@link Stage#SYNTAX_ADDED}: the syntax trees are built. Afterwards,
+ * nothing of the IGraph is referenced by the pipeline any more.</li>
+ * </ol>
+ * 
+ * If a window size is set (see {@link #setWindowSize(int)}), the prepared
+ * IGraph is split into {@link TextWindow}s instead, which are converted one
+ * after the other: the annotation spaces of a window are converted, its
+ * syntax trees are built and the features of its nodes are released before
+ * the next window is started ({@link Stage#WINDOW_CONVERTED}). The IGraph
+ * itself and the Salt graph still grow with the whole document, but the
+ * plans, maps and tree builders of the conversion only with the window.
+ * 
+ * If a {@link VerificationListener} is set, the {@link ConversionFingerprint}
+ * of the IGraph is computed before the conversion and handed to the listener
+ * together with the one of the converted document graph.
+ * 
+ * A pipeline can convert several documents, also at the same time.
+ */
+public class DocumentPipeline {
+	/** the stages of the conversion of a document, in order */
+	public enum Stage {
+		PREPARED,
+		/** only when converting by windows, once for every window */
+		WINDOW_CONVERTED, CONVERTED, SYNTAX_ADDED
+	}
+
+	/** is told whenever a document has passed a stage, e.g. to measure memory */
+	public interface StageListener {
+		void stageFinished(SDocument sDocument, Stage stage);
+	}
+
+	/** is told the fingerprints of the IGraph and the Salt graph of every converted document */
+	public interface VerificationListener {
+		void verified(SDocument sDocument, ConversionFingerprint grafFingerprint, ConversionFingerprint saltFingerprint);
+	}
+
+	private final SymbolTable symbolTable;
+	private final boolean mergeSpans;
+	private final ForkJoinPool pool;
+	private StageListener stageListener = null;
+	private VerificationListener verificationListener = null;
+	private int windowSize = 0;
+
+	/**
+	 * @param symbolTable
+	 *            - shares annotation names, namespaces and values, may be null
+	 * @param mergeSpans
+	 *            - see {@link SpanCache}
+	 * @param pool
+	 *            - the annotation spaces and syntax trees are processed in
+	 *            parallel on this pool, if it isn't null
+	 */
+	public DocumentPipeline(SymbolTable symbolTable, boolean mergeSpans, ForkJoinPool pool) {
+		this.symbolTable = symbolTable;
+		this.mergeSpans = mergeSpans;
+		this.pool = pool;
+	}
+
+	public void setStageListener(StageListener stageListener) {
+		this.stageListener = stageListener;
+	}
+
+	/**
+	 * sets the listener to be told the fingerprints of each converted
+	 * document. With null (the default), no fingerprints are computed.
+	 */
+	public void setVerificationListener(VerificationListener verificationListener) {
+		this.verificationListener = verificationListener;
+	}
+
+	/**
+	 * sets the number of characters of primary text converted at once. With
+	 * 0 (the default), documents are converted in one go.
+	 */
+	public void setWindowSize(int windowSize) {
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * converts an IGraph into the (empty) document graph of an SDocument. The
+	 * IGraph is changed and partially emptied on the way, so the caller
+	 * shouldn't keep a reference to it.
+	 */
+	public void convert(IGraph iGraph, SDocument sDocument) throws GrafException {
+		// the fingerprint is all that's kept of the unchanged IGraph
+		ConversionFingerprint grafFingerprint = (verificationListener != null) ? ConversionFingerprint.of(iGraph) : null;
+		IndexedGraph indexedGraph = prepare(iGraph, sDocument);
+		iGraph = null;
+		stageFinished(sDocument, Stage.PREPARED);
+		if (windowSize > 0) {
+			convertByWindows(indexedGraph, sDocument);
+		} else {
+			ConvertedNodes convertedNodes = convertAnnotationSpaces(indexedGraph, sDocument);
+			releaseConvertedFeatures(indexedGraph);
+			stageFinished(sDocument, Stage.CONVERTED);
+
+			SaltWriter.addSyntaxToSDocument(indexedGraph, convertedNodes.iNodeIdToSNodeIdsMap, convertedNodes.sNodeIdToSNodeMap, sDocument, symbolTable, pool);
+			indexedGraph = null;
+			convertedNodes = null;
+			stageFinished(sDocument, Stage.SYNTAX_ADDED);
+		}
+		if (verificationListener != null) {
+			verificationListener.verified(sDocument, grafFingerprint, ConversionFingerprint.of(sDocument.getDocumentGraph()));
+		}
+	}
+
+	/**
+	 * converts the annotation spaces and syntax trees of one text window after
+	 * the other
+	 */
+	private void convertByWindows(IndexedGraph indexedGraph, SDocument sDocument) throws GrafException {
+		List<TextWindow> windows = TextWindow.split(indexedGraph, windowSize);
+		AnnotationSpaceConverter converter = new AnnotationSpaceConverter(indexedGraph, sDocument, symbolTable, mergeSpans);
+		SStructure rootSStructure = SaltWriter.addSyntaxRootToSDocument(sDocument);
+		for (int i = 0; i < windows.size(); i++) {
+			TextWindow window = windows.get(i);
+			// the windows are dropped one by one
+			windows.set(i, null);
+			converter.convert(window, pool);
+			SaltWriter.addSyntaxTreesToSDocument(indexedGraph, window.getTrees(), rootSStructure, converter.getINodeIdToSNodeIdsMap(), converter.getSNodeIdToSNodeMap(), sDocument, symbolTable, pool);
+			for (int node : window.getNodes()) {
+				releaseFeatures(indexedGraph.getNode(node));
+			}
+			stageFinished(sDocument, Stage.WINDOW_CONVERTED);
+		}
+		stageFinished(sDocument, Stage.CONVERTED);
+		stageFinished(sDocument, Stage.SYNTAX_ADDED);
+	}
+
+	private void stageFinished(SDocument sDocument, Stage stage) {
+		if (stageListener != null) {
+			stageListener.stageFinished(sDocument, stage);
+		}
+	}
+
+	/**
+	 * repairs the floating nodes, copies the primary text to the SDocument
+	 * and indexes the repaired IGraph
+	 */
+	private IndexedGraph prepare(IGraph iGraph, SDocument sDocument) throws GrafException {
+		IGraph fixedIGraph = GrAFImporter.repairFloatingNodes(iGraph, pool);
+		SaltWriter.addPrimaryTextToDocument(sDocument, GrafReader.getDocumentText(fixedIGraph));
+		// STextualDS has its own copy, regions only need their anchors
+		fixedIGraph.setContent(null);
+		return new IndexedGraph(fixedIGraph);
+	}
+
+	/** converts the annotation spaces and keeps only the maps needed afterwards */
+	private ConvertedNodes convertAnnotationSpaces(IndexedGraph indexedGraph, SDocument sDocument) throws GrafException {
+		AnnotationSpaceConverter converter = new AnnotationSpaceConverter(indexedGraph, sDocument, symbolTable, mergeSpans);
+		converter.convert(pool);
+		return new ConvertedNodes(converter.getINodeIdToSNodeIdsMap(), converter.getSNodeIdToSNodeMap());
+	}
+
+	/**
+	 * removes the features of all nodes without outgoing edges. Their
+	 * annotations have been added to STokens/SSpans already, only nodes with
+	 * outgoing edges become SStructures and need their features once more.
+	 */
+	static void releaseConvertedFeatures(IndexedGraph indexedGraph) {
+		for (int node = 0; node < indexedGraph.getNodeCount(); node++) {
+			if (indexedGraph.getOutDegree(node) == 0) {
+				releaseFeatures(indexedGraph.getNode(node));
+			}
+		}
+	}
+
+	/** removes the features of a node's annotation */
+	private static void releaseFeatures(INode iNode) {
+		IAnnotation iAnnotation = iNode.getAnnotation();
+		if (iAnnotation == null || iAnnotation.getFeatures() == null) {
+			return;
+		}
+		List<String> featureNames = new ArrayList<String>();
+		for (IFeature feature : iAnnotation.getFeatures().features()) {
+			featureNames.add(feature.getName());
+		}
+		for (String featureName : featureNames) {
+			iAnnotation.getFeatures().remove(featureName);
+		}
+	}
+
+	/** what the syntax stage needs from the conversion of the annotation spaces */
+	private static class ConvertedNodes {
+		final HashMap<String, List<String>> iNodeIdToSNodeIdsMap;
+		final HashMap<String, SNode> sNodeIdToSNodeMap;
+
+		ConvertedNodes(HashMap<String, List<String>> iNodeIdToSNodeIdsMap, HashMap<String, SNode> sNodeIdToSNodeMap) {
+			this.iNodeIdToSNodeIdsMap = iNodeIdToSNodeIdsMap;
+			this.sNodeIdToSNodeMap = sNodeIdToSNodeMap;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.corpus_tools.pepper.common.PepperConfiguration;
+import org.corpus_tools.pepper.impl.PepperExporterImpl;
+import org.corpus_tools.pepper.modules.PepperExporter;
+import org.corpus_tools.pepper.modules.exceptions.PepperModuleException;
+import org.corpus_tools.salt.common.SDocument;
+import org.corpus_tools.salt.graph.Identifier;
+import org.eclipse.emf.common.util.URI;
+import org.osgi.service.component.annotations.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Exports a Salt model to the GrAF format. Every SDocument is written as a
+ * document header, a primary text file and one standoff file per annotation
+ * space (see {@link GrafDocumentWriter}); the resource header declaring all
+ * annotation spaces is written once all documents are exported.
+ *
+ */
+@Component(name="GrAFExporterComponent", factory="PepperExporterComponentFactory")
+public class GrAFExporter extends PepperExporterImpl implements PepperExporter
+{
+	public static final String MODULE_NAME="GrAFExporter";
+	protected static final Logger logger= LoggerFactory.getLogger(GrAFExporter.MODULE_NAME);
+	
+	public GrAFExporter()
+	{
+		super();
+		//setting name of module
+		setName(MODULE_NAME);
+		setSupplierContact(URI.createURI(PepperConfiguration.EMAIL));
+		setSupplierHomepage(URI.createURI("https://github.com/korpling/pepperModules-GrAFModules"));
+		setDesc("This exporter transforms a Salt model to the GrAF format. ");
+
+		//set list of formats supported by this module
+		this.addSupportedFormat("GrAF", "1.0", null);
+		this.setProperties(new GrAFExporterProperties());
+		this.setExportMode(EXPORT_MODE.DOCUMENTS_IN_FILES);
+		this.setDocumentEnding("hdr");
+	}
+	
+	/** writes the standoff files of the documents, null if they are written by the document's thread */
+	private ExecutorService writerPool= null;
+	private GrafDocumentWriter documentWriter= null;
+	/** the annotation spaces of all documents exported so far */
+	private final Set<String> annoSpaceNames= Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	
+	/** creates the document writer (and its pool) along with the corpus structure */
+	@Override
+	public void exportCorpusStructure()
+	{
+		super.exportCorpusStructure();
+		GrAFExporterProperties props = (GrAFExporterProperties) this.getProperties();
+		if (props.getWriterThreads() > 1) {
+			writerPool = Executors.newFixedThreadPool(props.getWriterThreads(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "graf-writer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		documentWriter = new GrafDocumentWriter(writerPool, Math.max(props.getBufferSize(), 1) * 1024);
+		annoSpaceNames.clear();
+	}
+
+	@Override
+	public void start(Identifier Identifier) throws PepperModuleException 
+	{
+		if (	(Identifier!= null) &&
+				(Identifier.getIdentifiableElement() instanceof SDocument))
+		{//only if given Identifier belongs to an object of type SDocument
+			SDocument sDocument= (SDocument)Identifier.getIdentifiableElement();
+			if (sDocument.getDocumentGraph() == null) {
+				logger.warn("SDocument '"+sDocument.getName()+"' has no document graph, it is not exported. ");
+				return;
+			}
+			try {
+				File headerFile = new File(getIdentifier2ResourceTable().get(Identifier).toFileString());
+				annoSpaceNames.addAll(documentWriter.write(sDocument, headerFile));
+			} catch (Exception e) {
+				throw new PepperModuleException(this, "Cannot export SDocument '"+Identifier+"' ",e);
+			}
+		}
+	}
+	
+	/** writes the resource header and shuts the writer pool down once all
+	 *  documents are exported */
+	@Override
+	public void end() throws PepperModuleException {
+		super.end();
+		try {
+			if (documentWriter != null) {
+				List<String> sortedNames = new ArrayList<String>(annoSpaceNames);
+				Collections.sort(sortedNames);
+				File corpusDir = new File(getCorpusDesc().getCorpusPath().toFileString());
+				if (!corpusDir.isDirectory() && !corpusDir.mkdirs()) {
+					throw new IOException("Cannot create the directory " + corpusDir + ". ");
+				}
+				GrafDocumentWriter.writeResourceHeader(new File(corpusDir, GrafResourceHeader.RESOURCE_HEADER_FILE_NAME), sortedNames);
+			}
+		} catch (IOException e) {
+			throw new PepperModuleException(this, "Cannot write the resource header. ", e);
+		} finally {
+			if (writerPool != null) {
+				writerPool.shutdown();
+				writerPool = null;
+			}
+			documentWriter = null;
+		}
+	}
+}
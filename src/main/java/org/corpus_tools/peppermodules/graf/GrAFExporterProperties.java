@@ -0,0 +1,59 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import org.corpus_tools.pepper.modules.PepperModuleProperties;
+import org.corpus_tools.pepper.modules.PepperModuleProperty;
+
+
+/**
+ * Defines the properties to be used for the {@link GrAFExporter}.
+ * 
+ */
+public class GrAFExporterProperties extends PepperModuleProperties {
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = -3329874093372218441L;
+	public static final String PREFIX = "graf.exporter.";
+	public static final String PROP_WRITER_THREADS = PREFIX + "writerThreads";
+	public static final String PROP_BUFFER_SIZE = PREFIX + "bufferSize";
+
+	public GrAFExporterProperties() {
+		this.addProperty(new PepperModuleProperty<Integer>(PROP_WRITER_THREADS, Integer.class, "This property determines the number of threads writing the standoff files of a document, each annotation space is written to its own file by one of these threads. With 1, all files are written by the document's thread.", Runtime.getRuntime().availableProcessors(), false));
+		this.addProperty(new PepperModuleProperty<Integer>(PROP_BUFFER_SIZE, Integer.class, "This property determines the size of the write buffer of each file in kilobytes.", 64, false));
+	}
+
+	/**
+	 * Returns the number of threads writing the standoff files of a document.
+	 */
+	@SuppressWarnings("unchecked")
+	public int getWriterThreads() {
+		PepperModuleProperty<Integer> prop = (PepperModuleProperty<Integer>) this.getProperty(PROP_WRITER_THREADS);
+		return prop.getValue();
+	}
+
+	/**
+	 * Returns the size of the write buffer of each file in kilobytes.
+	 */
+	@SuppressWarnings("unchecked")
+	public int getBufferSize() {
+		PepperModuleProperty<Integer> prop = (PepperModuleProperty<Integer>) this.getProperty(PROP_BUFFER_SIZE);
+		return prop.getValue();
+	}
+}
@@ -19,10 +19,22 @@ package org.corpus_tools.peppermodules.graf;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.xpath.XPathExpressionException;
 
@@ -34,16 +46,18 @@ import org.corpus_tools.salt.SaltFactory;
 import org.corpus_tools.salt.common.SCorpus;
 import org.corpus_tools.salt.common.SCorpusGraph;
 import org.corpus_tools.salt.common.SDocument;
-import org.corpus_tools.salt.core.SNode;
 import org.corpus_tools.salt.graph.Identifier;
 import org.eclipse.emf.common.util.URI;
 import org.osgi.service.component.annotations.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.xces.graf.api.GrafException;
 import org.xces.graf.api.IGraph;
 import org.xces.graf.api.ILink;
 import org.xces.graf.api.INode;
 import org.xces.graf.api.IRegion;
 import org.xces.graf.impl.DefaultImplementation;
+import org.xml.sax.SAXException;
 
 
 /**
@@ -55,6 +69,7 @@ import org.xces.graf.impl.DefaultImplementation;
 public class GrAFImporter extends PepperImporterImpl implements PepperImporter
 {
 	public static final String MODULE_NAME="GrAFImporter";
+	protected static final Logger logger= LoggerFactory.getLogger(GrAFImporter.MODULE_NAME);
 	
 	public GrAFImporter()
 	{
@@ -101,42 +116,227 @@ public class GrAFImporter extends PepperImporterImpl implements PepperImporter
 	
 	Map<String, String> docIdDocHeaderMap= null;
 	private GrafResourceHeader rscHeader= null;
+	/** stores the fingerprints of all successfully imported documents (only used for incremental imports) */
+	private DocumentJournal fingerprintStore= null;
+	/** maps document IDs to the fingerprints of their current header and standoff files */
+	private Map<String, String> docIdFingerprintMap= null;
+	/** the fingerprints of the documents imported in this run, written to the fingerprint store in end() */
+	private final Map<String, String> importedFingerprints= new ConcurrentHashMap<String, String>();
+	
+	/** caches converted documents (null if caching is disabled) */
+	private DocumentGraphCache graphCache= null;
+	/** the archive containing the corpus (null if the corpus is a directory) */
+	private CorpusArchive corpusArchive= null;
+	/** shares annotation names, namespaces and values among all documents of the corpus */
+	private SymbolTable symbolTable= null;
+	/** converts the annotation spaces and syntax trees of a document in parallel, null if they are converted by the document's thread */
+	private ForkJoinPool conversionPool= null;
+	/** converts the IGraph of a document stage by stage */
+	private DocumentPipeline documentPipeline= null;
+	/** converts simple documents without an IGraph, null unless enabled */
+	private StreamingDocumentReader streamingReader= null;
+	/** the number of documents compared to their IGraphs, and of those that differ */
+	private final AtomicInteger verifiedDocCount= new AtomicInteger();
+	private final AtomicInteger differingDocCount= new AtomicInteger();
+	/** lists the IDs of all documents imported so far (null if no checkpoints are written) */
+	private DocumentJournal checkpointJournal= null;
+	/** ending of the file listing all documents of the corpus, next to the checkpoint file */
+	public static final String MANIFEST_FILE_ENDING = ".manifest";
+	
+	/** reads the manifest (a map from document IDs to header paths) of an
+	 *  interrupted import. Returns null, if there is no manifest. */
+	private static Map<String, String> readManifest(File checkpointFile) throws IOException {
+		File manifestFile = new File(checkpointFile.getPath() + MANIFEST_FILE_ENDING);
+		if (!manifestFile.isFile()) {
+			return null;
+		}
+		return new DocumentJournal(manifestFile).getEntries();
+	}
+	
+	/** writes the manifest (a map from document IDs to header paths) of an
+	 *  import. The manifest is renamed to its final name once it is complete,
+	 *  so an interrupted import never leaves an incomplete manifest behind. */
+	private static void writeManifest(File checkpointFile, Map<String, String> docIdDocHeaderMap) throws IOException {
+		File manifestFile = new File(checkpointFile.getPath() + MANIFEST_FILE_ENDING);
+		File tmpFile = new File(manifestFile.getPath() + ".tmp");
+		DocumentJournal manifest = new DocumentJournal(tmpFile);
+		manifest.clear();
+		manifest.putAll(docIdDocHeaderMap);
+		manifest.close();
+		if (manifestFile.exists() && !manifestFile.delete() || !tmpFile.renameTo(manifestFile)) {
+			throw new IOException("Cannot write manifest "+manifestFile+".");
+		}
+	}
+	
+	/** returns a list of the given document IDs, leaving out all documents
+	 *  that were already imported according to the checkpoint journal. A 
+	 *  document is checkpointed once it is converted, while it might still 
+	 *  wait for the exporter, so the documents checkpointed last (see 
+	 *  {@link GrAFImporterProperties#getResumeOverlap()}) are imported again. */
+	private List<String> getUnfinishedDocumentIds(List<String> docIds, int resumeOverlap) {
+		List<String> checkpointedDocIds = new ArrayList<String>(checkpointJournal.getEntries().keySet());
+		Set<String> finishedDocIds = new HashSet<String>(checkpointedDocIds.subList(0, Math.min(Math.max(checkpointedDocIds.size() - resumeOverlap, 0), checkpointedDocIds.size())));
+		List<String> unfinishedDocIds = new ArrayList<String>();
+		for (String docId : docIds) {
+			if (!finishedDocIds.contains(docId)) {
+				unfinishedDocIds.add(docId);
+			}
+		}
+		logger.info("Resuming import, skipping "+(docIds.size()-unfinishedDocIds.size())+" of "+docIds.size()
+				+" documents, which were already imported (see "+checkpointJournal.getJournalFile()+"), the last "
+				+Math.max(Math.min(resumeOverlap, checkpointedDocIds.size()), 0)+" checkpointed documents are imported again.");
+		return unfinishedDocIds;
+	}
+	
+	/** computes the fingerprints of the given documents and stores them in
+	 *  docIdFingerprintMap. */
+	private void createDocIdFingerprintMap(List<String> docIds) throws GrafException, IOException {
+		docIdFingerprintMap = new HashMap<String, String>();
+		for (String docId : docIds) {
+			docIdFingerprintMap.put(docId, DocumentFingerprint.getFingerprint(docIdDocHeaderMap.get(docId)));
+		}
+	}
+	
+	/** returns a list of the given document IDs, leaving out all documents
+	 *  whose fingerprint equals the one stored in the fingerprint store, i.e.
+	 *  documents that didn't change since the last import. */
+	private List<String> getChangedDocumentIds(List<String> docIds) {
+		List<String> changedDocIds = new ArrayList<String>();
+		for (String docId : docIds) {
+			if (!docIdFingerprintMap.get(docId).equals(fingerprintStore.get(docId))) {
+				changedDocIds.add(docId);
+			}
+		}
+		logger.info("Skipping "+(docIds.size()-changedDocIds.size())+" of "+docIds.size()
+				+" documents, which did not change since the last import (see "+fingerprintStore.getJournalFile()+").");
+		return changedDocIds;
+	}
+	
+	/** returns the key under which the converted document is cached. The key
+	 *  depends on the document's fingerprint and the importer properties. */
+	private String getCacheKey(String docId) {
+		List<String> keyValues = new ArrayList<String>();
+		keyValues.add(docIdFingerprintMap.get(docId));
+		for (String setting : ((GrAFImporterProperties) this.getProperties()).getConversionSettings()) {
+			keyValues.add(setting);
+		}
+		return DocumentGraphCache.createKey(keyValues.toArray(new String[keyValues.size()]));
+	}
+	
+	/** records that a document was imported successfully, i.e. converted; it
+	 *  is only exported later. Its fingerprint
+	 *  is only stored in end(), so that a run killed before all documents
+	 *  were passed on doesn't mark any of them as unchanged. */
+	private void documentImported(String docId) throws IOException {
+		if (fingerprintStore != null) {
+			importedFingerprints.put(docId, docIdFingerprintMap.get(docId));
+		}
+		if (checkpointJournal != null) {
+			checkpointJournal.put(docId, String.valueOf(System.currentTimeMillis()));
+		}
+	}
+	
+	/** number of threads used to scan a corpus directory */
+	private static final int SCAN_THREADS = Runtime.getRuntime().availableProcessors();
 	
 	/** returns a list of paths to all files with the given extension that
 	 *  exist in a directory (incl. subdirectories) */
 	public static List<String> recursiveListDir(String path, String fileNameEndsWith){
-		List<String> fnamesList = recursiveListDir(path);
-		List<String> filteredFnamesList = new ArrayList<String>();
-		for (String fname : fnamesList) {
-			if (fname.endsWith(fileNameEndsWith)) {
-				filteredFnamesList.add(fname);
-			}
+		try {
+			return CorpusScanner.listFiles(path, fileNameEndsWith, SCAN_THREADS);
+		} catch (IOException e) {
+			throw new PepperModuleException("Cannot list the files in directory '"+path+"'. ", e);
 		}
-		return filteredFnamesList;
 	}	
 	
 	/** returns a list of paths to all files that
 	 *  exist in a directory (incl. subdirectories) */
 	public static List<String> recursiveListDir(String path){
-		  List<String> fnamesList = new ArrayList<String>();	   
-		  File[] faFiles = new File(path).listFiles();
-		  
-		  for(File file: faFiles){
-		    if(file.isDirectory()){
-		    	List<String> tmpFnames = recursiveListDir(file.getAbsolutePath());
-		    	for (String fname: tmpFnames) {
-		    		fnamesList.add(fname);
-		    	}
-		    }		
-		    else {
-		      String absPath = file.getAbsolutePath();
-		      String correctedPath = absPath.replace("\\", "/"); // Really necessary?
-		      fnamesList.add(correctedPath);
-		    }
-		  }
-		  return fnamesList;
+		return recursiveListDir(path, "");
 	}
-		
+	
+	/** scans a corpus directory for document headers and returns a map from
+	 *  document IDs to header paths, ordered by header path. Each header is
+	 *  parsed as soon as the scan finds it. */
+	public static Map<String, String> scanDocumentHeaders(String corpusPath, String headerFileEnding) throws IOException {
+		final Map<String, String> headerPathDocIdMap = new ConcurrentHashMap<String, String>();
+		CorpusScanner.scan(Paths.get(corpusPath), headerFileEnding, new CorpusScanner.FileHandler() {
+			@Override
+			public void handle(Path headerFile) throws Exception {
+				String headerPath = CorpusScanner.toPathString(headerFile);
+				headerPathDocIdMap.put(headerPath, new GrafDocumentHeader(headerPath).getDocumentId());
+			}
+		}, SCAN_THREADS);
+		return toDocIdDocHeaderMap(headerPathDocIdMap);
+	}
+	
+	/** returns a map from document IDs to the names of the header entries of
+	 *  all documents in a corpus archive, ordered by entry name. */
+	public static Map<String, String> scanDocumentHeaders(CorpusArchive corpusArchive, String headerFileEnding) throws IOException {
+		Map<String, String> headerEntryDocIdMap = new HashMap<String, String>();
+		for (String entryName : corpusArchive.getEntryNames()) {
+			if (entryName.endsWith(headerFileEnding)) {
+				try {
+					headerEntryDocIdMap.put(entryName, corpusArchive.readDocumentHeader(entryName).getDocumentId());
+				} catch (XPathExpressionException e) {
+					throw new IOException("Cannot read the document header "+entryName+" in "+corpusArchive.getArchiveFile()+". ", e);
+				}
+			}
+		}
+		return toDocIdDocHeaderMap(headerEntryDocIdMap);
+	}
+	
+	/** inverts a map from header paths to document IDs, ordered by header
+	 *  path. Headers with an already used document ID are ignored. */
+	private static Map<String, String> toDocIdDocHeaderMap(Map<String, String> headerPathDocIdMap) {
+		List<String> headerPaths = new ArrayList<String>(headerPathDocIdMap.keySet());
+		Collections.sort(headerPaths);
+		Map<String, String> docIdDocHeaderMap = new LinkedHashMap<String, String>();
+		for (String headerPath : headerPaths) {
+			String docId = headerPathDocIdMap.get(headerPath);
+			if (docIdDocHeaderMap.containsKey(docId)) {
+				logger.warn("Ignoring document header "+headerPath+", the document ID '"+docId
+						+"' is already used by "+docIdDocHeaderMap.get(docId)+".");
+			} else {
+				docIdDocHeaderMap.put(docId, headerPath);
+			}
+		}
+		return docIdDocHeaderMap;
+	}
+	
+	/**
+	 * Returns the confidence (between 0.0 and 1.0) that the given directory
+	 * or zip/tar archive contains a GrAF corpus. Only the resource header and
+	 * a few document headers are sniffed, see {@link GrafFormatDetector}.
+	 * Returns null for gzip compressed archives, which can't be sniffed
+	 * without decompressing them.
+	 */
+	@Override
+	public Double isImportable(URI corpusPath) {
+		if (corpusPath == null || corpusPath.toFileString() == null) {
+			return 0.0;
+		}
+		File corpusFile = new File(corpusPath.toFileString());
+		String headerFileEnding = ((GrAFImporterProperties) this.getProperties()).getHeaderFileEnding();
+		if (CorpusArchive.isArchive(corpusFile)) {
+			String name = corpusFile.getName().toLowerCase();
+			if (name.endsWith(".gz") || name.endsWith(".tgz")) {
+				return null;
+			}
+			try {
+				CorpusArchive archive = CorpusArchive.open(corpusFile);
+				try {
+					return GrafFormatDetector.getConfidence(archive, headerFileEnding);
+				} finally {
+					archive.close();
+				}
+			} catch (IOException e) {
+				return 0.0;
+			}
+		}
+		return GrafFormatDetector.getConfidence(corpusFile, headerFileEnding);
+	}
+	
 	/**
 	 * This method is called by Pepper at the start of conversion process. 
 	 * It shall create the structure the corpus to import. That means creating all necessary SCorpus, 
@@ -151,10 +351,72 @@ public class GrAFImporter extends PepperImporterImpl implements PepperImporter
 		String corpusPath= this.getCorpusDesc().getCorpusPath().toFileString();
 		try
 		{
-			List<String> docHeaderPaths = recursiveListDir(corpusPath, ((GrAFImporterProperties)this.getProperties()).getHeaderFileEnding());;
+			GrAFImporterProperties props = (GrAFImporterProperties)this.getProperties();
+			if (CorpusArchive.isArchive(new File(corpusPath))) {
+				if (props.getFingerprintStore() != null || props.getCacheDir() != null || props.isLargestFirst() || props.isDryRun()
+						|| (props.getShardCount() > 1 && CorpusSharder.SIZE.equals(props.getShardStrategy()))) {
+					throw new PepperModuleException(this, "The properties '"+GrAFImporterProperties.PROP_FINGERPRINT_STORE+"', '"
+							+GrAFImporterProperties.PROP_CACHE_DIR+"', '"+GrAFImporterProperties.PROP_LARGEST_FIRST+"', '"+GrAFImporterProperties.PROP_DRY_RUN
+							+"' and sharding by size need the files of a corpus directory and can't be used with the corpus archive '"+corpusPath+"'.");
+				}
+				corpusArchive = CorpusArchive.open(new File(corpusPath));
+			}
+			File checkpointFile = null;
+			Map<String, String> manifest = null;
+			// a dry run leaves the checkpoint file, the fingerprint store and
+			// the cache untouched
+			if (props.getCheckpointFile() != null && !props.isDryRun()) {
+				checkpointFile = new File(props.getCheckpointFile());
+				checkpointJournal = new DocumentJournal(checkpointFile);
+				if (props.isResume()) {
+					manifest = readManifest(checkpointFile);
+				} else {
+					checkpointJournal.clear();
+				}
+			}
+			
+			List<String> docIds;
+			if (manifest != null) {
+				// resuming an import: the manifest spares us scanning the corpus again
+				docIds = new ArrayList<String>(manifest.keySet());
+				docIdDocHeaderMap = manifest;
+			} else {
+				if (corpusArchive != null) {
+					docIdDocHeaderMap = scanDocumentHeaders(corpusArchive, props.getHeaderFileEnding());
+				} else {
+					docIdDocHeaderMap = scanDocumentHeaders(corpusPath, props.getHeaderFileEnding());
+				}
+				docIds = new ArrayList<String>(docIdDocHeaderMap.keySet());
+				if (checkpointFile != null) {
+					writeManifest(checkpointFile, docIdDocHeaderMap);
+				}
+			}
+			if (props.getShardCount() > 1) {
+				int docCount = docIds.size();
+				docIds = CorpusSharder.getShard(docIds, docIdDocHeaderMap, props.getShardIndex(), props.getShardCount(), props.getShardStrategy());
+				logger.info("Importing shard "+props.getShardIndex()+" of "+props.getShardCount()+" ("+docIds.size()+" of "+docCount+" documents).");
+			}
+			if (checkpointJournal != null && props.isResume()) {
+				docIds = getUnfinishedDocumentIds(docIds, props.getResumeOverlap());
+			}
 			
-			List<String> docIds = GrafReader.getDocumentIds(docHeaderPaths);
-			docIdDocHeaderMap = createDocIdDocHeaderMap(docHeaderPaths);
+			if (!props.isDryRun() && (props.getFingerprintStore() != null || props.getCacheDir() != null)) {
+				createDocIdFingerprintMap(docIds);
+			}
+			if (props.getFingerprintStore() != null && !props.isDryRun()) {
+				fingerprintStore = new DocumentJournal(new File(props.getFingerprintStore()));
+				docIds = getChangedDocumentIds(docIds);
+			}
+			if (props.isLargestFirst()) {
+				docIds = new DocumentCostEstimator(props).sortLargestFirst(docIds, docIdDocHeaderMap);
+			}
+			if (props.isDryRun()) {
+				estimateImport(docIds, props);
+				docIds = Collections.emptyList();
+			}
+			if (props.getCacheDir() != null && !props.isDryRun()) {
+				graphCache = new DocumentGraphCache(new File(props.getCacheDir()), props.getCacheMaxSize() * 1024L * 1024L);
+			}
 			
 			// generate a corpus (incl. subcorpora) and add documents to them.
 			// right now these documents only contain an Name string
@@ -168,7 +430,28 @@ public class GrAFImporter extends PepperImporterImpl implements PepperImporter
 				corpusGraph.addDocument(corpus, sDoc);
 			}		
 			
-			rscHeader = new GrafResourceHeader(corpusPath);
+			rscHeader = (corpusArchive != null) ? corpusArchive.readResourceHeader() : GrafResourceHeader.getShared(corpusPath);
+			symbolTable = new SymbolTable();
+			if (props.getConversionThreads() > 1) {
+				conversionPool = new ForkJoinPool(props.getConversionThreads());
+			}
+			documentPipeline = new DocumentPipeline(symbolTable, props.isMergeSpans(), conversionPool);
+			documentPipeline.setWindowSize(props.getWindowSize());
+			if (props.isVerify()) {
+				documentPipeline.setVerificationListener(new DocumentPipeline.VerificationListener() {
+					@Override
+					public void verified(SDocument sDocument, ConversionFingerprint grafFingerprint, ConversionFingerprint saltFingerprint) {
+						verifiedDocCount.incrementAndGet();
+						if (!grafFingerprint.equals(saltFingerprint)) {
+							differingDocCount.incrementAndGet();
+							logger.warn("SDocument "+sDocument.getName()+" differs from its GrAF graph in "+grafFingerprint.describeDifferences(saltFingerprint)+". ");
+						}
+					}
+				});
+			}
+			if (props.isStreaming()) {
+				streamingReader = new StreamingDocumentReader(symbolTable, props.isMergeSpans());
+			}
 		}catch (Exception e)
 		{
 			throw new PepperModuleException(this, "Cannot import corpus at location '"+corpusPath+"'. ", e);
@@ -177,6 +460,30 @@ public class GrAFImporter extends PepperImporterImpl implements PepperImporter
 	}
 	
 	
+	/** estimates the import of the given documents instead of converting
+	 *  them (see {@link ImportEstimator}) and logs the estimates. Documents
+	 *  are assumed to be converted by as many threads as there are
+	 *  processors. */
+	private void estimateImport(List<String> docIds, GrAFImporterProperties props) throws GrafException, IOException {
+		long startTime = System.currentTimeMillis();
+		CalibrationProfile profile = (props.getCalibrationProfile() != null) ? CalibrationProfile.load(new File(props.getCalibrationProfile())) : new CalibrationProfile();
+		List<ImportEstimator.Estimate> estimates = new ImportEstimator(props, profile).estimate(docIds, docIdDocHeaderMap);
+		int parallelDocuments = Runtime.getRuntime().availableProcessors();
+		List<ImportEstimator.Estimate> outliers = ImportEstimator.flagOutliers(estimates, Runtime.getRuntime().maxMemory(), parallelDocuments);
+		for (ImportEstimator.Estimate estimate : estimates) {
+			logger.debug("estimated "+estimate+".");
+		}
+		for (ImportEstimator.Estimate outlier : outliers) {
+			if (outlier.getWindowSize() > 0) {
+				logger.warn("SDocument "+outlier.getDocumentId()+" would exceed its share of the heap, it should be converted with a window size of "+outlier.getWindowSize()+" ("+outlier+").");
+			} else {
+				logger.warn("SDocument "+outlier.getDocumentId()+" would exceed its share of the heap with any window size, it needs a larger heap or fewer documents converted in parallel ("+outlier+").");
+			}
+		}
+		logger.info("Dry run"+(profile.getSampleSize() > 0 ? "" : " (with the default calibration profile)")+": "+ImportEstimator.summarize(estimates, parallelDocuments)
+				+" "+outliers.size()+" documents would exceed their share of the heap. Estimated in "+(System.currentTimeMillis() - startTime)+" ms.");
+	}
+	
 	/** Adds all IRegions from an IGraph to an SDocument and returns a map
 	 *  from INode IDs to SNode (or: SToken/SSpan IDs).
 	 *  
@@ -227,23 +534,29 @@ public class GrAFImporter extends PepperImporterImpl implements PepperImporter
 					sDocument.setDocumentGraph(SaltFactory.createSDocumentGraph());
 
 					String sDocName = sDocument.getName();
+					String cacheKey = null;
+					if (graphCache != null) {
+						cacheKey = getCacheKey(sDocName);
+						if (graphCache.load(cacheKey, sDocument.getDocumentGraph(), symbolTable)) {
+							logger.debug("took SDocument "+sDocName+" from the document cache.");
+							documentImported(sDocName);
+							return;
+						}
+						// the graph might have been filled partially by a damaged cache file
+						sDocument.setDocumentGraph(SaltFactory.createSDocumentGraph());
+					}
 					System.out.println("filling SDocument "+sDocName+" ...");
-					String docHeaderPath = docIdDocHeaderMap.get(sDocName);
-
-					IGraph iGraph = GrafReader.getAnnoGraph(rscHeader, docHeaderPath);
-					IGraph fixedIGraph = repairFloatingNodes(iGraph);
-
-					String primaryText = GrafReader.getDocumentText(iGraph);
-					SaltWriter.addPrimaryTextToDocument(sDocument, primaryText);
+					// the IGraph is handed over without keeping a reference, so 
+					// the pipeline can drop it (stage by stage) while the Salt 
+					// graph grows
+					if (streamingReader == null || !readStreaming(docIdDocHeaderMap.get(sDocName), sDocument)) {
+						documentPipeline.convert(loadAnnoGraph(docIdDocHeaderMap.get(sDocName)), sDocument);
+					}
 					
-					HashMap<String, List<String>> iNodeIdToSNodeIdsMap = addGrafStructureToSDocument(fixedIGraph, sDocument);
-					HashMap<String, SNode> sNodeIdToSNodeMap = SaltWriter.addAnnotationsToSDocument(fixedIGraph, 
-																	iNodeIdToSNodeIdsMap, 
-																	sDocument);
-					SaltWriter.addSyntaxToSDocument(fixedIGraph,
-											iNodeIdToSNodeIdsMap, 
-											sNodeIdToSNodeMap, 
-											sDocument);
+					if (graphCache != null) {
+						graphCache.store(cacheKey, sDocument.getDocumentGraph());
+					}
+					documentImported(sDocName);
 				}
 				
 				
@@ -254,17 +567,142 @@ public class GrAFImporter extends PepperImporterImpl implements PepperImporter
 		}//only if given Identifier belongs to an object of type SDocument or SCorpus
 	}
 
+	/** loads the IGraph of a document. The entries of a document in a corpus
+	 *  archive are copied to a temporary directory first, since the GrAF
+	 *  parser reads files only (including the files a standoff file depends on). */
+	private IGraph loadAnnoGraph(String docHeaderPath) throws GrafException, SAXException, IOException {
+		File stagingDir = null;
+		try {
+			if (corpusArchive != null) {
+				stagingDir = Files.createTempDirectory("graf-document").toFile();
+				docHeaderPath = corpusArchive.extractDocument(docHeaderPath, stagingDir).getPath();
+			}
+			if (((GrAFImporterProperties) this.getProperties()).isMapPrimaryText()) {
+				return GrafReader.getAnnoGraphWithMappedText(rscHeader, docHeaderPath);
+			} else {
+				return GrafReader.getAnnoGraph(rscHeader, docHeaderPath);
+			}
+		} finally {
+			if (stagingDir != null) {
+				deleteRecursively(stagingDir);
+			}
+		}
+	}
+	
+	/** converts a document directly from its standoff files (see 
+	 *  {@link StreamingDocumentReader}). Unlike the GrAF parser, the reader
+	 *  streams the entries of a corpus archive without extracting them.
+	 *  @return false, if the document has to be converted via its IGraph */
+	private boolean readStreaming(String docHeaderPath, SDocument sDocument) throws GrafException, SAXException, IOException {
+		if (corpusArchive != null) {
+			return streamingReader.read(corpusArchive, docHeaderPath, sDocument);
+		}
+		return streamingReader.read(docHeaderPath, sDocument);
+	}
+	
+	private static void deleteRecursively(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteRecursively(child);
+			}
+		}
+		file.delete();
+	}
+	
+	/** closes the corpus archive (if any), shuts the conversion pool down
+	 *  and releases the shared resource header once all documents are
+	 *  imported */
+	@Override
+	public void end() throws PepperModuleException {
+		super.end();
+		if (conversionPool != null) {
+			conversionPool.shutdown();
+			conversionPool = null;
+		}
+		documentPipeline = null;
+		streamingReader = null;
+		if (verifiedDocCount.get() > 0) {
+			logger.info(differingDocCount.get()+" of "+verifiedDocCount.get()+" verified documents differ from their GrAF graphs.");
+		}
+		if (fingerprintStore != null) {
+			try {
+				fingerprintStore.putAll(importedFingerprints);
+				fingerprintStore.close();
+			} catch (IOException e) {
+				logger.warn("Cannot write the fingerprints of the imported documents to "+fingerprintStore.getJournalFile()+". ", e);
+			}
+			fingerprintStore = null;
+			importedFingerprints.clear();
+		}
+		if (checkpointJournal != null) {
+			try {
+				checkpointJournal.close();
+			} catch (IOException e) {
+				logger.warn("Cannot close the checkpoint file "+checkpointJournal.getJournalFile()+". ", e);
+			}
+			checkpointJournal = null;
+		}
+		symbolTable = null;
+		// a long-running Pepper instance must not keep the header of every
+		// corpus it imported
+		if (rscHeader != null) {
+			GrafResourceHeader.releaseShared(rscHeader);
+			rscHeader = null;
+		}
+		if (corpusArchive != null) {
+			try {
+				corpusArchive.close();
+			} catch (IOException e) {
+				logger.warn("Cannot close the corpus archive "+corpusArchive.getArchiveFile()+". ", e);
+			}
+			corpusArchive = null;
+		}
+	}
+
 	/** find floating nodes in an IGraph and link them to a fake region
 	 *  that covers an empty segment of primary text located between
 	 *  the preceding and succeeding segments of primary text.
 	 * @throws GrafException */
 	public static IGraph repairFloatingNodes(IGraph iGraph) throws GrafException {
+		return repairFloatingNodes(iGraph, null);
+	}
+
+	/** like {@link #repairFloatingNodes(IGraph)}, but the offsets of the 
+	 *  floating nodes are computed tree by tree (in parallel, if a ForkJoinPool
+	 *  is given) before any node is changed. Since a repaired floating node 
+	 *  only gets the offsets of its neighbouring leaf nodes, this yields the 
+	 *  same regions as repairing one node after the other.
+	 * @throws GrafException */
+	public static IGraph repairFloatingNodes(IGraph iGraph, ForkJoinPool pool) throws GrafException {
 		DefaultImplementation grafFactory = new DefaultImplementation();
 
+		// the index describes the graph before any floating node is repaired
+		final IndexedGraph indexedGraph = new IndexedGraph(iGraph);
+		SyntaxForest forest = new SyntaxForest(indexedGraph);
+		List<Map<INode, int[]>> treeOffsets = forest.processTrees(new SyntaxForest.TreeTask<Map<INode, int[]>>() {
+			@Override
+			public Map<INode, int[]> process(List<INode> tree) throws GrafException {
+				Map<INode, int[]> floatingNodeOffsets = new IdentityHashMap<INode, int[]>();
+				for (INode iNode : tree) {
+					int node = indexedGraph.getNodeOrdinal(iNode);
+					if (indexedGraph.isFloatingNode(node)) {
+						floatingNodeOffsets.put(iNode, GrafReader.getFloatingNodeOffsets(indexedGraph, node));
+					}
+				}
+				return floatingNodeOffsets;
+			}
+		}, pool);
+		Map<INode, int[]> offsetsMap = new IdentityHashMap<INode, int[]>();
+		for (Map<INode, int[]> floatingNodeOffsets : treeOffsets) {
+			offsetsMap.putAll(floatingNodeOffsets);
+		}
+
+		// fake regions are numbered in the order of the nodes in the IGraph
 		int floatingNodeCount = 0;
 		for (INode iNode : iGraph.getNodes()) {
-			if (GrafReader.isFloatingNode(iNode)) {
-				int[] floatingNodeOffsets = GrafReader.getFloatingNodeOffsets(iGraph, iNode);
+			int[] floatingNodeOffsets = offsetsMap.get(iNode);
+			if (floatingNodeOffsets != null) {
 				IRegion emptyRegion = grafFactory.newRegion("seg-fake"+floatingNodeCount,
 													Long.valueOf(floatingNodeOffsets[0]),
 													Long.valueOf(floatingNodeOffsets[1]));
@@ -37,12 +37,48 @@ public class GrAFImporterProperties extends PepperModuleProperties {
 	public static final String PROP_TOKENIZATION_LAYER = PREFIX + "tokenizationLayer";
 	public static final String PROP_POS_LAYER = PREFIX + "posLayer";
 	public static final String PROP_HEADER_FILE_ENDING = PREFIX + "headerEnding";
+	public static final String PROP_FINGERPRINT_STORE = PREFIX + "fingerprintStore";
+	public static final String PROP_CACHE_DIR = PREFIX + "cacheDir";
+	public static final String PROP_CACHE_MAX_SIZE = PREFIX + "cacheMaxSize";
+	public static final String PROP_CHECKPOINT_FILE = PREFIX + "checkpointFile";
+	public static final String PROP_RESUME = PREFIX + "resume";
+	public static final String PROP_RESUME_OVERLAP = PREFIX + "resumeOverlap";
+	public static final String PROP_SHARD_INDEX = PREFIX + "shardIndex";
+	public static final String PROP_SHARD_COUNT = PREFIX + "shardCount";
+	public static final String PROP_SHARD_STRATEGY = PREFIX + "shardStrategy";
+	public static final String PROP_LARGEST_FIRST = PREFIX + "largestFirst";
+	public static final String PROP_MAP_PRIMARY_TEXT = PREFIX + "mapPrimaryText";
+	public static final String PROP_CONVERSION_THREADS = PREFIX + "conversionThreads";
+	public static final String PROP_MERGE_SPANS = PREFIX + "mergeSpans";
+	public static final String PROP_STREAMING = PREFIX + "streaming";
+	public static final String PROP_WINDOW_SIZE = PREFIX + "windowSize";
+	public static final String PROP_VERIFY = PREFIX + "verify";
+	public static final String PROP_DRY_RUN = PREFIX + "dryRun";
+	public static final String PROP_CALIBRATION_PROFILE = PREFIX + "calibrationProfile";
 
 	public GrAFImporterProperties() {
 		this.addProperty(new PepperModuleProperty<String>(PROP_SYNTAX_LAYER, String.class, "This property determines the name for the syntax layer in the GrAF encoded corpus.", "f.ptb", false));
 		this.addProperty(new PepperModuleProperty<String>(PROP_TOKENIZATION_LAYER, String.class, "This property determines the name for the tokenization layer in the GrAF encoded corpus.", "f.seg", false));
 		this.addProperty(new PepperModuleProperty<String>(PROP_POS_LAYER, String.class, "This property determines the name for the pos annotations in the GrAF encoded corpus.", "f.penn", false));
 		this.addProperty(new PepperModuleProperty<String>(PROP_HEADER_FILE_ENDING, String.class, "This property determines ending of the header files.", ".hdr", false));
+		this.addProperty(new PepperModuleProperty<String>(PROP_FINGERPRINT_STORE, String.class, "This property determines the path of a file, in which the fingerprints (hashes of header, primary text and standoff files) of all imported documents are stored. If set, documents whose fingerprint did not change since the last import are skipped. The fingerprints are stored once the importer has passed on all documents; failures of later modules (e.g. the exporter) aren't noticed, so after such a failure the fingerprint store has to be deleted to import the documents again.", null, false));
+		this.addProperty(new PepperModuleProperty<String>(PROP_CACHE_DIR, String.class, "This property determines a directory, in which converted documents are cached. A document is taken from the cache, if neither its GrAF files nor the importer properties changed since it was cached.", null, false));
+		this.addProperty(new PepperModuleProperty<Integer>(PROP_CACHE_MAX_SIZE, Integer.class, "This property determines the maximal size of the document cache in megabytes. If the cache grows larger, the least recently used documents are removed from it.", 1024, false));
+		this.addProperty(new PepperModuleProperty<String>(PROP_CHECKPOINT_FILE, String.class, "This property determines the path of a checkpoint file, to which the ID of every successfully imported document is written. Together with the property '" + PROP_RESUME + "', an interrupted import can be resumed.", null, false));
+		this.addProperty(new PepperModuleProperty<Boolean>(PROP_RESUME, Boolean.class, "If this property is set to true, all documents listed in the checkpoint file (see '" + PROP_CHECKPOINT_FILE + "') are skipped, i.e. an interrupted import is resumed. Otherwise, the checkpoint file is overwritten.", false, false));
+		this.addProperty(new PepperModuleProperty<Integer>(PROP_RESUME_OVERLAP, Integer.class, "This property determines how many of the documents last written to the checkpoint file (see '" + PROP_CHECKPOINT_FILE + "') are imported again when resuming, since a document is checkpointed once it is converted, which doesn't mean it was exported already. It should be at least the number of documents Pepper processes at once ('pepper.maxAmountOfProcessedSDocuments').", 50, false));
+		this.addProperty(new PepperModuleProperty<Integer>(PROP_SHARD_INDEX, Integer.class, "This property determines which shard of the corpus is imported (starting with 0), if the corpus is split into several shards (see '" + PROP_SHARD_COUNT + "').", 0, false));
+		this.addProperty(new PepperModuleProperty<Integer>(PROP_SHARD_COUNT, Integer.class, "This property determines into how many disjoint shards the documents of the corpus are split, e.g. to import them with several processes. Only the documents of the shard given by '" + PROP_SHARD_INDEX + "' are imported.", 1, false));
+		this.addProperty(new PepperModuleProperty<String>(PROP_SHARD_STRATEGY, String.class, "This property determines how documents are assigned to shards: '" + CorpusSharder.HASH + "' assigns each document based on a hash of its ID (stable even if the corpus changes), '" + CorpusSharder.SIZE + "' balances the shards by the size of the documents' files.", CorpusSharder.HASH, false));
+		this.addProperty(new PepperModuleProperty<Boolean>(PROP_LARGEST_FIRST, Boolean.class, "If this property is set to true, documents are imported in order of their estimated conversion cost (based on the annotation types and sizes of their files), most expensive first. This shortens the overall import time when documents are imported in parallel.", false, false));
+		this.addProperty(new PepperModuleProperty<Boolean>(PROP_MAP_PRIMARY_TEXT, Boolean.class, "If this property is set to true, the primary text files are memory-mapped and decoded lazily instead of being read onto the heap while loading the GrAF files. This lowers the memory needed for documents with very large primary texts.", false, false));
+		this.addProperty(new PepperModuleProperty<Integer>(PROP_CONVERSION_THREADS, Integer.class, "This property determines the number of threads used to convert a single document: its annotation spaces and its syntax trees are converted in parallel. With 1, each document is converted by one thread only.", 1, false));
+		this.addProperty(new PepperModuleProperty<Boolean>(PROP_MERGE_SPANS, Boolean.class, "If this property is set to true, GrAF nodes covering exactly the same tokens (e.g. from different annotation spaces) share one SSpan, instead of getting an SSpan each.", false, false));
+		this.addProperty(new PepperModuleProperty<Boolean>(PROP_STREAMING, Boolean.class, "If this property is set to true, documents without edges (i.e. without syntax trees) are converted directly from their standoff files while parsing them, without building the GrAF graph in memory. All other documents are converted as usual.", false, false));
+		this.addProperty(new PepperModuleProperty<Integer>(PROP_WINDOW_SIZE, Integer.class, "This property determines the number of characters of primary text converted at once. Documents are split into windows of this size at the boundaries of their syntax trees, and the windows are converted one after the other. With 0, documents are converted in one go.", 0, false));
+		this.addProperty(new PepperModuleProperty<Boolean>(PROP_VERIFY, Boolean.class, "If this property is set to true, the structural fingerprint of every converted document (offsets, coverage, annotations and dominance) is compared to the one of its GrAF graph, and every difference is logged.", false, false));
+		this.addProperty(new PepperModuleProperty<Boolean>(PROP_DRY_RUN, Boolean.class, "If this property is set to true, no document is converted. Instead, the conversion time, the numbers of tokens and spans and the peak heap of every document are estimated from its header and the sizes of its files, and documents that would exceed the heap are reported together with a window size (see '" + PROP_WINDOW_SIZE + "') for them.", false, false));
+		this.addProperty(new PepperModuleProperty<String>(PROP_CALIBRATION_PROFILE, String.class, "This property determines the path of a calibration profile (a properties file, see '" + PROP_DRY_RUN + "') measured for the corpus. If not set, rough default figures are used.", null, false));
 	}
 
 	/**
@@ -90,4 +126,195 @@ public class GrAFImporterProperties extends PepperModuleProperties {
 		PepperModuleProperty<String> prop = (PepperModuleProperty<String>) this.getProperty(PROP_HEADER_FILE_ENDING);
 		return prop.getValue().toString();
 	}
+
+	/**
+	 * Returns the path of the file storing the document fingerprints of the
+	 * last import or null, if incremental import is disabled.
+	 */
+	@SuppressWarnings("unchecked")
+	public String getFingerprintStore() {
+		PepperModuleProperty<String> prop = (PepperModuleProperty<String>) this.getProperty(PROP_FINGERPRINT_STORE);
+		if (prop.getValue() == null)
+			return (null);
+		else
+			return prop.getValue().toString();
+	}
+
+	/**
+	 * Returns the directory of the document cache or null, if converted
+	 * documents shall not be cached.
+	 */
+	@SuppressWarnings("unchecked")
+	public String getCacheDir() {
+		PepperModuleProperty<String> prop = (PepperModuleProperty<String>) this.getProperty(PROP_CACHE_DIR);
+		if (prop.getValue() == null)
+			return (null);
+		else
+			return prop.getValue().toString();
+	}
+
+	/**
+	 * Returns the maximal size of the document cache in megabytes.
+	 */
+	@SuppressWarnings("unchecked")
+	public int getCacheMaxSize() {
+		PepperModuleProperty<Integer> prop = (PepperModuleProperty<Integer>) this.getProperty(PROP_CACHE_MAX_SIZE);
+		return prop.getValue();
+	}
+
+	/**
+	 * Returns the values of all properties that influence how a document is
+	 * converted, e.g. to decide whether a cached conversion can be reused.
+	 */
+	public String[] getConversionSettings() {
+		return new String[] { getSyntaxLayer(), getTokenizationLayer(), getPOSLayer(), String.valueOf(isMergeSpans()), String.valueOf(isStreaming()), String.valueOf(getWindowSize()) };
+	}
+
+	/**
+	 * Returns the path of the checkpoint file or null, if no checkpoints shall
+	 * be written.
+	 */
+	@SuppressWarnings("unchecked")
+	public String getCheckpointFile() {
+		PepperModuleProperty<String> prop = (PepperModuleProperty<String>) this.getProperty(PROP_CHECKPOINT_FILE);
+		if (prop.getValue() == null)
+			return (null);
+		else
+			return prop.getValue().toString();
+	}
+
+	/**
+	 * Returns true, if an interrupted import shall be resumed.
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean isResume() {
+		PepperModuleProperty<Boolean> prop = (PepperModuleProperty<Boolean>) this.getProperty(PROP_RESUME);
+		return Boolean.TRUE.equals(prop.getValue());
+	}
+
+	/**
+	 * Returns the number of documents last written to the checkpoint file,
+	 * which are imported again when resuming.
+	 */
+	@SuppressWarnings("unchecked")
+	public int getResumeOverlap() {
+		PepperModuleProperty<Integer> prop = (PepperModuleProperty<Integer>) this.getProperty(PROP_RESUME_OVERLAP);
+		return prop.getValue();
+	}
+
+	/**
+	 * Returns the number of the shard to import.
+	 */
+	@SuppressWarnings("unchecked")
+	public int getShardIndex() {
+		PepperModuleProperty<Integer> prop = (PepperModuleProperty<Integer>) this.getProperty(PROP_SHARD_INDEX);
+		return prop.getValue();
+	}
+
+	/**
+	 * Returns the number of shards the corpus is split into.
+	 */
+	@SuppressWarnings("unchecked")
+	public int getShardCount() {
+		PepperModuleProperty<Integer> prop = (PepperModuleProperty<Integer>) this.getProperty(PROP_SHARD_COUNT);
+		return prop.getValue();
+	}
+
+	/**
+	 * Returns the strategy used to assign documents to shards.
+	 */
+	@SuppressWarnings("unchecked")
+	public String getShardStrategy() {
+		PepperModuleProperty<String> prop = (PepperModuleProperty<String>) this.getProperty(PROP_SHARD_STRATEGY);
+		return prop.getValue().toString();
+	}
+
+	/**
+	 * Returns true, if the most expensive documents shall be imported first.
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean isLargestFirst() {
+		PepperModuleProperty<Boolean> prop = (PepperModuleProperty<Boolean>) this.getProperty(PROP_LARGEST_FIRST);
+		return Boolean.TRUE.equals(prop.getValue());
+	}
+
+	/**
+	 * Returns whether the primary text files shall be memory-mapped.
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean isMapPrimaryText() {
+		PepperModuleProperty<Boolean> prop = (PepperModuleProperty<Boolean>) this.getProperty(PROP_MAP_PRIMARY_TEXT);
+		return Boolean.TRUE.equals(prop.getValue());
+	}
+
+	/**
+	 * Returns the number of threads used to convert a single document.
+	 */
+	@SuppressWarnings("unchecked")
+	public int getConversionThreads() {
+		PepperModuleProperty<Integer> prop = (PepperModuleProperty<Integer>) this.getProperty(PROP_CONVERSION_THREADS);
+		return prop.getValue();
+	}
+
+	/**
+	 * Returns whether nodes covering the same tokens shall share one SSpan.
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean isMergeSpans() {
+		PepperModuleProperty<Boolean> prop = (PepperModuleProperty<Boolean>) this.getProperty(PROP_MERGE_SPANS);
+		return Boolean.TRUE.equals(prop.getValue());
+	}
+
+	/**
+	 * Returns whether documents without edges shall be converted directly
+	 * while streaming their standoff files.
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean isStreaming() {
+		PepperModuleProperty<Boolean> prop = (PepperModuleProperty<Boolean>) this.getProperty(PROP_STREAMING);
+		return Boolean.TRUE.equals(prop.getValue());
+	}
+
+	/**
+	 * Returns the number of characters of primary text converted at once, 0
+	 * if documents are converted in one go.
+	 */
+	@SuppressWarnings("unchecked")
+	public int getWindowSize() {
+		PepperModuleProperty<Integer> prop = (PepperModuleProperty<Integer>) this.getProperty(PROP_WINDOW_SIZE);
+		return prop.getValue();
+	}
+
+	/**
+	 * Returns whether converted documents shall be compared to their GrAF
+	 * graphs via their fingerprints.
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean isVerify() {
+		PepperModuleProperty<Boolean> prop = (PepperModuleProperty<Boolean>) this.getProperty(PROP_VERIFY);
+		return Boolean.TRUE.equals(prop.getValue());
+	}
+
+	/**
+	 * Returns true, if the import shall only be estimated instead of being
+	 * carried out.
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean isDryRun() {
+		PepperModuleProperty<Boolean> prop = (PepperModuleProperty<Boolean>) this.getProperty(PROP_DRY_RUN);
+		return Boolean.TRUE.equals(prop.getValue());
+	}
+
+	/**
+	 * Returns the path of the calibration profile for dry runs or null, if the
+	 * default profile shall be used.
+	 */
+	@SuppressWarnings("unchecked")
+	public String getCalibrationProfile() {
+		PepperModuleProperty<String> prop = (PepperModuleProperty<String>) this.getProperty(PROP_CALIBRATION_PROFILE);
+		if (prop.getValue() == null)
+			return (null);
+		else
+			return prop.getValue().toString();
+	}
 }
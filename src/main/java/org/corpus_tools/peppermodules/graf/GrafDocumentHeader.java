@@ -20,19 +20,40 @@ package org.corpus_tools.peppermodules.graf;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import javax.xml.namespace.QName;
 import javax.xml.xpath.XPathExpressionException;
 
 import org.w3c.dom.Node;
 import org.xces.graf.api.GrafException;
 import org.xces.graf.io.dom.DocumentHeader;
 
+/**
+ * A document header, i.e. the xml file listing the primary text and standoff
+ * files of a document. XPath expressions are compiled once per thread (see
+ * {@link HeaderXPath}) and the fields read from the header (ID, title,
+ * annotation types and file locations) are memoized, since they are asked for
+ * over and over again while importing. Like the DOM it wraps, a header isn't
+ * thread-safe.
+ */
 public class GrafDocumentHeader extends DocumentHeader {
 
+	/** the header file this object was read from (null if read from a stream) */
+	private File headerFile = null;
+	private String documentId = null;
+	private String documentTitle = null;
+	private String contentLocation = null;
+	private List<String> annotationTypes = null;
+	private final Map<String, String> annoTypeLocationMap = new HashMap<String, String>();
+
 	public GrafDocumentHeader(File headerFile) throws FileNotFoundException {
 		super(headerFile);
-		// Auto-generated constructor stub
+		this.headerFile = headerFile;
 	}
 
 	public GrafDocumentHeader(InputStream input) {
@@ -42,7 +63,7 @@ public class GrafDocumentHeader extends DocumentHeader {
 
 	/** constructs a document header object given the header's file path */
 	public GrafDocumentHeader(String pathToHeaderFile) throws FileNotFoundException {
-		super(loadHeaderFile(pathToHeaderFile));
+		this(loadHeaderFile(pathToHeaderFile));
 	}
 
 	/**
@@ -85,8 +106,11 @@ public class GrafDocumentHeader extends DocumentHeader {
 
 	/** returns the title of the document */
 	public String getDocumentTitle() throws XPathExpressionException {
-		Node srcDescNode = this.getNode("/g:documentHeader/g:fileDesc/g:sourceDesc/g:title");
-		return srcDescNode.getTextContent();
+		if (documentTitle == null) {
+			Node srcDescNode = this.getNode("/g:documentHeader/g:fileDesc/g:sourceDesc/g:title");
+			documentTitle = srcDescNode.getTextContent();
+		}
+		return documentTitle;
 	}
 
 	/**
@@ -95,7 +119,117 @@ public class GrafDocumentHeader extends DocumentHeader {
 	 * @throws XPathExpressionException
 	 */
 	public String getDocumentId() throws XPathExpressionException {
-		Node docHeaderNode = this.getNode("/g:documentHeader");
-		return this.getAttributeValue(docHeaderNode, "docId");
+		if (documentId == null) {
+			Node docHeaderNode = this.getNode("/g:documentHeader");
+			documentId = this.getAttributeValue(docHeaderNode, "docId");
+		}
+		return documentId;
+	}
+
+	@Override
+	public Object getXPath(String expression, QName returnType) throws XPathExpressionException {
+		return HeaderXPath.evaluate(xpath, expression, header, returnType);
+	}
+
+	/** returns the annotation types listed in the header (read only once) */
+	@Override
+	public List<String> getAnnotationTypes() throws GrafException {
+		if (annotationTypes == null) {
+			annotationTypes = Collections.unmodifiableList(super.getAnnotationTypes());
+		}
+		return new ArrayList<String>(annotationTypes);
+	}
+
+	/** returns the location of the standoff file of an annotation type (read only once per type) */
+	@Override
+	public String getAnnotationLocation(String annoType) throws GrafException {
+		if (!isValid()) {
+			return super.getAnnotationLocation(annoType);
+		}
+		if (!annoTypeLocationMap.containsKey(annoType)) {
+			annoTypeLocationMap.put(annoType, super.getAnnotationLocation(annoType));
+		}
+		return annoTypeLocationMap.get(annoType);
+	}
+
+	@Override
+	public void setAnnotationLocation(String annoType, String annoLocation, String annoDescription) throws GrafException {
+		super.setAnnotationLocation(annoType, annoLocation, annoDescription);
+		annotationTypes = null;
+		annoTypeLocationMap.clear();
+	}
+
+	/** returns the location of the primary text file (read only once) */
+	@Override
+	public String getContentLocation() throws GrafException {
+		if (contentLocation == null) {
+			contentLocation = super.getContentLocation();
+		}
+		return contentLocation;
+	}
+
+	/** returns the header file or null, if the header was read from a stream */
+	public File getHeaderFile() {
+		return headerFile;
+	}
+
+	/**
+	 * returns all files a document consists of, i.e. the document header
+	 * itself, the primary text file and the standoff files of all annotation
+	 * types listed in the header. Paths in the header are resolved relative to
+	 * the directory of the header file.
+	 */
+	public List<File> getDocumentFiles() throws GrafException {
+		List<File> documentFiles = new ArrayList<File>();
+		documentFiles.add(new File(getHeaderDirectory(), headerFile.getName()));
+		File contentFile = getContentFile();
+		if (contentFile != null) {
+			documentFiles.add(contentFile);
+		}
+		for (String annoType : this.getAnnotationTypes()) {
+			File annoFile = getAnnotationFile(annoType);
+			if (annoFile != null) {
+				documentFiles.add(annoFile);
+			}
+		}
+		return documentFiles;
+	}
+
+	/**
+	 * returns the primary text file of the document (or null, if the header
+	 * doesn't specify one).
+	 */
+	public File getContentFile() throws GrafException {
+		String contentLocation = this.getContentLocation();
+		return contentLocation == null ? null : new File(getHeaderDirectory(), contentLocation);
+	}
+
+	/**
+	 * returns the standoff file of the given annotation type, e.g. 'f.seg' (or
+	 * null, if the document isn't annotated with that type).
+	 */
+	public File getAnnotationFile(String annoType) throws GrafException {
+		String annoLocation = this.getAnnotationLocation(annoType);
+		return annoLocation == null ? null : new File(getHeaderDirectory(), annoLocation);
+	}
+
+	/** returns the directory containing the header file */
+	private File getHeaderDirectory() throws GrafException {
+		if (headerFile == null) {
+			throw new GrafException("Cannot locate the files of a document header that was not read from a file.");
+		}
+		return headerFile.getAbsoluteFile().getParentFile();
+	}
+
+	/**
+	 * returns the size (in bytes) of all files a document consists of (see
+	 * getDocumentFiles()).
+	 */
+	public long getDocumentSize() throws GrafException {
+		long documentSize = 0;
+		for (File documentFile : getDocumentFiles()) {
+			documentSize += documentFile.length();
+		}
+		return documentSize;
 	}
 }
@@ -0,0 +1,613 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.corpus_tools.salt.common.SDocument;
+import org.corpus_tools.salt.common.SDocumentGraph;
+import org.corpus_tools.salt.common.SDominanceRelation;
+import org.corpus_tools.salt.common.SSpan;
+import org.corpus_tools.salt.common.SSpanningRelation;
+import org.corpus_tools.salt.common.STextualDS;
+import org.corpus_tools.salt.common.STextualRelation;
+import org.corpus_tools.salt.common.SToken;
+import org.corpus_tools.salt.core.SAnnotation;
+import org.corpus_tools.salt.core.SLayer;
+import org.corpus_tools.salt.core.SNode;
+
+/**
+ * Writes the SDocumentGraph of an SDocument as a GrAF document: the primary
+ * text, one standoff file per annotation space and the document header. This
+ * is the reverse of the mapping of the {@link GrAFImporter}:
+ * 
+ * <ul>
+ * <li>every SLayer becomes an annotation space (STokens, SSpans and
+ * SStructures without a layer are put into the space
+ * {@value AnnotationSpaceConverter#NOT_ANNOTATED}),</li>
+ * <li>every SToken becomes a region and a node linking to it,</li>
+ * <li>every SSpan becomes a node linking to the regions of its STokens,</li>
+ * <li>every SStructure becomes a node with an edge to each node it
+ * dominates,</li>
+ * <li>the SAnnotations of a node become the features of its annotation
+ * (their namespaces are dropped, the annotation space takes their
+ * place).</li>
+ * </ul>
+ * 
+ * Everything that needs to traverse the Salt graph is looked up by the calling
+ * thread beforehand. Afterwards, every standoff file is streamed to disk by a
+ * task of its own via a buffered {@link XMLStreamWriter}, on an
+ * ExecutorService if one is given. The document header is written last, once
+ * all other files are complete.
+ * 
+ * The GrAF parser resolves references to nodes and regions of other files
+ * only if these files were loaded before (see 'dependsOn'). A node is
+ * therefore written to the file of its annotation space only if everything
+ * it references is written to the same or an earlier file, otherwise to the
+ * file of the latest element it references. The annotation space of a node
+ * is given by its annotation, not by its file, so this doesn't change the
+ * imported graph.
+ * 
+ * A writer can write several documents at the same time.
+ */
+public class GrafDocumentWriter {
+	/** the namespace of GrAF headers and standoff files */
+	public static final String GRAF_NAMESPACE = "http://www.xces.org/ns/GrAF/1.0/";
+	/** the file ID of the primary text */
+	public static final String TEXT_FILE_ID = "f.text";
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final ExecutorService pool;
+	private final int bufferSize;
+
+	/**
+	 * @param pool
+	 *            - the standoff files are written on this pool, if it isn't
+	 *            null
+	 * @param bufferSize
+	 *            - the size of the write buffer of each file, in characters
+	 */
+	public GrafDocumentWriter(ExecutorService pool, int bufferSize) {
+		this.pool = pool;
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * returns the file ID of the standoff file of an annotation space, e.g.
+	 * 'f.seg' for 'seg'
+	 */
+	public static String getFileId(String annoSpaceName) {
+		return "f." + annoSpaceName;
+	}
+
+	/**
+	 * returns a name that can be used as an annotation space name, an XML ID
+	 * and a part of a file name: characters other than letters, digits, '.',
+	 * '-' and '_' are replaced by '_'.
+	 */
+	public static String toAnnotationSpaceName(String layerName) {
+		if (layerName == null || layerName.isEmpty()) {
+			return AnnotationSpaceConverter.NOT_ANNOTATED;
+		}
+		StringBuilder annoSpaceName = new StringBuilder(layerName.length() + 1);
+		if (!Character.isLetter(layerName.charAt(0)) && layerName.charAt(0) != '_') {
+			annoSpaceName.append('_');
+		}
+		for (int i = 0; i < layerName.length(); i++) {
+			char c = layerName.charAt(i);
+			annoSpaceName.append((Character.isLetterOrDigit(c) || c == '.' || c == '-' || c == '_') ? c : '_');
+		}
+		return annoSpaceName.toString();
+	}
+
+	/**
+	 * writes an SDocument as a GrAF document. The primary text and the
+	 * standoff files are put next to the header file, their names start with
+	 * the name of the header file (without ending).
+	 * 
+	 * @return the names of the annotation spaces of the document
+	 */
+	public List<String> write(SDocument sDocument, File headerFile) throws IOException {
+		final DocumentPlan plan = new DocumentPlan(sDocument.getDocumentGraph());
+		File documentDir = headerFile.getAbsoluteFile().getParentFile();
+		if (!documentDir.isDirectory() && !documentDir.mkdirs()) {
+			throw new IOException("Cannot create the directory " + documentDir + ". ");
+		}
+		String baseName = headerFile.getName();
+		if (baseName.lastIndexOf('.') > 0) {
+			baseName = baseName.substring(0, baseName.lastIndexOf('.'));
+		}
+
+		final File textFile = new File(documentDir, baseName + ".txt");
+		List<Callable<Void>> writeTasks = new ArrayList<Callable<Void>>();
+		writeTasks.add(new Callable<Void>() {
+			@Override
+			public Void call() throws IOException {
+				Writer writer = openWriter(textFile);
+				try {
+					writer.write(plan.text);
+				} finally {
+					writer.close();
+				}
+				return null;
+			}
+		});
+		final List<File> standoffFiles = new ArrayList<File>();
+		for (int file = 0; file < plan.spaceNames.size(); file++) {
+			standoffFiles.add(new File(documentDir, baseName + "-" + plan.spaceNames.get(file) + ".xml"));
+			if (plan.fileNodes[file].size == 0) {
+				continue;
+			}
+			final int writtenFile = file;
+			writeTasks.add(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					writeStandoffFile(plan, writtenFile, standoffFiles.get(writtenFile));
+					return null;
+				}
+			});
+		}
+		runAll(writeTasks);
+
+		writeDocumentHeader(sDocument.getName(), headerFile, textFile, plan, standoffFiles);
+		List<String> annoSpaceNames = new ArrayList<String>();
+		for (int file = 0; file < plan.spaceNames.size(); file++) {
+			if (plan.fileNodes[file].size > 0) {
+				annoSpaceNames.add(plan.spaceNames.get(file));
+			}
+		}
+		return annoSpaceNames;
+	}
+
+	/** runs the tasks on the pool (if any) and waits for all of them */
+	private void runAll(List<Callable<Void>> tasks) throws IOException {
+		if (pool == null) {
+			for (Callable<Void> task : tasks) {
+				try {
+					task.call();
+				} catch (IOException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new IOException("Cannot write the GrAF files. ", e);
+				}
+			}
+			return;
+		}
+		List<Future<Void>> results;
+		try {
+			results = pool.invokeAll(tasks);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing the GrAF files. ", e);
+		}
+		for (Future<Void> result : results) {
+			try {
+				result.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while writing the GrAF files. ", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				} else if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new IOException("Cannot write the GrAF files. ", e.getCause());
+			}
+		}
+	}
+
+	private Writer openWriter(File file) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF8), bufferSize);
+	}
+
+	/** writes the regions, nodes, annotations and edges of one file */
+	private void writeStandoffFile(DocumentPlan plan, int file, File standoffFile) throws IOException {
+		Writer writer = openWriter(standoffFile);
+		try {
+			XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(writer);
+			xml.writeStartDocument("UTF-8", "1.0");
+			xml.writeStartElement("graph");
+			xml.writeDefaultNamespace(GRAF_NAMESPACE);
+
+			xml.writeStartElement("header");
+			BitSet dependencies = new BitSet();
+			BitSet annoSpaces = new BitSet();
+			IntList nodes = plan.fileNodes[file];
+			for (int i = 0; i < nodes.size; i++) {
+				int node = nodes.get(i);
+				annoSpaces.set(plan.nodeSpaces[node]);
+				IntList targets = plan.nodeTargets[node];
+				for (int j = 0; targets != null && j < targets.size; j++) {
+					dependencies.set(plan.nodeFiles[targets.get(j)]);
+				}
+			}
+			dependencies.clear(file);
+			for (int dependency = dependencies.nextSetBit(0); dependency >= 0; dependency = dependencies.nextSetBit(dependency + 1)) {
+				xml.writeEmptyElement("dependsOn");
+				xml.writeAttribute("f.id", getFileId(plan.spaceNames.get(dependency)));
+			}
+			xml.writeStartElement("annotationSpaces");
+			for (int annoSpace = annoSpaces.nextSetBit(0); annoSpace >= 0; annoSpace = annoSpaces.nextSetBit(annoSpace + 1)) {
+				xml.writeEmptyElement("annotationSpace");
+				xml.writeAttribute("as.id", plan.spaceNames.get(annoSpace));
+			}
+			xml.writeEndElement();
+			xml.writeEndElement();
+
+			for (int i = 0; i < nodes.size; i++) {
+				int node = nodes.get(i);
+				if (plan.isToken(node) && plan.tokenStarts[node] >= 0) {
+					xml.writeEmptyElement("region");
+					xml.writeAttribute(XMLConstants.XML_NS_PREFIX, XMLConstants.XML_NS_URI, "id", "r" + node);
+					xml.writeAttribute("anchors", plan.tokenStarts[node] + " " + plan.tokenEnds[node]);
+				}
+			}
+			for (int i = 0; i < nodes.size; i++) {
+				writeNode(xml, plan, nodes.get(i));
+			}
+			for (int i = 0; i < nodes.size; i++) {
+				int node = nodes.get(i);
+				IntList targets = plan.nodeTargets[node];
+				if (plan.isStructure(node) && targets != null) {
+					for (int j = 0; j < targets.size; j++) {
+						xml.writeEmptyElement("edge");
+						xml.writeAttribute(XMLConstants.XML_NS_PREFIX, XMLConstants.XML_NS_URI, "id", "e" + node + "-" + j);
+						xml.writeAttribute("from", "n" + node);
+						xml.writeAttribute("to", "n" + targets.get(j));
+					}
+				}
+			}
+			xml.writeEndElement();
+			xml.writeEndDocument();
+			xml.close();
+		} catch (XMLStreamException e) {
+			throw new IOException("Cannot write the standoff file " + standoffFile + ". ", e);
+		} finally {
+			writer.close();
+		}
+	}
+
+	/** writes a node, its link to the regions it covers and its annotation */
+	private void writeNode(XMLStreamWriter xml, DocumentPlan plan, int node) throws XMLStreamException {
+		StringBuilder linkTargets = new StringBuilder();
+		if (plan.isToken(node)) {
+			if (plan.tokenStarts[node] >= 0) {
+				linkTargets.append('r').append(node);
+			}
+		} else if (!plan.isStructure(node) && plan.nodeTargets[node] != null) {
+			IntList tokens = plan.nodeTargets[node];
+			for (int i = 0; i < tokens.size; i++) {
+				if (plan.tokenStarts[tokens.get(i)] >= 0) {
+					linkTargets.append((linkTargets.length() > 0) ? " r" : "r").append(tokens.get(i));
+				}
+			}
+		}
+		String nodeId = "n" + node;
+		if (linkTargets.length() > 0) {
+			xml.writeStartElement("node");
+			xml.writeAttribute(XMLConstants.XML_NS_PREFIX, XMLConstants.XML_NS_URI, "id", nodeId);
+			xml.writeEmptyElement("link");
+			xml.writeAttribute("targets", linkTargets.toString());
+			xml.writeEndElement();
+		} else {
+			xml.writeEmptyElement("node");
+			xml.writeAttribute(XMLConstants.XML_NS_PREFIX, XMLConstants.XML_NS_URI, "id", nodeId);
+		}
+
+		// the GrAF parser only keeps annotated nodes, so every node gets an
+		// annotation, even if it has no features
+		String annoSpaceName = plan.spaceNames.get(plan.nodeSpaces[node]);
+		Collection<SAnnotation> annotations = plan.nodes[node].getAnnotations();
+		if (annotations.isEmpty()) {
+			xml.writeEmptyElement("a");
+		} else {
+			xml.writeStartElement("a");
+		}
+		xml.writeAttribute(XMLConstants.XML_NS_PREFIX, XMLConstants.XML_NS_URI, "id", "a" + node);
+		xml.writeAttribute("label", annoSpaceName);
+		xml.writeAttribute("ref", nodeId);
+		xml.writeAttribute("as", annoSpaceName);
+		if (!annotations.isEmpty()) {
+			xml.writeStartElement("fs");
+			for (SAnnotation annotation : annotations) {
+				xml.writeEmptyElement("f");
+				xml.writeAttribute("name", annotation.getName());
+				xml.writeAttribute("value", (annotation.getValue() != null) ? String.valueOf(annotation.getValue()) : "");
+			}
+			xml.writeEndElement();
+			xml.writeEndElement();
+		}
+	}
+
+	/** writes the document header listing the primary text and standoff files */
+	private void writeDocumentHeader(String docId, File headerFile, File textFile, DocumentPlan plan, List<File> standoffFiles) throws IOException {
+		Writer writer = openWriter(headerFile);
+		try {
+			XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(writer);
+			xml.writeStartDocument("UTF-8", "1.0");
+			xml.writeStartElement("documentHeader");
+			xml.writeDefaultNamespace(GRAF_NAMESPACE);
+			xml.writeAttribute("docId", docId);
+			xml.writeStartElement("profileDesc");
+			xml.writeEmptyElement("primaryData");
+			xml.writeAttribute("loc", textFile.getName());
+			xml.writeAttribute("f.id", TEXT_FILE_ID);
+			xml.writeStartElement("annotations");
+			// in file order, so that files are loaded after the ones they
+			// depend on
+			for (int file = 0; file < standoffFiles.size(); file++) {
+				if (plan.fileNodes[file].size > 0) {
+					xml.writeEmptyElement("annotation");
+					xml.writeAttribute("loc", standoffFiles.get(file).getName());
+					xml.writeAttribute("f.id", getFileId(plan.spaceNames.get(file)));
+				}
+			}
+			xml.writeEndElement();
+			xml.writeEndElement();
+			xml.writeEndElement();
+			xml.writeEndDocument();
+			xml.close();
+		} catch (XMLStreamException e) {
+			throw new IOException("Cannot write the document header " + headerFile + ". ", e);
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * writes the resource header of a corpus, declaring the given annotation
+	 * spaces and a file type for each of them
+	 */
+	public static void writeResourceHeader(File resourceHeaderFile, Collection<String> annoSpaceNames) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(resourceHeaderFile), UTF8));
+		try {
+			XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(writer);
+			xml.writeStartDocument("UTF-8", "1.0");
+			xml.writeStartElement("resourceHeader");
+			xml.writeDefaultNamespace(GRAF_NAMESPACE);
+			xml.writeStartElement("resourceDesc");
+			xml.writeStartElement("annotationSpaces");
+			for (String annoSpaceName : annoSpaceNames) {
+				xml.writeEmptyElement("annotationSpace");
+				xml.writeAttribute(XMLConstants.XML_NS_PREFIX, XMLConstants.XML_NS_URI, "id", annoSpaceName);
+				xml.writeAttribute("pid", annoSpaceName);
+			}
+			xml.writeEndElement();
+			xml.writeStartElement("fileStruct");
+			xml.writeStartElement("fileTypes");
+			xml.writeEmptyElement("fileType");
+			xml.writeAttribute(XMLConstants.XML_NS_PREFIX, XMLConstants.XML_NS_URI, "id", TEXT_FILE_ID);
+			xml.writeAttribute("f.suffix", "txt");
+			xml.writeAttribute("medium", "text");
+			for (String annoSpaceName : annoSpaceNames) {
+				xml.writeEmptyElement("fileType");
+				xml.writeAttribute(XMLConstants.XML_NS_PREFIX, XMLConstants.XML_NS_URI, "id", getFileId(annoSpaceName));
+				xml.writeAttribute("f.suffix", annoSpaceName + ".xml");
+				xml.writeAttribute("a.ids", annoSpaceName);
+				xml.writeAttribute("medium", "xml");
+			}
+			xml.writeEndElement();
+			xml.writeEndElement();
+			xml.writeEndElement();
+			xml.writeEndElement();
+			xml.writeEndDocument();
+			xml.close();
+		} catch (XMLStreamException e) {
+			throw new IOException("Cannot write the resource header " + resourceHeaderFile + ". ", e);
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * what is looked up in the Salt graph before the files are written. The
+	 * STokens, SSpans and SStructures are numbered in this order, all other
+	 * arrays are indexed by these numbers.
+	 */
+	private static class DocumentPlan {
+		final String text;
+		final SNode[] nodes;
+		final int tokenCount;
+		final int spanCount;
+		/** the text offsets of each token, -1 if it has no textual relation */
+		final int[] tokenStarts;
+		final int[] tokenEnds;
+		/** the tokens of a span, the dominated nodes of a structure */
+		final IntList[] nodeTargets;
+		final int[] nodeSpaces;
+		final int[] nodeFiles;
+		/** the names of the annotation spaces, the files have the same numbers */
+		final List<String> spaceNames = new ArrayList<String>();
+		final IntList[] fileNodes;
+
+		DocumentPlan(SDocumentGraph docGraph) throws IOException {
+			List<STextualDS> textualDSs = docGraph.getTextualDSs();
+			// a GrAF document has a single primary text
+			if (textualDSs.size() > 1) {
+				throw new IOException("Cannot write the document graph " + docGraph.getId() + " with " + textualDSs.size() + " STextualDSs, a GrAF document has a single primary text. ");
+			}
+			text = (textualDSs.isEmpty() || textualDSs.get(0).getText() == null) ? "" : textualDSs.get(0).getText();
+
+			List<SToken> tokens = docGraph.getTokens();
+			List<SSpan> spans = docGraph.getSpans();
+			tokenCount = tokens.size();
+			spanCount = spans.size();
+			List<SNode> nodeList = new ArrayList<SNode>(tokenCount + spanCount + docGraph.getStructures().size());
+			nodeList.addAll(tokens);
+			nodeList.addAll(spans);
+			nodeList.addAll(docGraph.getStructures());
+			nodes = nodeList.toArray(new SNode[nodeList.size()]);
+			Map<SNode, Integer> nodeNumbers = new IdentityHashMap<SNode, Integer>(nodes.length * 2);
+			for (int node = 0; node < nodes.length; node++) {
+				nodeNumbers.put(nodes[node], node);
+			}
+
+			tokenStarts = new int[tokenCount];
+			tokenEnds = new int[tokenCount];
+			Arrays.fill(tokenStarts, -1);
+			for (STextualRelation textRel : docGraph.getTextualRelations()) {
+				Integer token = nodeNumbers.get(textRel.getSource());
+				if (token != null && tokenStarts[token] < 0) {
+					tokenStarts[token] = textRel.getStart();
+					tokenEnds[token] = textRel.getEnd();
+				}
+			}
+			nodeTargets = new IntList[nodes.length];
+			for (SSpanningRelation spanRel : docGraph.getSpanningRelations()) {
+				addTarget(nodeNumbers.get(spanRel.getSource()), nodeNumbers.get(spanRel.getTarget()));
+			}
+			for (SDominanceRelation domRel : docGraph.getDominanceRelations()) {
+				addTarget(nodeNumbers.get(domRel.getSource()), nodeNumbers.get(domRel.getTarget()));
+			}
+
+			// a node belongs to the annotation space of its first layer
+			Map<String, Integer> spaceNumbers = new LinkedHashMap<String, Integer>();
+			Map<SLayer, Integer> layerSpaces = new IdentityHashMap<SLayer, Integer>();
+			Map<SLayer, Integer> layerNumbers = new IdentityHashMap<SLayer, Integer>();
+			for (SLayer layer : docGraph.getLayers()) {
+				layerSpaces.put(layer, getSpaceNumber(spaceNumbers, toAnnotationSpaceName(layer.getName())));
+				layerNumbers.put(layer, layerNumbers.size());
+			}
+			nodeSpaces = new int[nodes.length];
+			for (int node = 0; node < nodes.length; node++) {
+				SLayer firstLayer = null;
+				for (SLayer layer : nodes[node].getLayers()) {
+					Integer number = layerNumbers.get(layer);
+					if (number != null && (firstLayer == null || number < layerNumbers.get(firstLayer))) {
+						firstLayer = layer;
+					}
+				}
+				nodeSpaces[node] = (firstLayer != null) ? layerSpaces.get(firstLayer) : getSpaceNumber(spaceNumbers, AnnotationSpaceConverter.NOT_ANNOTATED);
+			}
+			spaceNames.addAll(spaceNumbers.keySet());
+
+			nodeFiles = assignFiles();
+			fileNodes = new IntList[spaceNames.size()];
+			for (int file = 0; file < fileNodes.length; file++) {
+				fileNodes[file] = new IntList();
+			}
+			for (int node = 0; node < nodes.length; node++) {
+				fileNodes[nodeFiles[node]].add(node);
+			}
+		}
+
+		private static int getSpaceNumber(Map<String, Integer> spaceNumbers, String spaceName) {
+			Integer spaceNumber = spaceNumbers.get(spaceName);
+			if (spaceNumber == null) {
+				spaceNumber = spaceNumbers.size();
+				spaceNumbers.put(spaceName, spaceNumber);
+			}
+			return spaceNumber;
+		}
+
+		private void addTarget(Integer source, Integer target) {
+			if (source == null || target == null) {
+				return;
+			}
+			if (nodeTargets[source] == null) {
+				nodeTargets[source] = new IntList();
+			}
+			nodeTargets[source].add(target);
+		}
+
+		boolean isToken(int node) {
+			return node < tokenCount;
+		}
+
+		boolean isStructure(int node) {
+			return node >= tokenCount + spanCount;
+		}
+
+		/**
+		 * puts every node into the file of its annotation space or, if it
+		 * references nodes of later files, into the latest of these files.
+		 * Structures are handled in post-order (iteratively, trees can be
+		 * deep), a structure dominating itself indirectly is ignored.
+		 */
+		private int[] assignFiles() {
+			int[] files = new int[nodes.length];
+			// 0: not assigned yet, 1: on the stack, 2: assigned
+			byte[] states = new byte[nodes.length];
+			for (int node = 0; node < tokenCount + spanCount; node++) {
+				files[node] = nodeSpaces[node];
+				IntList targets = nodeTargets[node];
+				for (int i = 0; !isToken(node) && targets != null && i < targets.size; i++) {
+					files[node] = Math.max(files[node], nodeSpaces[targets.get(i)]);
+				}
+				states[node] = 2;
+			}
+			IntList stack = new IntList();
+			for (int root = tokenCount + spanCount; root < nodes.length; root++) {
+				if (states[root] != 0) {
+					continue;
+				}
+				stack.add(root);
+				states[root] = 1;
+				while (stack.size > 0) {
+					int node = stack.get(stack.size - 1);
+					IntList targets = nodeTargets[node];
+					boolean pushed = false;
+					for (int i = 0; targets != null && i < targets.size && !pushed; i++) {
+						int target = targets.get(i);
+						if (states[target] == 0) {
+							states[target] = 1;
+							stack.add(target);
+							pushed = true;
+						}
+					}
+					if (pushed) {
+						continue;
+					}
+					stack.size--;
+					files[node] = nodeSpaces[node];
+					for (int i = 0; targets != null && i < targets.size; i++) {
+						if (states[targets.get(i)] == 2) {
+							files[node] = Math.max(files[node], files[targets.get(i)]);
+						}
+					}
+					states[node] = 2;
+				}
+			}
+			return files;
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Cheaply detects whether a directory contains a GrAF corpus, e.g. for
+ * Pepper's automatic format detection. Only the resource header and a small
+ * sample of document headers are read, and of each of them only the first few
+ * kilobytes, so the detection is fast even for huge corpora.
+ */
+public class GrafFormatDetector {
+	/** the namespace used by all GrAF files (regardless of the GrAF version) */
+	public static final String GRAF_NAMESPACE = "http://www.xces.org/ns/GrAF/";
+	/** number of bytes read from the beginning of a header */
+	public static final int SNIFF_SIZE = 4096;
+	/** maximal number of document headers to read */
+	public static final int SAMPLE_SIZE = 5;
+	/** maximal number of directories to visit while looking for document headers */
+	public static final int MAX_VISITED_DIRS = 50;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * returns the confidence (between 0.0 and 1.0) that the given directory
+	 * contains a GrAF corpus. Half of the confidence is based on the resource
+	 * header (being present and declaring the GrAF namespace), the other half
+	 * on the share of sampled document headers declaring the GrAF namespace.
+	 */
+	public static double getConfidence(File corpusDir, String headerFileEnding) {
+		if (!corpusDir.isDirectory()) {
+			return 0.0;
+		}
+		double confidence = 0.0;
+		File rscHeaderFile = new File(corpusDir, GrafResourceHeader.RESOURCE_HEADER_FILE_NAME);
+		if (rscHeaderFile.isFile()) {
+			confidence += isGrafFile(rscHeaderFile) ? 0.5 : 0.25;
+		}
+		List<File> docHeaderSample = sampleFiles(corpusDir, headerFileEnding);
+		if (!docHeaderSample.isEmpty()) {
+			int grafHeaderCount = 0;
+			for (File docHeaderFile : docHeaderSample) {
+				if (isGrafFile(docHeaderFile)) {
+					grafHeaderCount++;
+				}
+			}
+			confidence += 0.5 * grafHeaderCount / docHeaderSample.size();
+		}
+		return confidence;
+	}
+
+	/**
+	 * returns true iff the GrAF namespace occurs in the first {@link #SNIFF_SIZE}
+	 * bytes of the given file.
+	 */
+	public static boolean isGrafFile(File file) {
+		try {
+			return isGrafStream(new FileInputStream(file));
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * returns true iff the GrAF namespace occurs in the first {@link #SNIFF_SIZE}
+	 * bytes of the given stream. The stream is closed afterwards.
+	 */
+	public static boolean isGrafStream(InputStream input) throws IOException {
+		byte[] buffer = new byte[SNIFF_SIZE];
+		int length = 0;
+		try {
+			int read;
+			while (length < buffer.length && (read = input.read(buffer, length, buffer.length - length)) != -1) {
+				length += read;
+			}
+		} finally {
+			input.close();
+		}
+		return new String(buffer, 0, length, UTF8).contains(GRAF_NAMESPACE);
+	}
+
+	/**
+	 * like {@link #getConfidence(File, String)}, but for a corpus packed into
+	 * an archive (see {@link CorpusArchive}).
+	 */
+	public static double getConfidence(CorpusArchive corpusArchive, String headerFileEnding) {
+		double confidence = 0.0;
+		try {
+			String rscHeaderEntry = corpusArchive.findResourceHeader();
+			if (rscHeaderEntry != null) {
+				confidence += isGrafStream(corpusArchive.openEntry(rscHeaderEntry)) ? 0.5 : 0.25;
+			}
+			int sampleSize = 0;
+			int grafHeaderCount = 0;
+			for (String entryName : corpusArchive.getEntryNames()) {
+				if (entryName.endsWith(headerFileEnding)) {
+					sampleSize++;
+					if (isGrafStream(corpusArchive.openEntry(entryName))) {
+						grafHeaderCount++;
+					}
+					if (sampleSize == SAMPLE_SIZE) {
+						break;
+					}
+				}
+			}
+			if (sampleSize > 0) {
+				confidence += 0.5 * grafHeaderCount / sampleSize;
+			}
+		} catch (IOException e) {
+			return 0.0;
+		}
+		return confidence;
+	}
+
+	/**
+	 * returns up to {@link #SAMPLE_SIZE} files with the given ending, searching
+	 * the directory tree breadth first and giving up after
+	 * {@link #MAX_VISITED_DIRS} directories.
+	 */
+	private static List<File> sampleFiles(File rootDir, String fileNameEnding) {
+		List<File> sample = new ArrayList<File>();
+		LinkedList<File> dirQueue = new LinkedList<File>();
+		dirQueue.add(rootDir);
+		int visitedDirs = 0;
+		while (!dirQueue.isEmpty() && visitedDirs < MAX_VISITED_DIRS) {
+			File[] files = dirQueue.removeFirst().listFiles();
+			visitedDirs++;
+			if (files == null) {
+				continue;
+			}
+			for (File file : files) {
+				if (file.isDirectory()) {
+					dirQueue.add(file);
+				} else if (file.getName().endsWith(fileNameEnding)) {
+					sample.add(file);
+					if (sample.size() == SAMPLE_SIZE) {
+						return sample;
+					}
+				}
+			}
+		}
+		return sample;
+	}
+}
@@ -21,6 +21,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 
+import org.corpus_tools.pepper.modules.exceptions.PepperModuleException;
 import org.xces.graf.api.GrafException;
 import org.xces.graf.api.IAnnotation;
 import org.xces.graf.api.IAnnotationSpace;
@@ -140,7 +141,7 @@ public class GrafGraphInfo {
 			System.out.print(" " + region.getId());
 		}
 		System.out.println();
-		System.out.println("\t\tprimary text: " + GrafReader.getPrimaryTextSequence(iLink, iGraph));
+		System.out.println("\t\tprimary text: " + GrafReader.getPrimaryTextView(iLink, iGraph));
 	}
 
 	/**
@@ -184,14 +185,17 @@ public class GrafGraphInfo {
 
 	/**
 	 * prints the annotation spaces present in an IGraph and counts the number
-	 * of INodes using that annotation space
+	 * of INodes using that annotation space (see {@link GrafStatistics} for
+	 * all statistics of a document or corpus)
 	 */
 	public static void printNodesStatistics(IGraph iGraph) {
-		HashMap<String, Integer> annoSpaceNodeCountMap = getNodeCountPerAnnoSpace(iGraph);
+		GrafStatistics statistics = getStatistics(iGraph);
 
 		System.out.println("node annotation spaces:");
-		for (String annoSpace : annoSpaceNodeCountMap.keySet()) {
-			System.out.println("\t" + annoSpace + " : " + annoSpaceNodeCountMap.get(annoSpace) + " nodes");
+		for (String annoSpace : statistics.getAnnotationSpaceNames()) {
+			if (statistics.getNodeCount(annoSpace) > 0) {
+				System.out.println("\t" + annoSpace + " : " + statistics.getNodeCount(annoSpace) + " nodes");
+			}
 		}
 	}
 
@@ -223,7 +227,7 @@ public class GrafGraphInfo {
 		for (INode node : iGraph.getNodes()) {
 			String nodeAnnoSpace = node.getAnnotation().getAnnotationSpace().getName();
 			if (annoSpace.equals(nodeAnnoSpace)) {
-				String primaryTextSequence = GrafReader.getPrimaryTextSequence(node, iGraph);
+				PrimaryText primaryTextSequence = GrafReader.getPrimaryTextView(node, iGraph);
 				System.out.println("node " + node.getId() + ": " + primaryTextSequence);
 			}
 		}
@@ -233,19 +237,29 @@ public class GrafGraphInfo {
 	public static void printRegionInfo(IRegion region, IGraph iGraph) throws GrafException {
 		int[] regionOffsets = GrafReader.getRegionOffsets(region);
 		System.out.println("\tregion id: " + region.getId() + " start: " + regionOffsets[0] + " end: " + regionOffsets[1]);
-		System.out.println("    primary text sequence: " + GrafReader.getPrimaryTextSequence(regionOffsets[0], regionOffsets[1], iGraph));
+		System.out.println("    primary text sequence: " + GrafReader.getPrimaryTextView(regionOffsets[0], regionOffsets[1], iGraph));
 	}
 
 	/**
 	 * prints all annotation spaces that work directly on the primary text and
-	 * lists how many IRegions they annotate.
+	 * lists how many IRegions they annotate (see {@link GrafStatistics}).
 	 */
 	public static void printRegionsStatistics(IGraph iGraph) {
-		HashMap<String, Integer> annoSpaceRegionCountMap = getRegionCountPerAnnoSpace(iGraph);
+		GrafStatistics statistics = getStatistics(iGraph);
 
 		System.out.println("region annotation spaces (working directly on the primary text):");
-		for (String annoSpace : annoSpaceRegionCountMap.keySet()) {
-			System.out.println("\t" + annoSpace + " : " + annoSpaceRegionCountMap.get(annoSpace) + " regions");
+		for (String annoSpace : statistics.getAnnotationSpaceNames()) {
+			if (statistics.getRegionCount(annoSpace) > 0) {
+				System.out.println("\t" + annoSpace + " : " + statistics.getRegionCount(annoSpace) + " regions");
+			}
+		}
+	}
+
+	private static GrafStatistics getStatistics(IGraph iGraph) {
+		try {
+			return GrafStatistics.of(iGraph);
+		} catch (GrafException e) {
+			throw new PepperModuleException("Cannot compute the statistics of the IGraph. ", e);
 		}
 	}
 
@@ -279,7 +293,7 @@ public class GrafGraphInfo {
 		for (IRegion region : iGraph.getRegions()) {
 			List<String> regionAnnoSpaces = GrafReader.getAnnoSpaceNamesFromRegion(region);
 			if (regionAnnoSpaces.contains(annoSpace)) {
-				String primaryTextSequence = GrafReader.getPrimaryTextSequence(region, iGraph);
+				PrimaryText primaryTextSequence = GrafReader.getPrimaryTextView(region, iGraph);
 				System.out.println("region " + region.getId() + ": " + primaryTextSequence);
 			}
 		}
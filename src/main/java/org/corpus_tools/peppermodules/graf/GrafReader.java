@@ -22,12 +22,18 @@ import static java.util.Arrays.asList;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
 import javax.xml.xpath.XPathExpressionException;
 
 import org.corpus_tools.pepper.modules.exceptions.PepperModuleException;
@@ -48,6 +54,9 @@ import org.xces.graf.io.GrafLoader;
 import org.xces.graf.io.dom.DocumentHeader;
 import org.xces.graf.io.dom.ResourceHeader;
 import org.xces.graf.util.GraphUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 /**
@@ -68,6 +77,64 @@ public class GrafReader {
 		return loader.load(new File(docHeaderPath));
 	}
 
+	/**
+	 * returns an IGraph that includes ALL annotations made to a document, whose
+	 * content is the memory-mapped primary text (see {@link MappedText})
+	 * instead of a String.
+	 * 
+	 * The GrafLoader always decodes the primary text onto the heap, so the
+	 * graph is loaded via a temporary copy of the document header, whose
+	 * primary data is an empty file and whose annotation locations point to
+	 * the original annotation files. If the annotation files can't be reached
+	 * by a relative path from the temporary directory, the text is decoded
+	 * onto the heap instead (see {@link #getAnnoGraph(ResourceHeader, String)}).
+	 */
+	public static IGraph getAnnoGraphWithMappedText(ResourceHeader rscHeader, String docHeaderPath) throws GrafException, SAXException, IOException {
+		GrafDocumentHeader docHeader = new GrafDocumentHeader(docHeaderPath);
+		MappedText mappedText = MappedText.map(docHeader.getContentFile());
+
+		File tempDir = Files.createTempDirectory("graf-header").toFile();
+		File emptyContentFile = new File(tempDir, "empty.txt");
+		File tempHeaderFile = new File(tempDir, docHeader.getHeaderFile().getName());
+		try {
+			emptyContentFile.createNewFile();
+			Document headerDocument = docHeader.getDocument();
+			Path tempDirPath = tempDir.toPath().toAbsolutePath();
+			NodeList primaryDataElements = headerDocument.getElementsByTagNameNS("*", "primaryData");
+			for (int i = 0; i < primaryDataElements.getLength(); i++) {
+				((Element) primaryDataElements.item(i)).setAttribute("loc", emptyContentFile.getName());
+			}
+			File headerDir = docHeader.getHeaderFile().getAbsoluteFile().getParentFile();
+			NodeList annotationElements = headerDocument.getElementsByTagNameNS("*", "annotation");
+			for (int i = 0; i < annotationElements.getLength(); i++) {
+				Element annotationElement = (Element) annotationElements.item(i);
+				Path annotationPath = new File(headerDir, annotationElement.getAttribute("loc")).toPath().toAbsolutePath();
+				try {
+					annotationElement.setAttribute("loc", tempDirPath.relativize(annotationPath).toString());
+				} catch (IllegalArgumentException e) {
+					// the GrafLoader resolves every location relative to the
+					// header, an annotation file on another root (e.g. another
+					// Windows drive) can't be referenced from the temporary copy
+					logger.warn("Cannot map the primary text of " + docHeaderPath + ", its annotation file " + annotationPath + " is on another root than the temporary directory " + tempDirPath + ". ");
+					return getAnnoGraph(rscHeader, docHeaderPath);
+				}
+			}
+			try {
+				TransformerFactory.newInstance().newTransformer().transform(new DOMSource(headerDocument), new StreamResult(tempHeaderFile));
+			} catch (TransformerException e) {
+				throw new IOException("Cannot write a temporary copy of the document header " + docHeaderPath + ". ", e);
+			}
+
+			IGraph iGraph = new GrafLoader(rscHeader).load(tempHeaderFile);
+			iGraph.setContent(mappedText);
+			return iGraph;
+		} finally {
+			tempHeaderFile.delete();
+			emptyContentFile.delete();
+			tempDir.delete();
+		}
+	}
+
 	/**
 	 * returns an IGraph that includes the chosen annotations made to a document
 	 */
@@ -123,10 +190,7 @@ public class GrafReader {
 
 	/* prints the primary text that is described / annotated by an IGraph object */
 	public static String getDocumentText(IGraph graph) {
-		return graph.getContent().toString();
-		// .getContent() doesn't return a string, because the graph could also
-		// annotate some
-		// other type of media
+		return PrimaryText.of(graph).toString();
 	}
 
 	/**
@@ -201,8 +265,7 @@ public class GrafReader {
 	 * that is linked to an IGraph
 	 */
 	public static String getPrimaryTextSequence(int start, int end, IGraph iGraph) {
-		String primaryText = getDocumentText(iGraph);
-		return primaryText.substring(start, end);
+		return getPrimaryTextView(start, end, iGraph).toString();
 	}
 
 	/**
@@ -210,9 +273,7 @@ public class GrafReader {
 	 * IRegion
 	 */
 	public static String getPrimaryTextSequence(IRegion iRegion, IGraph iGraph) throws GrafException {
-		String primaryText = getDocumentText(iGraph);
-		int[] regionOffsets = GrafReader.getRegionOffsets(iRegion);
-		return primaryText.substring(regionOffsets[0], regionOffsets[1]);
+		return getPrimaryTextView(iRegion, iGraph).toString();
 	}
 
 	/**
@@ -221,8 +282,7 @@ public class GrafReader {
 	 * region.
 	 */
 	public static String getPrimaryTextSequence(ILink iLink, IGraph iGraph) throws GrafException {
-		int[] linkOffsets = GrafReader.getLinkOffsets(iLink);
-		return getPrimaryTextSequence(linkOffsets[0], linkOffsets[1], iGraph);
+		return getPrimaryTextView(iLink, iGraph).toString();
 	}
 
 	/**
@@ -230,8 +290,42 @@ public class GrafReader {
 	 * INode
 	 */
 	public static String getPrimaryTextSequence(INode iNode, IGraph iGraph) throws GrafException {
+		return getPrimaryTextView(iNode, iGraph).toString();
+	}
+
+	/**
+	 * like {@link #getPrimaryTextSequence(int, int, IGraph)}, but returns a
+	 * view of the (cached) primary text instead of a copy.
+	 */
+	public static PrimaryText getPrimaryTextView(int start, int end, IGraph iGraph) {
+		return PrimaryText.of(iGraph).slice(start, end);
+	}
+
+	/**
+	 * like {@link #getPrimaryTextSequence(IRegion, IGraph)}, but returns a
+	 * view of the (cached) primary text instead of a copy.
+	 */
+	public static PrimaryText getPrimaryTextView(IRegion iRegion, IGraph iGraph) throws GrafException {
+		int[] regionOffsets = GrafReader.getRegionOffsets(iRegion);
+		return getPrimaryTextView(regionOffsets[0], regionOffsets[1], iGraph);
+	}
+
+	/**
+	 * like {@link #getPrimaryTextSequence(ILink, IGraph)}, but returns a view
+	 * of the (cached) primary text instead of a copy.
+	 */
+	public static PrimaryText getPrimaryTextView(ILink iLink, IGraph iGraph) throws GrafException {
+		int[] linkOffsets = GrafReader.getLinkOffsets(iLink);
+		return getPrimaryTextView(linkOffsets[0], linkOffsets[1], iGraph);
+	}
+
+	/**
+	 * like {@link #getPrimaryTextSequence(INode, IGraph)}, but returns a view
+	 * of the (cached) primary text instead of a copy.
+	 */
+	public static PrimaryText getPrimaryTextView(INode iNode, IGraph iGraph) throws GrafException {
 		int[] nodeOffsets = GrafReader.getNodeOffsets(iNode);
-		return getPrimaryTextSequence(nodeOffsets[0], nodeOffsets[1], iGraph);
+		return getPrimaryTextView(nodeOffsets[0], nodeOffsets[1], iGraph);
 	}
 
 	/** returns the IRegions belonging to a given annotation type */
@@ -370,6 +464,26 @@ public class GrafReader {
 		}
 	}
 
+	/**
+	 * like {@link #getFloatingNodeOffsets(IGraph, INode)}, but the floating
+	 * node is given by its ordinal and the search runs on the arrays of an
+	 * {@link IndexedGraph}.
+	 */
+	public static int[] getFloatingNodeOffsets(IndexedGraph indexedGraph, int floatingNode) throws GrafException {
+		DepthFirstSearch floatSearch = new DepthFirstSearch(indexedGraph, floatingNode);
+		int succeedingLeafNode = floatSearch.getSucceedingLeafNode(floatingNode);
+		int precedingLeafNode = floatSearch.getPrecedingLeafNode(floatingNode);
+		if (succeedingLeafNode >= 0) {
+			int[] successorOffsets = indexedGraph.getFirstLinkOffsets(succeedingLeafNode);
+			return new int[] { successorOffsets[0], successorOffsets[0] };
+		} else if (precedingLeafNode >= 0) {
+			int[] predecessorOffsets = indexedGraph.getFirstLinkOffsets(precedingLeafNode);
+			return new int[] { predecessorOffsets[1], predecessorOffsets[1] };
+		} else {
+			throw new PepperModuleException("Can't produce fake offsets for floating node " + indexedGraph.getNode(floatingNode).getId());
+		}
+	}
+
 	/**
 	 * FIXME: IGraph.getRoots() is broken. This is a terribly inefficient
 	 * workaround.
@@ -464,6 +578,23 @@ public class GrafReader {
 		}
 	}
 
+	/**
+	 * like {@link #getRootNodeFromNode(INode, IGraph)}, but nodes are given by
+	 * their ordinals in an {@link IndexedGraph}.
+	 */
+	public static int getRootNodeFromNode(IndexedGraph indexedGraph, int leafNode) {
+		int node = leafNode;
+		while (indexedGraph.getInDegree(node) > 0) {
+			int firstParentNode = indexedGraph.getInNeighbour(node, 0);
+			if (indexedGraph.getRootMultiplicity(firstParentNode) > 0) {
+				return firstParentNode;
+			}
+			node = firstParentNode;
+		}
+		logger.debug("IGraph has a weird floating root node: " + indexedGraph.getNode(node).getId());
+		return node; // a node without ingoing edges is a root node
+	}
+
 	/**
 	 * returns a list of token node ID (with ILinks to IRegion to segments of
 	 * the primary text) that elements of the syntax tree represented by the
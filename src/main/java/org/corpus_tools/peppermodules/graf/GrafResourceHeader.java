@@ -19,11 +19,22 @@ package org.corpus_tools.peppermodules.graf;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPathExpressionException;
 
 import org.xces.graf.api.GrafException;
+import org.xces.graf.api.IAnnotationSpace;
+import org.xces.graf.impl.Factory;
 import org.xces.graf.io.dom.FileType;
 import org.xces.graf.io.dom.ResourceHeader;
 
@@ -31,8 +42,60 @@ import org.xces.graf.io.dom.ResourceHeader;
  * a resource header is an xml file describing which primary texts a corpus
  * contains and which types of annotations are used. we need to create a
  * resource header before we are able to create annotation graphs.
+ * 
+ * The GrAF parser asks the resource header for its annotation spaces for every
+ * document it loads, possibly from several threads at once. So the file
+ * types and annotation spaces are read from the header only once (and
+ * synchronized), afterwards they are taken from memory. The remaining XPath
+ * expressions are compiled once per thread (see {@link HeaderXPath}). Via
+ * {@link #getShared(File)}, all documents and threads of an import share one
+ * header object per resource header file, until it is released by
+ * {@link #releaseShared(GrafResourceHeader)} at the end of the import.
  */
 public class GrafResourceHeader extends ResourceHeader {
+	/** the name of the resource header file in the corpus directory */
+	public static final String RESOURCE_HEADER_FILE_NAME = "resource-header.xml";
+
+	/** shared header objects by canonical path, see {@link #getShared(File)} */
+	private static final Map<String, GrafResourceHeader> sharedHeaders = new ConcurrentHashMap<String, GrafResourceHeader>();
+
+	/** the data read from the header, see {@link #getHeaderData()} */
+	private HeaderData headerData = null;
+	/** the last modification time and size of the header file, for shared headers only */
+	private long fileModified = 0;
+	private long fileLength = 0;
+	/** the canonical path the header is shared by, null if it isn't shared */
+	private String sharedPath = null;
+
+	/** the file types and annotation spaces of a resource header */
+	private static class HeaderData {
+		final List<FileType> fileTypes;
+		final List<String> annoTypes;
+		final Map<String, String> annoTypeSuffixMap;
+		/** annotation space names mapped to their types, in the order of the header */
+		final Map<String, String> annoSpaceTypeMap;
+
+		HeaderData(List<FileType> fileTypes, List<IAnnotationSpace> annoSpaces) {
+			this.fileTypes = Collections.unmodifiableList(fileTypes);
+			List<String> annoTypes = new ArrayList<String>(fileTypes.size());
+			Map<String, String> annoTypeSuffixMap = new HashMap<String, String>();
+			for (FileType fileType : fileTypes) {
+				annoTypes.add(fileType.getFileId()); // e.g. f.seg, f.penn
+				if (!annoTypeSuffixMap.containsKey(fileType.getFileId())) {
+					annoTypeSuffixMap.put(fileType.getFileId(), fileType.getSuffix());
+				}
+			}
+			this.annoTypes = Collections.unmodifiableList(annoTypes);
+			this.annoTypeSuffixMap = Collections.unmodifiableMap(annoTypeSuffixMap);
+			Map<String, String> annoSpaceTypeMap = new LinkedHashMap<String, String>();
+			for (IAnnotationSpace annoSpace : annoSpaces) {
+				if (!annoSpaceTypeMap.containsKey(annoSpace.getName())) {
+					annoSpaceTypeMap.put(annoSpace.getName(), annoSpace.getType());
+				}
+			}
+			this.annoSpaceTypeMap = Collections.unmodifiableMap(annoSpaceTypeMap);
+		}
+	}
 
 	public GrafResourceHeader(File file) throws FileNotFoundException {
 		super(file); // Auto-generated constructor stub
@@ -71,7 +134,93 @@ public class GrafResourceHeader extends ResourceHeader {
 	 * prior to super() when constructing a derived class
 	 */
 	private static File loadHeaderFile(String corpusPath) {
-		return new File(corpusPath, "resource-header.xml");
+		return new File(corpusPath, RESOURCE_HEADER_FILE_NAME);
+	}
+
+	/**
+	 * returns the header object of the given resource header file, which is
+	 * shared by all callers. It is read again if the file changed since it
+	 * was read last.
+	 */
+	public static GrafResourceHeader getShared(File headerFile) throws IOException {
+		String headerPath = headerFile.getCanonicalPath();
+		GrafResourceHeader rscHeader = sharedHeaders.get(headerPath);
+		if (rscHeader == null || rscHeader.fileModified != headerFile.lastModified() || rscHeader.fileLength != headerFile.length()) {
+			rscHeader = new GrafResourceHeader(headerFile);
+			rscHeader.fileModified = headerFile.lastModified();
+			rscHeader.fileLength = headerFile.length();
+			rscHeader.sharedPath = headerPath;
+			sharedHeaders.put(headerPath, rscHeader);
+		}
+		return rscHeader;
+	}
+
+	/**
+	 * stops sharing the given header object (see {@link #getShared(File)}),
+	 * so that it can be garbage collected once its callers are done with it.
+	 * The next call of getShared() reads the header file again.
+	 */
+	public static void releaseShared(GrafResourceHeader rscHeader) {
+		if (rscHeader.sharedPath != null) {
+			sharedHeaders.remove(rscHeader.sharedPath, rscHeader);
+		}
+	}
+
+	/**
+	 * returns the shared header object of a corpus directory (see
+	 * {@link #getShared(File)}). will only work, if the resource header is
+	 * named 'resource-header.xml'.
+	 */
+	public static GrafResourceHeader getShared(String corpusPath) throws IOException {
+		return getShared(loadHeaderFile(corpusPath));
+	}
+
+	/** reads the file types and annotation spaces on first use */
+	private synchronized HeaderData getHeaderData() throws GrafException {
+		if (headerData == null) {
+			headerData = new HeaderData(super.getFileTypes(), super.getAnnotationSpaces());
+		}
+		return headerData;
+	}
+
+	@Override
+	public synchronized Object getXPath(String expression, QName returnType) throws XPathExpressionException {
+		return HeaderXPath.evaluate(xpath, expression, header, returnType);
+	}
+
+	/** returns the file types of the corpus (read only once) */
+	@Override
+	public List<FileType> getFileTypes() throws GrafException {
+		return new ArrayList<FileType>(getHeaderData().fileTypes);
+	}
+
+	/**
+	 * returns the annotation spaces of the corpus. They are read only once,
+	 * but new IAnnotationSpaces are created on every call, since the parser
+	 * adds the annotations of a document to them.
+	 */
+	@Override
+	public List<IAnnotationSpace> getAnnotationSpaces() throws GrafException {
+		Map<String, String> annoSpaceTypeMap = getHeaderData().annoSpaceTypeMap;
+		List<IAnnotationSpace> annoSpaces = new ArrayList<IAnnotationSpace>(annoSpaceTypeMap.size());
+		for (Map.Entry<String, String> annoSpace : annoSpaceTypeMap.entrySet()) {
+			annoSpaces.add(Factory.newAnnotationSpace(annoSpace.getKey(), annoSpace.getValue()));
+		}
+		return annoSpaces;
+	}
+
+	/** returns the type (pid) of an annotation space or null, if the corpus has no such annotation space */
+	@Override
+	public String getAnnotationSpace(String annoSpaceName) throws GrafException {
+		return getHeaderData().annoSpaceTypeMap.get(annoSpaceName);
+	}
+
+	/**
+	 * returns the file suffix of an annotation type, e.g. 'seg' for 'f.seg'
+	 * (or null, if the corpus has no such annotation type)
+	 */
+	public String getFileSuffix(String annoType) throws GrafException {
+		return getHeaderData().annoTypeSuffixMap.get(annoType);
 	}
 
 	/** prints the types of annotations that are used in a corpus. */
@@ -104,12 +253,7 @@ public class GrafResourceHeader extends ResourceHeader {
 	 * annotation types used in a document.
 	 */
 	public List<String> getCorpusAnnotationTypes() throws GrafException {
-		List<FileType> fileTypes = this.getFileTypes();
-		List<String> annoTypes = new ArrayList<String>();
-		for (FileType fileType : fileTypes) {
-			annoTypes.add(fileType.getFileId()); // e.g. f.seg, f.penn
-		}
-		return annoTypes;
+		return new ArrayList<String>(getHeaderData().annoTypes);
 	}
 
 }
@@ -0,0 +1,495 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.xces.graf.api.GrafException;
+import org.xces.graf.api.IAnnotation;
+import org.xces.graf.api.IFeature;
+import org.xces.graf.api.IGraph;
+import org.xces.graf.io.dom.ResourceHeader;
+
+/**
+ * Statistics of GrAF documents, e.g. to plan the resources of a big import.
+ * The statistics of a document are computed in one pass over its nodes and
+ * regions (see {@link #of(IGraph)}), the ones of several documents are merged
+ * via {@link #add(GrafStatistics)}, e.g. by the threads of
+ * {@link #collect(ResourceHeader, List, int)}. They are written as JSON or CSV.
+ * 
+ * The statistics comprise the number of nodes, edges, regions and floating
+ * nodes (in total and per annotation space), the depths of the trees (the
+ * longest path from a node without ingoing edges), a histogram of the region
+ * lengths (in buckets of powers of two) and, per annotation space and feature
+ * name, the number of occurrences and distinct values of each feature. At most
+ * {@value #MAX_DISTINCT_VALUES} distinct values are kept per feature, more
+ * are noted as such.
+ */
+public class GrafStatistics {
+	/** the maximal number of distinct values kept per feature */
+	public static final int MAX_DISTINCT_VALUES = 100000;
+	/** region lengths are counted in buckets of [2^(i-1), 2^i - 1], plus one for 0 */
+	private static final int REGION_LENGTH_BUCKETS = 33;
+
+	private long documentCount = 0;
+	private long textLength = 0;
+	private long nodeCount = 0;
+	private long edgeCount = 0;
+	private long regionCount = 0;
+	private long floatingNodeCount = 0;
+	private final SortedMap<Integer, Long> treeDepths = new TreeMap<Integer, Long>();
+	private final long[] regionLengths = new long[REGION_LENGTH_BUCKETS];
+	private final SortedMap<String, AnnoSpaceStatistics> annoSpaces = new TreeMap<String, AnnoSpaceStatistics>();
+	private final List<String> failedDocuments = new ArrayList<String>();
+
+	/** computes the statistics of one document */
+	public static GrafStatistics of(IGraph iGraph) throws GrafException {
+		IndexedGraph indexedGraph = new IndexedGraph(iGraph);
+		GrafStatistics statistics = new GrafStatistics();
+		statistics.documentCount = 1;
+		String text = GrafReader.getDocumentText(iGraph);
+		statistics.textLength = (text != null) ? text.length() : 0;
+
+		int nodeCount = indexedGraph.getNodeCount();
+		AnnoSpaceStatistics[] nodeAnnoSpaces = new AnnoSpaceStatistics[indexedGraph.getAnnotationSpaceCount() + 1];
+		BitSet[] annotatedRegions = new BitSet[nodeAnnoSpaces.length];
+		for (int node = 0; node < nodeCount; node++) {
+			// the last entry is for nodes without annotation space
+			int annoSpace = indexedGraph.getAnnotationSpace(node);
+			if (annoSpace < 0) {
+				annoSpace = nodeAnnoSpaces.length - 1;
+			}
+			if (nodeAnnoSpaces[annoSpace] == null) {
+				String annoSpaceName = (annoSpace < nodeAnnoSpaces.length - 1) ? indexedGraph.getAnnotationSpaceName(annoSpace) : AnnotationSpaceConverter.NOT_ANNOTATED;
+				nodeAnnoSpaces[annoSpace] = statistics.getAnnoSpace(annoSpaceName);
+				annotatedRegions[annoSpace] = new BitSet(indexedGraph.getRegionCount());
+			}
+			AnnoSpaceStatistics annoSpaceStatistics = nodeAnnoSpaces[annoSpace];
+			annoSpaceStatistics.nodeCount++;
+			annoSpaceStatistics.edgeCount += indexedGraph.getOutDegree(node);
+			if (indexedGraph.isFloatingNode(node)) {
+				annoSpaceStatistics.floatingNodeCount++;
+			}
+			for (int i = 0; i < indexedGraph.getLinkedRegionCount(node); i++) {
+				annotatedRegions[annoSpace].set(indexedGraph.getLinkedRegion(node, i));
+			}
+			IAnnotation iAnnotation = indexedGraph.getNode(node).getAnnotation();
+			if (iAnnotation != null && iAnnotation.getFeatures() != null) {
+				for (IFeature feature : iAnnotation.getFeatures().features()) {
+					annoSpaceStatistics.getFeature(feature.getName()).add(feature.getStringValue());
+				}
+			}
+		}
+
+		BitSet unannotatedRegions = new BitSet(indexedGraph.getRegionCount());
+		unannotatedRegions.set(0, indexedGraph.getRegionCount());
+		for (int annoSpace = 0; annoSpace < nodeAnnoSpaces.length; annoSpace++) {
+			if (nodeAnnoSpaces[annoSpace] != null) {
+				nodeAnnoSpaces[annoSpace].regionCount += annotatedRegions[annoSpace].cardinality();
+				unannotatedRegions.andNot(annotatedRegions[annoSpace]);
+				statistics.nodeCount += nodeAnnoSpaces[annoSpace].nodeCount;
+				statistics.edgeCount += nodeAnnoSpaces[annoSpace].edgeCount;
+				statistics.floatingNodeCount += nodeAnnoSpaces[annoSpace].floatingNodeCount;
+			}
+		}
+		if (!unannotatedRegions.isEmpty()) {
+			statistics.getAnnoSpace(AnnotationSpaceConverter.NOT_ANNOTATED).regionCount += unannotatedRegions.cardinality();
+		}
+
+		statistics.regionCount = indexedGraph.getRegionCount();
+		for (int region = 0; region < indexedGraph.getRegionCount(); region++) {
+			statistics.regionLengths[getRegionLengthBucket(indexedGraph.getRegionEnd(region) - indexedGraph.getRegionStart(region))]++;
+		}
+
+		int[] depths = getDepths(indexedGraph);
+		for (int node = 0; node < nodeCount; node++) {
+			if (indexedGraph.getInDegree(node) == 0 && indexedGraph.getOutDegree(node) > 0) {
+				statistics.addTreeDepth(depths[node], 1);
+			}
+		}
+		return statistics;
+	}
+
+	/**
+	 * collects the statistics of the given documents with the given number of
+	 * threads. Documents that can't be loaded are listed (see
+	 * {@link #getFailedDocuments()}), but don't stop the others.
+	 */
+	public static GrafStatistics collect(final ResourceHeader rscHeader, List<String> docHeaderPaths, int threadCount) throws InterruptedException {
+		final GrafStatistics corpusStatistics = new GrafStatistics();
+		List<Callable<Void>> collectTasks = new ArrayList<Callable<Void>>(docHeaderPaths.size());
+		for (final String docHeaderPath : docHeaderPaths) {
+			collectTasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					GrafStatistics documentStatistics;
+					try {
+						documentStatistics = of(GrafReader.getAnnoGraph(rscHeader, docHeaderPath));
+					} catch (Exception e) {
+						synchronized (corpusStatistics) {
+							corpusStatistics.failedDocuments.add(docHeaderPath);
+						}
+						return null;
+					}
+					corpusStatistics.add(documentStatistics);
+					return null;
+				}
+			});
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(threadCount, 1));
+		try {
+			for (Future<Void> collected : pool.invokeAll(collectTasks)) {
+				try {
+					collected.get();
+				} catch (ExecutionException e) {
+					// the tasks catch everything but errors
+					if (e.getCause() instanceof Error) {
+						throw (Error) e.getCause();
+					}
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+		Collections.sort(corpusStatistics.failedDocuments);
+		return corpusStatistics;
+	}
+
+	/** adds the statistics of other documents to these ones */
+	public synchronized void add(GrafStatistics other) {
+		synchronized (other) {
+			documentCount += other.documentCount;
+			textLength += other.textLength;
+			nodeCount += other.nodeCount;
+			edgeCount += other.edgeCount;
+			regionCount += other.regionCount;
+			floatingNodeCount += other.floatingNodeCount;
+			for (Map.Entry<Integer, Long> treeDepth : other.treeDepths.entrySet()) {
+				addTreeDepth(treeDepth.getKey(), treeDepth.getValue());
+			}
+			for (int i = 0; i < REGION_LENGTH_BUCKETS; i++) {
+				regionLengths[i] += other.regionLengths[i];
+			}
+			for (AnnoSpaceStatistics otherAnnoSpace : other.annoSpaces.values()) {
+				getAnnoSpace(otherAnnoSpace.name).add(otherAnnoSpace);
+			}
+			failedDocuments.addAll(other.failedDocuments);
+		}
+	}
+
+	public synchronized long getDocumentCount() {
+		return documentCount;
+	}
+
+	public synchronized long getNodeCount() {
+		return nodeCount;
+	}
+
+	public synchronized long getEdgeCount() {
+		return edgeCount;
+	}
+
+	public synchronized long getRegionCount() {
+		return regionCount;
+	}
+
+	public synchronized long getFloatingNodeCount() {
+		return floatingNodeCount;
+	}
+
+	/** returns the names of all annotation spaces, in alphabetical order */
+	public synchronized List<String> getAnnotationSpaceNames() {
+		return new ArrayList<String>(annoSpaces.keySet());
+	}
+
+	/** returns the number of nodes of an annotation space */
+	public synchronized long getNodeCount(String annoSpaceName) {
+		AnnoSpaceStatistics annoSpace = annoSpaces.get(annoSpaceName);
+		return (annoSpace != null) ? annoSpace.nodeCount : 0;
+	}
+
+	/** returns the number of regions linked by nodes of an annotation space */
+	public synchronized long getRegionCount(String annoSpaceName) {
+		AnnoSpaceStatistics annoSpace = annoSpaces.get(annoSpaceName);
+		return (annoSpace != null) ? annoSpace.regionCount : 0;
+	}
+
+	/** returns the header paths of the documents that couldn't be loaded */
+	public synchronized List<String> getFailedDocuments() {
+		return new ArrayList<String>(failedDocuments);
+	}
+
+	/** writes the statistics as one JSON object */
+	public synchronized void writeJson(Writer writer) throws IOException {
+		writer.write("{\n");
+		writer.write("  \"documents\": " + documentCount + ",\n");
+		writer.write("  \"failedDocuments\": [");
+		for (int i = 0; i < failedDocuments.size(); i++) {
+			writer.write(((i > 0) ? ", " : "") + toJsonString(failedDocuments.get(i)));
+		}
+		writer.write("],\n");
+		writer.write("  \"textLength\": " + textLength + ",\n");
+		writer.write("  \"nodes\": " + nodeCount + ",\n");
+		writer.write("  \"edges\": " + edgeCount + ",\n");
+		writer.write("  \"regions\": " + regionCount + ",\n");
+		writer.write("  \"floatingNodes\": " + floatingNodeCount + ",\n");
+		writer.write("  \"treeDepths\": {");
+		String separator = "";
+		for (Map.Entry<Integer, Long> treeDepth : treeDepths.entrySet()) {
+			writer.write(separator + "\"" + treeDepth.getKey() + "\": " + treeDepth.getValue());
+			separator = ", ";
+		}
+		writer.write("},\n");
+		writer.write("  \"regionLengths\": {");
+		separator = "";
+		for (int i = 0; i < REGION_LENGTH_BUCKETS; i++) {
+			if (regionLengths[i] > 0) {
+				writer.write(separator + "\"" + getRegionLengthBucketName(i) + "\": " + regionLengths[i]);
+				separator = ", ";
+			}
+		}
+		writer.write("},\n");
+		writer.write("  \"annotationSpaces\": {");
+		separator = "\n";
+		for (AnnoSpaceStatistics annoSpace : annoSpaces.values()) {
+			writer.write(separator + "    " + toJsonString(annoSpace.name) + ": {\"nodes\": " + annoSpace.nodeCount + ", \"regions\": " + annoSpace.regionCount + ", \"edges\": " + annoSpace.edgeCount + ", \"floatingNodes\": " + annoSpace.floatingNodeCount + ", \"features\": {");
+			String featureSeparator = "\n";
+			for (FeatureStatistics feature : annoSpace.features.values()) {
+				writer.write(featureSeparator + "      " + toJsonString(feature.name) + ": {\"occurrences\": " + feature.occurrenceCount + ", \"distinctValues\": " + feature.values.size() + ", \"distinctValuesCapped\": " + feature.valuesCapped + "}");
+				featureSeparator = ",\n";
+			}
+			writer.write(annoSpace.features.isEmpty() ? "}}" : "\n    }}");
+			separator = ",\n";
+		}
+		writer.write(annoSpaces.isEmpty() ? "}\n" : "\n  }\n");
+		writer.write("}\n");
+		writer.flush();
+	}
+
+	/**
+	 * writes the statistics as CSV with the columns category, annotation
+	 * space, name and value, one row per number
+	 */
+	public synchronized void writeCsv(Writer writer) throws IOException {
+		writer.write("category,annotation_space,name,value\n");
+		writeCsvRow(writer, "corpus", "", "documents", documentCount);
+		writeCsvRow(writer, "corpus", "", "failed_documents", failedDocuments.size());
+		writeCsvRow(writer, "corpus", "", "text_length", textLength);
+		writeCsvRow(writer, "corpus", "", "nodes", nodeCount);
+		writeCsvRow(writer, "corpus", "", "edges", edgeCount);
+		writeCsvRow(writer, "corpus", "", "regions", regionCount);
+		writeCsvRow(writer, "corpus", "", "floating_nodes", floatingNodeCount);
+		for (Map.Entry<Integer, Long> treeDepth : treeDepths.entrySet()) {
+			writeCsvRow(writer, "tree_depth", "", String.valueOf(treeDepth.getKey()), treeDepth.getValue());
+		}
+		for (int i = 0; i < REGION_LENGTH_BUCKETS; i++) {
+			if (regionLengths[i] > 0) {
+				writeCsvRow(writer, "region_length", "", getRegionLengthBucketName(i), regionLengths[i]);
+			}
+		}
+		for (AnnoSpaceStatistics annoSpace : annoSpaces.values()) {
+			writeCsvRow(writer, "annotation_space", annoSpace.name, "nodes", annoSpace.nodeCount);
+			writeCsvRow(writer, "annotation_space", annoSpace.name, "regions", annoSpace.regionCount);
+			writeCsvRow(writer, "annotation_space", annoSpace.name, "edges", annoSpace.edgeCount);
+			writeCsvRow(writer, "annotation_space", annoSpace.name, "floating_nodes", annoSpace.floatingNodeCount);
+			for (FeatureStatistics feature : annoSpace.features.values()) {
+				writeCsvRow(writer, "feature_occurrences", annoSpace.name, feature.name, feature.occurrenceCount);
+				writeCsvRow(writer, "feature_distinct_values", annoSpace.name, feature.name, feature.values.size());
+				if (feature.valuesCapped) {
+					writeCsvRow(writer, "feature_distinct_values_capped", annoSpace.name, feature.name, 1);
+				}
+			}
+		}
+		writer.flush();
+	}
+
+	private AnnoSpaceStatistics getAnnoSpace(String annoSpaceName) {
+		AnnoSpaceStatistics annoSpace = annoSpaces.get(annoSpaceName);
+		if (annoSpace == null) {
+			annoSpace = new AnnoSpaceStatistics(annoSpaceName);
+			annoSpaces.put(annoSpaceName, annoSpace);
+		}
+		return annoSpace;
+	}
+
+	private void addTreeDepth(int depth, long treeCount) {
+		Long count = treeDepths.get(depth);
+		treeDepths.put(depth, (count != null) ? count + treeCount : treeCount);
+	}
+
+	/**
+	 * returns the depth of each node, i.e. the number of edges on the longest
+	 * path to a node without outgoing edges. Computed in post-order without
+	 * recursion, edges closing a cycle are ignored.
+	 */
+	private static int[] getDepths(IndexedGraph indexedGraph) {
+		int nodeCount = indexedGraph.getNodeCount();
+		int[] depths = new int[nodeCount];
+		// 0: not visited yet, 1: on the stack, 2: finished
+		byte[] states = new byte[nodeCount];
+		int[] nextChild = new int[nodeCount];
+		IntList stack = new IntList();
+		for (int start = 0; start < nodeCount; start++) {
+			if (states[start] != 0) {
+				continue;
+			}
+			stack.add(start);
+			states[start] = 1;
+			while (stack.size > 0) {
+				int node = stack.get(stack.size - 1);
+				if (nextChild[node] < indexedGraph.getOutDegree(node)) {
+					int child = indexedGraph.getOutNeighbour(node, nextChild[node]++);
+					if (states[child] == 0) {
+						states[child] = 1;
+						stack.add(child);
+					}
+					continue;
+				}
+				stack.size--;
+				for (int i = 0; i < indexedGraph.getOutDegree(node); i++) {
+					int child = indexedGraph.getOutNeighbour(node, i);
+					if (states[child] == 2) {
+						depths[node] = Math.max(depths[node], depths[child] + 1);
+					}
+				}
+				states[node] = 2;
+			}
+		}
+		return depths;
+	}
+
+	private static int getRegionLengthBucket(int length) {
+		return (length <= 0) ? 0 : 32 - Integer.numberOfLeadingZeros(length);
+	}
+
+	private static String getRegionLengthBucketName(int bucket) {
+		if (bucket <= 1) {
+			return String.valueOf(bucket);
+		}
+		return (1L << (bucket - 1)) + "-" + ((1L << bucket) - 1);
+	}
+
+	private static void writeCsvRow(Writer writer, String category, String annoSpaceName, String name, long value) throws IOException {
+		writer.write(category + "," + toCsvField(annoSpaceName) + "," + toCsvField(name) + "," + value + "\n");
+	}
+
+	private static String toCsvField(String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			return value;
+		}
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+
+	private static String toJsonString(String value) {
+		StringBuilder json = new StringBuilder(value.length() + 2);
+		json.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c < 0x20) {
+				json.append(String.format("\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+		return json.append('"').toString();
+	}
+
+	/** the statistics of the nodes of one annotation space */
+	private static class AnnoSpaceStatistics {
+		final String name;
+		long nodeCount = 0;
+		long regionCount = 0;
+		long edgeCount = 0;
+		long floatingNodeCount = 0;
+		final SortedMap<String, FeatureStatistics> features = new TreeMap<String, FeatureStatistics>();
+
+		AnnoSpaceStatistics(String name) {
+			this.name = name;
+		}
+
+		FeatureStatistics getFeature(String featureName) {
+			FeatureStatistics feature = features.get(featureName);
+			if (feature == null) {
+				feature = new FeatureStatistics(featureName);
+				features.put(featureName, feature);
+			}
+			return feature;
+		}
+
+		void add(AnnoSpaceStatistics other) {
+			nodeCount += other.nodeCount;
+			regionCount += other.regionCount;
+			edgeCount += other.edgeCount;
+			floatingNodeCount += other.floatingNodeCount;
+			for (FeatureStatistics otherFeature : other.features.values()) {
+				getFeature(otherFeature.name).add(otherFeature);
+			}
+		}
+	}
+
+	/** the number of occurrences and the distinct values of one feature */
+	private static class FeatureStatistics {
+		final String name;
+		long occurrenceCount = 0;
+		final Set<String> values = new HashSet<String>();
+		boolean valuesCapped = false;
+
+		FeatureStatistics(String name) {
+			this.name = name;
+		}
+
+		void add(String value) {
+			occurrenceCount++;
+			addValue(value);
+		}
+
+		void add(FeatureStatistics other) {
+			occurrenceCount += other.occurrenceCount;
+			valuesCapped |= other.valuesCapped;
+			for (String value : other.values) {
+				addValue(value);
+			}
+		}
+
+		private void addValue(String value) {
+			if (values.size() < MAX_DISTINCT_VALUES || values.contains(value)) {
+				values.add(value);
+			} else {
+				valuesCapped = true;
+			}
+		}
+	}
+}
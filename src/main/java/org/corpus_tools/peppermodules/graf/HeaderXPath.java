@@ -0,0 +1,66 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+
+/**
+ * Evaluates the XPath expressions of document and resource headers with
+ * expressions compiled only once per thread, instead of compiling them on
+ * every call like AbstractHeader.getXPath() does. XPathExpressions aren't
+ * thread-safe, so each thread keeps its own. All headers share one namespace
+ * context (the prefixes 'g' and 'graf' for the GrAF namespace), so an
+ * expression compiled for one header can be evaluated on any other.
+ */
+final class HeaderXPath {
+	/** the maximal number of expressions kept per thread, e.g. for expressions containing annotation types */
+	private static final int MAX_EXPRESSIONS = 256;
+
+	private static final ThreadLocal<Map<String, XPathExpression>> compiledExpressions = new ThreadLocal<Map<String, XPathExpression>>() {
+		@Override
+		protected Map<String, XPathExpression> initialValue() {
+			return new HashMap<String, XPathExpression>();
+		}
+	};
+
+	private HeaderXPath() {
+	}
+
+	/**
+	 * evaluates an expression on a header document, compiling it with the
+	 * given XPath object (which provides the namespace context) if this
+	 * thread didn't compile it yet
+	 */
+	static Object evaluate(XPath xpath, String expression, Object header, QName returnType) throws XPathExpressionException {
+		Map<String, XPathExpression> expressions = compiledExpressions.get();
+		XPathExpression compiledExpression = expressions.get(expression);
+		if (compiledExpression == null) {
+			compiledExpression = xpath.compile(expression);
+			if (expressions.size() < MAX_EXPRESSIONS) {
+				expressions.put(expression, compiledExpression);
+			}
+		}
+		return compiledExpression.evaluate(header, returnType);
+	}
+}
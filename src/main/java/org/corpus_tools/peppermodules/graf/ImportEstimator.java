@@ -0,0 +1,291 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.corpus_tools.peppermodules.graf.SaltWriter.IRegionHandlingMethod;
+import org.xces.graf.api.GrafException;
+
+/**
+ * Predicts what the import of GrAF documents will cost without converting
+ * them, using only their headers, the sizes of their files and a
+ * {@link CalibrationProfile}: the conversion time (via the cost of
+ * {@link DocumentCostEstimator}), the numbers of tokens and spans and the peak
+ * heap. Tokens and spans depend on how regions are turned into tokens, so
+ * they are predicted for each {@link IRegionHandlingMethod}:
+ * <ul>
+ * <li>ALL_TOKEN_LEVELS: every region becomes a token. This is what the
+ * GrAFImporter does.</li>
+ * <li>WORD_SEGMENTATION_ONLY: only the regions of the tokenization layer
+ * become tokens, the regions of other layers are dropped.</li>
+ * <li>APPROXIMATE_MATCH: only the regions of the tokenization layer become
+ * tokens, the regions of other layers become spans over the tokens they
+ * overlap.</li>
+ * </ul>
+ * Documents whose peak heap exceeds their share of the heap (see
+ * {@link #flagOutliers(List, long, int)}) are flagged as outliers, together
+ * with a window size (see GrAFImporterProperties.PROP_WINDOW_SIZE) that
+ * would bring them below it, if there is one.
+ */
+public class ImportEstimator {
+	/** the method the GrAFImporter uses */
+	public static final IRegionHandlingMethod IMPORTER_METHOD = IRegionHandlingMethod.ALL_TOKEN_LEVELS;
+	/** suggested window sizes are multiples of this number of characters */
+	public static final int WINDOW_SIZE_STEP = 1000;
+
+	private final CalibrationProfile profile;
+	private final DocumentCostEstimator costEstimator;
+	private final String tokenizationLayer;
+
+	public ImportEstimator(GrAFImporterProperties props, CalibrationProfile profile) {
+		this.profile = profile;
+		this.costEstimator = new DocumentCostEstimator(props);
+		this.tokenizationLayer = props.getTokenizationLayer();
+	}
+
+	/** the estimated cost of converting one document */
+	public static class Estimate {
+		private final String docId;
+		private final long textLength;
+		private final long conversionMillis;
+		private final long[] tokenCounts = new long[IRegionHandlingMethod.values().length];
+		private final long[] spanCounts = new long[IRegionHandlingMethod.values().length];
+		private final long[] peakHeaps = new long[IRegionHandlingMethod.values().length];
+		private long windowedHeap;
+		private boolean outlier = false;
+		private int windowSize = 0;
+
+		Estimate(String docId, long textLength, long conversionMillis) {
+			this.docId = docId;
+			this.textLength = textLength;
+			this.conversionMillis = conversionMillis;
+		}
+
+		public String getDocumentId() {
+			return docId;
+		}
+
+		/** returns the length of the primary text (estimated by the size of its file) */
+		public long getTextLength() {
+			return textLength;
+		}
+
+		public long getConversionMillis() {
+			return conversionMillis;
+		}
+
+		public long getTokenCount(IRegionHandlingMethod method) {
+			return tokenCounts[method.ordinal()];
+		}
+
+		public long getSpanCount(IRegionHandlingMethod method) {
+			return spanCounts[method.ordinal()];
+		}
+
+		/** returns the peak heap (in bytes) of converting the document */
+		public long getPeakHeap(IRegionHandlingMethod method) {
+			return peakHeaps[method.ordinal()];
+		}
+
+		/**
+		 * returns the part of the peak heap (with {@link #IMPORTER_METHOD})
+		 * that shrinks with the window size, i.e. the heap of converting the
+		 * whole text at once
+		 */
+		public long getWindowedHeap() {
+			return windowedHeap;
+		}
+
+		/** returns true, if the document exceeds its share of the heap (see {@link #getWindowSize()}) */
+		public boolean isOutlier() {
+			return outlier;
+		}
+
+		/**
+		 * returns the suggested window size for an outlier, 0 if the document
+		 * isn't an outlier or exceeds its share of the heap with any window
+		 * size
+		 */
+		public int getWindowSize() {
+			return windowSize;
+		}
+
+		@Override
+		public String toString() {
+			return docId + ": " + conversionMillis + " ms, " + getTokenCount(IMPORTER_METHOD) + " tokens, " + getSpanCount(IMPORTER_METHOD) + " spans, " + toMegabytes(getPeakHeap(IMPORTER_METHOD)) + " MB heap" + (isOutlier() ? (windowSize > 0 ? ", window size " + windowSize : ", too large for any window size") : "");
+		}
+	}
+
+	/** estimates the cost of converting the document described by the given header */
+	public Estimate estimate(String docId, String docHeaderPath) throws GrafException, FileNotFoundException {
+		GrafDocumentHeader docHeader = new GrafDocumentHeader(docHeaderPath);
+		File contentFile = docHeader.getContentFile();
+		long textLength = (contentFile != null) ? contentFile.length() : 0;
+		Estimate estimate = new Estimate(docId, textLength, Math.round(costEstimator.getCost(docHeader) * profile.getNanosPerCost() / 1000000));
+
+		double wordRegions = 0;
+		double otherRegions = 0;
+		double nodes = 0;
+		double edges = 0;
+		double spanningNodes = 0;
+		for (String annoType : docHeader.getAnnotationTypes()) {
+			File annoFile = docHeader.getAnnotationFile(annoType);
+			if (annoFile == null) {
+				continue;
+			}
+			double kilobytes = annoFile.length() / 1024.0;
+			double[] densities = profile.getDensities(annoType);
+			if (annoType.equals(tokenizationLayer)) {
+				wordRegions += densities[CalibrationProfile.REGIONS] * kilobytes;
+			} else {
+				otherRegions += densities[CalibrationProfile.REGIONS] * kilobytes;
+			}
+			nodes += densities[CalibrationProfile.NODES] * kilobytes;
+			edges += densities[CalibrationProfile.EDGES] * kilobytes;
+			spanningNodes += densities[CalibrationProfile.SPANNING_NODES] * kilobytes;
+		}
+		for (IRegionHandlingMethod method : IRegionHandlingMethod.values()) {
+			double tokens = wordRegions;
+			double spans = spanningNodes;
+			if (method == IRegionHandlingMethod.ALL_TOKEN_LEVELS) {
+				tokens += otherRegions;
+			} else if (method == IRegionHandlingMethod.APPROXIMATE_MATCH) {
+				spans += otherRegions;
+			}
+			int i = method.ordinal();
+			estimate.tokenCounts[i] = Math.round(tokens);
+			estimate.spanCounts[i] = Math.round(spans);
+			double elementHeap = (tokens + spans + nodes + edges) * profile.getBytesPerElement();
+			estimate.peakHeaps[i] = Math.round(elementHeap) + CalibrationProfile.BYTES_PER_TEXT_BYTE * textLength;
+			if (method == IMPORTER_METHOD) {
+				estimate.windowedHeap = Math.round(elementHeap * CalibrationProfile.WINDOWED_HEAP_SHARE);
+			}
+		}
+		return estimate;
+	}
+
+	/** estimates the cost of converting the given documents, in the given order */
+	public List<Estimate> estimate(List<String> docIds, Map<String, String> docIdDocHeaderMap) throws GrafException, FileNotFoundException {
+		List<Estimate> estimates = new ArrayList<Estimate>(docIds.size());
+		for (String docId : docIds) {
+			estimates.add(estimate(docId, docIdDocHeaderMap.get(docId)));
+		}
+		return estimates;
+	}
+
+	/**
+	 * flags the documents whose peak heap (with {@link #IMPORTER_METHOD})
+	 * exceeds their share of the heap budget, if the given number of documents
+	 * is converted in parallel. Windows only bound the heap of the conversion
+	 * itself (see {@link Estimate#getWindowedHeap()}), the IGraph, the
+	 * SDocument and the text are held for the whole document. The suggested
+	 * window size is the largest one for which the rest of the heap and the
+	 * heap of one window fit the share; if there is none, the document is
+	 * flagged without a window size.
+	 * 
+	 * @return the outliers, largest first
+	 */
+	public static List<Estimate> flagOutliers(List<Estimate> estimates, long heapBudget, int parallelDocuments) {
+		long documentBudget = heapBudget / Math.max(parallelDocuments, 1);
+		List<Estimate> outliers = new ArrayList<Estimate>();
+		for (Estimate estimate : estimates) {
+			long peakHeap = estimate.getPeakHeap(IMPORTER_METHOD);
+			if (peakHeap > documentBudget) {
+				estimate.outlier = true;
+				long wholeDocumentHeap = peakHeap - estimate.windowedHeap;
+				if (wholeDocumentHeap < documentBudget && estimate.windowedHeap > 0 && estimate.textLength > 0) {
+					long windowSize = (long) (estimate.textLength * ((double) (documentBudget - wholeDocumentHeap) / estimate.windowedHeap));
+					windowSize -= windowSize % WINDOW_SIZE_STEP;
+					estimate.windowSize = (int) Math.min(windowSize, Integer.MAX_VALUE);
+				}
+				outliers.add(estimate);
+			}
+		}
+		Collections.sort(outliers, new Comparator<Estimate>() {
+			@Override
+			public int compare(Estimate estimate1, Estimate estimate2) {
+				int heapComparison = Long.compare(estimate2.getPeakHeap(IMPORTER_METHOD), estimate1.getPeakHeap(IMPORTER_METHOD));
+				return heapComparison != 0 ? heapComparison : estimate1.docId.compareTo(estimate2.docId);
+			}
+		});
+		return outliers;
+	}
+
+	/**
+	 * returns a summary of the given estimates: the total conversion time, the
+	 * total numbers of tokens and spans and the peak heap (the sum of the
+	 * largest documents converted in parallel) for each method.
+	 */
+	public static String summarize(List<Estimate> estimates, int parallelDocuments) {
+		long totalMillis = 0;
+		for (Estimate estimate : estimates) {
+			totalMillis += estimate.conversionMillis;
+		}
+		StringBuilder summary = new StringBuilder();
+		summary.append(estimates.size()).append(" documents, ").append(totalMillis / 1000).append(" s of conversion time (about ").append(totalMillis / 1000 / Math.max(parallelDocuments, 1)).append(" s with ").append(parallelDocuments).append(" documents in parallel)");
+		for (IRegionHandlingMethod method : IRegionHandlingMethod.values()) {
+			long tokens = 0;
+			long spans = 0;
+			List<Long> peakHeaps = new ArrayList<Long>(estimates.size());
+			for (Estimate estimate : estimates) {
+				tokens += estimate.getTokenCount(method);
+				spans += estimate.getSpanCount(method);
+				peakHeaps.add(estimate.getPeakHeap(method));
+			}
+			Collections.sort(peakHeaps, Collections.reverseOrder());
+			long peakHeap = 0;
+			for (int i = 0; i < Math.min(parallelDocuments, peakHeaps.size()); i++) {
+				peakHeap += peakHeaps.get(i);
+			}
+			summary.append("; ").append(method).append(": ").append(tokens).append(" tokens, ").append(spans).append(" spans, ").append(toMegabytes(peakHeap)).append(" MB peak heap");
+		}
+		return summary.append('.').toString();
+	}
+
+	/** writes one CSV row per document, with the tokens, spans and peak heap for each method */
+	public static void writeCsv(List<Estimate> estimates, Writer writer) throws IOException {
+		writer.write("document,text_length,conversion_ms,window_size");
+		for (IRegionHandlingMethod method : IRegionHandlingMethod.values()) {
+			String name = method.name().toLowerCase(Locale.ROOT);
+			writer.write("," + name + "_tokens," + name + "_spans," + name + "_peak_heap");
+		}
+		writer.write("\n");
+		for (Estimate estimate : estimates) {
+			writer.write(estimate.docId + "," + estimate.textLength + "," + estimate.conversionMillis + "," + estimate.windowSize);
+			for (IRegionHandlingMethod method : IRegionHandlingMethod.values()) {
+				writer.write("," + estimate.getTokenCount(method) + "," + estimate.getSpanCount(method) + "," + estimate.getPeakHeap(method));
+			}
+			writer.write("\n");
+		}
+		writer.flush();
+	}
+
+	private static long toMegabytes(long bytes) {
+		return (bytes + 512 * 1024) / (1024 * 1024);
+	}
+}
@@ -0,0 +1,377 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.corpus_tools.pepper.modules.exceptions.PepperModuleException;
+import org.xces.graf.api.GrafException;
+import org.xces.graf.api.IAnnotation;
+import org.xces.graf.api.IAnnotationSpace;
+import org.xces.graf.api.IEdge;
+import org.xces.graf.api.IGraph;
+import org.xces.graf.api.ILink;
+import org.xces.graf.api.INode;
+import org.xces.graf.api.IRegion;
+
+/**
+ * A read-only view of an IGraph, in which nodes, regions and annotation spaces
+ * are identified by dense int ordinals instead of their GrAF IDs. Nodes are
+ * numbered in the order of their IDs, regions in text order (by start offset,
+ * end offset and ID), annotation spaces in the order of the IGraph.
+ * 
+ * The edges and links are stored in CSR style, i.e. in one int array per kind
+ * of adjacency plus an array of offsets into it per node. Outgoing edges are
+ * sorted by edge ID (like {@link GrafReader#getOutboundConnectedNodes(INode)}
+ * does), ingoing edges keep the order of the IGraph. References to nodes and
+ * regions of other standoff files are resolved to the nodes and regions of
+ * the IGraph, even though the GrAF parser hands out copies of them.
+ * 
+ * An IndexedGraph is built once per document and can be shared between
+ * threads. It doesn't notice changes of the IGraph made afterwards.
+ */
+public class IndexedGraph {
+	private final IGraph iGraph;
+
+	private final INode[] nodes;
+	private final Map<INode, Integer> nodeOrdinals;
+	private final Map<String, Integer> nodeIdOrdinals;
+	/** annotation space ordinal of each node, -1 if it has none */
+	private final int[] nodeAnnoSpaces;
+
+	private final int[] outEdgeOffsets;
+	private final int[] outEdgeTargets;
+	private final int[] inEdgeOffsets;
+	private final int[] inEdgeSources;
+
+	/** the regions of all links of a node */
+	private final int[] linkOffsets;
+	private final int[] linkRegions;
+	/** the onset and offset of the first link of a node, see {@link GrafReader#getLinkOffsets(ILink)} */
+	private final int[] firstLinkStarts;
+	private final int[] firstLinkEnds;
+	private final boolean[] hasLinks;
+
+	private final IRegion[] regions;
+	private final Map<IRegion, Integer> regionOrdinals;
+	/** the GrAF parser resolves links to regions of other files to copies of them */
+	private final Map<String, Integer> regionIdOrdinals;
+	private final int[] regionStarts;
+	private final int[] regionEnds;
+
+	private final String[] annoSpaceNames;
+
+	public IndexedGraph(IGraph iGraph) throws GrafException {
+		this.iGraph = iGraph;
+
+		// annotation spaces
+		List<String> annoSpaceNameList = new ArrayList<String>();
+		Map<String, Integer> annoSpaceOrdinals = new HashMap<String, Integer>();
+		for (IAnnotationSpace annoSpace : iGraph.getAnnotationSpaces()) {
+			if (!annoSpaceOrdinals.containsKey(annoSpace.getName())) {
+				annoSpaceOrdinals.put(annoSpace.getName(), annoSpaceNameList.size());
+				annoSpaceNameList.add(annoSpace.getName());
+			}
+		}
+
+		// regions
+		List<IRegion> sortedRegions = new ArrayList<IRegion>(iGraph.getRegions());
+		final Map<IRegion, int[]> offsets = new IdentityHashMap<IRegion, int[]>(sortedRegions.size() * 2);
+		for (IRegion region : sortedRegions) {
+			offsets.put(region, GrafReader.getRegionOffsets(region));
+		}
+		Collections.sort(sortedRegions, new Comparator<IRegion>() {
+			@Override
+			public int compare(IRegion region1, IRegion region2) {
+				int[] offsets1 = offsets.get(region1);
+				int[] offsets2 = offsets.get(region2);
+				if (offsets1[0] != offsets2[0]) {
+					return (offsets1[0] < offsets2[0]) ? -1 : 1;
+				} else if (offsets1[1] != offsets2[1]) {
+					return (offsets1[1] < offsets2[1]) ? -1 : 1;
+				}
+				return region1.getId().compareTo(region2.getId());
+			}
+		});
+		regions = sortedRegions.toArray(new IRegion[sortedRegions.size()]);
+		regionOrdinals = new IdentityHashMap<IRegion, Integer>(regions.length * 2);
+		regionIdOrdinals = new HashMap<String, Integer>(regions.length * 2);
+		regionStarts = new int[regions.length];
+		regionEnds = new int[regions.length];
+		for (int i = 0; i < regions.length; i++) {
+			regionOrdinals.put(regions[i], i);
+			regionIdOrdinals.put(regions[i].getId(), i);
+			regionStarts[i] = offsets.get(regions[i])[0];
+			regionEnds[i] = offsets.get(regions[i])[1];
+		}
+
+		// nodes
+		List<INode> sortedNodes = new ArrayList<INode>(iGraph.getNodes());
+		Collections.sort(sortedNodes, new GrafElementSortByID());
+		nodes = sortedNodes.toArray(new INode[sortedNodes.size()]);
+		nodeOrdinals = new IdentityHashMap<INode, Integer>(nodes.length * 2);
+		nodeIdOrdinals = new HashMap<String, Integer>(nodes.length * 2);
+		nodeAnnoSpaces = new int[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			nodeOrdinals.put(nodes[i], i);
+			nodeIdOrdinals.put(nodes[i].getId(), i);
+			IAnnotation iAnnotation = nodes[i].getAnnotation();
+			Integer annoSpaceOrdinal = null;
+			if (iAnnotation != null && iAnnotation.getAnnotationSpace() != null) {
+				annoSpaceOrdinal = annoSpaceOrdinals.get(iAnnotation.getAnnotationSpace().getName());
+			}
+			nodeAnnoSpaces[i] = (annoSpaceOrdinal != null) ? annoSpaceOrdinal : -1;
+		}
+		annoSpaceNames = annoSpaceNameList.toArray(new String[annoSpaceNameList.size()]);
+
+		// adjacency
+		outEdgeOffsets = new int[nodes.length + 1];
+		inEdgeOffsets = new int[nodes.length + 1];
+		linkOffsets = new int[nodes.length + 1];
+		firstLinkStarts = new int[nodes.length];
+		firstLinkEnds = new int[nodes.length];
+		hasLinks = new boolean[nodes.length];
+		IntList outTargets = new IntList();
+		IntList inSources = new IntList();
+		IntList linkedRegions = new IntList();
+		GrafElementSortByID edgeOrder = new GrafElementSortByID();
+		// edges to copies of nodes (see getOrdinal(INode)) are missing from
+		// the ingoing edges of the nodes themselves
+		Map<Integer, IntList> copyInSources = new HashMap<Integer, IntList>();
+		for (int i = 0; i < nodes.length; i++) {
+			List<IEdge> outEdges = new ArrayList<IEdge>(nodes[i].getOutEdges());
+			Collections.sort(outEdges, edgeOrder);
+			for (IEdge outEdge : outEdges) {
+				int target = getOrdinal(outEdge.getTo());
+				outTargets.add(target);
+				if (!nodeOrdinals.containsKey(outEdge.getTo())) {
+					if (!copyInSources.containsKey(target)) {
+						copyInSources.put(target, new IntList());
+					}
+					copyInSources.get(target).add(i);
+				}
+			}
+			outEdgeOffsets[i + 1] = outTargets.size;
+		}
+		for (int i = 0; i < nodes.length; i++) {
+			INode node = nodes[i];
+			for (IEdge inEdge : node.getInEdges()) {
+				inSources.add(getOrdinal(inEdge.getFrom()));
+			}
+			IntList sourcesOfCopies = copyInSources.get(i);
+			for (int j = 0; sourcesOfCopies != null && j < sourcesOfCopies.size; j++) {
+				inSources.add(sourcesOfCopies.get(j));
+			}
+			inEdgeOffsets[i + 1] = inSources.size;
+
+			List<ILink> links = node.getLinks();
+			hasLinks[i] = !links.isEmpty();
+			for (ILink link : links) {
+				for (IRegion region : link.getRegions()) {
+					int regionOrdinal = getRegionOrdinal(region);
+					if (regionOrdinal < 0) {
+						throw new PepperModuleException("INode " + node.getId() + " links to IRegion " + region.getId() + ", which isn't part of the IGraph.");
+					}
+					linkedRegions.add(regionOrdinal);
+				}
+			}
+			linkOffsets[i + 1] = linkedRegions.size;
+			if (hasLinks[i]) {
+				int[] firstLinkOffsets = GrafReader.getLinkOffsets(links.get(0));
+				firstLinkStarts[i] = firstLinkOffsets[0];
+				firstLinkEnds[i] = firstLinkOffsets[1];
+			}
+		}
+		outEdgeTargets = outTargets.toArray();
+		inEdgeSources = inSources.toArray();
+		linkRegions = linkedRegions.toArray();
+	}
+
+	/**
+	 * returns the ordinal of a node. The GrAF parser resolves edges to nodes
+	 * of other files to copies of these nodes, which are found by their ID.
+	 */
+	private int getOrdinal(INode node) {
+		Integer ordinal = nodeOrdinals.get(node);
+		if (ordinal == null) {
+			ordinal = nodeIdOrdinals.get(node.getId());
+		}
+		if (ordinal == null) {
+			throw new PepperModuleException("An edge connects INode " + node.getId() + ", which isn't part of the IGraph.");
+		}
+		return ordinal;
+	}
+
+	/** returns the IGraph this view was built from */
+	public IGraph getGraph() {
+		return iGraph;
+	}
+
+	public int getNodeCount() {
+		return nodes.length;
+	}
+
+	public INode getNode(int node) {
+		return nodes[node];
+	}
+
+	/**
+	 * returns the ordinal of a node (or of the node with the same ID, if the
+	 * given one is the copy an edge to another file refers to) or -1, if it
+	 * isn't part of the IGraph
+	 */
+	public int getNodeOrdinal(INode iNode) {
+		Integer ordinal = nodeOrdinals.get(iNode);
+		if (ordinal == null) {
+			ordinal = nodeIdOrdinals.get(iNode.getId());
+		}
+		return (ordinal != null) ? ordinal : -1;
+	}
+
+	/** returns the ordinal of the node with the given ID or -1, if there is none */
+	public int getNodeOrdinal(String nodeId) {
+		Integer ordinal = nodeIdOrdinals.get(nodeId);
+		return (ordinal != null) ? ordinal : -1;
+	}
+
+	/** returns the nodes with the given ordinals */
+	public List<INode> getNodes(Collection<Integer> nodeOrdinalList) {
+		List<INode> nodeList = new ArrayList<INode>(nodeOrdinalList.size());
+		for (int node : nodeOrdinalList) {
+			nodeList.add(nodes[node]);
+		}
+		return nodeList;
+	}
+
+	/** returns the annotation space ordinal of a node or -1, if it has none */
+	public int getAnnotationSpace(int node) {
+		return nodeAnnoSpaces[node];
+	}
+
+	public int getAnnotationSpaceCount() {
+		return annoSpaceNames.length;
+	}
+
+	public String getAnnotationSpaceName(int annoSpace) {
+		return annoSpaceNames[annoSpace];
+	}
+
+	public int getOutDegree(int node) {
+		return outEdgeOffsets[node + 1] - outEdgeOffsets[node];
+	}
+
+	/** returns the target of the i-th outgoing edge (sorted by edge ID) of a node */
+	public int getOutNeighbour(int node, int i) {
+		return outEdgeTargets[outEdgeOffsets[node] + i];
+	}
+
+	public int getInDegree(int node) {
+		return inEdgeOffsets[node + 1] - inEdgeOffsets[node];
+	}
+
+	/** returns the source of the i-th ingoing edge of a node */
+	public int getInNeighbour(int node, int i) {
+		return inEdgeSources[inEdgeOffsets[node] + i];
+	}
+
+	/** returns the number of regions the links of a node target */
+	public int getLinkedRegionCount(int node) {
+		return linkOffsets[node + 1] - linkOffsets[node];
+	}
+
+	/** returns the ordinal of the i-th region targeted by the links of a node */
+	public int getLinkedRegion(int node, int i) {
+		return linkRegions[linkOffsets[node] + i];
+	}
+
+	/**
+	 * returns the onset and offset of a node as
+	 * {@link GrafReader#getNodeOffsets(INode)} does for leaf nodes, i.e. the
+	 * ones of its first link (or null, if it has no links)
+	 */
+	public int[] getFirstLinkOffsets(int node) {
+		if (!hasLinks[node]) {
+			return null;
+		}
+		return new int[] { firstLinkStarts[node], firstLinkEnds[node] };
+	}
+
+	/** see {@link GrafReader#isLeafNode(INode)} */
+	public boolean isLeafNode(int node) {
+		return getOutDegree(node) == 0 && hasLinks[node];
+	}
+
+	/** see {@link GrafReader#isFloatingNode(INode)} */
+	public boolean isFloatingNode(int node) {
+		return getOutDegree(node) == 0 && !hasLinks[node];
+	}
+
+	/**
+	 * returns how often a node is found by {@link GrafReader#getRootNodes(IGraph)},
+	 * i.e. the number of its ingoing edges from nodes without ingoing edges
+	 * (0, if the node has no outgoing edges).
+	 */
+	public int getRootMultiplicity(int node) {
+		if (getOutDegree(node) == 0) {
+			return 0;
+		}
+		int multiplicity = 0;
+		for (int i = 0; i < getInDegree(node); i++) {
+			if (getInDegree(getInNeighbour(node, i)) == 0) {
+				multiplicity++;
+			}
+		}
+		return multiplicity;
+	}
+
+	public int getRegionCount() {
+		return regions.length;
+	}
+
+	public IRegion getRegion(int region) {
+		return regions[region];
+	}
+
+	/**
+	 * returns the ordinal of a region (or of the region with the same ID, if
+	 * the given one is the copy a link to another file refers to) or -1, if
+	 * it isn't part of the IGraph
+	 */
+	public int getRegionOrdinal(IRegion region) {
+		Integer ordinal = regionOrdinals.get(region);
+		if (ordinal == null) {
+			ordinal = regionIdOrdinals.get(region.getId());
+		}
+		return (ordinal != null) ? ordinal : -1;
+	}
+
+	public int getRegionStart(int region) {
+		return regionStarts[region];
+	}
+
+	public int getRegionEnd(int region) {
+		return regionEnds[region];
+	}
+}
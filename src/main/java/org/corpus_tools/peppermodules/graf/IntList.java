@@ -0,0 +1,45 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.util.Arrays;
+
+/** a growable array of ints, used for CSR-style adjacency arrays */
+class IntList {
+	int[] values = new int[16];
+	int size = 0;
+
+	void add(int value) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+		}
+		values[size++] = value;
+	}
+
+	int get(int index) {
+		return values[index];
+	}
+
+	void set(int index, int value) {
+		values[index] = value;
+	}
+
+	int[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+}
@@ -0,0 +1,298 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The primary text of a document, memory-mapped from its (UTF-8 encoded) text
+ * file instead of being decoded onto the heap. Characters are decoded lazily,
+ * only when they are accessed.
+ * 
+ * GrAF anchors are character offsets (counted in UTF-16 chars, like Java
+ * strings), whereas the mapped file is addressed by bytes. Therefore a sparse
+ * index stores the byte offset of every {@link #INDEX_INTERVAL}th character,
+ * so that the byte offset of any character can be found by decoding at most
+ * {@link #INDEX_INTERVAL} characters. A byte order mark is treated as a
+ * character, like {@link org.xces.graf.io.IOUtils} does.
+ * 
+ * {@link #subSequence(int, int)} and {@link #toString()} decode the requested
+ * characters into a String; wrap a MappedText into a {@link PrimaryText} to
+ * get views instead.
+ */
+public class MappedText implements CharSequence {
+	/** number of characters between two entries of the offset index */
+	public static final int INDEX_INTERVAL = 4096;
+
+	private static final char REPLACEMENT_CHAR = '\uFFFD';
+
+	private final File file;
+	private final ByteBuffer bytes;
+	private final int length;
+	/** char offsets of the index entries (each one starting a code point) */
+	private final int[] indexCharOffsets;
+	/** byte offsets of the index entries */
+	private final int[] indexByteOffsets;
+	/** the block of characters decoded last, for fast {@link #charAt(int)} */
+	private volatile DecodedBlock lastBlock = null;
+
+	private static class DecodedBlock {
+		final int start;
+		final String chars;
+
+		DecodedBlock(int start, String chars) {
+			this.start = start;
+			this.chars = chars;
+		}
+	}
+
+	private MappedText(File file, ByteBuffer bytes) {
+		this.file = file;
+		this.bytes = bytes;
+		int byteCount = bytes.limit();
+		int[] charOffsets = new int[byteCount / INDEX_INTERVAL + 1];
+		int[] byteOffsets = new int[charOffsets.length];
+		int entryCount = 0;
+		int charCount = 0;
+		int nextEntry = 0;
+		for (int bytePos = 0; bytePos < byteCount;) {
+			if (charCount >= nextEntry) {
+				charOffsets[entryCount] = charCount;
+				byteOffsets[entryCount] = bytePos;
+				entryCount++;
+				nextEntry += INDEX_INTERVAL;
+			}
+			int sequenceLength = getSequenceLength(bytePos);
+			charCount += (sequenceLength == 4) ? 2 : 1;
+			bytePos += sequenceLength;
+		}
+		if (entryCount == 0) {
+			entryCount = 1;
+		}
+		this.length = charCount;
+		this.indexCharOffsets = new int[entryCount];
+		this.indexByteOffsets = new int[entryCount];
+		System.arraycopy(charOffsets, 0, indexCharOffsets, 0, entryCount);
+		System.arraycopy(byteOffsets, 0, indexByteOffsets, 0, entryCount);
+	}
+
+	/**
+	 * maps the given UTF-8 encoded text file into memory and builds its offset
+	 * index.
+	 * 
+	 * @throws IOException
+	 *             if the file can't be mapped or is larger than 2 GB
+	 */
+	public static MappedText map(File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Cannot map the text file " + file + ", it is larger than 2 GB.");
+			}
+			// the mapping stays valid after the channel is closed
+			return new MappedText(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	/** returns the mapped text file */
+	public File getFile() {
+		return file;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+		}
+		DecodedBlock block = lastBlock;
+		if (block == null || index < block.start || index >= block.start + block.chars.length()) {
+			int blockStart = index - index % INDEX_INTERVAL;
+			block = new DecodedBlock(blockStart, decode(blockStart, Math.min(blockStart + INDEX_INTERVAL, length)));
+			lastBlock = block;
+		}
+		return block.chars.charAt(index - block.start);
+	}
+
+	/** decodes the characters between the given offsets into a String */
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > length || start > end) {
+			throw new IndexOutOfBoundsException("Cannot get [" + start + ", " + end + ") from a text of length " + length + ".");
+		}
+		return decode(start, end);
+	}
+
+	/** decodes the whole text into a String */
+	@Override
+	public String toString() {
+		return decode(0, length);
+	}
+
+	/**
+	 * returns the byte offset (in the text file) of the character with the
+	 * given char offset. For the second char of a surrogate pair, the offset
+	 * of the pair is returned.
+	 */
+	public int getByteOffset(int charOffset) {
+		if (charOffset < 0 || charOffset > length) {
+			throw new IndexOutOfBoundsException("char offset " + charOffset + ", length " + length);
+		}
+		int entry = getIndexEntry(charOffset);
+		int charPos = indexCharOffsets[entry];
+		int bytePos = indexByteOffsets[entry];
+		while (bytePos < bytes.limit()) {
+			int sequenceLength = getSequenceLength(bytePos);
+			int charCount = (sequenceLength == 4) ? 2 : 1;
+			if (charPos + charCount > charOffset) {
+				break;
+			}
+			charPos += charCount;
+			bytePos += sequenceLength;
+		}
+		return bytePos;
+	}
+
+	/**
+	 * returns the char offset of the character starting at (or containing) the
+	 * given byte offset in the text file.
+	 */
+	public int getCharOffset(int byteOffset) {
+		if (byteOffset < 0 || byteOffset > bytes.limit()) {
+			throw new IndexOutOfBoundsException("byte offset " + byteOffset + ", size " + bytes.limit());
+		}
+		int low = 0;
+		int high = indexByteOffsets.length - 1;
+		while (low < high) {
+			int middle = (low + high + 1) / 2;
+			if (indexByteOffsets[middle] <= byteOffset) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		int charPos = indexCharOffsets[low];
+		int bytePos = indexByteOffsets[low];
+		while (bytePos < bytes.limit()) {
+			int sequenceLength = getSequenceLength(bytePos);
+			if (bytePos + sequenceLength > byteOffset) {
+				break;
+			}
+			charPos += (sequenceLength == 4) ? 2 : 1;
+			bytePos += sequenceLength;
+		}
+		return charPos;
+	}
+
+	/** returns the last index entry at or before the given char offset */
+	private int getIndexEntry(int charOffset) {
+		int entry = Math.min(charOffset / INDEX_INTERVAL, indexCharOffsets.length - 1);
+		// an entry is moved behind a surrogate pair, if the pair straddles it
+		while (entry > 0 && indexCharOffsets[entry] > charOffset) {
+			entry--;
+		}
+		return entry;
+	}
+
+	private String decode(int start, int end) {
+		char[] chars = new char[end - start];
+		int count = 0;
+		int entry = getIndexEntry(start);
+		int charPos = indexCharOffsets[entry];
+		int bytePos = indexByteOffsets[entry];
+		while (charPos < end) {
+			int sequenceLength = getSequenceLength(bytePos);
+			int codePoint = getCodePoint(bytePos, sequenceLength);
+			if (Character.isSupplementaryCodePoint(codePoint)) {
+				if (charPos >= start) {
+					chars[count++] = Character.highSurrogate(codePoint);
+				}
+				if (charPos + 1 >= start && charPos + 1 < end) {
+					chars[count++] = Character.lowSurrogate(codePoint);
+				}
+				charPos += 2;
+			} else {
+				if (charPos >= start) {
+					chars[count++] = (char) codePoint;
+				}
+				charPos++;
+			}
+			bytePos += sequenceLength;
+		}
+		return new String(chars, 0, count);
+	}
+
+	/**
+	 * returns the number of bytes of the UTF-8 sequence starting at the given
+	 * byte offset. Malformed bytes count as sequences of one byte.
+	 */
+	private int getSequenceLength(int bytePos) {
+		int leadByte = bytes.get(bytePos) & 0xFF;
+		int sequenceLength;
+		if (leadByte < 0x80) {
+			return 1;
+		} else if (leadByte >= 0xC2 && leadByte < 0xE0) {
+			sequenceLength = 2;
+		} else if (leadByte >= 0xE0 && leadByte < 0xF0) {
+			sequenceLength = 3;
+		} else if (leadByte >= 0xF0 && leadByte < 0xF5) {
+			sequenceLength = 4;
+		} else {
+			return 1;
+		}
+		if (bytePos + sequenceLength > bytes.limit()) {
+			return 1;
+		}
+		for (int i = 1; i < sequenceLength; i++) {
+			if ((bytes.get(bytePos + i) & 0xC0) != 0x80) {
+				return 1;
+			}
+		}
+		// reject overlong sequences and code points beyond Unicode
+		int codePoint = getCodePoint(bytePos, sequenceLength);
+		if ((sequenceLength == 3 && codePoint < 0x800) || (sequenceLength == 4 && (codePoint < 0x10000 || codePoint > Character.MAX_CODE_POINT))) {
+			return 1;
+		}
+		return sequenceLength;
+	}
+
+	private int getCodePoint(int bytePos, int sequenceLength) {
+		int leadByte = bytes.get(bytePos) & 0xFF;
+		switch (sequenceLength) {
+		case 1:
+			return (leadByte < 0x80) ? leadByte : REPLACEMENT_CHAR;
+		case 2:
+			return ((leadByte & 0x1F) << 6) | (bytes.get(bytePos + 1) & 0x3F);
+		case 3:
+			return ((leadByte & 0x0F) << 12) | ((bytes.get(bytePos + 1) & 0x3F) << 6) | (bytes.get(bytePos + 2) & 0x3F);
+		default:
+			return ((leadByte & 0x07) << 18) | ((bytes.get(bytePos + 1) & 0x3F) << 12) | ((bytes.get(bytePos + 2) & 0x3F) << 6) | (bytes.get(bytePos + 3) & 0x3F);
+		}
+	}
+}
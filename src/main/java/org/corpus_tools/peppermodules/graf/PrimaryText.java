@@ -0,0 +1,121 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.lang.ref.WeakReference;
+
+import org.corpus_tools.salt.common.STextualDS;
+import org.xces.graf.api.IGraph;
+
+/**
+ * A read-only view of (a part of) the primary text of a document. The text of
+ * a document is materialized only once, slices of it are views sharing the
+ * underlying text instead of copies made by {@link String#substring(int, int)}.
+ * A slice is only copied when {@link #toString()} is called.
+ */
+public class PrimaryText implements CharSequence {
+	/**
+	 * remembers the text of the graph content last used by each thread, so
+	 * that repeated calls for the same content convert it only once. Contents
+	 * are compared by identity, so a new content set on the graph isn't
+	 * missed. Both content and text are referenced weakly, the cache doesn't
+	 * keep the text of a document alive once no view of it is left.
+	 */
+	private static final ThreadLocal<GraphText> lastGraphText = new ThreadLocal<GraphText>();
+
+	private static class GraphText {
+		final WeakReference<Object> content;
+		final WeakReference<CharSequence> text;
+
+		GraphText(Object content, CharSequence text) {
+			this.content = new WeakReference<Object>(content);
+			this.text = new WeakReference<CharSequence>(text);
+		}
+	}
+
+	private final CharSequence text;
+	private final int start;
+	private final int end;
+
+	public PrimaryText(CharSequence text) {
+		this(text, 0, text.length());
+	}
+
+	private PrimaryText(CharSequence text, int start, int end) {
+		this.text = text;
+		this.start = start;
+		this.end = end;
+	}
+
+	/** returns the primary text annotated by the given IGraph */
+	public static PrimaryText of(IGraph graph) {
+		// .getContent() doesn't return a string, because the graph could
+		// also annotate some other type of media (or it is a MappedText)
+		Object content = graph.getContent();
+		GraphText graphText = lastGraphText.get();
+		CharSequence text = (graphText != null && graphText.content.get() == content) ? graphText.text.get() : null;
+		if (text == null) {
+			text = (content instanceof CharSequence) ? (CharSequence) content : content.toString();
+			lastGraphText.set(new GraphText(content, text));
+		}
+		return new PrimaryText(text);
+	}
+
+	/** returns the primary text of the given STextualDS */
+	public static PrimaryText of(STextualDS sTextualDS) {
+		return new PrimaryText(sTextualDS.getText());
+	}
+
+	/**
+	 * returns a view of the characters between the given string onset and
+	 * offset (relative to this view) without copying them.
+	 */
+	public PrimaryText slice(int sliceStart, int sliceEnd) {
+		if (sliceStart < 0 || sliceEnd > length() || sliceStart > sliceEnd) {
+			throw new IndexOutOfBoundsException("Cannot slice [" + sliceStart + ", " + sliceEnd + ") from a text of length " + length() + ".");
+		}
+		if (sliceStart == 0 && sliceEnd == length()) {
+			return this;
+		}
+		return new PrimaryText(text, start + sliceStart, start + sliceEnd);
+	}
+
+	@Override
+	public int length() {
+		return end - start;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length()) {
+			throw new IndexOutOfBoundsException("index " + index + ", length " + length());
+		}
+		return text.charAt(start + index);
+	}
+
+	@Override
+	public CharSequence subSequence(int subStart, int subEnd) {
+		return slice(subStart, subEnd);
+	}
+
+	/** copies the characters of this view into a String */
+	@Override
+	public String toString() {
+		return text.subSequence(start, end).toString();
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.corpus_tools.pepper.modules.exceptions.PepperModuleException;
+import org.xces.graf.api.GrafException;
+import org.xces.graf.api.IGraph;
+import org.xces.graf.api.INode;
+import org.xces.graf.api.IRegion;
+
+/**
+ * Numbers the IRegions of an IGraph in text order (by start offset, end
+ * offset and ID, i.e. by their ordinals in an {@link IndexedGraph}) and
+ * represents the regions covered by an INode (via its links or recursively
+ * via its outgoing edges, see
+ * {@link SaltWriter#getIRegionsCoveredByINode(INode, org.corpus_tools.salt.common.SDocumentGraph)})
+ * as a {@link CoverageBitmap} of region numbers. Each region is contained
+ * once, no matter on how many paths it is reached, and the coverage of every
+ * node is computed only once.
+ * 
+ * The coverage of nodes can be computed by several threads at the same time,
+ * as long as the IGraph isn't changed.
+ */
+public class RegionCoverage {
+	private final IndexedGraph indexedGraph;
+	/** the coverage of the nodes computed so far, by node ordinal */
+	private final AtomicReferenceArray<CoverageBitmap> nodeCoverage;
+
+	public RegionCoverage(IGraph iGraph) throws GrafException {
+		this(new IndexedGraph(iGraph));
+	}
+
+	public RegionCoverage(IndexedGraph indexedGraph) {
+		this.indexedGraph = indexedGraph;
+		this.nodeCoverage = new AtomicReferenceArray<CoverageBitmap>(indexedGraph.getNodeCount());
+	}
+
+	/** returns the indexed graph the coverage is computed on */
+	public IndexedGraph getIndexedGraph() {
+		return indexedGraph;
+	}
+
+	/** returns the number of regions */
+	public int getRegionCount() {
+		return indexedGraph.getRegionCount();
+	}
+
+	/** returns the number of a region or -1, if it isn't part of the IGraph */
+	public int getRegionNumber(IRegion region) {
+		return indexedGraph.getRegionOrdinal(region);
+	}
+
+	/** returns the region with the given number */
+	public IRegion getRegion(int regionNumber) {
+		return indexedGraph.getRegion(regionNumber);
+	}
+
+	/**
+	 * returns the regions covered by a node (via its links or recursively via
+	 * its outgoing edges). The bitmap mustn't be changed.
+	 */
+	public CoverageBitmap getCoverage(INode iNode) {
+		int node = indexedGraph.getNodeOrdinal(iNode);
+		if (node < 0) {
+			throw new PepperModuleException("INode " + iNode.getId() + " isn't part of the IGraph.");
+		}
+		return getCoverage(node);
+	}
+
+	/** like {@link #getCoverage(INode)}, for the node with the given ordinal */
+	public CoverageBitmap getCoverage(int node) {
+		CoverageBitmap coverage = nodeCoverage.get(node);
+		if (coverage != null) {
+			return coverage;
+		}
+		coverage = new CoverageBitmap();
+		for (int i = 0; i < indexedGraph.getOutDegree(node); i++) {
+			coverage.addAll(getCoverage(indexedGraph.getOutNeighbour(node, i)));
+		}
+		for (int i = 0; i < indexedGraph.getLinkedRegionCount(node); i++) {
+			coverage.add(indexedGraph.getLinkedRegion(node, i));
+		}
+		if (nodeCoverage.compareAndSet(node, null, coverage)) {
+			return coverage;
+		}
+		return nodeCoverage.get(node);
+	}
+
+	/**
+	 * drops the computed coverage of a node, e.g. once the tree it belongs to
+	 * has been converted. It is computed again if it's needed later on.
+	 */
+	public void forget(int node) {
+		nodeCoverage.set(node, null);
+	}
+
+	/** returns the regions of a coverage bitmap in text order */
+	public List<IRegion> getRegions(CoverageBitmap coverage) {
+		int[] regionNumbers = coverage.toArray();
+		List<IRegion> coveredRegions = new ArrayList<IRegion>(regionNumbers.length);
+		for (int regionNumber : regionNumbers) {
+			coveredRegions.add(indexedGraph.getRegion(regionNumber));
+		}
+		return coveredRegions;
+	}
+
+	/** returns the regions covered by a node in text order, each one once */
+	public List<IRegion> getCoveredRegions(INode iNode) {
+		return getRegions(getCoverage(iNode));
+	}
+
+	/**
+	 * returns the string onset and offset of the primary text covered by the
+	 * given regions, i.e. the smallest start and the largest end offset (or
+	 * null, if the coverage is empty)
+	 */
+	public int[] getOffsets(CoverageBitmap coverage) {
+		if (coverage.isEmpty()) {
+			return null;
+		}
+		int highestEndOffset = Integer.MIN_VALUE;
+		for (int regionNumber : coverage.toArray()) {
+			highestEndOffset = Math.max(highestEndOffset, indexedGraph.getRegionEnd(regionNumber));
+		}
+		return new int[] { indexedGraph.getRegionStart(coverage.first()), highestEndOffset };
+	}
+}
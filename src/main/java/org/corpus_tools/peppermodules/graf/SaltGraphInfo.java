@@ -241,7 +241,7 @@ public class SaltGraphInfo {
 	public static void printSTextualRelationInfo(STextualRelation textRel) {
 		System.out.println("\ttextual relation name: " + textRel.getName() + " id: " + textRel.getId());
 		System.out.println("\t\tstring onset: " + textRel.getStart() + " offset: " + textRel.getEnd());
-		System.out.println("\t\tprimary text: " + SaltReader.getPrimaryTextSequence(textRel));
+		System.out.println("\t\tprimary text: " + SaltReader.getPrimaryTextView(textRel));
 		System.out.println("\t\ttoken name: " + textRel.getSource().getName() + " id: " + textRel.getSource().getId());
 	}
 
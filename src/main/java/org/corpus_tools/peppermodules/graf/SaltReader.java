@@ -57,16 +57,8 @@ public class SaltReader {
 	 * 
 	 */
 	public static String getPrimaryTextSequence(SNode sNode, SDocumentGraph sDocumentGraph) {
-		// we'll use the first (and only) SDataSource
-		List<DataSourceSequence> overlappedDSSequences = sDocumentGraph.getOverlappedDataSourceSequence(sNode,
-            SALT_TYPE.STEXT_OVERLAPPING_RELATION);
-		if (!overlappedDSSequences.isEmpty()) {
-			DataSourceSequence<Integer> firstSequence = overlappedDSSequences.get(0);
-			String primaryText = firstSequence.getDataSource().getData().toString();
-			return primaryText.substring(firstSequence.getStart(), firstSequence.getEnd());
-		} else {
-			return null;
-		}
+		PrimaryText textView = getPrimaryTextView(sNode, sDocumentGraph);
+		return textView == null ? null : textView.toString();
 	}
 
 	/** returns the portion of the primary text represented by an SToken. */
@@ -79,8 +71,7 @@ public class SaltReader {
 	 * STextualRelation.
 	 */
 	public static String getPrimaryTextSequence(STextualRelation textRel) {
-		String primaryText = textRel.getTarget().getText();
-		return primaryText.substring(textRel.getStart(), textRel.getEnd());
+		return getPrimaryTextView(textRel).toString();
 	}
 
 	/** returns the primary string represented by an SSpan. */
@@ -88,6 +79,31 @@ public class SaltReader {
 		return getPrimaryTextSequence(span, span.getGraph());
 	}
 
+	/**
+	 * like {@link #getPrimaryTextSequence(SNode, SDocumentGraph)}, but returns
+	 * a view of the primary text instead of a copy (or null).
+	 */
+	public static PrimaryText getPrimaryTextView(SNode sNode, SDocumentGraph sDocumentGraph) {
+		// we'll use the first (and only) SDataSource
+		List<DataSourceSequence> overlappedDSSequences = sDocumentGraph.getOverlappedDataSourceSequence(sNode,
+            SALT_TYPE.STEXT_OVERLAPPING_RELATION);
+		if (!overlappedDSSequences.isEmpty()) {
+			DataSourceSequence<Integer> firstSequence = overlappedDSSequences.get(0);
+			PrimaryText primaryText = new PrimaryText(firstSequence.getDataSource().getData().toString());
+			return primaryText.slice(firstSequence.getStart(), firstSequence.getEnd());
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * like {@link #getPrimaryTextSequence(STextualRelation)}, but returns a
+	 * view of the primary text instead of a copy.
+	 */
+	public static PrimaryText getPrimaryTextView(STextualRelation textRel) {
+		return PrimaryText.of(textRel.getTarget()).slice(textRel.getStart(), textRel.getEnd());
+	}
+
 	/** returns the string onset and offset of an SToken */
 	public static int[] getSTokenOffsets(SToken token) {
 		SDocumentGraph docGraph = token.getGraph();
@@ -24,8 +24,11 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.corpus_tools.pepper.modules.exceptions.PepperModuleException;
 import org.corpus_tools.salt.SALT_TYPE;
@@ -91,13 +94,39 @@ public class SaltWriter {
 	 *            instance
 	 */
 	public static void addAnnotationToNode(String sAnnotationName, String sAnnotationId, String sAnnotationValue, String sAnnotationNamespace, SNode sNode) {
-		HashSet<String> existingAnnotationSNames = new HashSet<String>();
-		for (SAnnotation existingAnno : sNode.getAnnotations()) {
-			existingAnnotationSNames.add(existingAnno.getName());
+		addAnnotationToNode(sAnnotationName, sAnnotationId, sAnnotationValue, sAnnotationNamespace, sNode, null);
+	}
+
+	/**
+	 * like {@link #addAnnotationToNode(String, String, String, String, SNode)},
+	 * but the name, value and namespace of the annotation are replaced by their
+	 * canonical instances from the given {@link SymbolTable} (if it isn't
+	 * null).
+	 */
+	public static void addAnnotationToNode(String sAnnotationName, String sAnnotationId, String sAnnotationValue, String sAnnotationNamespace, SNode sNode, SymbolTable symbolTable) {
+		if (symbolTable != null) {
+			sAnnotationName = symbolTable.intern(sAnnotationName);
+			sAnnotationValue = symbolTable.internValue(sAnnotationValue);
+			sAnnotationNamespace = symbolTable.intern(sAnnotationNamespace);
+		}
+		// Salt identifies annotations by namespace and name, so annotations
+		// with the same name from several annotation spaces (e.g. of nodes
+		// sharing a token or a merged SSpan) are all kept
+		SAnnotation existingAnno = null;
+		for (SAnnotation sAnno : sNode.getAnnotations()) {
+			if (sAnno.getName().equals(sAnnotationName) && equal(sAnno.getNamespace(), sAnnotationNamespace)) {
+				existingAnno = sAnno;
+				break;
+			}
 		}
 
 		// only add annotations that don't exist yet
-		if (!existingAnnotationSNames.contains(sAnnotationName)) {
+		if (existingAnno != null) {
+			if (!equal(existingAnno.getValue_STEXT(), sAnnotationValue)) {
+				logger.debug("SNode " + sNode.getId() + " already has an annotation " + existingAnno.getQName() + "=" + existingAnno.getValue_STEXT() + ", dropped the value "
+						+ sAnnotationValue + " of " + sAnnotationId + ".");
+			}
+		} else {
 			SAnnotation sAnno = SaltFactory.createSAnnotation();
 			sAnno.setName(sAnnotationName);
 			sAnno.setValue(sAnnotationValue);
@@ -106,6 +135,10 @@ public class SaltWriter {
 		}
 	}
 
+	private static boolean equal(String string1, String string2) {
+		return (string1 == null) ? string2 == null : string1.equals(string2);
+	}
+
 	/**
 	 * Creates a {@link STextualDS} object containing the primary text
 	 * {@link SaltSample#PRIMARY_TEXT} and adds the object to the
@@ -228,13 +261,18 @@ public class SaltWriter {
 
 	/** adds an SSpan to an SDocument and returns the SSpan ID. */
 	public static String addSSpanToSDocument(List<SToken> sTokens, SDocument sDocument, Set<SLayer> sLayers) {
+		return createSSpan(sTokens, sDocument, sLayers).getId();
+	}
+
+	/** adds an SSpan to an SDocument and returns it. */
+	public static SSpan createSSpan(List<SToken> sTokens, SDocument sDocument, Set<SLayer> sLayers) {
 		List<SToken> sTokensList = new ArrayList<>(sTokens);
 		// createSSpan only accepts Lists, not Lists
 		SSpan sSpan = sDocument.getDocumentGraph().createSpan(sTokensList);
 		for (SLayer layer : sLayers) {
 			sSpan.addLayer(layer);
 		}
-		return sSpan.getId();
+		return sSpan;
 	}
 
 	/**
@@ -313,11 +351,30 @@ public class SaltWriter {
 	 * text as those IRegions.
 	 */
 	public static void addRegionsToINodeSNodeMap(INode iNode, List<IRegion> iRegionsCoveredByINode, HashMap<String, List<String>> iNodeIdsToSNodeIdsMap, HashMap<String, List<String>> regionIdsToTokenIdsMap, SDocument sDocument) {
+		addRegionsToINodeSNodeMap(iNode, iRegionsCoveredByINode, iNodeIdsToSNodeIdsMap, regionIdsToTokenIdsMap, sDocument, null);
+	}
+
+	/**
+	 * like
+	 * {@link #addRegionsToINodeSNodeMap(INode, List, HashMap, HashMap, SDocument)},
+	 * but if the given {@link SpanCache} (which may be null) already contains
+	 * an SSpan covering exactly the same STokens, the INode is mapped to that
+	 * SSpan instead of a new one. Since the SLayers of an SSpan are the ones
+	 * of its tokens, the reused SSpan already has the right SLayers.
+	 */
+	public static void addRegionsToINodeSNodeMap(INode iNode, List<IRegion> iRegionsCoveredByINode, HashMap<String, List<String>> iNodeIdsToSNodeIdsMap, HashMap<String, List<String>> regionIdsToTokenIdsMap, SDocument sDocument, SpanCache spanCache) {
 		// IRegions are already added to the document, we just need to add
 		// SSpans for INodes that cover more than one IRegion
 		List<SToken> tokens = mapRegionsToTokens(iRegionsCoveredByINode, regionIdsToTokenIdsMap, sDocument.getDocumentGraph());
-		Set<SLayer> sLayers = SaltWriter.mapTokensToSLayers(tokens);
-		String sSpanId = addSSpanToSDocument(tokens, sDocument, sLayers);
+		SSpan sSpan = (spanCache != null) ? spanCache.get(tokens) : null;
+		if (sSpan == null) {
+			Set<SLayer> sLayers = SaltWriter.mapTokensToSLayers(tokens);
+			sSpan = createSSpan(tokens, sDocument, sLayers);
+			if (spanCache != null) {
+				spanCache.put(tokens, sSpan);
+			}
+		}
+		String sSpanId = sSpan.getId();
 		iNodeIdsToSNodeIdsMap.put(iNode.getId(), asList(sSpanId));
 		// using a list here to make the map usable for both SSpanIDs as well as
 		// STokenIDs
@@ -382,6 +439,15 @@ public class SaltWriter {
 		return iRegionsCoveredByINode;
 	}
 
+	/**
+	 * like {@link #getIRegionsCoveredByINode(INode, SDocumentGraph)}, but each
+	 * IRegion is returned only once, in text order, and the coverage of the
+	 * INodes is taken from (and stored in) the given {@link RegionCoverage}.
+	 */
+	public static List<IRegion> getIRegionsCoveredByINode(INode iNode, RegionCoverage regionCoverage) {
+		return regionCoverage.getCoveredRegions(iNode);
+	}
+
 	/**
 	 * creates an SToken and adds it to the SDocumentGraph of an SDocument. the
 	 * parameters needed are usually retrieved from an IRegion.
@@ -402,6 +468,14 @@ public class SaltWriter {
 	 * @return the ID of the created token
 	 */
 	public static String addTokenToDocument(int onset, int offset, SDocument sDocument, SLayer layer, String regionId) {
+		return createToken(onset, offset, sDocument, layer, regionId).getId();
+	}
+
+	/**
+	 * like {@link #addTokenToDocument(int, int, SDocument, SLayer, String)},
+	 * but returns the created token itself
+	 */
+	public static SToken createToken(int onset, int offset, SDocument sDocument, SLayer layer, String regionId) {
 		STextualDS sTextualDS = sDocument.getDocumentGraph().getTextualDSs().get(0);
 		SToken sToken = SaltFactory.createSToken();
 		sToken.setName(regionId);
@@ -413,7 +487,7 @@ public class SaltWriter {
 		sTextRel.setStart(onset);
 		sTextRel.setEnd(offset);
 		sDocument.getDocumentGraph().addRelation(sTextRel);
-		return sToken.getId();
+		return sToken;
 	}
 
 	/**
@@ -444,6 +518,15 @@ public class SaltWriter {
 	 * @throws GrafException
 	 */
 	public static HashMap<String, SNode> addAnnotationsToSDocument(IGraph iGraph, HashMap<String, List<String>> iNodeIdToSNodeIdMap, SDocument sDocument) throws GrafException {
+		return addAnnotationsToSDocument(iGraph, iNodeIdToSNodeIdMap, sDocument, null);
+	}
+
+	/**
+	 * like {@link #addAnnotationsToSDocument(IGraph, HashMap, SDocument)}, but
+	 * shares annotation names, namespaces and values via the given
+	 * {@link SymbolTable} (which may be null).
+	 */
+	public static HashMap<String, SNode> addAnnotationsToSDocument(IGraph iGraph, HashMap<String, List<String>> iNodeIdToSNodeIdMap, SDocument sDocument, SymbolTable symbolTable) throws GrafException {
 
 		SDocumentGraph docGraph = sDocument.getDocumentGraph();
 
@@ -460,7 +543,7 @@ public class SaltWriter {
 			List<String> sNodeIds = iNodeIdToSNodeIdMap.get(iNodeId);
 			for (String sNodeId : sNodeIds) {
 				SNode sNode = nodeIdToNodeMap.get(sNodeId);
-				addAnnotationsToSNode(annotationINode, sNode);
+				addAnnotationsToSNode(annotationINode, sNode, symbolTable);
 			}
 		}
 		return nodeIdToNodeMap;
@@ -471,13 +554,22 @@ public class SaltWriter {
 	 * SToken/SSpan).
 	 */
 	public static void addAnnotationsToSNode(INode annotationINode, SNode sNode) {
+		addAnnotationsToSNode(annotationINode, sNode, null);
+	}
+
+	/**
+	 * like {@link #addAnnotationsToSNode(INode, SNode)}, but shares
+	 * annotation names, namespaces and values via the given
+	 * {@link SymbolTable} (which may be null).
+	 */
+	public static void addAnnotationsToSNode(INode annotationINode, SNode sNode, SymbolTable symbolTable) {
 		String annotationId = annotationINode.getId();
 		IAnnotation iAnnotation = annotationINode.getAnnotation(); 
 		// returns default annotation
 		String annoNamespace = iAnnotation.getAnnotationSpace().getName();
 		Iterable<IFeature> annoFeatures = iAnnotation.getFeatures().features();
 		for (IFeature feature : annoFeatures) {
-			addAnnotationToNode(feature.getName(), annotationId, feature.getStringValue(), annoNamespace, sNode);
+			addAnnotationToNode(feature.getName(), annotationId, feature.getStringValue(), annoNamespace, sNode, symbolTable);
 		}
 	}
 
@@ -494,9 +586,25 @@ public class SaltWriter {
 	 *         they represent
 	 */
 	public static HashMap<String, SStructure> createSyntaxINodeSStructures(IGraph syntaxIGraph) {
+		return createSyntaxINodeSStructures(syntaxIGraph, null);
+	}
+
+	/**
+	 * like {@link #createSyntaxINodeSStructures(IGraph)}, but shares
+	 * annotation names, namespaces and values via the given
+	 * {@link SymbolTable} (which may be null).
+	 */
+	public static HashMap<String, SStructure> createSyntaxINodeSStructures(IGraph syntaxIGraph, SymbolTable symbolTable) {
+		return createSyntaxINodeSStructures(syntaxIGraph.getNodes(), symbolTable);
+	}
+
+	/**
+	 * like {@link #createSyntaxINodeSStructures(IGraph, SymbolTable)}, but
+	 * only for the given syntax nodes (e.g. the nodes of one syntax tree).
+	 */
+	public static HashMap<String, SStructure> createSyntaxINodeSStructures(Collection<INode> syntaxINodes, SymbolTable symbolTable) {
 		// map INodes to SSTructures
 		HashMap<String, SStructure> iNodeIdToSStructureMap = new HashMap<String, SStructure>();
-		Collection<INode> syntaxINodes = syntaxIGraph.getNodes();
 		for (INode syntaxINode : syntaxINodes) {
 			if (syntaxINode.getOutEdges().size() > 0) {
 				// create an SStructure for each syntax node, i.e. nodes that
@@ -505,7 +613,7 @@ public class SaltWriter {
 				SStructure syntaxSStructure = SaltFactory.createSStructure();
 				syntaxSStructure.setName(syntaxINode.getId());
 				syntaxSStructure.setId(syntaxINode.getId());
-				addAnnotationsToSNode(syntaxINode, syntaxSStructure);
+				addAnnotationsToSNode(syntaxINode, syntaxSStructure, symbolTable);
 
 				// syntaxSStructure.createSAnnotation(arg0, arg1, arg2)
 				iNodeIdToSStructureMap.put(syntaxINode.getId(), syntaxSStructure);
@@ -521,15 +629,24 @@ public class SaltWriter {
 	 * @throws GrafException
 	 */
 	public static void addSyntaxTreeRootDomRelsToDocGraph(IGraph syntaxIGraph, SDocumentGraph docGraph, HashMap<String, SStructure> iNodeIdToSStructureMap, SStructure rootSStructure) throws GrafException {
-		for (INode treeRootINode : GrafReader.getRootNodes(syntaxIGraph)) {
-			String treeRootNodeId = treeRootINode.getId();
-			if (iNodeIdToSStructureMap.containsKey(treeRootNodeId)) {
-				SStructure dominatedSStructure = iNodeIdToSStructureMap.get(treeRootNodeId);
-				if (!docGraph.getNodes().contains(dominatedSStructure)) {
-					docGraph.addNode(dominatedSStructure);
-				}
+		SyntaxTreeBuilder treeBuilder = new SyntaxTreeBuilder(docGraph);
+		addSyntaxTreeRootDomRels(syntaxIGraph, treeBuilder, iNodeIdToSStructureMap, rootSStructure);
+		treeBuilder.commit();
+	}
 
-				docGraph.addNode(rootSStructure, dominatedSStructure, domRel);
+	/**
+	 * like
+	 * {@link #addSyntaxTreeRootDomRelsToDocGraph(IGraph, SDocumentGraph, HashMap, SStructure)},
+	 * but collects the dominance relations in the given
+	 * {@link SyntaxTreeBuilder}.
+	 */
+	public static void addSyntaxTreeRootDomRels(IGraph syntaxIGraph, SyntaxTreeBuilder treeBuilder, HashMap<String, SStructure> iNodeIdToSStructureMap, SStructure rootSStructure) throws GrafException {
+		List<INode> treeRootINodes = GrafReader.getRootNodes(syntaxIGraph);
+		Collections.sort(treeRootINodes, new GrafElementSortByID());
+		for (INode treeRootINode : treeRootINodes) {
+			SStructure dominatedSStructure = iNodeIdToSStructureMap.get(treeRootINode.getId());
+			if (dominatedSStructure != null) {
+				treeBuilder.addDominanceRelation(rootSStructure, dominatedSStructure);
 			}
 		}
 	}
@@ -544,31 +661,74 @@ public class SaltWriter {
 	 * @throws GrafException
 	 */
 	public static void addSyntaxNodeDomRelsToDocGraph(IGraph syntaxIGraph, SDocumentGraph docGraph, HashMap<String, SStructure> iNodeIdToSStructureMap, HashMap<String, List<String>> iNodeIDsToSNodeIdsMap, HashMap<String, SNode> sNodeIdToSNodeMap) throws GrafException {
-		for (INode syntaxINode : syntaxIGraph.getNodes()) {
-			if (syntaxINode.getOutEdges().size() > 0) {
-				SStructure sourceSStructure = iNodeIdToSStructureMap.get(syntaxINode.getId());
+		SyntaxTreeBuilder treeBuilder = new SyntaxTreeBuilder(docGraph);
+		addSyntaxNodeDomRels(syntaxIGraph, treeBuilder, iNodeIdToSStructureMap, iNodeIDsToSNodeIdsMap, sNodeIdToSNodeMap);
+		treeBuilder.commit();
+	}
 
-				// TODO: check why the document graph doesn't contain certain
-				// SStructures
-				if (!docGraph.getNodes().contains(sourceSStructure)) {
-					docGraph.addNode(sourceSStructure);
-				}
+	/**
+	 * like
+	 * {@link #addSyntaxNodeDomRelsToDocGraph(IGraph, SDocumentGraph, HashMap, HashMap, HashMap)},
+	 * but collects the dominance relations in the given
+	 * {@link SyntaxTreeBuilder}. Syntax nodes are processed in order of their
+	 * IDs.
+	 */
+	public static void addSyntaxNodeDomRels(IGraph syntaxIGraph, SyntaxTreeBuilder treeBuilder, HashMap<String, SStructure> iNodeIdToSStructureMap, HashMap<String, List<String>> iNodeIDsToSNodeIdsMap, HashMap<String, SNode> sNodeIdToSNodeMap) throws GrafException {
+		List<INode> syntaxINodes = new ArrayList<INode>(syntaxIGraph.getNodes());
+		Collections.sort(syntaxINodes, new GrafElementSortByID());
+		for (INode syntaxINode : syntaxINodes) {
+			addSyntaxNodeDomRels(syntaxIGraph, treeBuilder, syntaxINode, iNodeIdToSStructureMap, iNodeIDsToSNodeIdsMap, sNodeIdToSNodeMap);
+		}
+	}
 
-				for (INode connectedSyntaxINode : GrafReader.getOutboundConnectedNodes(syntaxINode)) {
-					// add dominance relation between a syntax node (e.g. one
-					// that represents a syntactic categories) and a token node
-					if (connectedSyntaxINode.getOutEdges().size() == 0) {
-						List<ILink> linksToTokenRegions = connectedSyntaxINode.getLinks();
-						if (linksToTokenRegions.size() > 0) {
-							addDomRelToNonFloatingSToken(syntaxIGraph, docGraph, sourceSStructure, linksToTokenRegions);
-						} else {
-							addDomRelToFloatingSToken(syntaxIGraph, docGraph, sourceSStructure, connectedSyntaxINode);
-						}
+	/**
+	 * collects the dominance relations from a single syntax node (if it has
+	 * outgoing edges) to the nodes it dominates.
+	 */
+	public static void addSyntaxNodeDomRels(IGraph syntaxIGraph, SyntaxTreeBuilder treeBuilder, INode syntaxINode, HashMap<String, SStructure> iNodeIdToSStructureMap, HashMap<String, List<String>> iNodeIDsToSNodeIdsMap, HashMap<String, SNode> sNodeIdToSNodeMap) throws GrafException {
+		if (syntaxINode.getOutEdges().size() > 0) {
+			SStructure sourceSStructure = iNodeIdToSStructureMap.get(syntaxINode.getId());
+			treeBuilder.addStructure(sourceSStructure);
+
+			for (INode connectedSyntaxINode : GrafReader.getOutboundConnectedNodes(syntaxINode)) {
+				// add dominance relation between a syntax node (e.g. one
+				// that represents a syntactic categories) and a token node
+				if (connectedSyntaxINode.getOutEdges().size() == 0) {
+					List<ILink> linksToTokenRegions = connectedSyntaxINode.getLinks();
+					if (linksToTokenRegions.size() > 0) {
+						addDomRelToNonFloatingSToken(syntaxIGraph, treeBuilder, sourceSStructure, linksToTokenRegions);
+					} else {
+						addDomRelToFloatingSToken(syntaxIGraph, treeBuilder.getDocumentGraph(), sourceSStructure, connectedSyntaxINode);
 					}
+				}
 
-					else { // handle dominated nodes with outgoing edges
-						addDomRelBetweenSyntaxNodes(docGraph, sourceSStructure, connectedSyntaxINode, iNodeIdToSStructureMap, iNodeIDsToSNodeIdsMap, sNodeIdToSNodeMap);
-					}
+				else { // handle dominated nodes with outgoing edges
+					addDomRelBetweenSyntaxNodes(treeBuilder, sourceSStructure, connectedSyntaxINode, iNodeIdToSStructureMap, iNodeIDsToSNodeIdsMap, sNodeIdToSNodeMap);
+				}
+			}
+		}
+	}
+
+	/**
+	 * like
+	 * {@link #addSyntaxNodeDomRels(IGraph, SyntaxTreeBuilder, INode, HashMap, HashMap, HashMap)},
+	 * but the syntax node is given by its ordinal and the dominated nodes are
+	 * taken from the arrays of an {@link IndexedGraph}.
+	 */
+	public static void addSyntaxNodeDomRels(IndexedGraph syntaxGraph, SyntaxTreeBuilder treeBuilder, int syntaxNode, HashMap<String, SStructure> iNodeIdToSStructureMap, HashMap<String, List<String>> iNodeIDsToSNodeIdsMap, HashMap<String, SNode> sNodeIdToSNodeMap) throws GrafException {
+		if (syntaxGraph.getOutDegree(syntaxNode) > 0) {
+			SStructure sourceSStructure = iNodeIdToSStructureMap.get(syntaxGraph.getNode(syntaxNode).getId());
+			treeBuilder.addStructure(sourceSStructure);
+
+			for (int i = 0; i < syntaxGraph.getOutDegree(syntaxNode); i++) {
+				int connectedSyntaxNode = syntaxGraph.getOutNeighbour(syntaxNode, i);
+				INode connectedSyntaxINode = syntaxGraph.getNode(connectedSyntaxNode);
+				if (syntaxGraph.isLeafNode(connectedSyntaxNode)) {
+					addDomRelToNonFloatingSToken(syntaxGraph.getGraph(), treeBuilder, sourceSStructure, connectedSyntaxINode.getLinks());
+				} else if (syntaxGraph.isFloatingNode(connectedSyntaxNode)) {
+					addDomRelToFloatingSToken(syntaxGraph.getGraph(), treeBuilder.getDocumentGraph(), sourceSStructure, connectedSyntaxINode);
+				} else {
+					addDomRelBetweenSyntaxNodes(treeBuilder, sourceSStructure, connectedSyntaxINode, iNodeIdToSStructureMap, iNodeIDsToSNodeIdsMap, sNodeIdToSNodeMap);
 				}
 			}
 		}
@@ -579,18 +739,30 @@ public class SaltWriter {
 	 * tokens directly)
 	 */
 	public static void addDomRelBetweenSyntaxNodes(SDocumentGraph docGraph, SStructure sourceSStructure, INode dominatedINode, HashMap<String, SStructure> iNodeIdToSStructureMap, HashMap<String, List<String>> iNodeIDsToSNodeIdsMap, HashMap<String, SNode> sNodeIdToSNodeMap) {
+		SyntaxTreeBuilder treeBuilder = new SyntaxTreeBuilder(docGraph);
+		addDomRelBetweenSyntaxNodes(treeBuilder, sourceSStructure, dominatedINode, iNodeIdToSStructureMap, iNodeIDsToSNodeIdsMap, sNodeIdToSNodeMap);
+		treeBuilder.commit();
+	}
+
+	/**
+	 * like
+	 * {@link #addDomRelBetweenSyntaxNodes(SDocumentGraph, SStructure, INode, HashMap, HashMap, HashMap)},
+	 * but collects the dominance relation in the given
+	 * {@link SyntaxTreeBuilder}.
+	 */
+	public static void addDomRelBetweenSyntaxNodes(SyntaxTreeBuilder treeBuilder, SStructure sourceSStructure, INode dominatedINode, HashMap<String, SStructure> iNodeIdToSStructureMap, HashMap<String, List<String>> iNodeIDsToSNodeIdsMap, HashMap<String, SNode> sNodeIdToSNodeMap) {
 
 		String dominatedINodeId = dominatedINode.getId();
 		if (iNodeIdToSStructureMap.containsKey(dominatedINodeId)) {
 			SStructure dominatedSStructure = iNodeIdToSStructureMap.get(dominatedINodeId);
-			docGraph.addNode(sourceSStructure, dominatedSStructure, domRel);
+			treeBuilder.addDominanceRelation(sourceSStructure, dominatedSStructure);
 		} else { // TODO: check why iNodeIdToSStructureMap doesn't contain
 					// certain dominated INode IDs
 			List<String> dominatedSElementIds = iNodeIDsToSNodeIdsMap.get(dominatedINodeId);
 			for (String dominatedSElementId : dominatedSElementIds) {
 				if (sNodeIdToSNodeMap.containsKey(dominatedSElementId)) {
 					SNode dominatedSNode = sNodeIdToSNodeMap.get(dominatedSElementId);
-					docGraph.addNode(sourceSStructure, dominatedSNode, domRel);
+					treeBuilder.addDominanceRelation(sourceSStructure, dominatedSNode);
 				} else {
 					throw new PepperModuleException(" Can't find element '" + dominatedSElementId + "' in token map or span map!1!!");
 				}
@@ -618,11 +790,23 @@ public class SaltWriter {
 	 *            equivalent to SToken nodes
 	 */
 	public static void addDomRelToNonFloatingSToken(IGraph syntaxIGraph, SDocumentGraph docGraph, SStructure sourceSStructure, List<ILink> linksToTokenRegions) throws GrafException {
+		SyntaxTreeBuilder treeBuilder = new SyntaxTreeBuilder(docGraph);
+		addDomRelToNonFloatingSToken(syntaxIGraph, treeBuilder, sourceSStructure, linksToTokenRegions);
+		treeBuilder.commit();
+	}
+
+	/**
+	 * like
+	 * {@link #addDomRelToNonFloatingSToken(IGraph, SDocumentGraph, SStructure, List)},
+	 * but collects the dominance relations in the given
+	 * {@link SyntaxTreeBuilder}.
+	 */
+	public static void addDomRelToNonFloatingSToken(IGraph syntaxIGraph, SyntaxTreeBuilder treeBuilder, SStructure sourceSStructure, List<ILink> linksToTokenRegions) throws GrafException {
 		for (ILink link : linksToTokenRegions) {
 			for (IRegion region : link.regions()) {
-				List<SToken> dominatedSTokens = GrafReader.getSTokensFromIRegions(syntaxIGraph, region, docGraph);
+				List<SToken> dominatedSTokens = treeBuilder.getTokens(syntaxIGraph, region);
 				for (SToken dominatedSToken : dominatedSTokens) {
-					docGraph.addNode(sourceSStructure, dominatedSToken, domRel);
+					treeBuilder.addDominanceRelation(sourceSStructure, dominatedSToken);
 				}
 			}
 		}
@@ -643,21 +827,128 @@ public class SaltWriter {
 	 * @throws GrafException
 	 */
 	public static void addSyntaxToSDocument(IGraph syntaxIGraph, HashMap<String, List<String>> iNodeIdToSNodeIdMap, HashMap<String, SNode> sNodeIdToSNodeMap, SDocument sDocument) throws GrafException {
+		addSyntaxToSDocument(syntaxIGraph, iNodeIdToSNodeIdMap, sNodeIdToSNodeMap, sDocument, null);
+	}
 
-		SDocumentGraph docGraph = sDocument.getDocumentGraph();
-		List<SToken> sTokens = Collections.synchronizedList(docGraph.getTokens());
+	/**
+	 * like {@link #addSyntaxToSDocument(IGraph, HashMap, HashMap, SDocument)},
+	 * but shares annotation names, namespaces and values of the syntax nodes
+	 * via the given {@link SymbolTable} (which may be null).
+	 */
+	public static void addSyntaxToSDocument(IGraph syntaxIGraph, HashMap<String, List<String>> iNodeIdToSNodeIdMap, HashMap<String, SNode> sNodeIdToSNodeMap, SDocument sDocument, SymbolTable symbolTable) throws GrafException {
+		addSyntaxToSDocument(syntaxIGraph, iNodeIdToSNodeIdMap, sNodeIdToSNodeMap, sDocument, symbolTable, null);
+	}
+
+	/**
+	 * like
+	 * {@link #addSyntaxToSDocument(IGraph, HashMap, HashMap, SDocument, SymbolTable)},
+	 * but the syntax trees are built independently of each other, in parallel
+	 * if a ForkJoinPool is given (see {@link SyntaxForest}). Their
+	 * SStructures and dominance relations are added to the document graph
+	 * afterwards, tree by tree, so the result doesn't depend on the number of
+	 * threads.
+	 */
+	public static void addSyntaxToSDocument(IGraph syntaxIGraph, HashMap<String, List<String>> iNodeIdToSNodeIdMap, HashMap<String, SNode> sNodeIdToSNodeMap, SDocument sDocument, SymbolTable symbolTable, ForkJoinPool pool) throws GrafException {
+		addSyntaxToSDocument(new IndexedGraph(syntaxIGraph), iNodeIdToSNodeIdMap, sNodeIdToSNodeMap, sDocument, symbolTable, pool);
+	}
+
+	/**
+	 * like
+	 * {@link #addSyntaxToSDocument(IGraph, HashMap, HashMap, SDocument, SymbolTable, ForkJoinPool)},
+	 * but the trees are traversed on the arrays of an {@link IndexedGraph}
+	 * that was already built for the IGraph.
+	 */
+	public static void addSyntaxToSDocument(IndexedGraph syntaxGraph, HashMap<String, List<String>> iNodeIdToSNodeIdMap, HashMap<String, SNode> sNodeIdToSNodeMap, SDocument sDocument, SymbolTable symbolTable, ForkJoinPool pool) throws GrafException {
+		SStructure rootSStructure = addSyntaxRootToSDocument(sDocument);
+		addSyntaxTreesToSDocument(syntaxGraph, SyntaxForest.splitByRoot(syntaxGraph), rootSStructure, iNodeIdToSNodeIdMap, sNodeIdToSNodeMap, sDocument, symbolTable, pool);
+	}
 
-		HashMap<String, SStructure> iNodeIdToSStructureMap = createSyntaxINodeSStructures(syntaxIGraph);
-		
+	/**
+	 * adds the SStructure all syntax trees of a document are attached to
+	 */
+	public static SStructure addSyntaxRootToSDocument(SDocument sDocument) {
 		// FIXME: IGraph.getRoots() is broken, so we got to create/add our own
 		// root for now
 		SStructure rootSStructure = SaltFactory.createSStructure();
 		rootSStructure.setName("root");
-		docGraph.addNode(rootSStructure);
+		sDocument.getDocumentGraph().addNode(rootSStructure);
+		return rootSStructure;
+	}
+
+	/**
+	 * like
+	 * {@link #addSyntaxToSDocument(IndexedGraph, HashMap, HashMap, SDocument, SymbolTable, ForkJoinPool)},
+	 * but only for the given trees (e.g. the ones of a {@link TextWindow}),
+	 * which are attached to an existing root SStructure.
+	 */
+	public static void addSyntaxTreesToSDocument(final IndexedGraph syntaxGraph, List<List<INode>> trees, final SStructure rootSStructure, final HashMap<String, List<String>> iNodeIdToSNodeIdMap, final HashMap<String, SNode> sNodeIdToSNodeMap, SDocument sDocument, final SymbolTable symbolTable, ForkJoinPool pool) throws GrafException {
+		IGraph syntaxIGraph = syntaxGraph.getGraph();
+
+		final SDocumentGraph docGraph = sDocument.getDocumentGraph();
 
-		// we'll create dominance relations from the root of the SDocument to
-		// all the roots of the syntactic trees that it will contain
-		addSyntaxTreeRootDomRelsToDocGraph(syntaxIGraph, docGraph, iNodeIdToSStructureMap, rootSStructure);
-		addSyntaxNodeDomRelsToDocGraph(syntaxIGraph, docGraph, iNodeIdToSStructureMap, iNodeIdToSNodeIdMap, sNodeIdToSNodeMap);
+		// the document graph is only read by this thread, the tokens of all
+		// regions the trees link to are looked up before the trees are built
+		List<INode> treeNodes = new ArrayList<INode>();
+		for (List<INode> tree : trees) {
+			treeNodes.addAll(tree);
+		}
+		final Map<IRegion, List<SToken>> regionTokens = getSyntaxLeafRegionTokens(syntaxIGraph, treeNodes, docGraph);
+
+		SyntaxForest syntaxForest = new SyntaxForest(trees);
+		List<SyntaxTreeBuilder> treeBuilders = syntaxForest.processTrees(new SyntaxForest.TreeTask<SyntaxTreeBuilder>() {
+			@Override
+			public SyntaxTreeBuilder process(List<INode> tree) throws GrafException {
+				// in a tree, there's about one dominance relation per node
+				SyntaxTreeBuilder treeBuilder = new SyntaxTreeBuilder(docGraph, tree.size(), regionTokens);
+				HashMap<String, SStructure> iNodeIdToSStructureMap = createSyntaxINodeSStructures(tree, symbolTable);
+				// we'll create dominance relations from the root of the
+				// SDocument to all the roots of the syntactic trees
+				for (INode treeRootINode : SyntaxForest.getTreeRoots(syntaxGraph, tree)) {
+					SStructure dominatedSStructure = iNodeIdToSStructureMap.get(treeRootINode.getId());
+					if (dominatedSStructure != null) {
+						treeBuilder.addDominanceRelation(rootSStructure, dominatedSStructure);
+					}
+				}
+				for (INode syntaxINode : tree) {
+					addSyntaxNodeDomRels(syntaxGraph, treeBuilder, syntaxGraph.getNodeOrdinal(syntaxINode), iNodeIdToSStructureMap, iNodeIdToSNodeIdMap, sNodeIdToSNodeMap);
+				}
+				return treeBuilder;
+			}
+		}, pool);
+
+		// all structures and relations are added to the document graph at once
+		SyntaxTreeBuilder documentBuilder = new SyntaxTreeBuilder(docGraph, treeNodes.size());
+		for (SyntaxTreeBuilder treeBuilder : treeBuilders) {
+			documentBuilder.addAll(treeBuilder);
+		}
+		documentBuilder.commit();
+	}
+
+	/**
+	 * returns the STokens of all IRegions that leaf nodes of the syntax trees
+	 * link to (as an IdentityHashMap from IRegion to STokens).
+	 */
+	public static Map<IRegion, List<SToken>> getSyntaxLeafRegionTokens(IGraph syntaxIGraph, SDocumentGraph docGraph) throws GrafException {
+		return getSyntaxLeafRegionTokens(syntaxIGraph, syntaxIGraph.getNodes(), docGraph);
+	}
+
+	/**
+	 * like {@link #getSyntaxLeafRegionTokens(IGraph, SDocumentGraph)}, but
+	 * only for the leaf nodes among the given syntax nodes.
+	 */
+	public static Map<IRegion, List<SToken>> getSyntaxLeafRegionTokens(IGraph syntaxIGraph, Collection<INode> syntaxINodes, SDocumentGraph docGraph) throws GrafException {
+		Map<IRegion, List<SToken>> regionTokens = new IdentityHashMap<IRegion, List<SToken>>();
+		for (INode syntaxINode : syntaxINodes) {
+			if (syntaxINode.getOutEdges().isEmpty() && !syntaxINode.getInEdges().isEmpty()) {
+				for (ILink link : syntaxINode.getLinks()) {
+					for (IRegion region : link.regions()) {
+						if (!regionTokens.containsKey(region)) {
+							regionTokens.put(region, GrafReader.getSTokensFromIRegions(syntaxIGraph, region, docGraph));
+						}
+					}
+				}
+			}
+		}
+		return regionTokens;
 	}
-}
\ No newline at end of file
+}
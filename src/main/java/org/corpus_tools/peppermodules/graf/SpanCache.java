@@ -0,0 +1,137 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.corpus_tools.salt.common.SSpan;
+import org.corpus_tools.salt.common.SToken;
+
+/**
+ * Remembers the SSpans of a document by the exact set of STokens they cover,
+ * so that INodes covering the same tokens (e.g. a named entity and a noun
+ * phrase from different annotation spaces) can share one SSpan instead of
+ * getting one each.
+ * 
+ * Every token gets a number the first time it is seen. A token set is
+ * represented by the sorted numbers of its (distinct) tokens, so the order and
+ * repetitions of the tokens don't matter. Alternatively, SSpans can be
+ * remembered by the {@link CoverageBitmap} of the IRegions their tokens belong
+ * to, which saves looking up the tokens. The two kinds of keys should not be
+ * mixed for the same document. A cache is meant to be used for one document
+ * only.
+ */
+public class SpanCache {
+	private final Map<SToken, Integer> tokenNumbers = new IdentityHashMap<SToken, Integer>();
+	/** SSpans by TokenSet or CoverageBitmap */
+	private final Map<Object, SSpan> spans = new HashMap<Object, SSpan>();
+	private int hitCount = 0;
+
+	/**
+	 * returns the SSpan covering exactly the given tokens or null, if there is
+	 * none yet.
+	 */
+	public SSpan get(List<SToken> sTokens) {
+		SSpan sSpan = spans.get(toTokenSet(sTokens));
+		if (sSpan != null) {
+			hitCount++;
+		}
+		return sSpan;
+	}
+
+	/** remembers the SSpan covering the given tokens */
+	public void put(List<SToken> sTokens, SSpan sSpan) {
+		spans.put(toTokenSet(sTokens), sSpan);
+	}
+
+	/**
+	 * returns the SSpan covering exactly the tokens of the given regions (see
+	 * {@link RegionCoverage}) or null, if there is none yet.
+	 */
+	public SSpan get(CoverageBitmap regionCoverage) {
+		SSpan sSpan = spans.get(regionCoverage);
+		if (sSpan != null) {
+			hitCount++;
+		}
+		return sSpan;
+	}
+
+	/**
+	 * remembers the SSpan covering the tokens of the given regions (the bitmap
+	 * mustn't be changed afterwards)
+	 */
+	public void put(CoverageBitmap regionCoverage, SSpan sSpan) {
+		spans.put(regionCoverage, sSpan);
+	}
+
+	/** returns the number of SSpans in the cache */
+	public int size() {
+		return spans.size();
+	}
+
+	/** returns how often an SSpan was found in the cache, i.e. reused */
+	public int getHitCount() {
+		return hitCount;
+	}
+
+	private TokenSet toTokenSet(List<SToken> sTokens) {
+		int[] numbers = new int[sTokens.size()];
+		for (int i = 0; i < numbers.length; i++) {
+			SToken sToken = sTokens.get(i);
+			Integer number = tokenNumbers.get(sToken);
+			if (number == null) {
+				number = tokenNumbers.size();
+				tokenNumbers.put(sToken, number);
+			}
+			numbers[i] = number;
+		}
+		Arrays.sort(numbers);
+		int distinctCount = 0;
+		for (int i = 0; i < numbers.length; i++) {
+			if (distinctCount == 0 || numbers[i] != numbers[distinctCount - 1]) {
+				numbers[distinctCount++] = numbers[i];
+			}
+		}
+		return new TokenSet(Arrays.copyOf(numbers, distinctCount));
+	}
+
+	/** the sorted, distinct numbers of the tokens of a set */
+	private static final class TokenSet {
+		private final int[] numbers;
+		private final int hashCode;
+
+		TokenSet(int[] numbers) {
+			this.numbers = numbers;
+			this.hashCode = Arrays.hashCode(numbers);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return (obj instanceof TokenSet) && Arrays.equals(numbers, ((TokenSet) obj).numbers);
+		}
+	}
+}
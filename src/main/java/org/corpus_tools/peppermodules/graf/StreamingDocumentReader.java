@@ -0,0 +1,640 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.corpus_tools.salt.SaltFactory;
+import org.corpus_tools.salt.common.SDocument;
+import org.corpus_tools.salt.common.SSpan;
+import org.corpus_tools.salt.common.SStructure;
+import org.corpus_tools.salt.common.SToken;
+import org.corpus_tools.salt.core.SLayer;
+import org.corpus_tools.salt.core.SNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xces.graf.api.GrafException;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Converts a GrAF document into an SDocument directly from its standoff
+ * files, without building an IGraph. The files are streamed twice with a SAX
+ * parser:
+ * 
+ * <ol>
+ * <li>The structure pass collects the regions (ID and offsets), the nodes
+ * (ID, the regions they link to and the annotation space of their first
+ * annotation) and the declared annotation spaces in small tables of ints.
+ * Features are skipped.</li>
+ * <li>The STokens and SSpans are created from these tables, like the
+ * {@link AnnotationSpaceConverter} does.</li>
+ * <li>The annotation pass streams the files again and adds the features of
+ * each annotation as SAnnotations to the STokens/SSpans of its node as soon
+ * as the annotation element ends.</li>
+ * </ol>
+ * 
+ * Only simple documents can be converted this way: documents with edges (i.e.
+ * syntax trees or other structures, which need the IGraph path's tree
+ * handling), floating nodes (which need to be repaired), nested feature
+ * structures or references that can't be resolved within the listed files
+ * are detected in the structure pass, before anything is added to the
+ * SDocument, and have to be converted via the IGraph (see
+ * {@link DocumentPipeline}).
+ * 
+ * The SDocument contains the same tokens, spans, layers and annotations as
+ * one converted via the IGraph, but they are created in a different order
+ * (tokens in text order, spans in the order of the nodes in the files), so
+ * the IDs Salt assigns to them may differ. Layers are created for the
+ * annotation spaces declared or used in the standoff files.
+ */
+public class StreamingDocumentReader {
+	private static final Logger logger = LoggerFactory.getLogger(GrAFImporter.MODULE_NAME);
+	private static final String XML_NAMESPACE = "http://www.w3.org/XML/1998/namespace";
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int UNDEFINED = 0;
+	private static final int REGION = 1;
+	private static final int NODE = 2;
+
+	private final SymbolTable symbolTable;
+	private final boolean mergeSpans;
+	private final SAXParserFactory parserFactory;
+
+	/**
+	 * @param symbolTable
+	 *            - shares annotation names, namespaces and values, may be null
+	 * @param mergeSpans
+	 *            - if true, nodes covering exactly the same STokens share one
+	 *            SSpan (see {@link SpanCache})
+	 */
+	public StreamingDocumentReader(SymbolTable symbolTable, boolean mergeSpans) {
+		this.symbolTable = symbolTable;
+		this.mergeSpans = mergeSpans;
+		this.parserFactory = SAXParserFactory.newInstance();
+		this.parserFactory.setNamespaceAware(true);
+	}
+
+	/**
+	 * converts the document described by the given header into the (empty)
+	 * document graph of an SDocument.
+	 * 
+	 * @return false, if the document can't be converted by streaming. Nothing
+	 *         has been added to the SDocument then.
+	 */
+	public boolean read(String docHeaderPath, SDocument sDocument) throws GrafException, IOException, SAXException {
+		GrafDocumentHeader docHeader = new GrafDocumentHeader(docHeaderPath);
+		File contentFile = docHeader.getContentFile();
+		List<String> annoFiles = new ArrayList<String>();
+		for (String annoType : docHeader.getAnnotationTypes()) {
+			File annoFile = docHeader.getAnnotationFile(annoType);
+			if (annoFile != null) {
+				annoFiles.add(annoFile.getPath());
+			}
+		}
+		DocumentFiles files = new DocumentFiles() {
+			@Override
+			public InputStream open(String location) throws IOException {
+				return new BufferedInputStream(new FileInputStream(location));
+			}
+
+			@Override
+			public String getSystemId(String location) {
+				return new File(location).toURI().toString();
+			}
+		};
+		return read(docHeaderPath, (contentFile != null) ? contentFile.getPath() : null, annoFiles, files, sDocument);
+	}
+
+	/**
+	 * like {@link #read(String, SDocument)}, but the document is read
+	 * directly from the entries of a corpus archive, without extracting them.
+	 */
+	public boolean read(final CorpusArchive archive, String headerEntry, SDocument sDocument) throws GrafException, IOException, SAXException {
+		GrafDocumentHeader docHeader = archive.readDocumentHeader(headerEntry);
+		String contentEntry = (docHeader.getContentLocation() != null) ? CorpusArchive.resolve(headerEntry, docHeader.getContentLocation()) : null;
+		List<String> annoEntries = new ArrayList<String>();
+		for (String annoType : docHeader.getAnnotationTypes()) {
+			String annoLocation = docHeader.getAnnotationLocation(annoType);
+			if (annoLocation != null) {
+				annoEntries.add(CorpusArchive.resolve(headerEntry, annoLocation));
+			}
+		}
+		DocumentFiles entries = new DocumentFiles() {
+			@Override
+			public InputStream open(String entryName) throws IOException {
+				if (!archive.contains(entryName)) {
+					throw new IOException("The archive " + archive.getArchiveFile() + " doesn't contain the entry " + entryName + ".");
+				}
+				return archive.openEntry(entryName);
+			}
+
+			@Override
+			public String getSystemId(String entryName) {
+				return null;
+			}
+		};
+		return read(archive.getArchiveFile() + ":" + headerEntry, contentEntry, annoEntries, entries, sDocument);
+	}
+
+	/** opens the files of a document, given by their locations */
+	private interface DocumentFiles {
+		InputStream open(String location) throws IOException;
+
+		/** returns the system ID relative locations in a file are resolved against, may be null */
+		String getSystemId(String location);
+	}
+
+	private boolean read(String docHeaderPath, String contentLocation, List<String> annoFiles, DocumentFiles files, SDocument sDocument) throws IOException, SAXException {
+		if (contentLocation == null) {
+			logger.debug(docHeaderPath + " can't be streamed: it has no primary text.");
+			return false;
+		}
+
+		StructureTable structure = new StructureTable();
+		StructureHandler structureHandler = new StructureHandler(structure);
+		for (String annoFile : annoFiles) {
+			parse(files, annoFile, structureHandler);
+			if (structure.fallbackReason != null) {
+				break;
+			}
+		}
+		if (structure.fallbackReason == null) {
+			structure.validate();
+		}
+		if (structure.fallbackReason != null) {
+			logger.debug(docHeaderPath + " can't be streamed: " + structure.fallbackReason);
+			return false;
+		}
+
+		// from here on, the document is converted
+		SaltWriter.addPrimaryTextToDocument(sDocument, new String(readFully(files, contentLocation), UTF8));
+		SNode[][] nodeSNodes = structure.addTokensAndSpans(sDocument);
+		AnnotationHandler annotationHandler = new AnnotationHandler(structure, nodeSNodes);
+		for (String annoFile : annoFiles) {
+			parse(files, annoFile, annotationHandler);
+		}
+		// the IGraph path always adds the root of the (here: empty) syntax
+		// forest
+		SStructure rootSStructure = SaltFactory.createSStructure();
+		rootSStructure.setName("root");
+		sDocument.getDocumentGraph().addNode(rootSStructure);
+		return true;
+	}
+
+	private void parse(DocumentFiles files, String location, DefaultHandler handler) throws IOException, SAXException {
+		SAXParser parser;
+		try {
+			parser = parserFactory.newSAXParser();
+		} catch (ParserConfigurationException e) {
+			throw new SAXException("Cannot create a SAX parser. ", e);
+		}
+		InputStream input = files.open(location);
+		try {
+			parser.parse(input, handler, files.getSystemId(location));
+		} catch (FallbackException e) {
+			// the structure pass stops at the first element that can't be
+			// streamed
+		} finally {
+			input.close();
+		}
+	}
+
+	private static byte[] readFully(DocumentFiles files, String location) throws IOException {
+		InputStream input = files.open(location);
+		try {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			byte[] buffer = new byte[64 * 1024];
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				output.write(buffer, 0, read);
+			}
+			return output.toByteArray();
+		} finally {
+			input.close();
+		}
+	}
+
+	private static String getId(Attributes attributes) {
+		String id = attributes.getValue(XML_NAMESPACE, "id");
+		return (id != null) ? id : attributes.getValue("xml:id");
+	}
+
+	/** thrown to stop the structure pass early */
+	private static class FallbackException extends SAXException {
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * the regions, nodes and annotation spaces of a document. IDs (of regions
+	 * and nodes alike) are numbered on their first occurrence, all other
+	 * tables are indexed by these numbers.
+	 */
+	private class StructureTable {
+		final Map<String, Integer> idNumbers = new HashMap<String, Integer>();
+		final List<String> ids = new ArrayList<String>();
+		final IntList kinds = new IntList();
+		final IntList regionStarts = new IntList();
+		final IntList regionEnds = new IntList();
+		/** the link targets of a node are linkTargets[nodeLinkStarts, nodeLinkEnds) */
+		final IntList nodeLinkStarts = new IntList();
+		final IntList nodeLinkEnds = new IntList();
+		final IntList linkTargets = new IntList();
+		/** the annotation space of the first annotation of a node, -1 if there is none */
+		final IntList nodeSpaces = new IntList();
+		final IntList regions = new IntList();
+		final IntList nodes = new IntList();
+		/** the IDs referenced by annotations */
+		final IntList annotatedIds = new IntList();
+
+		final Map<String, Integer> spaceNumbers = new HashMap<String, Integer>();
+		final List<String> spaceNames = new ArrayList<String>();
+
+		String fallbackReason = null;
+
+		int getIdNumber(String id) {
+			Integer idNumber = idNumbers.get(id);
+			if (idNumber == null) {
+				idNumber = ids.size();
+				idNumbers.put(id, idNumber);
+				ids.add(id);
+				kinds.add(UNDEFINED);
+				regionStarts.add(0);
+				regionEnds.add(0);
+				nodeLinkStarts.add(0);
+				nodeLinkEnds.add(0);
+				nodeSpaces.add(-1);
+			}
+			return idNumber;
+		}
+
+		int getSpaceNumber(String spaceName) {
+			Integer spaceNumber = spaceNumbers.get(spaceName);
+			if (spaceNumber == null) {
+				spaceNumber = spaceNames.size();
+				spaceNumbers.put(spaceName, spaceNumber);
+				spaceNames.add(spaceName);
+			}
+			return spaceNumber;
+		}
+
+		/** checks the references between regions, nodes and annotations */
+		void validate() {
+			for (int i = 0; i < ids.size(); i++) {
+				if (kinds.get(i) == UNDEFINED) {
+					fallbackReason = "'" + ids.get(i) + "' is referenced, but not defined in the standoff files.";
+					return;
+				}
+			}
+			// the GrAF parser only adds nodes to the IGraph once they are
+			// annotated, nodes without annotations are left out
+			int annotatedNodeCount = 0;
+			for (int i = 0; i < nodes.size; i++) {
+				if (nodeSpaces.get(nodes.get(i)) >= 0) {
+					nodes.set(annotatedNodeCount++, nodes.get(i));
+				}
+			}
+			nodes.size = annotatedNodeCount;
+			for (int i = 0; i < nodes.size; i++) {
+				int node = nodes.get(i);
+				if (nodeLinkStarts.get(node) == nodeLinkEnds.get(node)) {
+					fallbackReason = "node '" + ids.get(node) + "' is floating.";
+					return;
+				}
+				for (int j = nodeLinkStarts.get(node); j < nodeLinkEnds.get(node); j++) {
+					if (kinds.get(linkTargets.get(j)) != REGION) {
+						fallbackReason = "node '" + ids.get(node) + "' links to '" + ids.get(linkTargets.get(j)) + "', which isn't a region.";
+						return;
+					}
+				}
+			}
+			for (int i = 0; i < annotatedIds.size; i++) {
+				if (kinds.get(annotatedIds.get(i)) != NODE) {
+					fallbackReason = "'" + ids.get(annotatedIds.get(i)) + "' is annotated, but isn't a node.";
+					return;
+				}
+			}
+		}
+
+		/**
+		 * adds an SLayer per annotation space, an SToken per region and node
+		 * linking to it (or one in the layer of unannotated regions) and an
+		 * SSpan per node covering several regions.
+		 * 
+		 * @return the STokens/SSpans of each node, by ID number
+		 */
+		SNode[][] addTokensAndSpans(SDocument sDocument) {
+			SLayer[] spaceLayers = new SLayer[spaceNames.size()];
+			for (int i = 0; i < spaceLayers.length; i++) {
+				spaceLayers[i] = addLayer(sDocument, spaceNames.get(i));
+			}
+			SLayer notAnnotatedLayer = addLayer(sDocument, AnnotationSpaceConverter.NOT_ANNOTATED);
+
+			// the nodes linking to a region, in the order of the links
+			int idCount = ids.size();
+			int[] regionLinkStarts = new int[idCount + 1];
+			for (int i = 0; i < linkTargets.size; i++) {
+				regionLinkStarts[linkTargets.get(i) + 1]++;
+			}
+			for (int i = 0; i < idCount; i++) {
+				regionLinkStarts[i + 1] += regionLinkStarts[i];
+			}
+			int[] regionLinkNodes = new int[linkTargets.size];
+			int[] regionLinkFill = new int[idCount];
+			for (int i = 0; i < nodes.size; i++) {
+				int node = nodes.get(i);
+				for (int j = nodeLinkStarts.get(node); j < nodeLinkEnds.get(node); j++) {
+					int region = linkTargets.get(j);
+					regionLinkNodes[regionLinkStarts[region] + regionLinkFill[region]++] = node;
+				}
+			}
+
+			// tokens in text order
+			int[] regionOrder = getRegionsInTextOrder();
+			int[] regionRanks = new int[idCount];
+			SToken[][] regionTokens = new SToken[idCount][];
+			for (int rank = 0; rank < regionOrder.length; rank++) {
+				int region = regionOrder[rank];
+				regionRanks[region] = rank;
+				int linkCount = regionLinkStarts[region + 1] - regionLinkStarts[region];
+				SToken[] sTokens = new SToken[Math.max(linkCount, 1)];
+				if (linkCount == 0) {
+					sTokens[0] = SaltWriter.createToken(regionStarts.get(region), regionEnds.get(region), sDocument, notAnnotatedLayer, ids.get(region));
+				}
+				for (int i = 0; i < linkCount; i++) {
+					int space = nodeSpaces.get(regionLinkNodes[regionLinkStarts[region] + i]);
+					SLayer regionLayer = (space < 0) ? notAnnotatedLayer : spaceLayers[space];
+					sTokens[i] = SaltWriter.createToken(regionStarts.get(region), regionEnds.get(region), sDocument, regionLayer, ids.get(region));
+				}
+				regionTokens[region] = sTokens;
+			}
+
+			// a node covering one region is mapped to its tokens, a node
+			// covering several regions to an SSpan
+			SpanCache spanCache = mergeSpans ? new SpanCache() : null;
+			SNode[][] nodeSNodes = new SNode[idCount][];
+			for (int i = 0; i < nodes.size; i++) {
+				int node = nodes.get(i);
+				CoverageBitmap coverage = new CoverageBitmap();
+				for (int j = nodeLinkStarts.get(node); j < nodeLinkEnds.get(node); j++) {
+					coverage.add(regionRanks[linkTargets.get(j)]);
+				}
+				if (coverage.getCardinality() == 1) {
+					nodeSNodes[node] = regionTokens[regionOrder[coverage.first()]];
+					continue;
+				}
+				SSpan sSpan = (spanCache != null) ? spanCache.get(coverage) : null;
+				if (sSpan == null) {
+					List<SToken> tokens = new ArrayList<SToken>();
+					for (int rank : coverage.toArray()) {
+						Collections.addAll(tokens, regionTokens[regionOrder[rank]]);
+					}
+					sSpan = SaltWriter.createSSpan(tokens, sDocument, SaltWriter.mapTokensToSLayers(tokens));
+					if (spanCache != null) {
+						spanCache.put(coverage, sSpan);
+					}
+				}
+				nodeSNodes[node] = new SNode[] { sSpan };
+			}
+			return nodeSNodes;
+		}
+
+		/** returns the ID numbers of the regions sorted by start, end and ID */
+		int[] getRegionsInTextOrder() {
+			List<Integer> sortedRegions = new ArrayList<Integer>(regions.size);
+			for (int i = 0; i < regions.size; i++) {
+				sortedRegions.add(regions.get(i));
+			}
+			Collections.sort(sortedRegions, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer region1, Integer region2) {
+					if (regionStarts.get(region1) != regionStarts.get(region2)) {
+						return (regionStarts.get(region1) < regionStarts.get(region2)) ? -1 : 1;
+					} else if (regionEnds.get(region1) != regionEnds.get(region2)) {
+						return (regionEnds.get(region1) < regionEnds.get(region2)) ? -1 : 1;
+					}
+					return ids.get(region1).compareTo(ids.get(region2));
+				}
+			});
+			int[] regionOrder = new int[sortedRegions.size()];
+			for (int i = 0; i < regionOrder.length; i++) {
+				regionOrder[i] = sortedRegions.get(i);
+			}
+			return regionOrder;
+		}
+
+		private SLayer addLayer(SDocument sDocument, String layerName) {
+			SLayer layer = SaltFactory.createSLayer();
+			layer.setName(layerName);
+			sDocument.getDocumentGraph().addLayer(layer);
+			return layer;
+		}
+	}
+
+	/** the structure pass, fills a {@link StructureTable} */
+	private class StructureHandler extends DefaultHandler {
+		private final StructureTable structure;
+		private int currentNode = -1;
+		private int currentSpace = -1;
+		private boolean inFeature = false;
+
+		StructureHandler(StructureTable structure) {
+			this.structure = structure;
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+			if ("annotationSpace".equals(localName)) {
+				String spaceName = attributes.getValue("as.id");
+				if (spaceName != null) {
+					structure.getSpaceNumber(spaceName);
+				}
+			} else if ("as".equals(localName)) {
+				String spaceName = attributes.getValue("type");
+				currentSpace = (spaceName != null) ? structure.getSpaceNumber(spaceName) : -1;
+			} else if ("region".equals(localName)) {
+				addRegion(getId(attributes), attributes.getValue("anchors"));
+			} else if ("node".equals(localName)) {
+				int node = define(getId(attributes), NODE);
+				structure.nodeLinkStarts.set(node, structure.linkTargets.size);
+				structure.nodeLinkEnds.set(node, structure.linkTargets.size);
+				structure.nodes.add(node);
+				currentNode = node;
+			} else if ("link".equals(localName)) {
+				String targets = attributes.getValue("targets");
+				if (currentNode < 0 || targets == null) {
+					fallBack("a link outside of a node or without targets.");
+				}
+				for (String target : targets.trim().split("\\s+")) {
+					if (!target.isEmpty()) {
+						structure.linkTargets.add(structure.getIdNumber(target));
+					}
+				}
+				structure.nodeLinkEnds.set(currentNode, structure.linkTargets.size);
+			} else if ("edge".equals(localName)) {
+				fallBack("it contains edges.");
+			} else if ("a".equals(localName)) {
+				addAnnotation(attributes.getValue("ref"), attributes.getValue("as"));
+			} else if ("f".equals(localName)) {
+				inFeature = true;
+			} else if ("fs".equals(localName) && inFeature) {
+				fallBack("it contains nested feature structures.");
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			if ("node".equals(localName)) {
+				currentNode = -1;
+			} else if ("as".equals(localName)) {
+				currentSpace = -1;
+			} else if ("f".equals(localName)) {
+				inFeature = false;
+			}
+		}
+
+		private void addRegion(String regionId, String anchors) throws SAXException {
+			String[] anchorValues = (anchors != null) ? anchors.trim().split("\\s+") : new String[0];
+			if (anchorValues.length < 2) {
+				fallBack("region '" + regionId + "' has less than two anchors.");
+			}
+			int region = define(regionId, REGION);
+			try {
+				structure.regionStarts.set(region, Integer.parseInt(anchorValues[0]));
+				structure.regionEnds.set(region, Integer.parseInt(anchorValues[1]));
+			} catch (NumberFormatException e) {
+				fallBack("region '" + regionId + "' has anchors that aren't character offsets.");
+			}
+			structure.regions.add(region);
+		}
+
+		private void addAnnotation(String ref, String spaceName) throws SAXException {
+			if (ref == null) {
+				fallBack("an annotation doesn't reference a node.");
+			}
+			int space = (spaceName != null) ? structure.getSpaceNumber(spaceName) : currentSpace;
+			if (space < 0) {
+				fallBack("the annotation of '" + ref + "' has no annotation space.");
+			}
+			int node = structure.getIdNumber(ref);
+			structure.annotatedIds.add(node);
+			// like INode.getAnnotation(), only the first annotation counts
+			if (structure.nodeSpaces.get(node) < 0) {
+				structure.nodeSpaces.set(node, space);
+			}
+		}
+
+		private int define(String id, int kind) throws SAXException {
+			if (id == null) {
+				fallBack("it contains a region or node without ID.");
+			}
+			int idNumber = structure.getIdNumber(id);
+			if (structure.kinds.get(idNumber) != UNDEFINED) {
+				fallBack("'" + id + "' is defined twice.");
+			}
+			structure.kinds.set(idNumber, kind);
+			return idNumber;
+		}
+
+		private void fallBack(String reason) throws SAXException {
+			structure.fallbackReason = reason;
+			throw new FallbackException();
+		}
+	}
+
+	/**
+	 * the annotation pass, adds the features of the first annotation of each
+	 * node to its STokens/SSpans
+	 */
+	private class AnnotationHandler extends DefaultHandler {
+		private final StructureTable structure;
+		private final SNode[][] nodeSNodes;
+		private final BitSet annotatedNodes = new BitSet();
+		private int currentNode = -1;
+		private final List<String> features = new ArrayList<String>();
+		private String featureName = null;
+		private String featureValue = null;
+		private StringBuilder featureText = null;
+
+		AnnotationHandler(StructureTable structure, SNode[][] nodeSNodes) {
+			this.structure = structure;
+			this.nodeSNodes = nodeSNodes;
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			if ("a".equals(localName)) {
+				int node = structure.getIdNumber(attributes.getValue("ref"));
+				if (!annotatedNodes.get(node)) {
+					annotatedNodes.set(node);
+					currentNode = node;
+					features.clear();
+				}
+			} else if ("f".equals(localName) && currentNode >= 0) {
+				featureName = attributes.getValue("name");
+				featureValue = attributes.getValue("value");
+				featureText = (featureValue == null) ? new StringBuilder() : null;
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			if (featureText != null) {
+				featureText.append(ch, start, length);
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			if ("f".equals(localName) && featureName != null) {
+				features.add(featureName);
+				features.add((featureValue != null) ? featureValue : featureText.toString());
+				featureName = null;
+				featureValue = null;
+				featureText = null;
+			} else if ("a".equals(localName) && currentNode >= 0) {
+				String namespace = structure.spaceNames.get(structure.nodeSpaces.get(currentNode));
+				String iNodeId = structure.ids.get(currentNode);
+				for (SNode sNode : nodeSNodes[currentNode]) {
+					for (int i = 0; i < features.size(); i += 2) {
+						SaltWriter.addAnnotationToNode(features.get(i), iNodeId, features.get(i + 1), namespace, sNode, symbolTable);
+					}
+				}
+				currentNode = -1;
+			}
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A concurrent table of canonical strings. Annotation names, namespaces and
+ * values (e.g. POS tags or syntactic categories) stem from a small vocabulary
+ * but occur millions of times in a corpus. Passing them through one
+ * SymbolTable per corpus lets all SAnnotations share the same String
+ * instances instead of keeping a copy each.
+ * 
+ * Unlike {@link String#intern()}, the symbols are released together with the
+ * table once the corpus is converted. Names and namespaces are always kept
+ * (see {@link #intern(String)}), but values only up to a maximal number and
+ * length (see {@link #internValue(String)}): features like the token string
+ * have values that hardly repeat, keeping all of them for the whole corpus
+ * would retain more heap than sharing them saves.
+ */
+public class SymbolTable {
+	/** the default maximal number of distinct values kept */
+	public static final int DEFAULT_MAX_VALUES = 65536;
+	/** values longer than this aren't kept, they rarely repeat */
+	public static final int MAX_VALUE_LENGTH = 32;
+
+	private final ConcurrentMap<String, String> symbols = new ConcurrentHashMap<String, String>();
+	private final ConcurrentMap<String, String> values = new ConcurrentHashMap<String, String>();
+	private final AtomicInteger valueCount = new AtomicInteger();
+	private final int maxValues;
+
+	public SymbolTable() {
+		this(DEFAULT_MAX_VALUES);
+	}
+
+	/**
+	 * @param maxValues
+	 *            - the maximal number of distinct values kept, further values
+	 *            are returned as they are
+	 */
+	public SymbolTable(int maxValues) {
+		this.maxValues = maxValues;
+	}
+
+	/**
+	 * returns the canonical instance of the given name or namespace. null is
+	 * returned as is.
+	 */
+	public String intern(String name) {
+		return intern(symbols, name);
+	}
+
+	/**
+	 * returns the canonical instance of the given annotation value, if the
+	 * value is short and the table isn't full yet; otherwise the value itself.
+	 * null is returned as is.
+	 */
+	public String internValue(String value) {
+		if (value == null || value.length() > MAX_VALUE_LENGTH) {
+			return value;
+		}
+		String symbol = values.get(value);
+		if (symbol != null) {
+			return symbol;
+		}
+		if (valueCount.get() >= maxValues) {
+			return value;
+		}
+		symbol = intern(values, value);
+		if (symbol == value) {
+			valueCount.incrementAndGet();
+		}
+		return symbol;
+	}
+
+	private static String intern(ConcurrentMap<String, String> table, String value) {
+		if (value == null) {
+			return null;
+		}
+		String symbol = table.get(value);
+		if (symbol == null) {
+			symbol = table.putIfAbsent(value, value);
+			if (symbol == null) {
+				symbol = value;
+			}
+		}
+		return symbol;
+	}
+
+	/** returns the number of distinct strings in the table */
+	public int size() {
+		return symbols.size() + values.size();
+	}
+
+	/** removes all strings from the table */
+	public void clear() {
+		symbols.clear();
+		values.clear();
+		valueCount.set(0);
+	}
+}
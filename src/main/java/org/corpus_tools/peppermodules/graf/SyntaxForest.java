@@ -0,0 +1,267 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.xces.graf.api.GrafException;
+import org.xces.graf.api.IEdge;
+import org.xces.graf.api.IGraph;
+import org.xces.graf.api.INode;
+
+/**
+ * Splits the nodes of an IGraph into its trees (i.e. the connected parts of
+ * the graph, e.g. the syntax trees of the sentences of a document) and
+ * processes them independently of each other, on a ForkJoinPool if one is
+ * given.
+ * 
+ * The result is deterministic: nodes are sorted by ID within a tree, trees are
+ * sorted by the smallest ID of their nodes and the results of the trees are
+ * returned in that order, no matter which thread processed which tree.
+ */
+public class SyntaxForest {
+	/** the number of trees a task processes without forking */
+	private static final int TREES_PER_TASK = 4;
+
+	private final List<List<INode>> trees;
+
+	/** is called once for every tree, possibly by several threads at the same time */
+	public interface TreeTask<T> {
+		T process(List<INode> tree) throws GrafException;
+	}
+
+	public SyntaxForest(IGraph iGraph) {
+		this.trees = splitByRoot(iGraph);
+	}
+
+	public SyntaxForest(IndexedGraph indexedGraph) {
+		this.trees = splitByRoot(indexedGraph);
+	}
+
+	/**
+	 * creates a forest of trees split beforehand (e.g. the trees of a
+	 * {@link TextWindow})
+	 */
+	public SyntaxForest(List<List<INode>> trees) {
+		this.trees = trees;
+	}
+
+	/** returns the trees of the forest, each one a list of nodes sorted by ID */
+	public List<List<INode>> getTrees() {
+		return trees;
+	}
+
+	/**
+	 * splits the nodes of an IGraph into trees, i.e. sets of nodes connected
+	 * by edges (ignoring their direction). Nodes without any edges form a tree
+	 * of their own.
+	 */
+	public static List<List<INode>> splitByRoot(IGraph iGraph) {
+		List<INode> nodes = new ArrayList<INode>(iGraph.getNodes());
+		Collections.sort(nodes, new GrafElementSortByID());
+		Map<INode, Integer> nodeIndex = new IdentityHashMap<INode, Integer>(nodes.size() * 2);
+		for (INode node : nodes) {
+			nodeIndex.put(node, nodeIndex.size());
+		}
+
+		// union-find over the edges of the graph
+		int[] parents = new int[nodes.size()];
+		for (int i = 0; i < parents.length; i++) {
+			parents[i] = i;
+		}
+		for (int i = 0; i < parents.length; i++) {
+			for (IEdge outEdge : nodes.get(i).getOutEdges()) {
+				Integer j = nodeIndex.get(outEdge.getTo());
+				if (j != null) {
+					int root1 = find(parents, i);
+					int root2 = find(parents, j);
+					// the smaller index becomes the root, so every tree is
+					// represented by its node with the smallest ID
+					parents[Math.max(root1, root2)] = Math.min(root1, root2);
+				}
+			}
+		}
+
+		Map<Integer, List<INode>> treeMap = new LinkedHashMap<Integer, List<INode>>();
+		for (int i = 0; i < parents.length; i++) {
+			int root = find(parents, i);
+			List<INode> tree = treeMap.get(root);
+			if (tree == null) {
+				tree = new ArrayList<INode>();
+				treeMap.put(root, tree);
+			}
+			tree.add(nodes.get(i));
+		}
+		return new ArrayList<List<INode>>(treeMap.values());
+	}
+
+	/**
+	 * like {@link #splitByRoot(IGraph)}, but the edges are taken from the
+	 * arrays of an {@link IndexedGraph}, whose node ordinals already follow
+	 * the order of the node IDs.
+	 */
+	public static List<List<INode>> splitByRoot(IndexedGraph indexedGraph) {
+		int[] parents = new int[indexedGraph.getNodeCount()];
+		for (int i = 0; i < parents.length; i++) {
+			parents[i] = i;
+		}
+		for (int i = 0; i < parents.length; i++) {
+			for (int k = 0; k < indexedGraph.getOutDegree(i); k++) {
+				int root1 = find(parents, i);
+				int root2 = find(parents, indexedGraph.getOutNeighbour(i, k));
+				parents[Math.max(root1, root2)] = Math.min(root1, root2);
+			}
+		}
+
+		// a tree's root has the smallest ordinal, so trees are found in order
+		int[] treeNumbers = new int[parents.length];
+		List<List<INode>> trees = new ArrayList<List<INode>>();
+		for (int i = 0; i < parents.length; i++) {
+			int root = find(parents, i);
+			if (root == i) {
+				treeNumbers[i] = trees.size();
+				trees.add(new ArrayList<INode>());
+			}
+			trees.get(treeNumbers[root]).add(indexedGraph.getNode(i));
+		}
+		return trees;
+	}
+
+	private static int find(int[] parents, int i) {
+		while (parents[i] != i) {
+			parents[i] = parents[parents[i]];
+			i = parents[i];
+		}
+		return i;
+	}
+
+	/**
+	 * returns the roots of a tree as
+	 * {@link GrafReader#getRootNodes(IGraph)} does for a whole graph (i.e. the
+	 * nodes with outgoing edges that are dominated by a node without ingoing
+	 * edges), sorted by ID.
+	 */
+	public static List<INode> getTreeRoots(List<INode> tree) {
+		List<INode> rootNodes = new ArrayList<INode>();
+		for (INode iNode : tree) {
+			if (iNode.getOutEdges().isEmpty()) {
+				continue;
+			}
+			for (IEdge inEdge : iNode.getInEdges()) {
+				if (inEdge.getFrom().getInEdges().isEmpty()) {
+					rootNodes.add(iNode);
+				}
+			}
+		}
+		return rootNodes;
+	}
+
+	/**
+	 * like {@link #getTreeRoots(List)}, but the edges are taken from the
+	 * arrays of an {@link IndexedGraph}.
+	 */
+	public static List<INode> getTreeRoots(IndexedGraph indexedGraph, List<INode> tree) {
+		List<INode> rootNodes = new ArrayList<INode>();
+		for (INode iNode : tree) {
+			int multiplicity = indexedGraph.getRootMultiplicity(indexedGraph.getNodeOrdinal(iNode));
+			for (int i = 0; i < multiplicity; i++) {
+				rootNodes.add(iNode);
+			}
+		}
+		return rootNodes;
+	}
+
+	/**
+	 * calls the task for every tree and returns the results in the order of
+	 * the trees. If a pool is given, the trees are processed in parallel on
+	 * it, otherwise by the calling thread. The task must not change the
+	 * IGraph.
+	 */
+	public <T> List<T> processTrees(TreeTask<T> task, ForkJoinPool pool) throws GrafException {
+		Object[] results = new Object[trees.size()];
+		AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		if (pool != null) {
+			pool.invoke(new TreeAction<T>(task, 0, trees.size(), results, failure));
+		} else {
+			processRange(task, 0, trees.size(), results, failure);
+		}
+		Exception e = failure.get();
+		if (e instanceof GrafException) {
+			throw (GrafException) e;
+		} else if (e instanceof RuntimeException) {
+			throw (RuntimeException) e;
+		} else if (e != null) {
+			throw new GrafException("Cannot process the trees of the graph. ", e);
+		}
+		@SuppressWarnings("unchecked")
+		List<T> resultList = (List<T>) Arrays.asList(results);
+		return resultList;
+	}
+
+	/** processes the trees from index 'from' (inclusive) to 'to' (exclusive) */
+	private <T> void processRange(TreeTask<T> task, int from, int to, Object[] results, AtomicReference<Exception> failure) {
+		for (int i = from; i < to; i++) {
+			if (failure.get() != null) {
+				return;
+			}
+			try {
+				results[i] = task.process(trees.get(i));
+			} catch (Exception e) {
+				failure.compareAndSet(null, e);
+				return;
+			}
+		}
+	}
+
+	/** processes a range of trees, forks tasks for its halves if it's too large */
+	private class TreeAction<T> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final TreeTask<T> task;
+		private final int from;
+		private final int to;
+		private final Object[] results;
+		private final AtomicReference<Exception> failure;
+
+		TreeAction(TreeTask<T> task, int from, int to, Object[] results, AtomicReference<Exception> failure) {
+			this.task = task;
+			this.from = from;
+			this.to = to;
+			this.results = results;
+			this.failure = failure;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > TREES_PER_TASK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new TreeAction<T>(task, from, middle, results, failure), new TreeAction<T>(task, middle, to, results, failure));
+			} else {
+				processRange(task, from, to, results, failure);
+			}
+		}
+	}
+}
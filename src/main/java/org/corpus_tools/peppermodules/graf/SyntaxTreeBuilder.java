@@ -0,0 +1,191 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.corpus_tools.pepper.modules.exceptions.PepperModuleException;
+import org.corpus_tools.salt.SaltFactory;
+import org.corpus_tools.salt.common.SDocumentGraph;
+import org.corpus_tools.salt.common.SDominanceRelation;
+import org.corpus_tools.salt.common.SStructure;
+import org.corpus_tools.salt.common.SStructuredNode;
+import org.corpus_tools.salt.common.SToken;
+import org.corpus_tools.salt.core.SNode;
+import org.xces.graf.api.GrafException;
+import org.xces.graf.api.IGraph;
+import org.xces.graf.api.IRegion;
+
+/**
+ * Collects the SStructures and dominance relations of the syntax trees of a
+ * document and adds them to the SDocumentGraph in one go (see
+ * {@link #commit()}), instead of adding every relation on its own via
+ * SDocumentGraph.addNode(source, target, SALT_TYPE).
+ * 
+ * Relations are kept in plain arrays until they are committed, membership in
+ * the document graph is checked by identity instead of searching the node
+ * list. Nodes and relations are added in the order they were collected, so
+ * the IDs Salt assigns to them only depend on that order.
+ * 
+ * Several builders can collect the trees of a document in parallel (see
+ * {@link SyntaxForest}), as long as the tokens of the regions they need are
+ * looked up beforehand (see {@link #getTokens(IGraph, IRegion)}). They are
+ * merged into one builder via {@link #addAll(SyntaxTreeBuilder)}.
+ */
+public class SyntaxTreeBuilder {
+	private final SDocumentGraph docGraph;
+	private final List<SStructure> structures = new ArrayList<SStructure>();
+	private final Set<SNode> collectedStructures = Collections.newSetFromMap(new IdentityHashMap<SNode, Boolean>());
+	private final Map<IRegion, List<SToken>> regionTokens;
+	private SStructure[] sources;
+	private SNode[] targets;
+	private int relationCount = 0;
+
+	public SyntaxTreeBuilder(SDocumentGraph docGraph) {
+		this(docGraph, 16);
+	}
+
+	public SyntaxTreeBuilder(SDocumentGraph docGraph, int expectedRelationCount) {
+		this(docGraph, expectedRelationCount, null);
+	}
+
+	/**
+	 * @param expectedRelationCount
+	 *            - the number of dominance relations expected, used to size
+	 *            the relation arrays
+	 * @param regionTokens
+	 *            - the STokens of IRegions (identical instances), looked up
+	 *            in advance. May be null.
+	 */
+	public SyntaxTreeBuilder(SDocumentGraph docGraph, int expectedRelationCount, Map<IRegion, List<SToken>> regionTokens) {
+		this.docGraph = docGraph;
+		this.regionTokens = regionTokens;
+		this.sources = new SStructure[Math.max(expectedRelationCount, 1)];
+		this.targets = new SNode[sources.length];
+	}
+
+	/** returns the document graph the trees are built for */
+	public SDocumentGraph getDocumentGraph() {
+		return docGraph;
+	}
+
+	/**
+	 * returns the STokens representing the primary text an IRegion links to.
+	 * They are taken from the tokens looked up in advance if possible, only
+	 * otherwise the document graph is searched.
+	 */
+	public List<SToken> getTokens(IGraph iGraph, IRegion region) throws GrafException {
+		if (regionTokens != null) {
+			List<SToken> tokens = regionTokens.get(region);
+			if (tokens != null) {
+				return tokens;
+			}
+		}
+		return GrafReader.getSTokensFromIRegions(iGraph, region, docGraph);
+	}
+
+	/** adds an SStructure (once, no matter how often it is given) */
+	public void addStructure(SStructure structure) {
+		if (collectedStructures.add(structure)) {
+			structures.add(structure);
+		}
+	}
+
+	/**
+	 * adds a dominance relation from an SStructure to an SStructure, SSpan or
+	 * SToken. The source is added as well.
+	 */
+	public void addDominanceRelation(SStructure source, SNode target) {
+		addStructure(source);
+		if (target instanceof SStructure) {
+			addStructure((SStructure) target);
+		}
+		if (relationCount == sources.length) {
+			sources = Arrays.copyOf(sources, relationCount * 2);
+			targets = Arrays.copyOf(targets, relationCount * 2);
+		}
+		sources[relationCount] = source;
+		targets[relationCount] = target;
+		relationCount++;
+	}
+
+	/**
+	 * adds the SStructures and dominance relations collected by another
+	 * builder (after the ones collected so far) and empties the other builder.
+	 */
+	public void addAll(SyntaxTreeBuilder other) {
+		for (SStructure structure : other.structures) {
+			addStructure(structure);
+		}
+		for (int i = 0; i < other.relationCount; i++) {
+			addDominanceRelation(other.sources[i], other.targets[i]);
+		}
+		other.clear();
+	}
+
+	/** returns the number of collected dominance relations */
+	public int getRelationCount() {
+		return relationCount;
+	}
+
+	/**
+	 * adds all collected SStructures (unless they are already part of the
+	 * document graph) and dominance relations to the document graph and
+	 * empties the builder.
+	 * 
+	 * @return the created dominance relations, in the order they were added
+	 */
+	public List<SDominanceRelation> commit() {
+		for (SStructure structure : structures) {
+			if (structure.getGraph() != docGraph) {
+				docGraph.addNode(structure);
+			}
+		}
+		List<SDominanceRelation> domRels = new ArrayList<SDominanceRelation>(relationCount);
+		for (int i = 0; i < relationCount; i++) {
+			SNode target = targets[i];
+			if (!(target instanceof SStructuredNode)) {
+				throw new PepperModuleException("Cannot add a dominance relation to '" + target.getId() + "', only SStructures, SSpans and STokens can be dominated.");
+			}
+			if (target.getGraph() != docGraph) {
+				docGraph.addNode(target);
+			}
+			SDominanceRelation domRel = SaltFactory.createSDominanceRelation();
+			domRel.setSource(sources[i]);
+			domRel.setTarget((SStructuredNode) target);
+			docGraph.addRelation(domRel);
+			domRels.add(domRel);
+		}
+		clear();
+		return domRels;
+	}
+
+	private void clear() {
+		structures.clear();
+		collectedStructures.clear();
+		Arrays.fill(sources, 0, relationCount, null);
+		Arrays.fill(targets, 0, relationCount, null);
+		relationCount = 0;
+	}
+}
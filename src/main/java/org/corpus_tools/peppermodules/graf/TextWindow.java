@@ -0,0 +1,195 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.xces.graf.api.INode;
+
+/**
+ * A stretch of the primary text of a document together with the regions,
+ * nodes and syntax trees within it. The windows of a document (see
+ * {@link #split(IndexedGraph, int)}) are converted one after the other, so
+ * the intermediate results of a conversion (plans, token lookups, tree
+ * builders) only need memory in proportion to the size of a window.
+ * 
+ * Windows are aligned to the trees of the document (i.e. usually to the
+ * syntax trees of its sentences, see {@link SyntaxForest#splitByRoot(IndexedGraph)}):
+ * a tree and all regions its nodes link to belong to the same window, as
+ * does every region overlapping or touching the text of another region or
+ * tree of the window. A window can therefore be much larger than the
+ * requested size, e.g. if a single annotation covers the whole text.
+ */
+public class TextWindow {
+	private final int start;
+	private final int end;
+	private final int[] regions;
+	private final int[] nodes;
+	private final List<List<INode>> trees;
+
+	private TextWindow(int start, int end, int[] regions, int[] nodes, List<List<INode>> trees) {
+		this.start = start;
+		this.end = end;
+		this.regions = regions;
+		this.nodes = nodes;
+		this.trees = trees;
+	}
+
+	/** returns the offset of the first character of the window */
+	public int getStart() {
+		return start;
+	}
+
+	/** returns the offset of the last character of the window, plus one */
+	public int getEnd() {
+		return end;
+	}
+
+	/** returns the ordinals of the regions of the window in text order */
+	public int[] getRegions() {
+		return regions;
+	}
+
+	/** returns the ordinals of the nodes of the window in ascending order */
+	public int[] getNodes() {
+		return nodes;
+	}
+
+	/** returns the trees of the window, each one a list of nodes sorted by ID */
+	public List<List<INode>> getTrees() {
+		return trees;
+	}
+
+	/**
+	 * splits the primary text of a document into windows of (at least) the
+	 * given number of characters, in text order. Trees that don't cover any
+	 * region (e.g. nodes without links) are put into the first window.
+	 */
+	public static List<TextWindow> split(IndexedGraph indexedGraph, int windowSize) {
+		List<List<INode>> trees = SyntaxForest.splitByRoot(indexedGraph);
+		int regionCount = indexedGraph.getRegionCount();
+		int unitCount = regionCount + trees.size();
+
+		// a unit is a region or a tree, their text ranges are merged into
+		// windows
+		int[] unitStarts = new int[unitCount];
+		int[] unitEnds = new int[unitCount];
+		for (int region = 0; region < regionCount; region++) {
+			unitStarts[region] = indexedGraph.getRegionStart(region);
+			unitEnds[region] = indexedGraph.getRegionEnd(region);
+		}
+		List<List<INode>> unplacedTrees = new ArrayList<List<INode>>();
+		long[] unitOrder = new long[unitCount];
+		int placedUnitCount = 0;
+		for (int unit = 0; unit < unitCount; unit++) {
+			if (unit >= regionCount && !setTreeRange(indexedGraph, trees.get(unit - regionCount), unit, unitStarts, unitEnds)) {
+				unplacedTrees.add(trees.get(unit - regionCount));
+				continue;
+			}
+			// offsets aren't negative, so sorting by start and unit works on
+			// one long
+			unitOrder[placedUnitCount++] = ((long) unitStarts[unit] << 32) | unit;
+		}
+		Arrays.sort(unitOrder, 0, placedUnitCount);
+
+		List<TextWindow> windows = new ArrayList<TextWindow>();
+		WindowContent content = new WindowContent(indexedGraph);
+		for (List<INode> tree : unplacedTrees) {
+			content.addTree(tree);
+		}
+		int windowStart = -1;
+		int windowEnd = -1;
+		for (int i = 0; i < placedUnitCount; i++) {
+			int unit = (int) unitOrder[i];
+			if (windowStart >= 0 && unitStarts[unit] > windowEnd && windowEnd - windowStart >= windowSize) {
+				windows.add(content.toWindow(windowStart, windowEnd));
+				content = new WindowContent(indexedGraph);
+				windowStart = -1;
+			}
+			if (windowStart < 0) {
+				windowStart = unitStarts[unit];
+				windowEnd = unitEnds[unit];
+			}
+			windowEnd = Math.max(windowEnd, unitEnds[unit]);
+			if (unit < regionCount) {
+				content.regions.add(unit);
+			} else {
+				content.addTree(trees.get(unit - regionCount));
+			}
+		}
+		if (windowStart >= 0 || !content.isEmpty()) {
+			windows.add(content.toWindow(Math.max(windowStart, 0), Math.max(windowEnd, 0)));
+		}
+		return windows;
+	}
+
+	/**
+	 * sets the text range of a tree to the smallest start and largest end
+	 * offset of the regions its nodes link to
+	 * 
+	 * @return false, if the tree doesn't link to any region
+	 */
+	private static boolean setTreeRange(IndexedGraph indexedGraph, List<INode> tree, int unit, int[] unitStarts, int[] unitEnds) {
+		int treeStart = Integer.MAX_VALUE;
+		int treeEnd = Integer.MIN_VALUE;
+		for (INode iNode : tree) {
+			int node = indexedGraph.getNodeOrdinal(iNode);
+			for (int i = 0; i < indexedGraph.getLinkedRegionCount(node); i++) {
+				int region = indexedGraph.getLinkedRegion(node, i);
+				treeStart = Math.min(treeStart, indexedGraph.getRegionStart(region));
+				treeEnd = Math.max(treeEnd, indexedGraph.getRegionEnd(region));
+			}
+		}
+		unitStarts[unit] = treeStart;
+		unitEnds[unit] = treeEnd;
+		return treeStart <= treeEnd;
+	}
+
+	/** collects the regions, nodes and trees of a window */
+	private static class WindowContent {
+		final IndexedGraph indexedGraph;
+		final IntList regions = new IntList();
+		final IntList nodes = new IntList();
+		final List<List<INode>> trees = new ArrayList<List<INode>>();
+
+		WindowContent(IndexedGraph indexedGraph) {
+			this.indexedGraph = indexedGraph;
+		}
+
+		void addTree(List<INode> tree) {
+			trees.add(tree);
+			for (INode iNode : tree) {
+				nodes.add(indexedGraph.getNodeOrdinal(iNode));
+			}
+		}
+
+		boolean isEmpty() {
+			return regions.size == 0 && trees.isEmpty();
+		}
+
+		TextWindow toWindow(int start, int end) {
+			// regions are added in text order already, nodes by tree
+			int[] nodeArray = nodes.toArray();
+			Arrays.sort(nodeArray);
+			return new TextWindow(start, end, regions.toArray(), nodeArray, Collections.unmodifiableList(trees));
+		}
+	}
+}
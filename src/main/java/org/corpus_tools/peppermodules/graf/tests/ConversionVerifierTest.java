@@ -0,0 +1,59 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf.tests;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.corpus_tools.peppermodules.graf.ConversionVerifier;
+import org.corpus_tools.peppermodules.graf.GrAFImporter;
+import org.corpus_tools.peppermodules.graf.GrafResourceHeader;
+import org.xces.graf.io.dom.ResourceHeader;
+
+/**
+ * Converts every document of a corpus and compares the fingerprints of its
+ * IGraph and SDocumentGraph (see {@link ConversionVerifier}).
+ * 
+ * Usage: ConversionVerifierTest [corpus path] [threads] [window size]. The
+ * number of threads defaults to the number of processors, the window size to
+ * 0. Exits with status 1 if any document differs or can't be converted.
+ */
+public class ConversionVerifierTest {
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		String corpusPath = (args.length > 0) ? args[0] : System.getProperty("user.home").toString() + "/corpora/masc_one/";
+		int threadCount = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		int windowSize = (args.length > 2) ? Integer.parseInt(args[2]) : 0;
+		ResourceHeader rscHeader = GrafResourceHeader.getShared(corpusPath);
+
+		List<String> docHeaderPaths = GrAFImporter.recursiveListDir(corpusPath, "hdr");
+		long startTime = System.currentTimeMillis();
+		List<ConversionVerifier.Result> results = new ConversionVerifier(rscHeader, false, windowSize).verify(docHeaderPaths, threadCount);
+		int failedDocCount = 0;
+		for (ConversionVerifier.Result result : results) {
+			System.out.println(result);
+			if (!result.isVerified()) {
+				failedDocCount++;
+			}
+		}
+		System.out.println(failedDocCount + " of " + results.size() + " documents differ or failed (" + (System.currentTimeMillis() - startTime) + " ms).");
+		if (failedDocCount > 0) {
+			System.exit(1);
+		}
+	}
+}
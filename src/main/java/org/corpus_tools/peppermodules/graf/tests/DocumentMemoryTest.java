@@ -0,0 +1,127 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+
+import org.corpus_tools.peppermodules.graf.DocumentPipeline;
+import org.corpus_tools.peppermodules.graf.GrAFImporter;
+import org.corpus_tools.peppermodules.graf.GrafDocumentHeader;
+import org.corpus_tools.peppermodules.graf.GrafReader;
+import org.corpus_tools.peppermodules.graf.SymbolTable;
+import org.corpus_tools.salt.SaltFactory;
+import org.corpus_tools.salt.common.SDocument;
+import org.xces.graf.api.GrafException;
+import org.xces.graf.io.dom.ResourceHeader;
+import org.xml.sax.SAXException;
+
+/**
+ * Converts every document of a corpus with the {@link DocumentPipeline} and
+ * checks that the peak heap usage per document stays within a multiple of
+ * the size of the document's files (header, primary text and standoff files).
+ * 
+ * Usage: DocumentMemoryTest [corpus path] [max. heap factor] [window size].
+ * The factor defaults to {@value #DEFAULT_MAX_HEAP_FACTOR}, the window size
+ * (see {@link DocumentPipeline#setWindowSize(int)}) to 0. The peak is the sum of the
+ * peaks of all heap pools minus the heap used before the document, i.e. an
+ * upper bound that includes garbage not collected yet, so run it with a
+ * small -Xmx to make the collector work. Exits with status 1 if any document
+ * exceeds the limit.
+ */
+public class DocumentMemoryTest {
+	public static final double DEFAULT_MAX_HEAP_FACTOR = 50.0;
+
+	public static void main(String[] args) throws GrafException, SAXException, IOException {
+		String corpusPath = (args.length > 0) ? args[0] : System.getProperty("user.home").toString() + "/corpora/masc_one/";
+		double maxHeapFactor = (args.length > 1) ? Double.parseDouble(args[1]) : DEFAULT_MAX_HEAP_FACTOR;
+		int windowSize = (args.length > 2) ? Integer.parseInt(args[2]) : 0;
+		File headerFile = new File(corpusPath, "resource-header.xml");
+		ResourceHeader rscHeader = new ResourceHeader(headerFile);
+
+		DocumentPipeline pipeline = new DocumentPipeline(new SymbolTable(), false, null);
+		pipeline.setWindowSize(windowSize);
+		pipeline.setStageListener(new DocumentPipeline.StageListener() {
+			@Override
+			public void stageFinished(SDocument sDocument, DocumentPipeline.Stage stage) {
+				if (stage == DocumentPipeline.Stage.WINDOW_CONVERTED) {
+					// the peak covers the windows
+					return;
+				}
+				System.out.println("\t" + stage + ": " + toMegaBytes(getUsedHeap()) + " MB heap used");
+			}
+		});
+
+		int failedDocCount = 0;
+		List<String> docHeaderPaths = GrAFImporter.recursiveListDir(corpusPath, "hdr");
+		for (String docHeaderPath : docHeaderPaths) {
+			long inputSize = new GrafDocumentHeader(docHeaderPath).getDocumentSize();
+			System.gc();
+			long baseline = getUsedHeap();
+			resetPeakHeap();
+
+			SDocument sDocument = SaltFactory.createSDocument();
+			sDocument.setName(new File(docHeaderPath).getName());
+			sDocument.setDocumentGraph(SaltFactory.createSDocumentGraph());
+			System.out.println(docHeaderPath + " (" + toMegaBytes(inputSize) + " MB):");
+			pipeline.convert(GrafReader.getAnnoGraph(rscHeader, docHeaderPath), sDocument);
+
+			long peak = getPeakHeap() - baseline;
+			double heapFactor = (double) peak / Math.max(inputSize, 1);
+			boolean withinLimit = heapFactor <= maxHeapFactor;
+			System.out.println("\tpeak: " + toMegaBytes(peak) + " MB, " + String.format("%.1f", heapFactor) + " x input size" + (withinLimit ? "" : " -- EXCEEDS " + maxHeapFactor + " x"));
+			if (!withinLimit) {
+				failedDocCount++;
+			}
+		}
+		System.out.println(failedDocCount + " of " + docHeaderPaths.size() + " documents exceeded " + maxHeapFactor + " x their input size.");
+		if (failedDocCount > 0) {
+			System.exit(1);
+		}
+	}
+
+	private static long getUsedHeap() {
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	private static void resetPeakHeap() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	private static long getPeakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	private static String toMegaBytes(long bytes) {
+		return String.format("%.1f", bytes / (1024.0 * 1024.0));
+	}
+}
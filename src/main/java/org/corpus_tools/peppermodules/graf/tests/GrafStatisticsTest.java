@@ -0,0 +1,56 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf.tests;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import org.corpus_tools.peppermodules.graf.GrAFImporter;
+import org.corpus_tools.peppermodules.graf.GrafResourceHeader;
+import org.corpus_tools.peppermodules.graf.GrafStatistics;
+import org.xces.graf.io.dom.ResourceHeader;
+
+/**
+ * Collects the statistics of all documents of a corpus (see
+ * {@link GrafStatistics}) and prints them to stdout.
+ * 
+ * Usage: GrafStatisticsTest [corpus path] [threads] [json|csv]. The number of
+ * threads defaults to the number of processors, the format to JSON.
+ */
+public class GrafStatisticsTest {
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		String corpusPath = (args.length > 0) ? args[0] : System.getProperty("user.home").toString() + "/corpora/masc_one/";
+		int threadCount = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		boolean csv = (args.length > 2) && "csv".equalsIgnoreCase(args[2]);
+		ResourceHeader rscHeader = GrafResourceHeader.getShared(corpusPath);
+
+		List<String> docHeaderPaths = GrAFImporter.recursiveListDir(corpusPath, "hdr");
+		long startTime = System.currentTimeMillis();
+		GrafStatistics statistics = GrafStatistics.collect(rscHeader, docHeaderPaths, threadCount);
+		Writer writer = new OutputStreamWriter(System.out, "UTF-8");
+		if (csv) {
+			statistics.writeCsv(writer);
+		} else {
+			statistics.writeJson(writer);
+		}
+		System.err.println(statistics.getDocumentCount() + " documents (" + statistics.getFailedDocuments().size() + " failed) in " + (System.currentTimeMillis() - startTime) + " ms.");
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.graf.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.corpus_tools.peppermodules.graf.CalibrationProfile;
+import org.corpus_tools.peppermodules.graf.GrAFImporter;
+import org.corpus_tools.peppermodules.graf.GrAFImporterProperties;
+import org.corpus_tools.peppermodules.graf.GrafResourceHeader;
+import org.corpus_tools.peppermodules.graf.ImportEstimator;
+import org.xces.graf.api.GrafException;
+import org.xml.sax.SAXException;
+
+/**
+ * Estimates the import of a corpus (see {@link ImportEstimator}) and prints
+ * one CSV row per document, followed by a summary.
+ * 
+ * Usage: ImportEstimatorTest [corpus path] [profile path] [sample size]. If
+ * the profile doesn't exist yet, it is calibrated by converting a sample of
+ * the given size (default: 10 documents, spread evenly over the corpus) and
+ * stored. Without a profile path, the default profile is used.
+ */
+public class ImportEstimatorTest {
+
+	public static void main(String[] args) throws IOException, GrafException, SAXException {
+		String corpusPath = (args.length > 0) ? args[0] : System.getProperty("user.home").toString() + "/corpora/masc_one/";
+		File profileFile = (args.length > 1) ? new File(args[1]) : null;
+		int sampleSize = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+		GrAFImporterProperties props = new GrAFImporterProperties();
+
+		Map<String, String> docIdDocHeaderMap = GrAFImporter.scanDocumentHeaders(corpusPath, props.getHeaderFileEnding());
+		List<String> docIds = new ArrayList<String>(docIdDocHeaderMap.keySet());
+		CalibrationProfile profile;
+		if (profileFile == null) {
+			profile = new CalibrationProfile();
+		} else if (profileFile.exists()) {
+			profile = CalibrationProfile.load(profileFile);
+		} else {
+			List<String> sampleDocHeaderPaths = new ArrayList<String>();
+			int step = Math.max(docIds.size() / Math.max(sampleSize, 1), 1);
+			for (int i = 0; i < docIds.size() && sampleDocHeaderPaths.size() < sampleSize; i += step) {
+				sampleDocHeaderPaths.add(docIdDocHeaderMap.get(docIds.get(i)));
+			}
+			long startTime = System.currentTimeMillis();
+			profile = CalibrationProfile.calibrate(props, GrafResourceHeader.getShared(corpusPath), sampleDocHeaderPaths);
+			profile.store(profileFile);
+			System.err.println("calibrated " + profileFile + " with " + sampleDocHeaderPaths.size() + " documents in " + (System.currentTimeMillis() - startTime) + " ms.");
+		}
+
+		long startTime = System.currentTimeMillis();
+		List<ImportEstimator.Estimate> estimates = new ImportEstimator(props, profile).estimate(docIds, docIdDocHeaderMap);
+		int parallelDocuments = Runtime.getRuntime().availableProcessors();
+		List<ImportEstimator.Estimate> outliers = ImportEstimator.flagOutliers(estimates, Runtime.getRuntime().maxMemory(), parallelDocuments);
+		ImportEstimator.writeCsv(estimates, new OutputStreamWriter(System.out, "UTF-8"));
+		System.err.println(ImportEstimator.summarize(estimates, parallelDocuments) + " " + outliers.size() + " outliers. Estimated in " + (System.currentTimeMillis() - startTime) + " ms.");
+	}
+}